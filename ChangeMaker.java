@@ -0,0 +1,252 @@
+import java.util.Arrays;
+
+/**
+ * Finds an exact payout with the fewest coins and bills from a limited stock of denominations.
+ * The greedy approach of taking the largest denomination first can refuse change that the stock could actually make,
+ * for example 60 with three 20s and one 50. ChangeMaker solves it as a bounded knapsack instead.
+ *
+ * Reachability is kept in one table layer per denomination, where layer i holds the fewest pieces needed for every amount
+ * using denominations 0 to i. The stock array is shared with the vending machine. When a count changes, only the layers from
+ * that denomination onward are rebuilt, the next time the table is used, and only up to the amount asked for. The largest
+ * denominations come first, and a count above what the table can use is ignored, so a bill paid into a vault that already
+ * holds enough of them does not rebuild anything, and the coins given as change rebuild only the last few layers.
+ * Checking an amount is then a single table lookup. Amounts above the table limit are solved on demand.
+ *
+ * The table is only allocated by the first check, and only as large as the stock can pay out, capped at the limit.
+ * It grows when the stock does, so an idle machine in a large fleet holds no table, and an amount larger than the whole
+ * stock is refused without touching it.
+ *
+ * This class is not thread-safe. The vending machine uses it while holding its own lock.
+ */
+public class ChangeMaker {
+    private static final int UNREACHABLE = Integer.MAX_VALUE / 2;
+
+    private final int[] denominations;
+    private final int[] counts;
+    private final int[] knownCounts;
+    private final int limit;
+    private final int[][] minPieces;
+    private final int[] filledTo;
+    private int[] window;
+    private int capacity;
+
+    /**
+     * Constructs a ChangeMaker whose table covers amounts up to twice the largest denomination.
+     * Change from a single payment is always smaller than the largest denomination, so this covers every sale.
+     *
+     * @param denominations The value of each denomination.
+     * @param counts        The live number of instances of each denomination, in the same order.
+     */
+    public ChangeMaker(int[] denominations, int[] counts) {
+        this(denominations, counts, 2 * max(denominations));
+    }
+
+    /**
+     * Constructs a ChangeMaker whose table covers amounts up to the given limit.
+     *
+     * @param denominations The value of each denomination.
+     * @param counts        The live number of instances of each denomination, in the same order.
+     * @param limit         The largest amount kept in the reachability table.
+     */
+    public ChangeMaker(int[] denominations, int[] counts, int limit) {
+        if (denominations.length != counts.length) {
+            throw new IllegalArgumentException("Every denomination needs a count.");
+        }
+        this.denominations = denominations.clone();
+        this.counts = counts;
+        this.knownCounts = new int[denominations.length];
+        this.limit = limit;
+        this.minPieces = new int[denominations.length][];
+        this.filledTo = new int[denominations.length];
+        this.window = new int[0];
+        this.capacity = -1;
+    }
+
+    /**
+     * Checks if the amount can be paid out exactly from the current stock.
+     *
+     * @param amount The amount to pay out.
+     * @return true if an exact payout exists, false otherwise.
+     */
+    public boolean canMake(int amount) {
+        return minPieces(amount) >= 0;
+    }
+
+    /**
+     * Get the fewest coins and bills needed to pay out the amount exactly.
+     *
+     * @param amount The amount to pay out.
+     * @return The number of pieces, or -1 if the amount cannot be paid out.
+     */
+    public int minPieces(int amount) {
+        if (amount < 0 || amount > payable()) {
+            return -1;
+        } else if (amount == 0) {
+            return 0;
+        }
+        int[][] table = tableFor(amount);
+        int pieces = table[denominations.length - 1][amount];
+        return pieces >= UNREACHABLE ? -1 : pieces;
+    }
+
+    /**
+     * Finds the payout with the fewest coins and bills for the amount. The stock is not changed.
+     *
+     * @param amount The amount to pay out.
+     * @return The number of instances of each denomination to pay out, or null if the amount cannot be paid out.
+     */
+    public int[] solve(int amount) {
+        if (amount < 0 || amount > payable()) {
+            return null;
+        }
+        int[] payout = new int[denominations.length];
+        if (amount == 0) {
+            return payout;
+        }
+        int[][] table = tableFor(amount);
+        if (table[denominations.length - 1][amount] >= UNREACHABLE) {
+            return null;
+        }
+
+        int remaining = amount;
+        for (int i = denominations.length - 1; i >= 0 && remaining > 0; i--) {
+            int target = table[i][remaining];
+            int denomination = denominations[i];
+            for (int k = 0; k <= knownCounts[i] && k * denomination <= remaining; k++) {
+                if (piecesBefore(table, i, remaining - k * denomination) + k == target) {
+                    payout[i] = k;
+                    remaining -= k * denomination;
+                    break;
+                }
+            }
+        }
+        return payout;
+    }
+
+    /**
+     * Get the table that covers the amount, bringing the shared table up to date with the stock first.
+     */
+    private int[][] tableFor(int amount) {
+        if (amount <= limit) {
+            refresh(amount);
+            return minPieces;
+        }
+        refresh(0);
+        int[][] table = new int[denominations.length][amount + 1];
+        int[] scratch = new int[amount + 1];
+        for (int i = 0; i < denominations.length; i++) {
+            fillLayer(table, i, amount, scratch);
+        }
+        return table;
+    }
+
+    /**
+     * Compares the live stock with the stock the table was built for, and makes every layer valid up to the amount.
+     * A changed denomination invalidates its layer and every later one. An invalid layer is only filled up to the next
+     * power of two above the amount, since change is usually small, so the check after a sale costs a fraction of a full rebuild.
+     */
+    private void refresh(int amount) {
+        int dirtyFrom = denominations.length;
+        for (int i = 0; i < denominations.length; i++) {
+            if (counts[i] != knownCounts[i]) {
+                if (usable(counts[i], i, limit) != usable(knownCounts[i], i, limit)) {
+                    dirtyFrom = Math.min(dirtyFrom, i);
+                }
+                knownCounts[i] = counts[i];
+            }
+        }
+        for (int i = dirtyFrom; i < denominations.length; i++) {
+            filledTo[i] = 0;
+        }
+        if (amount == 0) {
+            return;
+        }
+        int payable = (int) Math.min(limit, payable());
+        if (capacity < payable) {
+            grow(Math.min(limit, Math.max(payable, 2 * capacity)));
+        }
+        int reach = Math.min(payable, Integer.highestOneBit(amount) * 2);
+        for (int i = 0; i < denominations.length; i++) {
+            if (filledTo[i] < amount) {
+                int layerReach = i == 0 ? reach : Math.min(reach, filledTo[i - 1]);
+                fillLayer(minPieces, i, layerReach, window);
+                filledTo[i] = layerReach;
+            }
+        }
+    }
+
+    /**
+     * Enlarges the shared table to cover amounts up to the new capacity. The amounts already filled keep their values,
+     * since a layer is exact up to where it was filled whatever the size of the table.
+     */
+    private void grow(int newCapacity) {
+        for (int i = 0; i < denominations.length; i++) {
+            minPieces[i] = minPieces[i] == null ? new int[newCapacity + 1] : Arrays.copyOf(minPieces[i], newCapacity + 1);
+        }
+        window = new int[newCapacity + 1];
+        capacity = newCapacity;
+    }
+
+    /**
+     * Get the total value of the live stock, the largest amount it could pay out.
+     */
+    private long payable() {
+        long total = 0;
+        for (int i = 0; i < denominations.length; i++) {
+            total += (long) Math.max(0, counts[i]) * denominations[i];
+        }
+        return total;
+    }
+
+    /**
+     * Fills layer i of the table from layer i - 1. Each amount takes the best of using 0 to count pieces of the denomination,
+     * found with a sliding window minimum over the amounts with the same remainder, so a layer costs one pass over the table.
+     */
+    private void fillLayer(int[][] table, int i, int maxAmount, int[] deque) {
+        int[] layer = table[i];
+        int denomination = denominations[i];
+        int count = usable(knownCounts[i], i, maxAmount);
+        for (int remainder = 0; remainder < denomination && remainder <= maxAmount; remainder++) {
+            int head = 0;
+            int tail = 0;
+            for (int j = 0, amount = remainder; amount <= maxAmount; j++, amount += denomination) {
+                int value = piecesBefore(table, i, amount) - j;
+                while (tail > head && piecesBefore(table, i, remainder + deque[tail - 1] * denomination) - deque[tail - 1] >= value) {
+                    tail--;
+                }
+                deque[tail++] = j;
+                if (deque[head] < j - count) {
+                    head++;
+                }
+                int best = piecesBefore(table, i, remainder + deque[head] * denomination) - deque[head] + j;
+                layer[amount] = Math.min(best, UNREACHABLE);
+            }
+        }
+    }
+
+    /**
+     * Get the number of pieces of denomination i that can take part in an amount up to maxAmount. Pieces beyond that
+     * cannot change the table, so a bill paid into a vault that already holds enough of it does not dirty any layer.
+     */
+    private int usable(int count, int i, int maxAmount) {
+        return Math.max(0, Math.min(count, maxAmount / denominations[i]));
+    }
+
+    /**
+     * Get the fewest pieces for the amount using only the denominations before i.
+     */
+    private static int piecesBefore(int[][] table, int i, int amount) {
+        if (i == 0) {
+            return amount == 0 ? 0 : UNREACHABLE;
+        }
+        return table[i - 1][amount];
+    }
+
+    private static int max(int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
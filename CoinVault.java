@@ -0,0 +1,246 @@
+import java.util.Arrays;
+
+/**
+ * The coins and bills a vending machine holds as change. The denominations come from a CurrencyDefinition, ordered
+ * from the largest, and every array of counts in and out of the vault follows that order.
+ *
+ * Stocking and replenishing are limited to the capacity of the vault for each denomination. Coins and bills inserted
+ * as payment are always kept, even above the capacity, since the machine cannot hand them back once a sale is made.
+ *
+ * This class is not thread-safe. The vending machine uses it while holding its change lock.
+ */
+public class CoinVault {
+    /**
+     * The default number of instances of each denomination the vault can be stocked with.
+     */
+    public static final int MAX_STORED_DENOMINATION_INSTANCES = 20;
+
+    private final CurrencyDefinition currency;
+    private final int capacity;
+    private final int[] counts;
+    private final ChangeMaker changeMaker;
+
+    /**
+     * Constructs an empty CoinVault.
+     *
+     * @param currency The denominations the vault holds.
+     * @param capacity The number of instances of each denomination the vault can be stocked with.
+     */
+    public CoinVault(CurrencyDefinition currency, int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.currency = currency;
+        this.capacity = capacity;
+        this.counts = new int[currency.size()];
+        this.changeMaker = new ChangeMaker(currency.getDenominations(), counts);
+    }
+
+    /**
+     * Get the denominations the vault holds.
+     *
+     * @return The currency.
+     */
+    public CurrencyDefinition getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Get the number of instances of each denomination the vault can be stocked with.
+     *
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of instances of a denomination in the vault.
+     *
+     * @param index The zero-based index of the denomination.
+     * @return The number of instances.
+     */
+    public int getCount(int index) {
+        return counts[index];
+    }
+
+    /**
+     * Get the number of instances of a denomination that can still be stocked.
+     *
+     * @param index The zero-based index of the denomination.
+     * @return The free space, or 0 if the denomination is at or above capacity.
+     */
+    public int getSpace(int index) {
+        return Math.max(0, capacity - counts[index]);
+    }
+
+    /**
+     * Sets the number of instances of a denomination.
+     *
+     * @param index The zero-based index of the denomination.
+     * @param count The number of instances, not exceeding the capacity.
+     */
+    public void setCount(int index, int count) {
+        if (count < 0 || count > capacity) {
+            throw new IllegalArgumentException("Invalid number of instances of \u20B1" + currency.denomination(index) + ": " + count);
+        }
+        counts[index] = count;
+    }
+
+    /**
+     * Adds instances of a denomination, as many as fit in the vault.
+     *
+     * @param index The zero-based index of the denomination.
+     * @param count The number of instances to add.
+     * @return The number of instances added.
+     */
+    public int add(int index, int count) {
+        int added = Math.min(Math.max(0, count), getSpace(index));
+        counts[index] += added;
+        return added;
+    }
+
+    /**
+     * Adds instances of every denomination at once. Nothing is added unless everything fits in the vault.
+     *
+     * @param added The number of instances to add of each denomination, ordered from the largest.
+     */
+    public void addAll(int[] added) {
+        checkLength(added);
+        for (int i = 0; i < counts.length; i++) {
+            if (added[i] < 0 || added[i] > getSpace(i)) {
+                throw new IllegalArgumentException("Cannot add " + added[i] + " instances of \u20B1" + currency.denomination(i) + ".");
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += added[i];
+        }
+    }
+
+    /**
+     * Removes instances of every denomination at once. Nothing is removed unless the vault holds everything.
+     *
+     * @param removed The number of instances to remove of each denomination, ordered from the largest.
+     */
+    public void removeAll(int[] removed) {
+        checkLength(removed);
+        for (int i = 0; i < counts.length; i++) {
+            if (removed[i] < 0 || removed[i] > counts[i]) {
+                throw new IllegalArgumentException("Cannot remove " + removed[i] + " instances of \u20B1" + currency.denomination(i) + ".");
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] -= removed[i];
+        }
+    }
+
+    /**
+     * Replaces every count, such as when a snapshot is restored. Counts above the capacity are kept, since payments can
+     * leave the vault above it.
+     *
+     * @param restored The number of instances of each denomination, ordered from the largest.
+     */
+    public void restore(int[] restored) {
+        checkLength(restored);
+        for (int count : restored) {
+            if (count < 0) {
+                throw new IllegalArgumentException("Invalid number of instances: " + count);
+            }
+        }
+        System.arraycopy(restored, 0, counts, 0, counts.length);
+    }
+
+    /**
+     * Empties the vault.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Checks if an amount can be paid out exactly from the vault. An amount with centavos that no coin is worth
+     * cannot be paid out.
+     *
+     * @param amount The amount in centavos.
+     * @return true if an exact payout exists, false otherwise.
+     */
+    public boolean canPay(long amount) {
+        return amount % Money.CENTAVOS_PER_PESO == 0 && changeMaker.canMake((int) Money.wholePesos(amount));
+    }
+
+    /**
+     * Gives the change with the fewest coins and bills the vault allows, and adds the payment to the vault.
+     * If no exact payout exists, as much as possible is given starting from the largest denomination, so callers
+     * check canPay first and never give change that is short.
+     *
+     * @param change     The amount of change in centavos.
+     * @param amountPaid The amount paid in centavos.
+     * @return The number of instances of each denomination given as change, ordered from the largest.
+     */
+    public int[] giveChange(long change, long amountPaid) {
+        int[] changeGiven = change % Money.CENTAVOS_PER_PESO == 0 ? changeMaker.solve((int) Money.wholePesos(change)) : null;
+        if (changeGiven == null) {
+            changeGiven = new int[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                long denomination = Money.ofPesos(currency.denomination(i));
+                changeGiven[i] = (int) Math.min(change / denomination, counts[i]);
+                change -= changeGiven[i] * denomination;
+            }
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] -= changeGiven[i];
+        }
+        deposit(amountPaid);
+        return changeGiven;
+    }
+
+    /**
+     * Adds a payment to the vault, kept as the largest denominations it can be made of.
+     *
+     * @param amountPaid The amount paid in centavos.
+     */
+    public void deposit(long amountPaid) {
+        for (int i = 0; i < counts.length; i++) {
+            long denomination = Money.ofPesos(currency.denomination(i));
+            int paid = (int) (amountPaid / denomination);
+            counts[i] += paid;
+            amountPaid -= paid * denomination;
+        }
+    }
+
+    /**
+     * Puts change taken out with giveChange back into the vault, such as when the purchase it was held for is not
+     * dispensed. Like a payment, it is kept even above the capacity.
+     *
+     * @param changeGiven The number of instances of each denomination taken out, ordered from the largest.
+     */
+    public void putBack(int[] changeGiven) {
+        checkLength(changeGiven);
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += changeGiven[i];
+        }
+    }
+
+    /**
+     * Takes an amount out of the vault, starting from the largest denomination.
+     *
+     * @param amount The amount to take in centavos.
+     * @return The part of the amount the vault could not cover, in centavos.
+     */
+    public long withdraw(long amount) {
+        for (int i = 0; i < counts.length; i++) {
+            long denomination = Money.ofPesos(currency.denomination(i));
+            int taken = (int) Math.min(amount / denomination, counts[i]);
+            counts[i] -= taken;
+            amount -= taken * denomination;
+        }
+        return amount;
+    }
+
+    private void checkLength(int[] perDenomination) {
+        if (perDenomination.length != counts.length) {
+            throw new IllegalArgumentException("Expected " + counts.length + " denominations, got " + perDenomination.length + ".");
+        }
+    }
+}
@@ -0,0 +1,220 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.StringJoiner;
+
+/**
+ * The coins and bills a vending machine accepts and gives as change, in whole units of the currency.
+ * The denominations are kept from the largest, which is the order CoinVault stores its counts in, and a table indexed
+ * by value gives the position of any denomination with one array read, so checking an inserted coin costs no search.
+ *
+ * The Philippine peso is used unless the system property vending.currency names a properties file, such as:
+ * <pre>
+ * code=JPY
+ * denominations=1,5,10,50,100,500,1000,5000,10000
+ * </pre>
+ * so a machine can be deployed to a market with other denominations without changing the code.
+ */
+public class CurrencyDefinition {
+    /**
+     * The system property naming the properties file of the currency to use.
+     */
+    public static final String PROPERTY = "vending.currency";
+
+    private static final CurrencyDefinition PHILIPPINE_PESO = new CurrencyDefinition("PHP", new int[] { 1000, 500, 200, 100, 50, 20, 10, 5, 1 });
+    private static volatile CurrencyDefinition configured;
+
+    private final String code;
+    private final int[] denominations;
+    private final int[] indexByValue;
+
+    /**
+     * Constructs a CurrencyDefinition.
+     *
+     * @param code          The code of the currency, such as PHP.
+     * @param denominations The value of each coin and bill in whole units, in any order.
+     */
+    public CurrencyDefinition(String code, int[] denominations) {
+        if (denominations.length == 0) {
+            throw new IllegalArgumentException("A currency needs at least one denomination.");
+        }
+        int[] sorted = denominations.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] <= 0 || (i > 0 && sorted[i] == sorted[i - 1])) {
+                throw new IllegalArgumentException("Invalid denominations: " + Arrays.toString(denominations));
+            }
+        }
+        this.code = code;
+        this.denominations = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            this.denominations[i] = sorted[sorted.length - 1 - i];
+        }
+        this.indexByValue = new int[this.denominations[0] + 1];
+        Arrays.fill(indexByValue, -1);
+        for (int i = 0; i < this.denominations.length; i++) {
+            indexByValue[this.denominations[i]] = i;
+        }
+    }
+
+    /**
+     * Get the Philippine peso: 1, 5, 10, and 20 coins, and 20, 50, 100, 200, 500, and 1000 bills.
+     *
+     * @return The definition of the peso.
+     */
+    public static CurrencyDefinition philippinePeso() {
+        return PHILIPPINE_PESO;
+    }
+
+    /**
+     * Get the currency this program is configured with: the file named by the vending.currency system property,
+     * or the Philippine peso if it is not set. The file is read once.
+     *
+     * @return The configured currency.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    public static CurrencyDefinition configured() {
+        CurrencyDefinition currency = configured;
+        if (currency == null) {
+            synchronized (CurrencyDefinition.class) {
+                currency = configured;
+                if (currency == null) {
+                    String file = System.getProperty(PROPERTY);
+                    try {
+                        currency = file == null ? PHILIPPINE_PESO : load(Paths.get(file));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Could not read the currency " + file, e);
+                    }
+                    configured = currency;
+                }
+            }
+        }
+        return currency;
+    }
+
+    /**
+     * Reads a currency from a properties file with a code and a comma-separated list of denominations.
+     *
+     * @param file The properties file.
+     * @return The currency.
+     * @throws IOException If the file cannot be read or does not define a currency.
+     */
+    public static CurrencyDefinition load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        String code = properties.getProperty("code", "").trim();
+        String list = properties.getProperty("denominations", "").trim();
+        if (code.isEmpty() || list.isEmpty()) {
+            throw new IOException(file + " needs a code and denominations.");
+        }
+        String[] values = list.split(",");
+        int[] denominations = new int[values.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                denominations[i] = Integer.parseInt(values[i].trim());
+            }
+            return new CurrencyDefinition(code, denominations);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " has invalid denominations: " + list, e);
+        }
+    }
+
+    /**
+     * Get the code of the currency.
+     *
+     * @return The code, such as PHP.
+     */
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Get the number of denominations.
+     *
+     * @return The number of denominations.
+     */
+    public int size() {
+        return denominations.length;
+    }
+
+    /**
+     * Get the value of a denomination.
+     *
+     * @param index The zero-based index of the denomination, from the largest.
+     * @return The value in whole units.
+     */
+    public int denomination(int index) {
+        return denominations[index];
+    }
+
+    /**
+     * Get the value of every denomination.
+     *
+     * @return The values in whole units, from the largest.
+     */
+    public int[] getDenominations() {
+        return denominations.clone();
+    }
+
+    /**
+     * Get the value of the smallest denomination.
+     *
+     * @return The value in whole units.
+     */
+    public int smallestDenomination() {
+        return denominations[denominations.length - 1];
+    }
+
+    /**
+     * Check if a price can be sold with exact change. Payments and change are made of whole coins and bills, so the
+     * price has to be a whole number of the smallest denomination.
+     *
+     * @param centavos The price in centavos.
+     * @return true if the price can be paid and changed exactly, false otherwise.
+     */
+    public boolean isPayable(long centavos) {
+        return centavos % Money.ofPesos(smallestDenomination()) == 0;
+    }
+
+    /**
+     * Get the index of a denomination from its value.
+     *
+     * @param denomination The value in whole units.
+     * @return The zero-based index of the denomination, or -1 if there is no such denomination.
+     */
+    public int indexOf(int denomination) {
+        return denomination >= 0 && denomination < indexByValue.length ? indexByValue[denomination] : -1;
+    }
+
+    /**
+     * Check if a value is one of the denominations.
+     *
+     * @param denomination The value in whole units.
+     * @return true if the value is a denomination, false otherwise.
+     */
+    public boolean isDenomination(int denomination) {
+        return indexOf(denomination) >= 0;
+    }
+
+    /**
+     * Lists the denominations from the smallest, as shown to a customer.
+     *
+     * @return The denominations separated by commas.
+     */
+    @Override
+    public String toString() {
+        StringJoiner list = new StringJoiner(", ");
+        for (int i = denominations.length - 1; i >= 0; i--) {
+            list.add(Integer.toString(denominations[i]));
+        }
+        return list.toString();
+    }
+}
@@ -0,0 +1,187 @@
+import java.util.Random;
+
+/**
+ * Generates a seeded stream of vending machine customers for the LoadSimulator.
+ * Customers arrive at random with a given average rate, choose a slot from a weighted product mix, buy one to three
+ * of the product, and pay with a single bill, a larger bill than needed, or the exact amount. The same seed always
+ * produces the same customers.
+ */
+public class CustomerStream {
+    private static final int[] DENOMINATIONS = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
+    private static final int[] NO_FRUITS = new int[0];
+
+    private final Random random;
+    private final double arrivalsPerSecond;
+    private final int[] slotWeights;
+    private final int totalWeight;
+    private final int fruitSlots;
+    private double arrivalSeconds;
+
+    /**
+     * Represents one customer in the stream.
+     */
+    public static class Customer {
+        private final double arrivalSeconds;
+        private final int slot;
+        private final int quantity;
+        private final int[] fruitSlots;
+        private final boolean addCheese;
+        private final Random paymentRandom;
+
+        private Customer(double arrivalSeconds, int slot, int quantity, int[] fruitSlots, boolean addCheese, long paymentSeed) {
+            this.arrivalSeconds = arrivalSeconds;
+            this.slot = slot;
+            this.quantity = quantity;
+            this.fruitSlots = fruitSlots;
+            this.addCheese = addCheese;
+            this.paymentRandom = new Random(paymentSeed);
+        }
+
+        /**
+         * Get the time the customer arrives, counted from the start of the stream.
+         *
+         * @return The arrival time in seconds.
+         */
+        public double getArrivalSeconds() {
+            return arrivalSeconds;
+        }
+
+        /**
+         * Get the zero-based slot the customer chooses.
+         *
+         * @return The chosen slot.
+         */
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Get the quantity the customer wants to buy.
+         *
+         * @return The quantity wanted.
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Get the fruits the customer picks if they choose a made-to-order Fruit Salad.
+         *
+         * @return The zero-based slots of three different fruits.
+         */
+        public int[] getFruitSlots() {
+            return fruitSlots;
+        }
+
+        /**
+         * Check if the customer adds cheese to a Fruit Salad.
+         *
+         * @return true if cheese is added, false otherwise.
+         */
+        public boolean addsCheese() {
+            return addCheese;
+        }
+
+        /**
+         * Chooses the coins and bills the customer pays with once the price is known.
+         * Half of the customers pay with the smallest bill that covers the price, a fifth with the next larger one,
+         * and the rest pay the exact amount.
+         *
+         * @param price The price to pay in centavos.
+         * @return The denominations paid, in pesos.
+         */
+        public int[] payment(long price) {
+            long pesos = (price + Money.ofPesos(1) - 1) / Money.ofPesos(1);
+            int choice = paymentRandom.nextInt(10);
+            if (choice < 7 && pesos <= DENOMINATIONS[0]) {
+                int bill = DENOMINATIONS.length - 1;
+                while (DENOMINATIONS[bill] < pesos) {
+                    bill--;
+                }
+                if (choice >= 5 && bill > 0) {
+                    bill--;
+                }
+                return new int[] { DENOMINATIONS[bill] };
+            }
+
+            int count = 0;
+            long remaining = pesos;
+            for (int denomination : DENOMINATIONS) {
+                count += remaining / denomination;
+                remaining %= denomination;
+            }
+            int[] paid = new int[count];
+            int next = 0;
+            remaining = pesos;
+            for (int denomination : DENOMINATIONS) {
+                while (remaining >= denomination) {
+                    paid[next++] = denomination;
+                    remaining -= denomination;
+                }
+            }
+            return paid;
+        }
+    }
+
+    /**
+     * Constructs a CustomerStream.
+     *
+     * @param seed              The seed of the stream.
+     * @param arrivalsPerSecond The average number of customers arriving each second.
+     * @param slotWeights       How often each slot is chosen, relative to the other slots.
+     * @param fruitSlots        The number of fruit slots a Fruit Salad is made from, starting at slot 0.
+     */
+    public CustomerStream(long seed, double arrivalsPerSecond, int[] slotWeights, int fruitSlots) {
+        if (arrivalsPerSecond <= 0) {
+            throw new IllegalArgumentException("The arrival rate must be positive.");
+        }
+        this.random = new Random(seed);
+        this.arrivalsPerSecond = arrivalsPerSecond;
+        this.slotWeights = slotWeights.clone();
+        int totalWeight = 0;
+        for (int weight : slotWeights) {
+            totalWeight += weight;
+        }
+        this.totalWeight = totalWeight;
+        this.fruitSlots = fruitSlots;
+        this.arrivalSeconds = 0;
+    }
+
+    /**
+     * Generates the next customer.
+     *
+     * @return The next customer, arriving after the previous one.
+     */
+    public Customer next() {
+        // Arrivals form a Poisson process, so the time between customers is exponentially distributed
+        arrivalSeconds += -Math.log(1 - random.nextDouble()) / arrivalsPerSecond;
+
+        int pick = random.nextInt(totalWeight);
+        int slot = 0;
+        while (pick >= slotWeights[slot]) {
+            pick -= slotWeights[slot];
+            slot++;
+        }
+
+        int roll = random.nextInt(20);
+        int quantity = roll < 16 ? 1 : roll < 19 ? 2 : 3;
+
+        int[] fruits = NO_FRUITS;
+        if (fruitSlots >= 3) {
+            fruits = new int[3];
+            for (int i = 0; i < fruits.length; i++) {
+                boolean repeated;
+                do {
+                    fruits[i] = random.nextInt(fruitSlots);
+                    repeated = false;
+                    for (int j = 0; j < i; j++) {
+                        repeated |= fruits[j] == fruits[i];
+                    }
+                } while (repeated);
+            }
+        }
+        boolean addCheese = random.nextInt(5) == 0;
+
+        return new Customer(arrivalSeconds, slot, quantity, fruits, addCheese, random.nextLong());
+    }
+}
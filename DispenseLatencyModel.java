@@ -0,0 +1,34 @@
+/**
+ * Represents how long the vending machine takes to physically dispense a product.
+ * The DispensePipeline uses the model to decide when a dispense finishes, so a real dispenser,
+ * a simulated one, or an instant one for testing can be plugged in.
+ */
+public interface DispenseLatencyModel {
+    /**
+     * Get the time needed to dispense a product.
+     *
+     * @param slot     The zero-based slot the product is dispensed from.
+     * @param quantity The quantity dispensed.
+     * @return The time to dispense in milliseconds. A value of 0 or less dispenses immediately.
+     */
+    long dispenseMillis(int slot, int quantity);
+
+    /**
+     * Creates a model that takes the same time for every dispense.
+     *
+     * @param millis The time to dispense in milliseconds.
+     * @return The fixed latency model.
+     */
+    static DispenseLatencyModel fixed(long millis) {
+        return (slot, quantity) -> millis;
+    }
+
+    /**
+     * Creates a model that dispenses immediately, for running the vending machine without a display.
+     *
+     * @return The instant latency model.
+     */
+    static DispenseLatencyModel none() {
+        return (slot, quantity) -> 0L;
+    }
+}
@@ -0,0 +1,146 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Dispenses products in the background so the vending machine does not block while a product drops.
+ * The time taken by each dispense comes from a pluggable DispenseLatencyModel, so the next customer can select and pay
+ * while the previous product is still being dispensed.
+ *
+ * All pipelines share one scheduler thread, which only keeps time: it completes the dispense future and does nothing else.
+ * The work that finishes a purchase takes locks and records the sale, so the vending machine runs it on the completion
+ * executor of its pipeline, never on the scheduler thread, and one busy machine cannot hold up the dispenses of the others.
+ * The completion executor is a small pool shared by every pipeline unless one is set, as VendingFleet does with the
+ * executor of each machine.
+ */
+public class DispensePipeline {
+    /**
+     * The default time to dispense a product, matching the 5-second delay the vending machine used to simulate.
+     */
+    public static final long DEFAULT_DISPENSE_MILLIS = 5000;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "dispense-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicInteger COMPLETION_THREADS = new AtomicInteger();
+
+    private static final Executor COMPLETIONS = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "dispense-completion-" + COMPLETION_THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile DispenseLatencyModel latencyModel;
+    private volatile Executor completionExecutor;
+
+    /**
+     * Constructs a DispensePipeline that uses the default dispense time.
+     */
+    public DispensePipeline() {
+        this(DispenseLatencyModel.fixed(DEFAULT_DISPENSE_MILLIS));
+    }
+
+    /**
+     * Constructs a DispensePipeline with the given latency model.
+     *
+     * @param latencyModel The model for the time taken by each dispense.
+     */
+    public DispensePipeline(DispenseLatencyModel latencyModel) {
+        this.latencyModel = latencyModel;
+        this.completionExecutor = COMPLETIONS;
+    }
+
+    /**
+     * Sets the model for the time taken by each dispense.
+     *
+     * @param latencyModel The latency model to use for later dispenses.
+     */
+    public void setLatencyModel(DispenseLatencyModel latencyModel) {
+        this.latencyModel = latencyModel;
+    }
+
+    /**
+     * Get the model for the time taken by each dispense.
+     *
+     * @return The latency model.
+     */
+    public DispenseLatencyModel getLatencyModel() {
+        return latencyModel;
+    }
+
+    /**
+     * Sets the executor that runs the work finishing each purchase once its dispense is done.
+     *
+     * @param completionExecutor The executor to use for later dispenses.
+     */
+    public void setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+    }
+
+    /**
+     * Get the executor that runs the work finishing each purchase, for handleAsync on the futures of this pipeline.
+     *
+     * @return The completion executor.
+     */
+    public Executor getCompletionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * Starts dispensing a product. The returned future completes when the product has been dispensed,
+     * or completes exceptionally if the dispense failed. It may complete on the scheduler thread, so the caller
+     * finishes the purchase with handleAsync on the completion executor.
+     *
+     * @param slot     The zero-based slot the product is dispensed from.
+     * @param quantity The quantity to dispense.
+     * @return A future that completes when the dispense is done.
+     */
+    public CompletableFuture<Void> dispense(int slot, int quantity) {
+        long millis;
+        try {
+            millis = latencyModel.dispenseMillis(slot, quantity);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (millis <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return schedule(millis);
+    }
+
+    /**
+     * Starts dispensing several products in one batch, as for a cart. The products drop in one dispense cycle,
+     * so the batch takes as long as its slowest line rather than the sum of every line.
+     *
+     * @param slots      The zero-based slots the products are dispensed from.
+     * @param quantities The quantity dispensed from each slot.
+     * @return A future that completes when every product has been dispensed.
+     */
+    public CompletableFuture<Void> dispenseBatch(int[] slots, int[] quantities) {
+        long millis = 0;
+        try {
+            for (int i = 0; i < slots.length; i++) {
+                millis = Math.max(millis, latencyModel.dispenseMillis(slots[i], quantities[i]));
+            }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (millis <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return schedule(millis);
+    }
+
+    /**
+     * Get a future that the scheduler thread completes once the time has passed.
+     */
+    private static CompletableFuture<Void> schedule(long millis) {
+        CompletableFuture<Void> dispensed = new CompletableFuture<>();
+        SCHEDULER.schedule(() -> dispensed.complete(null), millis, TimeUnit.MILLISECONDS);
+        return dispensed;
+    }
+}
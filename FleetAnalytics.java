@@ -0,0 +1,119 @@
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Rolls up the sales of every machine in a VendingFleet: the revenue of each product, of each machine, and of each hour.
+ *
+ * The sales ledgers are cut into segments of at most SEGMENT_ENTRIES entries, so a machine with millions of sales is
+ * split up as well as a fleet of many small machines. A fork-join task splits the segments in halves of about the
+ * same number of entries until a half is small enough, rolls up each half on its own, and merges the results,
+ * so the rollup uses every thread of the pool. Each segment blocks the sales of its machine only while it is read.
+ */
+public class FleetAnalytics {
+    /**
+     * The most ledger entries read as one segment, the same as a chunk of the sales ledger.
+     */
+    public static final int SEGMENT_ENTRIES = 8192;
+
+    private FleetAnalytics() {
+    }
+
+    /**
+     * Rolls up the sales of every machine in a fleet on the common fork-join pool.
+     *
+     * @param fleet The fleet.
+     * @return The rollup of every sale made so far.
+     */
+    public static SalesRollup rollUp(VendingFleet fleet) {
+        return rollUp(fleet.getMachines(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Rolls up the sales of some machines. Sales made while the rollup runs may or may not be included.
+     *
+     * @param machines The machines.
+     * @param pool     The pool the rollup runs on.
+     * @return The rollup of the sales of the machines.
+     */
+    public static SalesRollup rollUp(List<VendingFleet.Machine> machines, ForkJoinPool pool) {
+        long[] entries = new long[machines.size()];
+        int segments = 0;
+        for (int m = 0; m < entries.length; m++) {
+            entries[m] = machines.get(m).getBehavior().getSalesEntryCount();
+            // A machine without sales still gets a segment, so it is listed with no revenue
+            segments += (int) Math.max(1, (entries[m] + SEGMENT_ENTRIES - 1) / SEGMENT_ENTRIES);
+        }
+
+        VendingFleet.Machine[] machineOf = new VendingFleet.Machine[segments];
+        long[] starts = new long[segments];
+        // Each segment weighs its entries plus one, so splitting also spreads the cost of many empty machines
+        long[] weightBefore = new long[segments + 1];
+        int segment = 0;
+        for (int m = 0; m < entries.length; m++) {
+            long first = 0;
+            do {
+                machineOf[segment] = machines.get(m);
+                starts[segment] = first;
+                weightBefore[segment + 1] = weightBefore[segment] + Math.min(SEGMENT_ENTRIES, entries[m] - first) + 1;
+                segment++;
+                first += SEGMENT_ENTRIES;
+            } while (first < entries[m]);
+        }
+        return pool.invoke(new RollupTask(machineOf, starts, weightBefore, 0, segments));
+    }
+
+    private static class RollupTask extends RecursiveTask<SalesRollup> {
+        private final VendingFleet.Machine[] machines;
+        private final long[] starts;
+        private final long[] weightBefore;
+        private final int from;
+        private final int to;
+
+        private RollupTask(VendingFleet.Machine[] machines, long[] starts, long[] weightBefore, int from, int to) {
+            this.machines = machines;
+            this.starts = starts;
+            this.weightBefore = weightBefore;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SalesRollup compute() {
+            if (to - from <= 1 || weightBefore[to] - weightBefore[from] <= SEGMENT_ENTRIES) {
+                return rollUpSegments();
+            }
+            int middle = middleByWeight();
+            RollupTask second = new RollupTask(machines, starts, weightBefore, middle, to);
+            second.fork();
+            SalesRollup rollup = new RollupTask(machines, starts, weightBefore, from, middle).compute();
+            return rollup.merge(second.join());
+        }
+
+        private int middleByWeight() {
+            long half = (weightBefore[from] + weightBefore[to]) / 2;
+            int low = from + 1;
+            int high = to - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (weightBefore[middle] < half) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private SalesRollup rollUpSegments() {
+            SalesRollup rollup = new SalesRollup();
+            for (int i = from; i < to; i++) {
+                long revenue = rollup.getRevenue();
+                long sales = rollup.getSales();
+                machines[i].getBehavior().rollUpSales(starts[i], SEGMENT_ENTRIES, rollup);
+                rollup.addMachine(machines[i].getId(), rollup.getRevenue() - revenue, rollup.getSales() - sales);
+            }
+            return rollup;
+        }
+    }
+}
@@ -1,14 +1,41 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
 public interface IVendingMachineBehavior {
     void initialize();
     void inputChangeDenominations();
     void vendingFeatures();
     void maintenanceFeatures();
     boolean isValidDenomination(int denomination);
-    void updateChangeDenominations(double change, double amountPaid);
-    boolean canGiveSufficientChange(double change);
-    void displayChangeBreakdown(double change);
+    CurrencyDefinition getCurrency();
+    void updateChangeDenominations(long change, long amountPaid);
+    boolean canGiveSufficientChange(long change);
+    void displayChangeBreakdown(long change);
     void replenishChange();
-    void updateSales(double totalPrice, String product, int quantitySold);
+    void updateSales(long totalPrice, String product, int quantitySold);
     void collectSales();
-    void displayDenominationBreakdown(double collectedSales);
+    void displayDenominationBreakdown(long collectedSales);
+    void salesSummary();
+    String salesReport();
+    String salesEntries(int page, int pageSize);
+    long getSalesEntryCount();
+    void rollUpSales(long firstEntry, long maxEntries, SalesRollup rollup);
+    void stockSlot(int slot, String product, long price, int quantity, int calories);
+    void stockChange(int denomination, int count);
+    void restock(RestockManifest.Batch batch);
+    void saveState(DataOutput out) throws IOException;
+    void loadState(DataInput in) throws IOException;
+    PurchaseTransaction beginPurchase(int slot, int quantity);
+    PurchaseResult commitPurchase(PurchaseTransaction transaction);
+    void cancelPurchase(PurchaseTransaction transaction);
+    PurchaseCart beginCart();
+    PurchaseResult commitCart(PurchaseCart cart);
+    void cancelCart(PurchaseCart cart);
+    void setDispenseLatencyModel(DispenseLatencyModel latencyModel);
+    void setDispenseExecutor(Executor executor);
+    ProductTableModel getProductTableModel();
+    MachineMetrics getMetrics();
+    void registerMetrics(MetricsRegistry registry, String machine);
 }
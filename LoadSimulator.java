@@ -0,0 +1,280 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the Regular and Special vending machines without any user interface, using a seeded stream of customers
+ * from CustomerStream, to size hardware for fleets of machines. Every customer goes through the same steps as at the
+ * vending features menu: the product is selected, the payment is inserted, the change is checked with
+ * canGiveSufficientChange, and the purchase is completed and dispensed.
+ *
+ * The report gives the throughput, the latency percentiles of a purchase, how many sales were refused because the
+ * change could not be given, and when each slot ran out of stock. The customers and everything except the timings are
+ * the same for the same seed. Customers are sent as fast as possible unless real time is requested, in which case each
+ * one is sent at their arrival time and the latency includes any time spent waiting behind the previous customer.
+ *
+ * Usage: java LoadSimulator [--machine regular|special|both] [--seed N] [--customers N] [--rate PER_SECOND]
+ * [--stock N] [--coins N] [--dispense-ms N] [--realtime]
+ */
+public class LoadSimulator {
+    private static final String[] PRODUCTS = { "Banana", "Grapes", "Apple", "Melon", "Pear", "Watermelon", "Fruit Salad", "Bottled Water" };
+    private static final long[] PRICES = { Money.ofPesos(25), Money.ofPesos(40), Money.ofPesos(30), Money.ofPesos(65),
+            Money.ofPesos(35), Money.ofPesos(75), Money.ofPesos(120), Money.ofPesos(20) };
+    private static final int[] CALORIES = { 105, 62, 95, 64, 101, 86, 0, 0 };
+    private static final int[] SLOT_WEIGHTS = { 14, 10, 12, 6, 8, 5, 15, 30 };
+    private static final String[] NON_SELLABLE_ITEMS = { "Paper Cup", "Plastic Spoon", "Condensed Milk", "Evaporated Milk", "Cheese" };
+    private static final int[] DENOMINATIONS = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
+    private static final int FRUIT_SALAD_SLOT = 6;
+    private static final int FRUIT_SLOTS = 6;
+
+    private final long seed;
+    private final int customers;
+    private final double arrivalsPerSecond;
+    private final int stock;
+    private final int coinsPerDenomination;
+    private final long dispenseMillis;
+    private final boolean realTime;
+
+    /**
+     * Constructs a LoadSimulator.
+     *
+     * @param seed                 The seed of the customer stream.
+     * @param customers            The number of customers to simulate.
+     * @param arrivalsPerSecond    The average number of customers arriving each second.
+     * @param stock                The starting quantity of every product and non-sellable item.
+     * @param coinsPerDenomination The starting number of instances of each denomination available as change.
+     * @param dispenseMillis       The time to dispense a product in milliseconds, or 0 to dispense immediately.
+     * @param realTime             Whether customers are sent at their arrival times instead of as fast as possible.
+     */
+    public LoadSimulator(long seed, int customers, double arrivalsPerSecond, int stock, int coinsPerDenomination,
+                         long dispenseMillis, boolean realTime) {
+        this.seed = seed;
+        this.customers = customers;
+        this.arrivalsPerSecond = arrivalsPerSecond;
+        this.stock = stock;
+        this.coinsPerDenomination = coinsPerDenomination;
+        this.dispenseMillis = dispenseMillis;
+        this.realTime = realTime;
+    }
+
+    /**
+     * Runs the simulation against a newly stocked vending machine.
+     *
+     * @param special Whether to simulate the Special Vending Machine instead of the Regular Vending Machine.
+     * @return The report of the simulation.
+     */
+    public String run(boolean special) {
+        IVendingMachineBehavior behavior = special ? new SpecialVendingMachineBehavior() : new RegularVendingMachineBehavior();
+        stockMachine(behavior);
+        behavior.setDispenseLatencyModel(dispenseMillis > 0 ? DispenseLatencyModel.fixed(dispenseMillis) : DispenseLatencyModel.none());
+
+        CustomerStream stream = new CustomerStream(seed, arrivalsPerSecond, SLOT_WEIGHTS, special ? FRUIT_SLOTS : 0);
+        int[] remaining = new int[PRODUCTS.length];
+        Arrays.fill(remaining, stock);
+        double[] stockoutSeconds = new double[PRODUCTS.length];
+        Arrays.fill(stockoutSeconds, Double.NaN);
+        int[] stockoutCustomer = new int[PRODUCTS.length];
+        int[] turnedAway = new int[PRODUCTS.length];
+        int[] statusCounts = new int[PurchaseResult.Status.values().length];
+        long[] latencies = new long[customers];
+        int paidSales = 0;
+        int refusedSales = 0;
+        int completedSales = 0;
+        long revenue = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < customers; i++) {
+            CustomerStream.Customer customer = stream.next();
+            long began = System.nanoTime();
+            if (realTime) {
+                long arrival = start + (long) (customer.getArrivalSeconds() * 1_000_000_000L);
+                while (System.nanoTime() < arrival) {
+                    LockSupport.parkNanos(arrival - System.nanoTime());
+                }
+                began = arrival;
+            }
+
+            int slot = customer.getSlot();
+            boolean fruitSalad = special && slot == FRUIT_SALAD_SLOT;
+            PurchaseTransaction transaction;
+            if (fruitSalad) {
+                transaction = ((SpecialVendingMachineBehavior) behavior).beginFruitSaladPurchase(customer.getFruitSlots(), customer.addsCheese());
+            } else {
+                // Customers can see how many are left and buy what they can
+                transaction = behavior.beginPurchase(slot, Math.max(1, Math.min(customer.getQuantity(), remaining[slot])));
+            }
+
+            PurchaseResult result;
+            boolean refused = false;
+            if (transaction.getRejection() != null) {
+                result = transaction.commit();
+            } else {
+                paidSales++;
+                for (int denomination : customer.payment(transaction.getTotalPrice())) {
+                    transaction.insert(denomination);
+                }
+                if (!behavior.canGiveSufficientChange(transaction.getAmountPaid() - transaction.getTotalPrice())) {
+                    refused = true;
+                    result = transaction.cancel();
+                } else {
+                    result = transaction.commit().getCompletion().join();
+                }
+            }
+            latencies[i] = System.nanoTime() - began;
+            statusCounts[result.getStatus().ordinal()]++;
+
+            if (refused || result.getStatus() == PurchaseResult.Status.INSUFFICIENT_CHANGE) {
+                refusedSales++;
+            } else if (result.isCompleted()) {
+                completedSales++;
+                revenue += result.getTotalPrice();
+                int[] usedSlots = fruitSalad ? customer.getFruitSlots() : new int[] { slot };
+                int used = fruitSalad ? 1 : result.getQuantity();
+                for (int usedSlot : usedSlots) {
+                    remaining[usedSlot] -= used;
+                    if (remaining[usedSlot] == 0 && Double.isNaN(stockoutSeconds[usedSlot])) {
+                        stockoutSeconds[usedSlot] = customer.getArrivalSeconds();
+                        stockoutCustomer[usedSlot] = i + 1;
+                    }
+                }
+            } else if (result.getStatus() == PurchaseResult.Status.OUT_OF_STOCK || remaining[slot] == 0) {
+                turnedAway[slot]++;
+                if (Double.isNaN(stockoutSeconds[slot])) {
+                    stockoutSeconds[slot] = customer.getArrivalSeconds();
+                    stockoutCustomer[slot] = i + 1;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        StringBuilder report = new StringBuilder();
+        report.append(special ? "Special Vending Machine" : "Regular Vending Machine")
+                .append(String.format(Locale.ROOT, " (seed %d, %d customers, %.2f arrivals/s%s)%n",
+                        seed, customers, arrivalsPerSecond, realTime ? ", real time" : ""));
+        report.append(String.format(Locale.ROOT, "Throughput: %.0f customers/s, %.0f sales/s over %.3f s%n",
+                customers / (elapsed / 1e9), completedSales / (elapsed / 1e9), elapsed / 1e9));
+        Arrays.sort(latencies);
+        report.append(String.format(Locale.ROOT, "Latency (us): p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                percentile(latencies, 50) / 1e3, percentile(latencies, 90) / 1e3, percentile(latencies, 99) / 1e3,
+                percentile(latencies, 99.9) / 1e3, latencies.length > 0 ? latencies[latencies.length - 1] / 1e3 : 0.0));
+        report.append(String.format(Locale.ROOT, "Sales: %d completed, %s revenue%n", completedSales, Money.format(revenue)));
+        report.append(String.format(Locale.ROOT, "Refused for lack of change: %d of %d paid sales (%.2f%%)%n",
+                refusedSales, paidSales, paidSales > 0 ? 100.0 * refusedSales / paidSales : 0.0));
+        report.append("Results:");
+        for (PurchaseResult.Status status : PurchaseResult.Status.values()) {
+            if (statusCounts[status.ordinal()] > 0) {
+                report.append(' ').append(status).append('=').append(statusCounts[status.ordinal()]);
+            }
+        }
+        report.append(String.format("%n"));
+        report.append("Stockouts:").append(String.format("%n"));
+        for (int slot = 0; slot < PRODUCTS.length; slot++) {
+            report.append(String.format(Locale.ROOT, "  Slot %d (%s): ", slot + 1, PRODUCTS[slot]));
+            if (Double.isNaN(stockoutSeconds[slot])) {
+                report.append("in stock");
+            } else {
+                report.append(String.format(Locale.ROOT, "out at %.1f s (customer %d), %d customers turned away",
+                        stockoutSeconds[slot], stockoutCustomer[slot], turnedAway[slot]));
+            }
+            report.append(String.format("%n"));
+        }
+        return report.toString();
+    }
+
+    private void stockMachine(IVendingMachineBehavior behavior) {
+        for (int slot = 0; slot < PRODUCTS.length; slot++) {
+            behavior.stockSlot(slot, PRODUCTS[slot], PRICES[slot], stock, CALORIES[slot]);
+        }
+        for (int denomination : DENOMINATIONS) {
+            behavior.stockChange(denomination, coinsPerDenomination);
+        }
+        if (behavior instanceof SpecialVendingMachineBehavior) {
+            for (String item : NON_SELLABLE_ITEMS) {
+                ((SpecialVendingMachineBehavior) behavior).stockNonSellable(item, stock);
+            }
+        }
+    }
+
+    /**
+     * Get a percentile of sorted values using the nearest-rank method.
+     *
+     * @param sorted     The values in ascending order.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The value at the percentile, or 0 if there are no values.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /**
+     * Runs the simulator from the command line.
+     *
+     * @param args The options described in the class documentation.
+     */
+    public static void main(String[] args) {
+        String machine = "both";
+        long seed = 42;
+        int customers = 500;
+        double rate = 2;
+        int stock = 10;
+        int coins = 5;
+        long dispenseMillis = 0;
+        boolean realTime = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--machine":
+                        machine = args[++i].toLowerCase(Locale.ROOT);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--customers":
+                        customers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--rate":
+                        rate = Double.parseDouble(args[++i]);
+                        break;
+                    case "--stock":
+                        stock = Integer.parseInt(args[++i]);
+                        break;
+                    case "--coins":
+                        coins = Integer.parseInt(args[++i]);
+                        break;
+                    case "--dispense-ms":
+                        dispenseMillis = Long.parseLong(args[++i]);
+                        break;
+                    case "--realtime":
+                        realTime = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (!machine.equals("regular") && !machine.equals("special") && !machine.equals("both")) {
+                throw new IllegalArgumentException("Unknown machine: " + machine);
+            }
+            if (customers < 0 || rate <= 0 || stock < 0 || coins < 0) {
+                throw new IllegalArgumentException("The customers, stock and coins cannot be negative, and the rate must be positive.");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.out.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length - 1] : e.getMessage());
+            System.out.println("Usage: java LoadSimulator [--machine regular|special|both] [--seed N] [--customers N] [--rate PER_SECOND]"
+                    + " [--stock N] [--coins N] [--dispense-ms N] [--realtime]");
+            System.exit(1);
+            return;
+        }
+
+        LoadSimulator simulator = new LoadSimulator(seed, customers, rate, stock, coins, dispenseMillis, realTime);
+        if (!machine.equals("special")) {
+            System.out.println(simulator.run(false));
+        }
+        if (!machine.equals("regular")) {
+            System.out.println(simulator.run(true));
+        }
+    }
+}
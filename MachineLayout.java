@@ -0,0 +1,102 @@
+/**
+ * The physical layout of a vending machine: how many slots it has, how many products each slot holds, and how many
+ * instances of each denomination its change can be stocked with. Every per-slot table of a vending machine is sized
+ * from the layout when the machine is created, so a slot is still found by its index however many slots there are.
+ *
+ * The standard layout has 8 slots of 10 products and 20 of each denomination. It can be changed without changing the
+ * code through the system properties vending.slots, vending.slotCapacity, and vending.changeCapacity.
+ */
+public class MachineLayout {
+    /**
+     * The system property with the number of slots.
+     */
+    public static final String SLOTS_PROPERTY = "vending.slots";
+    /**
+     * The system property with the number of products each slot holds.
+     */
+    public static final String SLOT_CAPACITY_PROPERTY = "vending.slotCapacity";
+    /**
+     * The system property with the number of instances of each denomination the change can be stocked with.
+     */
+    public static final String CHANGE_CAPACITY_PROPERTY = "vending.changeCapacity";
+
+    private static final MachineLayout STANDARD = new MachineLayout(8, 10, CoinVault.MAX_STORED_DENOMINATION_INSTANCES);
+
+    private final int slots;
+    private final int slotCapacity;
+    private final int changeCapacity;
+
+    /**
+     * Constructs a MachineLayout.
+     *
+     * @param slots          The number of slots.
+     * @param slotCapacity   The number of products each slot holds.
+     * @param changeCapacity The number of instances of each denomination the change can be stocked with.
+     */
+    public MachineLayout(int slots, int slotCapacity, int changeCapacity) {
+        if (slots <= 0 || slotCapacity <= 0 || changeCapacity < 0) {
+            throw new IllegalArgumentException("Invalid layout: " + slots + " slots of " + slotCapacity + " products, change capacity " + changeCapacity);
+        }
+        this.slots = slots;
+        this.slotCapacity = slotCapacity;
+        this.changeCapacity = changeCapacity;
+    }
+
+    /**
+     * Get the standard layout: 8 slots of 10 products, and 20 instances of each denomination.
+     *
+     * @return The standard layout.
+     */
+    public static MachineLayout standard() {
+        return STANDARD;
+    }
+
+    /**
+     * Get the layout this program is configured with: the standard layout, with any of its sizes replaced by the
+     * vending.slots, vending.slotCapacity, and vending.changeCapacity system properties.
+     *
+     * @return The configured layout.
+     * @throws IllegalArgumentException If a property is not a valid size.
+     */
+    public static MachineLayout configured() {
+        int slots = Integer.getInteger(SLOTS_PROPERTY, STANDARD.slots);
+        int slotCapacity = Integer.getInteger(SLOT_CAPACITY_PROPERTY, STANDARD.slotCapacity);
+        int changeCapacity = Integer.getInteger(CHANGE_CAPACITY_PROPERTY, STANDARD.changeCapacity);
+        if (slots == STANDARD.slots && slotCapacity == STANDARD.slotCapacity && changeCapacity == STANDARD.changeCapacity) {
+            return STANDARD;
+        }
+        return new MachineLayout(slots, slotCapacity, changeCapacity);
+    }
+
+    /**
+     * Get the number of slots.
+     *
+     * @return The number of slots.
+     */
+    public int getSlots() {
+        return slots;
+    }
+
+    /**
+     * Get the number of products each slot holds.
+     *
+     * @return The capacity of a slot.
+     */
+    public int getSlotCapacity() {
+        return slotCapacity;
+    }
+
+    /**
+     * Get the number of instances of each denomination the change can be stocked with.
+     *
+     * @return The capacity of the change.
+     */
+    public int getChangeCapacity() {
+        return changeCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return slots + " slots of " + slotCapacity + " products, " + changeCapacity + " of each denomination";
+    }
+}
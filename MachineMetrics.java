@@ -0,0 +1,103 @@
+/**
+ * The counters and latency histogram of one vending machine: the outcome of every purchase, the revenue, the times the
+ * change could not be given, the collections the change denominations could not cover, and how long paid purchases
+ * take to be dispensed. The vending machine records into them as it sells, without taking any lock, and adds them
+ * to a MetricsRegistry together with gauges of its stock and change when asked to.
+ */
+public class MachineMetrics {
+    private final MetricsRegistry.Counter[] purchases;
+    private final MetricsRegistry.Counter revenue;
+    private final MetricsRegistry.Counter changeRefusals;
+    private final MetricsRegistry.Counter collectionShortfalls;
+    private final MetricsRegistry.Counter collectionShortfallAmount;
+    private final MetricsRegistry.Histogram purchaseDuration;
+
+    /**
+     * Constructs MachineMetrics with every counter at zero.
+     */
+    public MachineMetrics() {
+        purchases = new MetricsRegistry.Counter[PurchaseResult.Status.values().length];
+        for (int i = 0; i < purchases.length; i++) {
+            purchases[i] = new MetricsRegistry.Counter();
+        }
+        revenue = new MetricsRegistry.Counter();
+        changeRefusals = new MetricsRegistry.Counter();
+        collectionShortfalls = new MetricsRegistry.Counter();
+        collectionShortfallAmount = new MetricsRegistry.Counter();
+        purchaseDuration = new MetricsRegistry.Histogram();
+    }
+
+    /**
+     * Records a purchase that was rejected or cancelled before it was paid for.
+     *
+     * @param status The outcome of the purchase.
+     */
+    public void purchaseRejected(PurchaseResult.Status status) {
+        purchases[status.ordinal()].increment();
+    }
+
+    /**
+     * Records a paid purchase once it has been dispensed or has failed to.
+     *
+     * @param result The final result of the purchase.
+     * @param nanos  The time from the commit of the purchase until the end of the dispense.
+     */
+    public void purchaseFinished(PurchaseResult result, long nanos) {
+        purchases[result.getStatus().ordinal()].increment();
+        if (result.isCompleted()) {
+            revenue.add(result.getTotalPrice());
+        }
+        purchaseDuration.observe(nanos);
+    }
+
+    /**
+     * Records that an amount of change could not be given exactly.
+     */
+    public void changeRefused() {
+        changeRefusals.increment();
+    }
+
+    /**
+     * Records a collection of sales that the change denominations could not fully cover.
+     *
+     * @param shortfall The amount that could not be taken out, in centavos.
+     */
+    public void collectionShortfall(long shortfall) {
+        collectionShortfalls.increment();
+        collectionShortfallAmount.add(shortfall);
+    }
+
+    /**
+     * Get the number of purchases with an outcome.
+     *
+     * @param status The outcome.
+     * @return The number of purchases.
+     */
+    public long getPurchases(PurchaseResult.Status status) {
+        return purchases[status.ordinal()].get();
+    }
+
+    /**
+     * Adds the counters and the histogram to a registry.
+     *
+     * @param registry The registry.
+     * @param machine  The value of the machine label, which tells the vending machines in one registry apart.
+     */
+    public void register(MetricsRegistry registry, String machine) {
+        for (PurchaseResult.Status status : PurchaseResult.Status.values()) {
+            // A purchase that is dispensing is counted again once it finishes, so only final outcomes are listed
+            if (status != PurchaseResult.Status.DISPENSING) {
+                registry.register("vending_purchases_total", "Purchases by outcome.", purchases[status.ordinal()],
+                        "machine", machine, "outcome", status.name());
+            }
+        }
+        registry.register("vending_revenue_centavos_total", "Revenue of the completed purchases in centavos.", revenue, "machine", machine);
+        registry.register("vending_change_refusals_total", "Times the change could not be given exactly.", changeRefusals, "machine", machine);
+        registry.register("vending_collection_shortfalls_total", "Collections of sales the change denominations could not cover.",
+                collectionShortfalls, "machine", machine);
+        registry.register("vending_collection_shortfall_centavos_total", "Amount of collected sales the change denominations could not cover, in centavos.",
+                collectionShortfallAmount, "machine", machine);
+        registry.register("vending_purchase_duration_seconds", "Time from the payment of a purchase until it is dispensed.",
+                purchaseDuration, "machine", machine);
+    }
+}
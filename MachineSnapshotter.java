@@ -0,0 +1,166 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * Saves and restores the full state of a vending machine as a compact binary snapshot file, so a restarted machine
+ * can resume without the operator entering every slot and denomination again.
+ *
+ * A snapshot starts with a header naming the type of vending machine, followed by the state written by
+ * IVendingMachineBehavior.saveState, and ends with a CRC32 of everything before it. The state is captured in memory
+ * while the machine is locked, and the file is written afterwards. It is written to a temporary file first and then
+ * moved over the old snapshot, so a power loss while saving leaves the previous snapshot intact.
+ *
+ * The state records how many sales journal records it already includes. Sales keep being journaled between snapshots,
+ * so when a snapshot is loaded the vending machine replays the sales recorded after it against the stock and change,
+ * and a crash between two snapshots does not bring sold products back.
+ */
+public class MachineSnapshotter {
+    /**
+     * The default time between snapshots written in the background.
+     */
+    public static final long DEFAULT_PERIOD_SECONDS = 10;
+
+    private static final int MAGIC = 0x564D5353; // "VMSS"
+    private static final int VERSION = 2;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "machine-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final IVendingMachineBehavior behavior;
+    private final Path path;
+    private ScheduledFuture<?> periodicSave;
+
+    /**
+     * Constructs a MachineSnapshotter for the given vending machine and snapshot file.
+     *
+     * @param behavior The vending machine whose state is saved and restored.
+     * @param path     The snapshot file.
+     */
+    public MachineSnapshotter(IVendingMachineBehavior behavior, Path path) {
+        this.behavior = behavior;
+        this.path = path;
+    }
+
+    /**
+     * Writes a snapshot of the vending machine, replacing the previous one.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public synchronized void save() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(behavior.getClass().getSimpleName());
+        behavior.saveState(out);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            bytes.writeTo(file);
+            file.getFD().sync();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Check if a snapshot has been saved.
+     *
+     * @return true if the snapshot file exists, false otherwise.
+     */
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * Restores the vending machine from the snapshot, if there is one.
+     *
+     * @return true if a snapshot was found and restored, false if there is no snapshot.
+     * @throws IOException If the snapshot is damaged or was saved by a different type of vending machine.
+     */
+    public boolean load() throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length < Long.BYTES) {
+            throw new IOException(path + " is not a complete snapshot.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Long.BYTES);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(bytes.length - Long.BYTES);
+        if (in.readLong() != crc.getValue()) {
+            throw new IOException(path + " is damaged.");
+        }
+
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - Long.BYTES));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException(path + " is not a vending machine snapshot.");
+        }
+        String type = in.readUTF();
+        if (!type.equals(behavior.getClass().getSimpleName())) {
+            throw new IOException(path + " was saved by a " + type + ", not a " + behavior.getClass().getSimpleName() + ".");
+        }
+        behavior.loadState(in);
+        return true;
+    }
+
+    /**
+     * Starts writing a snapshot in the background at a fixed period. Failures are reported and retried at the next period.
+     *
+     * @param periodSeconds The time between snapshots in seconds.
+     */
+    public synchronized void start(long periodSeconds) {
+        if (periodicSave == null) {
+            periodicSave = SCHEDULER.scheduleWithFixedDelay(this::saveQuietly, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops writing snapshots in the background and writes a final snapshot.
+     */
+    public synchronized void stop() {
+        if (periodicSave != null) {
+            periodicSave.cancel(false);
+            periodicSave = null;
+        }
+        saveQuietly();
+    }
+
+    private void saveQuietly() {
+        try {
+            save();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Could not save the snapshot " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a string that may be null, such as the product name of an empty slot.
+     */
+    static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a string written by writeNullableString.
+     */
+    static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
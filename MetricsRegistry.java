@@ -0,0 +1,299 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A registry of counters, gauges, and histograms, written out in the Prometheus text format so a Prometheus server
+ * can scrape them. The registry is an HttpHandler, so it can be served as /metrics by any JDK HTTP server.
+ *
+ * Counters and histograms are built on LongAdder, so recording a value on a hot path never takes a lock and costs a few
+ * nanoseconds even when many threads record at once. A gauge reads its value only when the registry is scraped.
+ * Metrics with the same name form a family, told apart by their labels, and every family is written with its help
+ * text and type once.
+ */
+public class MetricsRegistry implements HttpHandler {
+    /**
+     * The content type of the Prometheus text format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Map<String, Family> families;
+
+    /**
+     * Constructs an empty MetricsRegistry.
+     */
+    public MetricsRegistry() {
+        families = new LinkedHashMap<>();
+    }
+
+    /**
+     * A value that only goes up, such as the number of sales.
+     */
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        /**
+         * Adds one to the counter.
+         */
+        public void increment() {
+            value.increment();
+        }
+
+        /**
+         * Adds to the counter.
+         *
+         * @param amount The amount to add, which must not be negative.
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        /**
+         * Get the value of the counter.
+         *
+         * @return The sum of everything added.
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * The distribution of durations, counted in buckets by upper bound, with their sum and count.
+     */
+    public static class Histogram {
+        /**
+         * The upper bounds of the buckets used for latencies, in nanoseconds: from 100 microseconds to 10 seconds.
+         */
+        public static final long[] LATENCY_BUCKETS = { 100_000L, 250_000L, 500_000L, 1_000_000L, 2_500_000L, 5_000_000L,
+                10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L, 250_000_000L, 500_000_000L, 1_000_000_000L,
+                2_500_000_000L, 5_000_000_000L, 10_000_000_000L };
+
+        private final long[] bounds;
+        // One more bucket than there are bounds, for the durations above the largest bound
+        private final LongAdder[] buckets;
+        private final LongAdder sum;
+
+        /**
+         * Constructs a Histogram with the latency buckets.
+         */
+        public Histogram() {
+            this(LATENCY_BUCKETS);
+        }
+
+        /**
+         * Constructs a Histogram.
+         *
+         * @param bounds The upper bounds of the buckets in nanoseconds, in increasing order.
+         */
+        public Histogram(long[] bounds) {
+            for (int i = 1; i < bounds.length; i++) {
+                if (bounds[i] <= bounds[i - 1]) {
+                    throw new IllegalArgumentException("The bounds of the buckets must increase.");
+                }
+            }
+            this.bounds = bounds.clone();
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+            this.sum = new LongAdder();
+        }
+
+        /**
+         * Records a duration.
+         *
+         * @param nanos The duration in nanoseconds.
+         */
+        public void observe(long nanos) {
+            int bucket = 0;
+            while (bucket < bounds.length && nanos > bounds[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sum.add(nanos);
+        }
+
+        /**
+         * Get the number of durations recorded.
+         *
+         * @return The count.
+         */
+        public long getCount() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+    }
+
+    private static class Family {
+        private final String help;
+        private final String type;
+        private final List<String> labels;
+        private final List<Object> metrics;
+
+        private Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+            this.labels = new ArrayList<>();
+            this.metrics = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Adds a counter.
+     *
+     * @param name    The name of the metric, which should end with _total.
+     * @param help    The description of the metric.
+     * @param counter The counter.
+     * @param labels  The labels of the counter, as names followed by values.
+     */
+    public void register(String name, String help, Counter counter, String... labels) {
+        add(name, help, "counter", counter, labels);
+    }
+
+    /**
+     * Adds a histogram.
+     *
+     * @param name      The name of the metric, which should end with _seconds.
+     * @param help      The description of the metric.
+     * @param histogram The histogram.
+     * @param labels    The labels of the histogram, as names followed by values.
+     */
+    public void register(String name, String help, Histogram histogram, String... labels) {
+        add(name, help, "histogram", histogram, labels);
+    }
+
+    /**
+     * Adds a gauge, whose value is read each time the registry is scraped.
+     *
+     * @param name   The name of the metric.
+     * @param help   The description of the metric.
+     * @param value  The function that reads the value.
+     * @param labels The labels of the gauge, as names followed by values.
+     */
+    public void gauge(String name, String help, LongSupplier value, String... labels) {
+        add(name, help, "gauge", value, labels);
+    }
+
+    private synchronized void add(String name, String help, String type, Object metric, String[] labels) {
+        if (!name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*") || labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid metric " + name + " with " + labels.length + " label names and values.");
+        }
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("The metric " + name + " is already a " + family.type + ".");
+        }
+        StringBuilder labelText = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            labelText.append(i == 0 ? "" : ",").append(labels[i]).append("=\"");
+            escape(labelText, labels[i + 1], true);
+            labelText.append('"');
+        }
+        family.labels.add(labelText.toString());
+        family.metrics.add(metric);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format.
+     *
+     * @return The metrics.
+     */
+    public synchronized String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            text.append("# HELP ").append(name).append(' ');
+            escape(text, family.help, false);
+            text.append("\n# TYPE ").append(name).append(' ').append(family.type).append('\n');
+            for (int i = 0; i < family.metrics.size(); i++) {
+                String labels = family.labels.get(i);
+                Object metric = family.metrics.get(i);
+                if (metric instanceof Counter) {
+                    sample(text, name, labels, ((Counter) metric).get());
+                } else if (metric instanceof LongSupplier) {
+                    sample(text, name, labels, ((LongSupplier) metric).getAsLong());
+                } else {
+                    writeHistogram(text, name, labels, (Histogram) metric);
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private static void writeHistogram(StringBuilder text, String name, String labels, Histogram histogram) {
+        String separator = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < histogram.buckets.length; i++) {
+            cumulative += histogram.buckets[i].sum();
+            String bound = i < histogram.bounds.length ? seconds(histogram.bounds[i]) : "+Inf";
+            sample(text, name + "_bucket", separator + "le=\"" + bound + "\"", cumulative);
+        }
+        text.append(name).append("_sum");
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(seconds(histogram.sum.sum())).append('\n');
+        sample(text, name + "_count", labels, cumulative);
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, long value) {
+        text.append(name);
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        String seconds = String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+        // Trailing zeros are dropped, so a bound of 0.1 s is written as 0.1 rather than 0.100000000
+        int end = seconds.length();
+        while (seconds.charAt(end - 1) == '0') {
+            end--;
+        }
+        return seconds.charAt(end - 1) == '.' ? seconds.substring(0, end + 1) : seconds.substring(0, end);
+    }
+
+    private static void escape(StringBuilder text, String value, boolean quotes) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || (quotes && c == '"')) {
+                text.append('\\').append(c);
+            } else if (c == '\n') {
+                text.append("\\n");
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    /**
+     * Answers a scrape with every metric.
+     *
+     * @param exchange The HTTP request.
+     * @throws IOException If the reply cannot be sent.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
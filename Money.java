@@ -0,0 +1,64 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Works with amounts of money stored as a whole number of centavos in a long.
+ * Prices, totals, and change are all kept this way, so adding and dividing them is exact and allocates nothing.
+ * Parsing and formatting are only used when reading input and showing amounts.
+ */
+public final class Money {
+    public static final long CENTAVOS_PER_PESO = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Converts whole pesos, such as the value of a coin or bill, to centavos.
+     *
+     * @param pesos The amount in pesos.
+     * @return The amount in centavos.
+     */
+    public static long ofPesos(long pesos) {
+        return pesos * CENTAVOS_PER_PESO;
+    }
+
+    /**
+     * Get the number of whole pesos in an amount. Any centavos are dropped.
+     *
+     * @param centavos The amount in centavos.
+     * @return The whole pesos in the amount.
+     */
+    public static long wholePesos(long centavos) {
+        return centavos / CENTAVOS_PER_PESO;
+    }
+
+    /**
+     * Parses an amount typed in pesos, such as "12" or "12.50". Amounts with more than two decimal places are rounded to the nearest centavo.
+     *
+     * @param text The amount in pesos.
+     * @return The amount in centavos.
+     * @throws NumberFormatException If the text is not a valid amount.
+     */
+    public static long parse(String text) {
+        if (text == null) {
+            throw new NumberFormatException("No amount given.");
+        }
+        try {
+            return new BigDecimal(text.trim()).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount is too large: " + text);
+        }
+    }
+
+    /**
+     * Formats an amount in pesos with two decimal places, such as "12.50".
+     *
+     * @param centavos The amount in centavos.
+     * @return The formatted amount.
+     */
+    public static String format(long centavos) {
+        long pesos = Math.abs(centavos / CENTAVOS_PER_PESO);
+        long cents = Math.abs(centavos % CENTAVOS_PER_PESO);
+        return (centavos < 0 ? "-" : "") + pesos + (cents < 10 ? ".0" : ".") + cents;
+    }
+}
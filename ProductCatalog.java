@@ -0,0 +1,115 @@
+/**
+ * The products, prices, and calories loaded into each slot of the vending machines in a fleet, and the non-sellable
+ * items the Special Vending Machine needs. A catalog never changes once created, so every machine in a VendingFleet
+ * is stocked from the same instance and refers to the same product names instead of keeping copies of its own.
+ */
+public class ProductCatalog {
+    private final String[] products;
+    private final long[] prices;
+    private final int[] calories;
+    private final String[] nonSellableItems;
+
+    /**
+     * Constructs a ProductCatalog.
+     *
+     * @param products         The product in each slot, or null for an empty slot.
+     * @param prices           The price of each product in centavos.
+     * @param calories         The calories of each product.
+     * @param nonSellableItems The non-sellable items stocked in a Special Vending Machine.
+     */
+    public ProductCatalog(String[] products, long[] prices, int[] calories, String[] nonSellableItems) {
+        if (prices.length != products.length || calories.length != products.length) {
+            throw new IllegalArgumentException("Every product needs a price and calories.");
+        }
+        this.products = products.clone();
+        this.prices = prices.clone();
+        this.calories = calories.clone();
+        this.nonSellableItems = nonSellableItems.clone();
+    }
+
+    /**
+     * Creates the catalog of fruits used by the load simulator.
+     *
+     * @return The standard catalog.
+     */
+    public static ProductCatalog standard() {
+        return new ProductCatalog(
+                new String[] { "Banana", "Grapes", "Apple", "Melon", "Pear", "Watermelon", "Fruit Salad", "Bottled Water" },
+                new long[] { Money.ofPesos(25), Money.ofPesos(40), Money.ofPesos(30), Money.ofPesos(65),
+                        Money.ofPesos(35), Money.ofPesos(75), Money.ofPesos(120), Money.ofPesos(20) },
+                new int[] { 105, 62, 95, 64, 101, 86, 0, 0 },
+                new String[] { "Paper Cup", "Plastic Spoon", "Condensed Milk", "Evaporated Milk", "Cheese" });
+    }
+
+    /**
+     * Loads every product of the catalog into a vending machine, and fills its change and non-sellable items.
+     *
+     * @param behavior             The vending machine to stock.
+     * @param quantity             The quantity of each product and non-sellable item.
+     * @param coinsPerDenomination The number of instances of each denomination available as change.
+     */
+    public void stock(IVendingMachineBehavior behavior, int quantity, int coinsPerDenomination) {
+        for (int slot = 0; slot < products.length; slot++) {
+            if (products[slot] != null) {
+                behavior.stockSlot(slot, products[slot], prices[slot], quantity, calories[slot]);
+            }
+        }
+        CurrencyDefinition currency = behavior.getCurrency();
+        for (int i = 0; i < currency.size(); i++) {
+            behavior.stockChange(currency.denomination(i), coinsPerDenomination);
+        }
+        if (behavior instanceof SpecialVendingMachineBehavior) {
+            for (String item : nonSellableItems) {
+                ((SpecialVendingMachineBehavior) behavior).stockNonSellable(item, quantity);
+            }
+        }
+    }
+
+    /**
+     * Get the number of slots in the catalog.
+     *
+     * @return The number of slots.
+     */
+    public int size() {
+        return products.length;
+    }
+
+    /**
+     * Get the product in a slot.
+     *
+     * @param slot The zero-based slot.
+     * @return The name of the product, or null for an empty slot.
+     */
+    public String getProduct(int slot) {
+        return products[slot];
+    }
+
+    /**
+     * Get the price of the product in a slot.
+     *
+     * @param slot The zero-based slot.
+     * @return The price in centavos.
+     */
+    public long getPrice(int slot) {
+        return prices[slot];
+    }
+
+    /**
+     * Get the calories of the product in a slot.
+     *
+     * @param slot The zero-based slot.
+     * @return The calories.
+     */
+    public int getCalories(int slot) {
+        return calories[slot];
+    }
+
+    /**
+     * Get the non-sellable items stocked in a Special Vending Machine.
+     *
+     * @return The names of the items.
+     */
+    public String[] getNonSellableItems() {
+        return nonSellableItems.clone();
+    }
+}
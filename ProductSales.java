@@ -0,0 +1,86 @@
+/**
+ * Represents the running sales totals of one product in the vending machine: the quantity sold, the revenue,
+ * and the average price. The totals are updated with every sale, so the sales summary does not go through every sale again.
+ */
+public class ProductSales {
+    private final String product;
+    private long quantitySold;
+    private long revenue;
+    private long sales;
+
+    /**
+     * Constructs a new instance of the ProductSales class with no sales.
+     *
+     * @param product The name of the product.
+     */
+    public ProductSales(String product) {
+        this.product = product;
+    }
+
+    /**
+     * Adds a sale to the totals.
+     *
+     * @param totalPrice   The total price of the sale in centavos.
+     * @param quantitySold The quantity sold.
+     */
+    public void add(long totalPrice, int quantitySold) {
+        this.quantitySold += quantitySold;
+        this.revenue += totalPrice;
+        this.sales++;
+    }
+
+    /**
+     * Get the name of the product.
+     *
+     * @return The name of the product.
+     */
+    public String getProduct() {
+        return product;
+    }
+
+    /**
+     * Get the total quantity of the product sold.
+     *
+     * @return The quantity sold.
+     */
+    public long getQuantitySold() {
+        return quantitySold;
+    }
+
+    /**
+     * Get the total revenue from the product.
+     *
+     * @return The revenue in centavos.
+     */
+    public long getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Get the number of sales of the product.
+     *
+     * @return The number of sales.
+     */
+    public long getSales() {
+        return sales;
+    }
+
+    /**
+     * Get the average price the product was sold at, rounded to the nearest centavo.
+     *
+     * @return The average price in centavos, or 0 if none has been sold.
+     */
+    public long getAveragePrice() {
+        return quantitySold == 0 ? 0 : (revenue + quantitySold / 2) / quantitySold;
+    }
+
+    /**
+     * Returns a string representation of the ProductSales object.
+     *
+     * @return A formatted string containing the product name, quantity sold, average price, and revenue.
+     */
+    @Override
+    public String toString() {
+        return String.format("%-17s| %-9d| %-10s| %-6s", product, quantitySold, Money.format(getAveragePrice()), Money.format(revenue));
+    }
+}
@@ -4,18 +4,18 @@
  */
 public class ProductSold {
     private String product;
-    private double price;
+    private long price;
     private int quantitySold;
-    private double totalPrice;
+    private long totalPrice;
 
     /**
      * Constructs a new instance of the ProductSold class.
      *
      * @param product      The name of the product.
-     * @param price        The price of the product.
+     * @param price        The price of the product in centavos.
      * @param quantitySold The quantity of the product sold.
      */
-    public ProductSold(String product, double price, int quantitySold) {
+    public ProductSold(String product, long price, int quantitySold) {
         this.product = product;
         this.price = price;
         this.quantitySold = quantitySold;
@@ -34,9 +34,9 @@ public class ProductSold {
     /**
      * Get the price of the product.
      *
-     * @return The price of the product.
+     * @return The price of the product in centavos.
      */
-    public double getPrice() {
+    public long getPrice() {
         return price;
     }
 
@@ -52,9 +52,9 @@ public class ProductSold {
     /**
      * Get the total price of the product sold (price * quantitySold).
      *
-     * @return The total price of the product sold.
+     * @return The total price of the product sold in centavos.
      */
-    public double getTotalPrice() {
+    public long getTotalPrice() {
         return totalPrice;
     }
 
@@ -65,6 +65,6 @@ public class ProductSold {
      */
     @Override
     public String toString() {
-        return String.format("%-17s| %-6.2f| %-8d| %-6.2f", product, price, quantitySold, totalPrice);
+        return String.format("%-17s| %-6s| %-8d| %-6s", product, Money.format(price), quantitySold, Money.format(totalPrice));
     }
 }
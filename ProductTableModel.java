@@ -0,0 +1,126 @@
+import java.awt.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * The table of products shown by a vending machine: slot number, name, price, stock, and calories.
+ * The model keeps no copy of the products. Every cell is read from the vending machine when the table paints it,
+ * and the vending machine reports which slots changed so only those rows are painted again.
+ *
+ * Each vending machine has one model and one window for it, created the first time the list is shown and reused
+ * afterwards. Until then, changes to the slots are ignored, since there is nothing to update.
+ */
+public class ProductTableModel extends AbstractTableModel {
+    private static final String[] COLUMN_NAMES = { "Slot", "Product Name", "Price", "Stock", "Calories" };
+
+    /**
+     * Reads one cell of the table from the vending machine.
+     */
+    @FunctionalInterface
+    public interface CellSource {
+        /**
+         * Get the value of a cell.
+         *
+         * @param slot   The zero-based slot of the row.
+         * @param column The zero-based column.
+         * @return The value to show.
+         */
+        Object valueAt(int slot, int column);
+    }
+
+    private final int slots;
+    private final CellSource cells;
+    private final AtomicIntegerArray pendingRows;
+    private JFrame frame;
+    private volatile boolean shown;
+
+    /**
+     * Constructs a ProductTableModel.
+     *
+     * @param slots The number of slots in the vending machine.
+     * @param cells Reads the cells from the vending machine.
+     */
+    public ProductTableModel(int slots, CellSource cells) {
+        this.slots = slots;
+        this.cells = cells;
+        this.pendingRows = new AtomicIntegerArray(slots);
+    }
+
+    @Override
+    public int getRowCount() {
+        return slots;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return column == 0 ? row + 1 : cells.valueAt(row, column);
+    }
+
+    /**
+     * Reports that a slot changed. The row is painted again on the event dispatch thread; several changes to the
+     * same slot before then are painted once. This can be called from any thread and costs nothing until the list is shown.
+     *
+     * @param slot The zero-based slot that changed.
+     */
+    public void slotChanged(int slot) {
+        if (shown && pendingRows.compareAndSet(slot, 0, 1)) {
+            SwingUtilities.invokeLater(() -> {
+                pendingRows.set(slot, 0);
+                fireTableRowsUpdated(slot, slot);
+            });
+        }
+    }
+
+    /**
+     * Reports that every slot may have changed, such as after the vending machine was restored.
+     */
+    public void allChanged() {
+        if (shown) {
+            SwingUtilities.invokeLater(this::fireTableDataChanged);
+        }
+    }
+
+    /**
+     * Creates a table that shows the products, to place in a window of its own. Rows are updated as the slots change
+     * from then on. Must be called on the event dispatch thread.
+     *
+     * @return The new table.
+     */
+    public JTable createTable() {
+        shown = true;
+        JTable table = new JTable(this);
+        table.setFillsViewportHeight(true);
+        return table;
+    }
+
+    /**
+     * Shows the window with the table, creating it the first time and bringing it to the front afterwards.
+     * Closing the window only hides it until the list is shown again.
+     */
+    public void show() {
+        shown = true;
+        SwingUtilities.invokeLater(() -> {
+            if (frame == null) {
+                frame = new JFrame("Available Products");
+                frame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+                frame.add(new JScrollPane(createTable()), BorderLayout.CENTER);
+                frame.pack();
+            }
+            // The rows may have changed while the window was hidden
+            fireTableDataChanged();
+            frame.setVisible(true);
+            frame.toFront();
+        });
+    }
+}
@@ -0,0 +1,247 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a purchase of several products paid with one payment, without any user interface.
+ * A cart is started with IVendingMachineBehavior.beginCart and filled with lines, each an accepted selection made with
+ * beginPurchase or, on the special vending machine, beginRecipePurchase. It then receives coins and bills through insert,
+ * and is finished with either commit or cancel like a single PurchaseTransaction.
+ *
+ * Committing a cart checks every line again, solves the change once for the combined total, and dispenses every line
+ * in one batch, so a customer buying three products waits for one dispense rather than three.
+ * The result of a cart has no slot, and its product names every line.
+ * The time from the creation of the cart to the commit or cancel is recorded as a PurchaseEvents.Payment event.
+ */
+public class PurchaseCart {
+    private final IVendingMachineBehavior behavior;
+    private final List<PurchaseTransaction> lines;
+    private final PurchaseEvents.Payment payment;
+    private long totalPrice;
+    private long amountPaid;
+    private boolean open;
+
+    /**
+     * Constructs a new empty cart.
+     *
+     * @param behavior The vending machine behavior that will complete the purchase.
+     */
+    PurchaseCart(IVendingMachineBehavior behavior) {
+        this.behavior = behavior;
+        this.lines = new ArrayList<>();
+        this.totalPrice = 0;
+        this.amountPaid = 0;
+        this.open = true;
+        this.payment = new PurchaseEvents.Payment();
+        payment.begin();
+    }
+
+    /**
+     * Selects a product and adds it to the cart if the selection is accepted.
+     *
+     * @param slot     The zero-based slot of the product.
+     * @param quantity The quantity to buy.
+     * @return The transaction of the selection. A rejected selection is not added, and has the reason in getRejection.
+     * @throws IllegalStateException If the cart was already committed or cancelled.
+     */
+    public PurchaseTransaction add(int slot, int quantity) {
+        ensureOpen();
+        return add(behavior.beginPurchase(slot, quantity));
+    }
+
+    /**
+     * Adds a selection to the cart if it was accepted. The selection becomes a line of the cart, and is paid and
+     * completed with the cart rather than on its own.
+     *
+     * @param line A transaction started on the same vending machine that has not been paid into.
+     * @return The transaction. A rejected selection is not added, and has the reason in getRejection.
+     * @throws IllegalArgumentException If the transaction belongs to another vending machine or has already been paid into.
+     * @throws IllegalStateException    If the cart or the transaction was already completed.
+     */
+    public PurchaseTransaction add(PurchaseTransaction line) {
+        ensureOpen();
+        if (line.getBehavior() != behavior) {
+            throw new IllegalArgumentException("The transaction belongs to another vending machine.");
+        }
+        if (line.getRejection() != null) {
+            return line;
+        }
+        if (line.getAmountPaid() > 0) {
+            throw new IllegalArgumentException("The transaction has already been paid into.");
+        }
+        line.addToCart();
+        lines.add(line);
+        totalPrice += line.getTotalPrice();
+        return line;
+    }
+
+    /**
+     * Inserts a coin or bill into the cart.
+     *
+     * @param denomination The denomination inserted, in pesos.
+     * @return true if the denomination was accepted, false if it is not a valid denomination or the cart is closed.
+     */
+    public boolean insert(int denomination) {
+        if (!open || !behavior.isValidDenomination(denomination)) {
+            return false;
+        }
+        amountPaid += Money.ofPesos(denomination);
+        return true;
+    }
+
+    /**
+     * Completes the payment. The vending machine checks the stock of every line and the change for the combined total
+     * before accepting the cart, then dispenses every line in one batch in the background. A cart is accepted or
+     * rejected as a whole.
+     *
+     * @return The result of the cart. An accepted cart has the DISPENSING status until every line is dispensed.
+     * @throws IllegalStateException If the cart was already committed or cancelled.
+     */
+    public PurchaseResult commit() {
+        ensureOpen();
+        open = false;
+        payment.finish(behavior, -1, getProduct(), amountPaid, "COMMITTED");
+        return behavior.commitCart(this);
+    }
+
+    /**
+     * Cancels the cart and returns the amount paid. Anything the vending machine reserved for its lines is released.
+     *
+     * @return The result of the cancelled cart.
+     * @throws IllegalStateException If the cart was already committed or cancelled.
+     */
+    public PurchaseResult cancel() {
+        ensureOpen();
+        open = false;
+        payment.finish(behavior, -1, getProduct(), amountPaid, "CANCELLED");
+        behavior.cancelCart(this);
+        return PurchaseResult.rejected(PurchaseResult.Status.CANCELLED, this);
+    }
+
+    private void ensureOpen() {
+        if (!open) {
+            throw new IllegalStateException("The cart has already been completed.");
+        }
+    }
+
+    /**
+     * Check if the cart can still receive lines and payment and be committed.
+     *
+     * @return true if the cart is open, false otherwise.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Check if the cart has no lines.
+     *
+     * @return true if nothing has been added, false otherwise.
+     */
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    /**
+     * Check if enough has been paid to cover the total price.
+     *
+     * @return true if the cart has lines and the amount paid covers their total price, false otherwise.
+     */
+    public boolean isFullyPaid() {
+        return !lines.isEmpty() && amountPaid >= totalPrice;
+    }
+
+    /**
+     * Get the amount still to be paid.
+     *
+     * @return The remaining balance in centavos, or 0 if the total price has been covered.
+     */
+    public long getRemainingBalance() {
+        return Math.max(0, totalPrice - amountPaid);
+    }
+
+    /**
+     * Get the vending machine behavior that owns this cart.
+     *
+     * @return The vending machine behavior.
+     */
+    public IVendingMachineBehavior getBehavior() {
+        return behavior;
+    }
+
+    /**
+     * Get the lines of the cart, in the order they were added.
+     *
+     * @return The accepted selections of the cart.
+     */
+    public List<PurchaseTransaction> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Get the quantity of a slot already in the cart, so a customer is not offered more than the slot has left.
+     * Only regular lines are counted; the products picked for a made-to-order product are already reserved.
+     *
+     * @param slot The zero-based slot.
+     * @return The quantity of the slot in the cart.
+     */
+    public int getQuantity(int slot) {
+        int quantity = 0;
+        for (PurchaseTransaction line : lines) {
+            if (line.getSlot() == slot && line.getComponentSlots() == null) {
+                quantity += line.getQuantity();
+            }
+        }
+        return quantity;
+    }
+
+    /**
+     * Get the number of products in the cart.
+     *
+     * @return The sum of the quantities of every line.
+     */
+    public int getQuantity() {
+        int quantity = 0;
+        for (PurchaseTransaction line : lines) {
+            quantity += line.getQuantity();
+        }
+        return quantity;
+    }
+
+    /**
+     * Get the names of the products in the cart, such as "Banana x2, Fruit Salad".
+     *
+     * @return Every line, separated by commas.
+     */
+    public String getProduct() {
+        StringBuilder product = new StringBuilder();
+        for (PurchaseTransaction line : lines) {
+            if (product.length() > 0) {
+                product.append(", ");
+            }
+            product.append(line.getProduct());
+            if (line.getQuantity() > 1) {
+                product.append(" x").append(line.getQuantity());
+            }
+        }
+        return product.toString();
+    }
+
+    /**
+     * Get the total price of every line.
+     *
+     * @return The total price in centavos.
+     */
+    public long getTotalPrice() {
+        return totalPrice;
+    }
+
+    /**
+     * Get the amount inserted so far.
+     *
+     * @return The amount paid in centavos.
+     */
+    public long getAmountPaid() {
+        return amountPaid;
+    }
+}
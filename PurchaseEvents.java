@@ -0,0 +1,152 @@
+import java.lang.invoke.MethodHandles;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events of each phase of a purchase, so a recording of a running machine shows where the time
+ * of a sale goes: the selection, the payment, the change check, the change payout, the dispense, and the sales update.
+ * Every event has the machine, the slot, the product, an amount in centavos, and the outcome of the phase, and its
+ * duration covers the phase including any wait for the locks it takes.
+ *
+ * The events are recorded with a recording started with -XX:StartFlightRecording or jcmd JFR.start. While no recording
+ * is running, an event is only created, and its fields are only filled in when it is going to be recorded.
+ * Stack traces are not recorded, since every event of a type comes from the same place.
+ *
+ * The first event type to be initialized loads the recorder, which takes a moment, so the vending machines initialize
+ * every event type when they are created rather than during the first sale.
+ */
+public final class PurchaseEvents {
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (Class<?> type : new Class<?>[] { Selection.class, Payment.class, ChangeCheck.class, ChangeUpdate.class, Dispense.class, SalesUpdate.class }) {
+                lookup.ensureInitialized(type);
+            }
+        } catch (IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private PurchaseEvents() {
+    }
+
+    /**
+     * Prepares the event types for the recorder. Only the first call does anything.
+     */
+    public static void register() {
+        // The event types are prepared when this class is initialized
+    }
+
+    /**
+     * The fields shared by the events of every phase.
+     */
+    @Category({ "Vending Machine", "Purchase" })
+    @StackTrace(false)
+    public abstract static class PhaseEvent extends Event {
+        @Label("Machine")
+        @Description("The type of vending machine")
+        String machine;
+
+        @Label("Slot")
+        @Description("The slot number shown to the customer, from 1, or 0 if the phase is not tied to a slot")
+        int slot;
+
+        @Label("Product")
+        String product;
+
+        @Label("Amount")
+        @Description("The amount of the phase in centavos: the price, the payment, or the change")
+        long amount;
+
+        @Label("Outcome")
+        String outcome;
+
+        /**
+         * Ends the phase and records the event if a recording wants it.
+         *
+         * @param behavior The vending machine.
+         * @param slot     The zero-based slot, or -1 if the phase is not tied to a slot.
+         * @param product  The name of the product, or null if there is none.
+         * @param amount   The amount in centavos.
+         * @param outcome  The outcome of the phase.
+         */
+        public void finish(IVendingMachineBehavior behavior, int slot, String product, long amount, String outcome) {
+            end();
+            if (shouldCommit()) {
+                this.machine = behavior.getClass().getSimpleName();
+                this.slot = slot + 1;
+                this.product = product;
+                this.amount = amount;
+                this.outcome = outcome;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * The selection of a product: checking the slot and the stock, and reserving the components of a made-to-order product.
+     * The amount is the total price, and the outcome is ACCEPTED or the reason the selection was rejected.
+     */
+    @Name("vending.Selection")
+    @Label("Product Selection")
+    public static final class Selection extends PhaseEvent {
+        /**
+         * Ends the selection with the transaction it started.
+         *
+         * @param behavior    The vending machine.
+         * @param transaction The transaction of the selection.
+         */
+        public void finish(IVendingMachineBehavior behavior, PurchaseTransaction transaction) {
+            PurchaseResult.Status rejection = transaction.getRejection();
+            finish(behavior, transaction.getSlot(), transaction.getProduct(), transaction.getTotalPrice(),
+                    rejection == null ? "ACCEPTED" : rejection.name());
+        }
+    }
+
+    /**
+     * The payment, from the selection until the transaction is committed or cancelled.
+     * The amount is the amount paid, and the outcome is COMMITTED or CANCELLED.
+     */
+    @Name("vending.Payment")
+    @Label("Payment")
+    public static final class Payment extends PhaseEvent {
+    }
+
+    /**
+     * A check of whether the change can be given exactly. The amount is the change, and the outcome is SUFFICIENT or INSUFFICIENT.
+     */
+    @Name("vending.ChangeCheck")
+    @Label("Change Check")
+    public static final class ChangeCheck extends PhaseEvent {
+    }
+
+    /**
+     * A payout of change with the payment added to the change denominations. The amount is the change paid out.
+     */
+    @Name("vending.ChangeUpdate")
+    @Label("Change Update")
+    public static final class ChangeUpdate extends PhaseEvent {
+    }
+
+    /**
+     * The dispense of a paid product, from the request to the dispenser until the product is out.
+     * The amount is the total price, and the outcome is DISPENSED or FAILED.
+     */
+    @Name("vending.Dispense")
+    @Label("Dispense")
+    public static final class Dispense extends PhaseEvent {
+    }
+
+    /**
+     * The recording of a sale in the totals, the sales ledger, and the sales journal. The amount is the total price.
+     */
+    @Name("vending.SalesUpdate")
+    @Label("Sales Update")
+    public static final class SalesUpdate extends PhaseEvent {
+    }
+}
@@ -0,0 +1,230 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Represents the outcome of a purchase made through a PurchaseTransaction.
+ * It includes the status of the purchase, the product and quantity involved, and the amounts paid and returned in centavos.
+ * A purchase that was accepted has the DISPENSING status, and its completion holds the final result once the product is dispensed.
+ * The result of a PurchaseCart has a slot of -1, and its product names every line of the cart.
+ */
+public class PurchaseResult {
+    /**
+     * The possible outcomes of a purchase.
+     */
+    public enum Status {
+        DISPENSING,
+        COMPLETED,
+        DISPENSE_FAILED,
+        CANCELLED,
+        INVALID_SELECTION,
+        OUT_OF_STOCK,
+        INSUFFICIENT_PAYMENT,
+        INSUFFICIENT_CHANGE
+    }
+
+    private final Status status;
+    private final int slot;
+    private final String product;
+    private final int quantity;
+    private final long totalPrice;
+    private final long amountPaid;
+    private final long change;
+    private final int[] changeGiven;
+    private final CompletableFuture<PurchaseResult> completion;
+
+    /**
+     * Constructs a new instance of the PurchaseResult class.
+     *
+     * @param status     The outcome of the purchase.
+     * @param slot       The zero-based slot the purchase was made from.
+     * @param product    The name of the product, or null if no product was selected.
+     * @param quantity   The quantity requested.
+     * @param totalPrice The total price of the purchase.
+     * @param amountPaid The amount inserted by the customer.
+     * @param change     The amount returned to the customer. For purchases that did not complete this is the full amount paid.
+     */
+    public PurchaseResult(Status status, int slot, String product, int quantity, long totalPrice, long amountPaid, long change) {
+        this(status, slot, product, quantity, totalPrice, amountPaid, change, null, null);
+    }
+
+    /**
+     * Constructs a new instance of the PurchaseResult class for a purchase that gave change.
+     *
+     * @param status      The outcome of the purchase.
+     * @param slot        The zero-based slot the purchase was made from.
+     * @param product     The name of the product.
+     * @param quantity    The quantity sold.
+     * @param totalPrice  The total price of the purchase.
+     * @param amountPaid  The amount inserted by the customer.
+     * @param change      The change returned to the customer.
+     * @param changeGiven The number of instances of each denomination given as change, ordered from the largest denomination.
+     */
+    public PurchaseResult(Status status, int slot, String product, int quantity, long totalPrice, long amountPaid, long change,
+                          int[] changeGiven) {
+        this(status, slot, product, quantity, totalPrice, amountPaid, change, changeGiven, null);
+    }
+
+    /**
+     * Constructs a new instance of the PurchaseResult class for a purchase that is still being dispensed.
+     *
+     * @param slot       The zero-based slot the purchase was made from.
+     * @param product    The name of the product.
+     * @param quantity   The quantity being dispensed.
+     * @param totalPrice The total price of the purchase.
+     * @param amountPaid The amount inserted by the customer.
+     * @param change      The change returned to the customer.
+     * @param changeGiven The number of instances of each denomination given as change, ordered from the largest denomination.
+     * @param completion  The future that completes with the final result once the product is dispensed.
+     */
+    public PurchaseResult(int slot, String product, int quantity, long totalPrice, long amountPaid, long change,
+                          int[] changeGiven, CompletableFuture<PurchaseResult> completion) {
+        this(Status.DISPENSING, slot, product, quantity, totalPrice, amountPaid, change, changeGiven, completion);
+    }
+
+    private PurchaseResult(Status status, int slot, String product, int quantity, long totalPrice, long amountPaid, long change,
+                           int[] changeGiven, CompletableFuture<PurchaseResult> completion) {
+        this.status = status;
+        this.slot = slot;
+        this.product = product;
+        this.quantity = quantity;
+        this.totalPrice = totalPrice;
+        this.amountPaid = amountPaid;
+        this.change = change;
+        this.changeGiven = changeGiven;
+        this.completion = completion != null ? completion : CompletableFuture.completedFuture(this);
+    }
+
+    /**
+     * Creates a result for a purchase that was not completed. The whole payment is returned as change.
+     *
+     * @param status      The reason the purchase was not completed.
+     * @param transaction The transaction that was rejected.
+     * @return The result of the rejected purchase.
+     */
+    public static PurchaseResult rejected(Status status, PurchaseTransaction transaction) {
+        return new PurchaseResult(status, transaction.getSlot(), transaction.getProduct(), transaction.getQuantity(),
+                transaction.getTotalPrice(), transaction.getAmountPaid(), transaction.getAmountPaid());
+    }
+
+    /**
+     * Creates a result for a cart that was not completed. The whole payment is returned as change.
+     *
+     * @param status The reason the cart was not completed.
+     * @param cart   The cart that was rejected.
+     * @return The result of the rejected cart.
+     */
+    public static PurchaseResult rejected(Status status, PurchaseCart cart) {
+        return new PurchaseResult(status, -1, cart.getProduct(), cart.getQuantity(), cart.getTotalPrice(), cart.getAmountPaid(),
+                cart.getAmountPaid());
+    }
+
+    /**
+     * Get the outcome of the purchase.
+     *
+     * @return The status of the purchase.
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Check if the product was sold.
+     *
+     * @return true if the purchase completed, false otherwise.
+     */
+    public boolean isCompleted() {
+        return status == Status.COMPLETED;
+    }
+
+    /**
+     * Check if the purchase was accepted, whether or not the product has been dispensed yet.
+     *
+     * @return true if the purchase is dispensing or completed, false otherwise.
+     */
+    public boolean isAccepted() {
+        return status == Status.DISPENSING || status == Status.COMPLETED;
+    }
+
+    /**
+     * Get the coins and bills given as change.
+     *
+     * @return The number of instances of each denomination, ordered from the largest denomination, or null if no change was given.
+     */
+    public int[] getChangeGiven() {
+        return changeGiven;
+    }
+
+    /**
+     * Get the final result of the purchase. For a purchase that is still dispensing, the future completes
+     * once the product has been dispensed. For any other result it is already complete.
+     *
+     * @return The future holding the final result.
+     */
+    public CompletableFuture<PurchaseResult> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Get the zero-based slot of the purchase.
+     *
+     * @return The slot of the purchase, or -1 for a cart.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Get the name of the product.
+     *
+     * @return The name of the product.
+     */
+    public String getProduct() {
+        return product;
+    }
+
+    /**
+     * Get the quantity of the purchase.
+     *
+     * @return The quantity of the purchase.
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Get the total price of the purchase.
+     *
+     * @return The total price of the purchase in centavos.
+     */
+    public long getTotalPrice() {
+        return totalPrice;
+    }
+
+    /**
+     * Get the amount inserted by the customer.
+     *
+     * @return The amount paid in centavos.
+     */
+    public long getAmountPaid() {
+        return amountPaid;
+    }
+
+    /**
+     * Get the amount returned to the customer.
+     *
+     * @return The change in centavos, or the refunded payment if the purchase did not complete.
+     */
+    public long getChange() {
+        return change;
+    }
+
+    /**
+     * Returns a string representation of the PurchaseResult object.
+     *
+     * @return A formatted string containing the status, product, quantity, and amounts.
+     */
+    @Override
+    public String toString() {
+        return String.format("%s: %s x%d | Total: %s | Paid: %s | Change: %s", status, product, quantity,
+                Money.format(totalPrice), Money.format(amountPaid), Money.format(change));
+    }
+}
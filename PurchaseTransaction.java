@@ -0,0 +1,237 @@
+/**
+ * Represents a single purchase in progress on a vending machine, without any user interface.
+ * A transaction is started with IVendingMachineBehavior.beginPurchase, receives coins and bills through insert,
+ * and is finished with either commit or cancel. Both return a PurchaseResult.
+ * The time from the selection to the commit or cancel is recorded as a PurchaseEvents.Payment event.
+ * A transaction added to a PurchaseCart becomes a line of the cart, and is paid and completed with the cart.
+ */
+public class PurchaseTransaction {
+    private final IVendingMachineBehavior behavior;
+    private final int slot;
+    private final String product;
+    private final int quantity;
+    private final long totalPrice;
+    private final int[] componentSlots;
+    private final String[] extras;
+    private final PurchaseResult.Status rejection;
+    private final PurchaseEvents.Payment payment;
+    private long amountPaid;
+    private boolean open;
+
+    /**
+     * Constructs a new transaction for a product that was accepted for sale.
+     *
+     * @param behavior       The vending machine behavior that will complete the purchase.
+     * @param slot           The zero-based slot of the product.
+     * @param product        The name of the product.
+     * @param quantity       The quantity to buy.
+     * @param totalPrice     The total price of the purchase in centavos.
+     * @param componentSlots The slots consumed by a made-to-order product, or null for a regular product.
+     * @param extras         The non-sellable items added to the product, or null for none.
+     */
+    PurchaseTransaction(IVendingMachineBehavior behavior, int slot, String product, int quantity, long totalPrice,
+                        int[] componentSlots, String[] extras) {
+        this(behavior, slot, product, quantity, totalPrice, componentSlots, extras, null);
+    }
+
+    /**
+     * Constructs a new transaction for a selection that was rejected. Committing it returns the rejection.
+     *
+     * @param behavior  The vending machine behavior the selection was made on.
+     * @param slot      The zero-based slot that was selected.
+     * @param quantity  The quantity that was requested.
+     * @param rejection The reason the selection was rejected.
+     */
+    PurchaseTransaction(IVendingMachineBehavior behavior, int slot, int quantity, PurchaseResult.Status rejection) {
+        this(behavior, slot, null, quantity, 0, null, null, rejection);
+    }
+
+    private PurchaseTransaction(IVendingMachineBehavior behavior, int slot, String product, int quantity, long totalPrice,
+                                int[] componentSlots, String[] extras, PurchaseResult.Status rejection) {
+        this.behavior = behavior;
+        this.slot = slot;
+        this.product = product;
+        this.quantity = quantity;
+        this.totalPrice = totalPrice;
+        this.componentSlots = componentSlots;
+        this.extras = extras;
+        this.rejection = rejection;
+        this.amountPaid = 0;
+        this.open = rejection == null;
+        this.payment = open ? new PurchaseEvents.Payment() : null;
+        if (payment != null) {
+            payment.begin();
+        }
+    }
+
+    /**
+     * Inserts a coin or bill into the transaction.
+     *
+     * @param denomination The denomination inserted, in pesos.
+     * @return true if the denomination was accepted, false if it is not a valid denomination or the transaction is closed.
+     */
+    public boolean insert(int denomination) {
+        if (!open || !behavior.isValidDenomination(denomination)) {
+            return false;
+        }
+        amountPaid += Money.ofPesos(denomination);
+        return true;
+    }
+
+    /**
+     * Completes the payment. The vending machine checks the stock and change again before accepting the purchase,
+     * then dispenses the product in the background.
+     *
+     * @return The result of the purchase. An accepted purchase has the DISPENSING status until the product is dispensed.
+     * @throws IllegalStateException If the transaction was already committed or cancelled.
+     */
+    public PurchaseResult commit() {
+        if (rejection != null) {
+            return PurchaseResult.rejected(rejection, this);
+        }
+        ensureOpen();
+        open = false;
+        payment.finish(behavior, slot, product, amountPaid, "COMMITTED");
+        return behavior.commitPurchase(this);
+    }
+
+    /**
+     * Cancels the purchase and returns the amount paid. Anything the vending machine reserved for the purchase
+     * when it was started is released.
+     *
+     * @return The result of the cancelled purchase.
+     */
+    public PurchaseResult cancel() {
+        if (rejection != null) {
+            return PurchaseResult.rejected(rejection, this);
+        }
+        ensureOpen();
+        open = false;
+        payment.finish(behavior, slot, product, amountPaid, "CANCELLED");
+        behavior.cancelPurchase(this);
+        return PurchaseResult.rejected(PurchaseResult.Status.CANCELLED, this);
+    }
+
+    /**
+     * Hands the transaction over to a cart. It no longer receives payment or can be committed on its own,
+     * and its payment is recorded with the cart.
+     */
+    void addToCart() {
+        ensureOpen();
+        open = false;
+    }
+
+    private void ensureOpen() {
+        if (!open) {
+            throw new IllegalStateException("The transaction has already been completed.");
+        }
+    }
+
+    /**
+     * Check if the transaction can still receive payment and be committed.
+     *
+     * @return true if the transaction is open, false otherwise.
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Get the reason the selection was rejected.
+     *
+     * @return The rejection status, or null if the selection was accepted.
+     */
+    public PurchaseResult.Status getRejection() {
+        return rejection;
+    }
+
+    /**
+     * Check if enough has been paid to cover the total price.
+     *
+     * @return true if the amount paid covers the total price, false otherwise.
+     */
+    public boolean isFullyPaid() {
+        return rejection == null && amountPaid >= totalPrice;
+    }
+
+    /**
+     * Get the amount still to be paid.
+     *
+     * @return The remaining balance in centavos, or 0 if the total price has been covered.
+     */
+    public long getRemainingBalance() {
+        return Math.max(0, totalPrice - amountPaid);
+    }
+
+    /**
+     * Get the vending machine behavior that owns this transaction.
+     *
+     * @return The vending machine behavior.
+     */
+    public IVendingMachineBehavior getBehavior() {
+        return behavior;
+    }
+
+    /**
+     * Get the zero-based slot of the product.
+     *
+     * @return The slot of the product.
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Get the name of the product.
+     *
+     * @return The name of the product.
+     */
+    public String getProduct() {
+        return product;
+    }
+
+    /**
+     * Get the quantity to buy.
+     *
+     * @return The quantity to buy.
+     */
+    public int getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Get the total price of the purchase.
+     *
+     * @return The total price in centavos.
+     */
+    public long getTotalPrice() {
+        return totalPrice;
+    }
+
+    /**
+     * Get the amount inserted so far.
+     *
+     * @return The amount paid in centavos.
+     */
+    public long getAmountPaid() {
+        return amountPaid;
+    }
+
+    /**
+     * Get the slots consumed by a made-to-order product such as the Fruit Salad.
+     *
+     * @return The component slots, or null for a regular product.
+     */
+    int[] getComponentSlots() {
+        return componentSlots;
+    }
+
+    /**
+     * Get the non-sellable items added to the product.
+     *
+     * @return The extras, or null for none.
+     */
+    String[] getExtras() {
+        return extras;
+    }
+}
@@ -0,0 +1,201 @@
+import java.util.Arrays;
+
+/**
+ * Describes a made-to-order product, such as the Fruit Salad, as a bill of materials: the customer picks a number of
+ * different products from a set of slots, and every order also uses fixed amounts of non-sellable items. Optional
+ * extras can be added for an additional fee. A recipe only describes the product; the vending machine checks and
+ * reserves the components when an order is started.
+ */
+public class Recipe {
+    private final String product;
+    private final String choiceName;
+    private final int[] choiceSlots;
+    private final int choices;
+    private final String[] ingredients;
+    private final String[] utensils;
+    private final String[] extras;
+    private final long[] extraPrices;
+    private final String[] requiredItems;
+
+    /**
+     * Constructs a new Recipe.
+     *
+     * @param product     The name of the product made by the recipe.
+     * @param choiceName  What the customer picks, such as "fruit".
+     * @param choiceSlots The zero-based slots the customer picks from.
+     * @param choices     The number of different slots the customer picks.
+     * @param ingredients The non-sellable items mixed into every order, one of each.
+     * @param utensils    The non-sellable items served with every order, one of each.
+     * @param extras      The non-sellable items that can be added to an order.
+     * @param extraPrices The additional fee for each extra in centavos.
+     */
+    public Recipe(String product, String choiceName, int[] choiceSlots, int choices, String[] ingredients, String[] utensils,
+                  String[] extras, long[] extraPrices) {
+        if (choices < 0 || choices > choiceSlots.length) {
+            throw new IllegalArgumentException("A recipe cannot pick " + choices + " of " + choiceSlots.length + " slots.");
+        }
+        if (extras.length != extraPrices.length) {
+            throw new IllegalArgumentException("Every extra needs a price.");
+        }
+        this.product = product;
+        this.choiceName = choiceName;
+        this.choiceSlots = choiceSlots.clone();
+        this.choices = choices;
+        this.ingredients = ingredients.clone();
+        this.utensils = utensils.clone();
+        this.extras = extras.clone();
+        this.extraPrices = extraPrices.clone();
+        this.requiredItems = Arrays.copyOf(ingredients, ingredients.length + utensils.length);
+        System.arraycopy(utensils, 0, requiredItems, ingredients.length, utensils.length);
+    }
+
+    /**
+     * Checks that an order picks the right number of different slots, all from the slots of the recipe,
+     * and only extras of the recipe.
+     *
+     * @param chosenSlots The zero-based slots picked by the customer.
+     * @param addedExtras The extras added by the customer, or null for none.
+     * @return true if the order can be made from this recipe, false otherwise.
+     */
+    public boolean isValidOrder(int[] chosenSlots, String[] addedExtras) {
+        if (chosenSlots == null || chosenSlots.length != choices) {
+            return false;
+        }
+        for (int i = 0; i < chosenSlots.length; i++) {
+            if (!isChoiceSlot(chosenSlots[i])) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (chosenSlots[j] == chosenSlots[i]) {
+                    return false;
+                }
+            }
+        }
+        if (addedExtras != null) {
+            for (String extra : addedExtras) {
+                if (extraIndex(extra) < 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check if the customer can pick a slot.
+     *
+     * @param slot The zero-based slot.
+     * @return true if the slot is one of the slots the customer picks from, false otherwise.
+     */
+    public boolean isChoiceSlot(int slot) {
+        for (int choiceSlot : choiceSlots) {
+            if (choiceSlot == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the additional fee for the given extras.
+     *
+     * @param addedExtras The extras added to an order, or null for none.
+     * @return The total fee in centavos.
+     */
+    public long extrasPrice(String[] addedExtras) {
+        long price = 0;
+        if (addedExtras != null) {
+            for (String extra : addedExtras) {
+                price += extraPrices[extraIndex(extra)];
+            }
+        }
+        return price;
+    }
+
+    private int extraIndex(String extra) {
+        for (int i = 0; i < extras.length; i++) {
+            if (extras[i].equals(extra)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the name of the product made by the recipe.
+     *
+     * @return The name of the product.
+     */
+    public String getProduct() {
+        return product;
+    }
+
+    /**
+     * Get what the customer picks, such as "fruit".
+     *
+     * @return The name of a choice.
+     */
+    public String getChoiceName() {
+        return choiceName;
+    }
+
+    /**
+     * Get the slots the customer picks from.
+     *
+     * @return The zero-based slots.
+     */
+    public int[] getChoiceSlots() {
+        return choiceSlots.clone();
+    }
+
+    /**
+     * Get the number of different slots the customer picks.
+     *
+     * @return The number of choices.
+     */
+    public int getChoices() {
+        return choices;
+    }
+
+    /**
+     * Get the non-sellable items mixed into every order.
+     *
+     * @return The ingredients.
+     */
+    public String[] getIngredients() {
+        return ingredients.clone();
+    }
+
+    /**
+     * Get every non-sellable item used by every order: the ingredients, then the utensils.
+     *
+     * @return The required items.
+     */
+    public String[] getRequiredItems() {
+        return requiredItems.clone();
+    }
+
+    /**
+     * Get the non-sellable items that can be added to an order.
+     *
+     * @return The extras.
+     */
+    public String[] getExtras() {
+        return extras.clone();
+    }
+
+    /**
+     * Get the additional fee of an extra.
+     *
+     * @param extra The name of the extra.
+     * @return The fee in centavos.
+     * @throws IllegalArgumentException If the extra is not part of the recipe.
+     */
+    public long getExtraPrice(String extra) {
+        int index = extraIndex(extra);
+        if (index < 0) {
+            throw new IllegalArgumentException(extra + " is not an extra of " + product + ".");
+        }
+        return extraPrices[index];
+    }
+}
@@ -1,44 +1,97 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.swing.*;
 import java.awt.*;
-import javax.swing.table.DefaultTableModel;
 
 /**
  * Represents the behavior of a regular vending machine that implements the IVendingMachineBehavior interface.
+ *
+ * Purchases can be made from several threads at once. Each slot has its own lock, the change denominations have
+ * a separate change lock, and the sales totals have a sales lock. Locks are always taken in that order, and slot
+ * locks in slot order, so purchases from different slots only wait for each other while change is being given.
  */
 public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
-    private static final int MAX_PRODUCTS_PER_SLOT = 10;
-    private static final int NUM_SLOTS = 8;
-    private static final int NUM_DENOMINATIONS = 9;
-    private static final int MAX_STORED_DENOMINATION_INSTANCES = 20;
-
-    private String[] products;
-    private double[] prices;
-    private int[] instances;
-    private int[] calories;
-    private int[] changeDenominations;
-    private double[] initialInstances;
-    private List<ProductSold> productsSold;
-    private double totalSales;
-    private double collectedSales;
-    private Scanner scanner;
-
-    /**
-     * Constructs a RegularVendingMachineBehavior object with default values.
-     * Initializes arrays and lists, and sets initial total sales and collected sales to 0.
+    private static final String CART_OPTION = "Cart";
+    private static final String CHECKOUT_OPTION = "Checkout";
+
+    private final int numSlots;
+    private final int maxProductsPerSlot;
+    private final String[] products;
+    private final long[] prices;
+    private final int[] instances;
+    private final int[] reserved;
+    private final int[] calories;
+    private final CurrencyDefinition currency;
+    private final CoinVault coinVault;
+    private final int[] heldChange;
+    private final double[] initialInstances;
+    private final ReentrantLock[] slotLocks;
+    private final ReentrantLock changeLock;
+    private final Object salesLock;
+    private final SalesJournal salesJournal;
+    private final Map<String, ProductSales> productSales;
+    private final SalesLedger salesLedger;
+    private long totalSales;
+    private long collectedSales;
+    private final DispensePipeline dispensePipeline;
+    private final MachineMetrics metrics;
+    private final ProductTableModel productTable;
+
+    /**
+     * Constructs a RegularVendingMachineBehavior that records its sales in a temporary journal.
      */
     public RegularVendingMachineBehavior() {
-        products = new String[NUM_SLOTS];
-        prices = new double[NUM_SLOTS];
-        instances = new int[NUM_SLOTS];
-        calories = new int[NUM_SLOTS];
-        changeDenominations = new int[NUM_DENOMINATIONS];
-        initialInstances = new double[NUM_SLOTS];
-        productsSold = new ArrayList<>();
-        totalSales = 0.0;
-        collectedSales = 0.0;
-        scanner = new Scanner(System.in);
+        this(SalesJournal.temporary());
+    }
+
+    /**
+     * Constructs a RegularVendingMachineBehavior object with the layout configured for this program.
+     *
+     * @param salesJournal The journal that every sale and collection is recorded in.
+     */
+    public RegularVendingMachineBehavior(SalesJournal salesJournal) {
+        this(salesJournal, MachineLayout.configured());
+    }
+
+    /**
+     * Constructs a RegularVendingMachineBehavior object with the given number of slots and capacities.
+     * Initializes arrays and lists. The sales already recorded in the journal are replayed to restore the total and collected sales.
+     *
+     * @param salesJournal The journal that every sale and collection is recorded in.
+     * @param layout       The number of slots and the capacity of each slot and of the change.
+     */
+    public RegularVendingMachineBehavior(SalesJournal salesJournal, MachineLayout layout) {
+        numSlots = layout.getSlots();
+        maxProductsPerSlot = layout.getSlotCapacity();
+        products = new String[numSlots];
+        prices = new long[numSlots];
+        instances = new int[numSlots];
+        reserved = new int[numSlots];
+        calories = new int[numSlots];
+        currency = CurrencyDefinition.configured();
+        coinVault = new CoinVault(currency, layout.getChangeCapacity());
+        heldChange = new int[currency.size()];
+        initialInstances = new double[numSlots];
+        slotLocks = new ReentrantLock[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            slotLocks[i] = new ReentrantLock();
+        }
+        changeLock = new ReentrantLock();
+        salesLock = new Object();
+        this.salesJournal = salesJournal;
+        productSales = new LinkedHashMap<>();
+        salesLedger = new SalesLedger();
+        recoverSales();
+        dispensePipeline = new DispensePipeline();
+        metrics = new MachineMetrics();
+        PurchaseEvents.register();
+        productTable = new ProductTableModel(numSlots, this::productCell);
     }
     
     /**
@@ -49,17 +102,9 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     public void initialize() {
         JOptionPane.showMessageDialog(null, "You have chosen the Regular Vending Machine.");
     
-        products = new String[NUM_SLOTS];
-        prices = new double[NUM_SLOTS];
-        instances = new int[NUM_SLOTS];
-        calories = new int[NUM_SLOTS];
-        changeDenominations = new int[NUM_DENOMINATIONS];
-        initialInstances = new double[NUM_SLOTS];
-        productsSold = new ArrayList<>();
-        totalSales = 0.0;
-        collectedSales = 0.0;
-    
-        for (int i = 0; i < NUM_SLOTS; i++) {
+        clearMachine();
+    
+        for (int i = 0; i < numSlots; i++) {
             String productName;
             while (true) {
                 productName = JOptionPane.showInputDialog("Enter product name for Slot " + (i + 1));
@@ -72,21 +117,21 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
             String priceInput;
             while (true) {
                 priceInput = JOptionPane.showInputDialog("Enter the price for " + productName);
-                if (priceInput != null && !priceInput.trim().isEmpty() && Double.parseDouble(priceInput) > 0) {
+                if (priceInput != null && !priceInput.trim().isEmpty() && Money.parse(priceInput) > 0 && currency.isPayable(Money.parse(priceInput))) {
                     break;
                 }
-                JOptionPane.showMessageDialog(null, "Price cannot be empty or less than 1. Please enter a valid price.");
+                JOptionPane.showMessageDialog(null, "Price cannot be empty or less than 1, and must be a whole number of \u20B1" + currency.smallestDenomination() + ". Please enter a valid price.");
             }
-            double price = Double.parseDouble(priceInput);
+            long price = Money.parse(priceInput);
     
             String instancesInput;
             while (true) {
-                instancesInput = JOptionPane.showInputDialog("Enter the quantity for " + productName + " (not exceeding 10)");
+                instancesInput = JOptionPane.showInputDialog("Enter the quantity for " + productName + " (not exceeding " + maxProductsPerSlot + ")");
                 if (instancesInput != null && !instancesInput.trim().isEmpty() && Integer.parseInt(instancesInput) > 0) {
                     int instances = Integer.parseInt(instancesInput);
-                    if (instances > MAX_PRODUCTS_PER_SLOT) {
-                        JOptionPane.showMessageDialog(null, "Quantity cannot exceed 10. Setting to 10.");
-                        instances = MAX_PRODUCTS_PER_SLOT;
+                    if (instances > maxProductsPerSlot) {
+                        JOptionPane.showMessageDialog(null, "Quantity cannot exceed " + maxProductsPerSlot + ". Setting to " + maxProductsPerSlot + ".");
+                        instances = maxProductsPerSlot;
                     }
                     this.instances[i] = instances;
                     this.initialInstances[i] = instances;
@@ -108,9 +153,10 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
             this.products[i] = productName;
             this.prices[i] = price;
             this.calories[i] = calories;
+            productTable.slotChanged(i);
     
-            if (i == NUM_SLOTS - 1) {
-                break; // Skip asking for additional slot on the 8th slot
+            if (i == numSlots - 1) {
+                break; // Skip asking for additional slot on the last slot
             }
     
             int addAnotherProduct = JOptionPane.showConfirmDialog(
@@ -131,11 +177,12 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
      */
     @Override
     public void inputChangeDenominations() {
-        JOptionPane.showMessageDialog(null, "Input the number of instances for each denomination (maximum 20 instances)");
-        int[] denominations = { 1, 5, 10, 20, 50, 100, 200, 500, 1000 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
+        int capacity = coinVault.getCapacity();
+        JOptionPane.showMessageDialog(null, "Input the number of instances for each denomination (maximum " + capacity + " instances)");
+        // Asked from the smallest denomination, but stored by the index of each denomination in the vault
+        for (int i = currency.size() - 1; i >= 0; i--) {
             while (true) {
-                String input = JOptionPane.showInputDialog(null, "Enter the number of instances for ₱" + denominations[i],
+                String input = JOptionPane.showInputDialog(null, "Enter the number of instances for ₱" + currency.denomination(i),
                         "Change Denomination", JOptionPane.PLAIN_MESSAGE);
     
                 // Check if the input is empty
@@ -147,11 +194,16 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
                 try {
                     int numInstances = Integer.parseInt(input);
-                    if (numInstances >= 0 && numInstances <= 20) {
-                        changeDenominations[i] = numInstances;
+                    if (numInstances >= 0 && numInstances <= capacity) {
+                        changeLock.lock();
+                        try {
+                            coinVault.setCount(i, numInstances);
+                        } finally {
+                            changeLock.unlock();
+                        }
                         break;
                     } else {
-                        JOptionPane.showMessageDialog(null, "Invalid number of instances. Please enter a non-negative value and not exceeding 20.",
+                        JOptionPane.showMessageDialog(null, "Invalid number of instances. Please enter a non-negative value and not exceeding " + capacity + ".",
                                 "Error", JOptionPane.ERROR_MESSAGE);
                     }
                 } catch (NumberFormatException e) {
@@ -169,39 +221,46 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     @Override
     public void vendingFeatures() {
         while (true) {
-            String message = "\n----- Vending Features -----\n";
+            StringBuilder message = new StringBuilder("\n----- Vending Features -----\n");
             showProductList();
-            message += "Select a product (0 to go back):\n";
+            message.append("Select a product (0 to go back):\n");
     
-            String[] productOptions = new String[NUM_SLOTS + 1];
-            productOptions[0] = "0";
-            for (int i = 0; i < NUM_SLOTS; i++) {
+            // Only the stocked slots are offered, and the message is built once, however many slots there are
+            List<String> productOptions = new ArrayList<>();
+            productOptions.add("0");
+            for (int i = 0; i < numSlots; i++) {
                 if (products[i] != null) {
-                    productOptions[i + 1] = Integer.toString(i + 1);
-                    message += (i + 1) + ". " + products[i] + "\n";
+                    productOptions.add(Integer.toString(i + 1));
+                    message.append(i + 1).append(". ").append(products[i]).append("\n");
                 }
             }
+            productOptions.add(CART_OPTION);
+            message.append(CART_OPTION).append(". Buy several products with one payment\n");
     
-            String productChoice = (String) JOptionPane.showInputDialog(null, message, "Product Selection",
-                    JOptionPane.PLAIN_MESSAGE, null, productOptions, productOptions[0]);
+            String productChoice = (String) JOptionPane.showInputDialog(null, message.toString(), "Product Selection",
+                    JOptionPane.PLAIN_MESSAGE, null, productOptions.toArray(), productOptions.get(0));
     
             if (productChoice == null) {
                 return; // User clicked cancel or closed the dialog
             }
+            if (productChoice.equals(CART_OPTION)) {
+                cartFeatures();
+                continue;
+            }
     
             int selectedSlot = Integer.parseInt(productChoice);
             if (selectedSlot == 0) {
                 return;
-            } else if (selectedSlot >= 1 && selectedSlot <= NUM_SLOTS) {
+            } else if (selectedSlot >= 1 && selectedSlot <= numSlots) {
                 selectedSlot--; // Convert to zero-based index
     
-                if (instances[selectedSlot] == 0) {
+                if (availableInstances(selectedSlot) == 0) {
                     JOptionPane.showMessageDialog(null, "Slot #" + (selectedSlot + 1) + " is empty. Please choose another product.");
                     continue;
                 }
     
                 String productInfo = "Selected product: " + products[selectedSlot] + "\n"
-                                    + "Price: " + prices[selectedSlot] + "\n"
+                                    + "Price: " + Money.format(prices[selectedSlot]) + "\n"
                                     + "Calories: " + calories[selectedSlot] + "\n";
     
                 int quantityToBuy;
@@ -221,8 +280,8 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
 
                     try {
                         quantityToBuy = Integer.parseInt(quantityInput);
-                        if (quantityToBuy <= 0 || quantityToBuy > instances[selectedSlot]) {
-                            JOptionPane.showMessageDialog(null, "Invalid quantity. Please enter a value between 1 and " + instances[selectedSlot] + ".",
+                        if (quantityToBuy <= 0 || quantityToBuy > availableInstances(selectedSlot)) {
+                            JOptionPane.showMessageDialog(null, "Invalid quantity. Please enter a value between 1 and " + availableInstances(selectedSlot) + ".",
                                     "Error", JOptionPane.ERROR_MESSAGE);
                         } else {
                             break;
@@ -233,17 +292,18 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
                     }
                 }
     
-                double totalPrice = prices[selectedSlot] * quantityToBuy;
-                String totalPriceMsg = "Total Price: " + totalPrice;
+                PurchaseTransaction transaction = beginPurchase(selectedSlot, quantityToBuy);
+                long totalPrice = transaction.getTotalPrice();
+                String totalPriceMsg = "Total Price: " + Money.format(totalPrice);
                 JOptionPane.showMessageDialog(null, totalPriceMsg);
     
-                String denominationMsg = "Accepted denomination: 1, 5, 10, 20, 50, 100, 200, 500, 1000";
-                double amountPaid = 0;
-                while (amountPaid < totalPrice) {
+                String denominationMsg = "Accepted denomination: " + currency;
+                while (!transaction.isFullyPaid()) {
                     String denominationInput = JOptionPane.showInputDialog(null, totalPriceMsg + "\n" + denominationMsg
                             + "\nEnter a coin/bill (0 to cancel):", "Payment", JOptionPane.PLAIN_MESSAGE);
 
                     if (denominationInput == null) {
+                        transaction.cancel();
                         return; // User clicked cancel or closed the dialog
                     }
 
@@ -257,56 +317,48 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
                         int denomination = Integer.parseInt(denominationInput);
                         if (denomination == 0) {
                             break;
-                        } else if (!isValidDenomination(denomination)) {
+                        } else if (!transaction.insert(denomination)) {
                             JOptionPane.showMessageDialog(null, "Invalid denomination. Please enter a valid coin/bill.",
                                     "Error", JOptionPane.ERROR_MESSAGE);
                             continue;
                         }
 
-                        amountPaid += denomination;
-                        JOptionPane.showMessageDialog(null, "Remaining Balance: " + (totalPrice - amountPaid));
+                        JOptionPane.showMessageDialog(null, "Remaining Balance: " + Money.format(totalPrice - transaction.getAmountPaid()));
                     } catch (NumberFormatException e) {
                         JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid integer value.",
                                 "Error", JOptionPane.ERROR_MESSAGE);
                     }
                 }
     
-                if (amountPaid >= totalPrice) {
-                    double change = amountPaid - totalPrice;
+                if (transaction.isFullyPaid()) {
+                    PurchaseResult result = transaction.commit();
     
-                    if (!canGiveSufficientChange(change)) {
+                    if (result.getStatus() == PurchaseResult.Status.INSUFFICIENT_CHANGE) {
                         JOptionPane.showMessageDialog(null, "Cannot give sufficient change. Please provide a lower payment.",
                                 "Error", JOptionPane.ERROR_MESSAGE);
-                        JOptionPane.showMessageDialog(null, "Returning your payment of \u20B1" + amountPaid);
+                        JOptionPane.showMessageDialog(null, "Returning your payment of \u20B1" + Money.format(result.getAmountPaid()));
                         return; // Go back to main menu
+                    } else if (!result.isAccepted()) {
+                        JOptionPane.showMessageDialog(null, "Slot #" + (selectedSlot + 1) + " is no longer available.\nReturning your payment of \u20B1" + Money.format(result.getAmountPaid()),
+                                "Error", JOptionPane.ERROR_MESSAGE);
+                        continue;
                     }
     
+                    // The product is dispensed in the background while the next customer makes a selection
                     JOptionPane.showMessageDialog(null, "Dispensing your Product...");
-                    try {
-                        Thread.sleep(5000); // 5-second delay to simulate product dispensing
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-    
-                    updateChangeDenominations(change, amountPaid);
-                    updateSales(totalPrice, products[selectedSlot], quantityToBuy);
-    
-                    instances[selectedSlot] -= quantityToBuy;
-                    if (instances[selectedSlot] == 0) {
-                        products[selectedSlot] = null;
-                        prices[selectedSlot] = 0.0;
-                        calories[selectedSlot] = 0;
-                    }
-    
-                    JOptionPane.showMessageDialog(null, "Product Dispensed. Thank you!");
-                    JOptionPane.showMessageDialog(null, "Change: \u20B1" + change);
-    
-                    if (change > 0) {
-                        displayChangeBreakdown(change);
-                    }
+                    result.getCompletion().thenAccept(dispensed -> SwingUtilities.invokeLater(() -> {
+                        if (dispensed.isCompleted()) {
+                            JOptionPane.showMessageDialog(null, dispensed.getProduct() + " Dispensed. Thank you!");
+                            showChange(dispensed);
+                        } else {
+                            JOptionPane.showMessageDialog(null, dispensed.getProduct() + " could not be dispensed.\nReturning your payment of \u20B1" + Money.format(dispensed.getAmountPaid()),
+                                    "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    }));
     
                     continue;
                 }
+                transaction.cancel();
                 break;
             } else {
                 JOptionPane.showMessageDialog(null, "Invalid choice. Please select a valid product or 0 to go back.",
@@ -315,6 +367,838 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
         }
     }
 
+    /**
+     * Lets the customer fill a cart with several products, then pay for all of them at once.
+     * The change is given once for the whole cart, and every product is dispensed in one batch.
+     */
+    private void cartFeatures() {
+        PurchaseCart cart = beginCart();
+        while (true) {
+            StringBuilder message = new StringBuilder("\n----- Cart -----\n");
+            if (cart.isEmpty()) {
+                message.append("The cart is empty.\n");
+            } else {
+                message.append(cart.getProduct()).append("\nTotal Price: ").append(Money.format(cart.getTotalPrice())).append("\n");
+            }
+            message.append("\nAdd a product, check out, or 0 to empty the cart and go back:\n");
+
+            List<String> options = new ArrayList<>();
+            options.add("0");
+            for (int i = 0; i < numSlots; i++) {
+                if (products[i] != null && availableInstances(i) > cart.getQuantity(i)) {
+                    options.add(Integer.toString(i + 1));
+                    message.append(i + 1).append(". ").append(products[i]).append(" (").append(Money.format(prices[i])).append(")\n");
+                }
+            }
+            if (!cart.isEmpty()) {
+                options.add(CHECKOUT_OPTION);
+            }
+
+            String choice = (String) JOptionPane.showInputDialog(null, message.toString(), "Cart",
+                    JOptionPane.PLAIN_MESSAGE, null, options.toArray(), options.get(options.size() - 1));
+            if (choice == null || choice.equals("0")) {
+                cart.cancel();
+                return;
+            }
+            if (choice.equals(CHECKOUT_OPTION)) {
+                break;
+            }
+
+            int selectedSlot = Integer.parseInt(choice) - 1;
+            int available = availableInstances(selectedSlot) - cart.getQuantity(selectedSlot);
+            String quantityInput = JOptionPane.showInputDialog(null, "Selected product: " + products[selectedSlot] + "\n"
+                    + "Price: " + Money.format(prices[selectedSlot]) + "\n"
+                    + "Enter the quantity you want to add (1 to " + available + "):", "Quantity", JOptionPane.PLAIN_MESSAGE);
+            if (quantityInput == null) {
+                continue;
+            }
+            try {
+                int quantity = Integer.parseInt(quantityInput.trim());
+                if (quantity <= 0 || quantity > available) {
+                    JOptionPane.showMessageDialog(null, "Invalid quantity. Please enter a value between 1 and " + available + ".",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                } else if (cart.add(selectedSlot, quantity).getRejection() != null) {
+                    JOptionPane.showMessageDialog(null, "Slot #" + (selectedSlot + 1) + " is no longer available.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid integer value.",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        long totalPrice = cart.getTotalPrice();
+        String totalPriceMsg = "Cart: " + cart.getProduct() + "\nTotal Price: " + Money.format(totalPrice);
+        String denominationMsg = "Accepted denomination: " + currency;
+        while (!cart.isFullyPaid()) {
+            String denominationInput = JOptionPane.showInputDialog(null, totalPriceMsg + "\n" + denominationMsg
+                    + "\nRemaining Balance: " + Money.format(cart.getRemainingBalance())
+                    + "\nEnter a coin/bill (0 to cancel):", "Payment", JOptionPane.PLAIN_MESSAGE);
+            if (denominationInput == null || denominationInput.trim().equals("0")) {
+                PurchaseResult result = cart.cancel();
+                if (result.getAmountPaid() > 0) {
+                    JOptionPane.showMessageDialog(null, "Returning your payment of \u20B1" + Money.format(result.getAmountPaid()));
+                }
+                return;
+            }
+            try {
+                if (!cart.insert(Integer.parseInt(denominationInput.trim()))) {
+                    JOptionPane.showMessageDialog(null, "Invalid denomination. Please enter a valid coin/bill.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid integer value.",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        PurchaseResult result = cart.commit();
+        if (result.getStatus() == PurchaseResult.Status.INSUFFICIENT_CHANGE) {
+            JOptionPane.showMessageDialog(null, "Cannot give sufficient change. Please provide a lower payment.\nReturning your payment of \u20B1"
+                    + Money.format(result.getAmountPaid()), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        } else if (!result.isAccepted()) {
+            JOptionPane.showMessageDialog(null, "Some products in the cart are no longer available.\nReturning your payment of \u20B1"
+                    + Money.format(result.getAmountPaid()), "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // The whole cart is dispensed in the background while the next customer makes a selection
+        JOptionPane.showMessageDialog(null, "Dispensing your Products...");
+        result.getCompletion().thenAccept(dispensed -> SwingUtilities.invokeLater(() -> {
+            if (dispensed.isCompleted()) {
+                JOptionPane.showMessageDialog(null, dispensed.getProduct() + " Dispensed. Thank you!");
+                showChange(dispensed);
+            } else {
+                JOptionPane.showMessageDialog(null, dispensed.getProduct() + " could not be dispensed.\nReturning your payment of \u20B1" + Money.format(dispensed.getAmountPaid()),
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    /**
+     * Shows the change of a purchase once its products are dispensed, since the change is only held until then.
+     *
+     * @param dispensed The completed purchase.
+     */
+    private void showChange(PurchaseResult dispensed) {
+        long change = dispensed.getChange();
+        JOptionPane.showMessageDialog(null, "Change: \u20B1" + Money.format(change));
+        if (change > 0) {
+            displayChangeBreakdown(dispensed.getChangeGiven());
+        }
+    }
+
+    /**
+     * Starts a purchase without any user interface. The selection is checked against the current stock,
+     * and a rejected selection is reported when the returned transaction is committed.
+     *
+     * @param slot     The zero-based slot of the product.
+     * @param quantity The quantity to buy.
+     * @return The transaction that receives the payment for the purchase.
+     */
+    @Override
+    public PurchaseTransaction beginPurchase(int slot, int quantity) {
+        PurchaseEvents.Selection event = new PurchaseEvents.Selection();
+        event.begin();
+        PurchaseTransaction transaction = selectProduct(slot, quantity);
+        event.finish(this, transaction);
+        if (transaction.getRejection() != null) {
+            metrics.purchaseRejected(transaction.getRejection());
+        }
+        return transaction;
+    }
+
+    /**
+     * Checks a selection against the current stock, as the body of beginPurchase.
+     *
+     * @param slot     The zero-based slot of the product.
+     * @param quantity The quantity to buy.
+     * @return The transaction that receives the payment for the purchase.
+     */
+    private PurchaseTransaction selectProduct(int slot, int quantity) {
+        if (slot < 0 || slot >= numSlots) {
+            return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.INVALID_SELECTION);
+        }
+        ReentrantLock slotLock = slotLocks[slot];
+        slotLock.lock();
+        try {
+            if (products[slot] == null) {
+                return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.INVALID_SELECTION);
+            }
+            if (availableInstances(slot) == 0) {
+                return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.OUT_OF_STOCK);
+            }
+            if (quantity <= 0 || quantity > availableInstances(slot)) {
+                return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.INVALID_SELECTION);
+            }
+            return new PurchaseTransaction(this, slot, products[slot], quantity, prices[slot] * quantity, null, null);
+        } finally {
+            slotLock.unlock();
+        }
+    }
+
+    /**
+     * Releases what a transaction reserved when it was started. A product is only reserved once it is paid,
+     * so nothing needs to be released.
+     *
+     * @param transaction The transaction that was cancelled.
+     */
+    @Override
+    public void cancelPurchase(PurchaseTransaction transaction) {
+        if (transaction.getBehavior() != this) {
+            throw new IllegalArgumentException("The transaction belongs to another vending machine.");
+        }
+        metrics.purchaseRejected(PurchaseResult.Status.CANCELLED);
+    }
+
+    /**
+     * Completes a paid purchase. Checks the stock and the available change, then gives the change and
+     * reserves the product while it is dispensed in the background. The sales and the instances of the product
+     * are only updated once the product has been dispensed.
+     * Only the lock of the selected slot is held, with the change lock taken briefly to reserve the change,
+     * so purchases from different slots run at the same time.
+     *
+     * @param transaction The transaction to complete.
+     * @return The result of the purchase. An accepted purchase has the DISPENSING status.
+     */
+    @Override
+    public PurchaseResult commitPurchase(PurchaseTransaction transaction) {
+        if (transaction.getBehavior() != this) {
+            throw new IllegalArgumentException("The transaction belongs to another vending machine.");
+        }
+        int slot = transaction.getSlot();
+        int quantity = transaction.getQuantity();
+        long totalPrice = transaction.getTotalPrice();
+        long amountPaid = transaction.getAmountPaid();
+        long change = amountPaid - totalPrice;
+        int[] changeGiven;
+
+        ReentrantLock slotLock = slotLocks[slot];
+        slotLock.lock();
+        try {
+            if (!transaction.getProduct().equals(products[slot]) || availableInstances(slot) < quantity) {
+                return rejectPurchase(PurchaseResult.Status.OUT_OF_STOCK, transaction);
+            }
+            if (amountPaid < totalPrice) {
+                return rejectPurchase(PurchaseResult.Status.INSUFFICIENT_PAYMENT, transaction);
+            }
+            changeGiven = reserveChange(slot, transaction.getProduct(), amountPaid, change);
+            if (changeGiven == null) {
+                return rejectPurchase(PurchaseResult.Status.INSUFFICIENT_CHANGE, transaction);
+            }
+            reserved[slot] += quantity;
+        } finally {
+            slotLock.unlock();
+        }
+
+        long committedNanos = System.nanoTime();
+        PurchaseEvents.Dispense dispenseEvent = new PurchaseEvents.Dispense();
+        dispenseEvent.begin();
+        CompletableFuture<PurchaseResult> completion = dispensePipeline.dispense(slot, quantity)
+                .handleAsync((dispensed, failure) -> {
+                    dispenseEvent.finish(this, slot, transaction.getProduct(), totalPrice, failure == null ? "DISPENSED" : "FAILED");
+                    PurchaseResult result = completeDispense(transaction, change, changeGiven, failure == null);
+                    metrics.purchaseFinished(result, System.nanoTime() - committedNanos);
+                    return result;
+                }, dispensePipeline.getCompletionExecutor());
+        return new PurchaseResult(slot, transaction.getProduct(), quantity, totalPrice, amountPaid, change, changeGiven, completion);
+    }
+
+    /**
+     * Rejects a paid purchase and counts its outcome.
+     *
+     * @param status      The reason the purchase is rejected.
+     * @param transaction The transaction being committed.
+     * @return The result of the rejected purchase.
+     */
+    private PurchaseResult rejectPurchase(PurchaseResult.Status status, PurchaseTransaction transaction) {
+        metrics.purchaseRejected(status);
+        return PurchaseResult.rejected(status, transaction);
+    }
+
+    /**
+     * Finishes a purchase once the dispense is done. A dispensed product is taken out of the instances and recorded as sold.
+     * If the product could not be dispensed, the reservation is released and the held change is put back, so the whole payment is returned.
+     *
+     * @param transaction The transaction that was dispensed.
+     * @param change      The change already given to the customer.
+     * @param changeGiven The coins and bills given as change.
+     * @param dispensed   Whether the product was dispensed.
+     * @return The final result of the purchase.
+     */
+    private PurchaseResult completeDispense(PurchaseTransaction transaction, long change, int[] changeGiven, boolean dispensed) {
+        int slot = transaction.getSlot();
+        int quantity = transaction.getQuantity();
+        long totalPrice = transaction.getTotalPrice();
+        long amountPaid = transaction.getAmountPaid();
+
+        ReentrantLock slotLock = slotLocks[slot];
+        slotLock.lock();
+        try {
+            settleLine(transaction, dispensed);
+            settleChange(amountPaid, changeGiven, dispensed);
+            if (!dispensed) {
+                return new PurchaseResult(PurchaseResult.Status.DISPENSE_FAILED, slot, transaction.getProduct(), quantity, totalPrice, amountPaid, amountPaid);
+            }
+        } finally {
+            slotLock.unlock();
+        }
+        return new PurchaseResult(PurchaseResult.Status.COMPLETED, slot, transaction.getProduct(), quantity, totalPrice, amountPaid, change, changeGiven);
+    }
+
+    /**
+     * Releases the reservation of one dispensed line, and takes a dispensed product out of the instances and records it as sold.
+     * The caller must hold the lock of the slot.
+     *
+     * @param line      The transaction of the line.
+     * @param dispensed Whether the product was dispensed.
+     */
+    private void settleLine(PurchaseTransaction line, boolean dispensed) {
+        int slot = line.getSlot();
+        int quantity = line.getQuantity();
+        reserved[slot] -= quantity;
+        if (!dispensed) {
+            return;
+        }
+
+        updateSales(line.getTotalPrice(), line.getProduct(), quantity);
+        instances[slot] -= quantity;
+        if (instances[slot] == 0) {
+            products[slot] = null;
+            prices[slot] = 0;
+            calories[slot] = 0;
+        }
+        productTable.slotChanged(slot);
+    }
+
+    /**
+     * Starts a cart for several products paid with one payment.
+     *
+     * @return The empty cart.
+     */
+    @Override
+    public PurchaseCart beginCart() {
+        return new PurchaseCart(this);
+    }
+
+    /**
+     * Completes a paid cart. Checks the stock of every line with the quantities of the same slot added together,
+     * then gives the change for the combined total at once and reserves every line while they are dispensed in one
+     * batch. The locks of the slots in the cart are taken in slot order, so carts and single purchases never deadlock.
+     *
+     * @param cart The cart to complete.
+     * @return The result of the cart. An accepted cart has the DISPENSING status.
+     */
+    @Override
+    public PurchaseResult commitCart(PurchaseCart cart) {
+        if (cart.getBehavior() != this) {
+            throw new IllegalArgumentException("The cart belongs to another vending machine.");
+        }
+        if (cart.isEmpty()) {
+            return rejectCart(PurchaseResult.Status.INVALID_SELECTION, cart);
+        }
+        List<PurchaseTransaction> lines = cart.getLines();
+        long totalPrice = cart.getTotalPrice();
+        long amountPaid = cart.getAmountPaid();
+        long change = amountPaid - totalPrice;
+        int[] changeGiven;
+
+        int[] lockedSlots = cartSlots(lines);
+        lockSlots(lockedSlots);
+        try {
+            for (PurchaseTransaction line : lines) {
+                int slot = line.getSlot();
+                if (!line.getProduct().equals(products[slot]) || availableInstances(slot) < cart.getQuantity(slot)) {
+                    return rejectCart(PurchaseResult.Status.OUT_OF_STOCK, cart);
+                }
+            }
+            if (amountPaid < totalPrice) {
+                return rejectCart(PurchaseResult.Status.INSUFFICIENT_PAYMENT, cart);
+            }
+            changeGiven = reserveChange(-1, cart.getProduct(), amountPaid, change);
+            if (changeGiven == null) {
+                return rejectCart(PurchaseResult.Status.INSUFFICIENT_CHANGE, cart);
+            }
+            for (PurchaseTransaction line : lines) {
+                reserved[line.getSlot()] += line.getQuantity();
+            }
+        } finally {
+            unlockSlots(lockedSlots);
+        }
+
+        int[] slots = new int[lines.size()];
+        int[] quantities = new int[lines.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = lines.get(i).getSlot();
+            quantities[i] = lines.get(i).getQuantity();
+        }
+        long committedNanos = System.nanoTime();
+        PurchaseEvents.Dispense dispenseEvent = new PurchaseEvents.Dispense();
+        dispenseEvent.begin();
+        CompletableFuture<PurchaseResult> completion = dispensePipeline.dispenseBatch(slots, quantities)
+                .handleAsync((dispensed, failure) -> {
+                    dispenseEvent.finish(this, -1, cart.getProduct(), totalPrice, failure == null ? "DISPENSED" : "FAILED");
+                    PurchaseResult result = completeCart(cart, lockedSlots, change, changeGiven, failure == null);
+                    metrics.purchaseFinished(result, System.nanoTime() - committedNanos);
+                    return result;
+                }, dispensePipeline.getCompletionExecutor());
+        return new PurchaseResult(-1, cart.getProduct(), cart.getQuantity(), totalPrice, amountPaid, change, changeGiven, completion);
+    }
+
+    /**
+     * Rejects a paid cart and counts its outcome.
+     *
+     * @param status The reason the cart is rejected.
+     * @param cart   The cart being committed.
+     * @return The result of the rejected cart.
+     */
+    private PurchaseResult rejectCart(PurchaseResult.Status status, PurchaseCart cart) {
+        metrics.purchaseRejected(status);
+        return PurchaseResult.rejected(status, cart);
+    }
+
+    /**
+     * Finishes a cart once its batch is dispensed. Every line is settled under the locks of the slots in the cart.
+     * If the batch could not be dispensed, the held change is put back, so the whole payment is returned.
+     *
+     * @param cart        The cart that was dispensed.
+     * @param lockedSlots The slots of the cart, in slot order.
+     * @param change      The change already given to the customer.
+     * @param changeGiven The coins and bills given as change.
+     * @param dispensed   Whether the batch was dispensed.
+     * @return The final result of the cart.
+     */
+    private PurchaseResult completeCart(PurchaseCart cart, int[] lockedSlots, long change, int[] changeGiven, boolean dispensed) {
+        long totalPrice = cart.getTotalPrice();
+        long amountPaid = cart.getAmountPaid();
+
+        lockSlots(lockedSlots);
+        try {
+            for (PurchaseTransaction line : cart.getLines()) {
+                settleLine(line, dispensed);
+            }
+            settleChange(amountPaid, changeGiven, dispensed);
+            if (!dispensed) {
+                return new PurchaseResult(PurchaseResult.Status.DISPENSE_FAILED, -1, cart.getProduct(), cart.getQuantity(), totalPrice, amountPaid, amountPaid);
+            }
+        } finally {
+            unlockSlots(lockedSlots);
+        }
+        return new PurchaseResult(PurchaseResult.Status.COMPLETED, -1, cart.getProduct(), cart.getQuantity(), totalPrice, amountPaid, change, changeGiven);
+    }
+
+    /**
+     * Releases what a cart reserved. A product is only reserved once it is paid, so only the cancel is counted.
+     *
+     * @param cart The cart that was cancelled.
+     */
+    @Override
+    public void cancelCart(PurchaseCart cart) {
+        if (cart.getBehavior() != this) {
+            throw new IllegalArgumentException("The cart belongs to another vending machine.");
+        }
+        metrics.purchaseRejected(PurchaseResult.Status.CANCELLED);
+    }
+
+    /**
+     * Get the slots of the lines of a cart, each once, in slot order.
+     *
+     * @param lines The lines of the cart.
+     * @return The slots to lock.
+     */
+    private static int[] cartSlots(List<PurchaseTransaction> lines) {
+        int[] slots = new int[lines.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = lines.get(i).getSlot();
+        }
+        return Arrays.stream(slots).sorted().distinct().toArray();
+    }
+
+    private void lockSlots(int[] slots) {
+        for (int slot : slots) {
+            slotLocks[slot].lock();
+        }
+    }
+
+    private void unlockSlots(int[] slots) {
+        for (int i = slots.length - 1; i >= 0; i--) {
+            slotLocks[slots[i]].unlock();
+        }
+    }
+
+    /**
+     * Takes the change for a purchase out of the change denominations if they can pay it out exactly.
+     * The check and the payout happen under the change lock, so two purchases can never give out the same coin.
+     * The change and the payment are both held until the products are dispensed: settleChange then adds the payment
+     * to the change denominations, or puts the change back so the customer gets exactly the amount paid.
+     *
+     * @param slot       The zero-based slot of the purchase, or -1 for a cart.
+     * @param product    The name of the product being paid for.
+     * @param amountPaid The amount inserted by the customer.
+     * @param change     The amount of change to be given in centavos.
+     * @return The number of instances of each denomination given as change, or null if the change cannot be given.
+     */
+    private int[] reserveChange(int slot, String product, long amountPaid, long change) {
+        PurchaseEvents.ChangeCheck check = new PurchaseEvents.ChangeCheck();
+        check.begin();
+        changeLock.lock();
+        try {
+            boolean sufficient = coinVault.canPay(change);
+            check.finish(this, slot, product, change, sufficient ? "SUFFICIENT" : "INSUFFICIENT");
+            if (!sufficient) {
+                metrics.changeRefused();
+                return null;
+            }
+            PurchaseEvents.ChangeUpdate update = new PurchaseEvents.ChangeUpdate();
+            update.begin();
+            int[] changeGiven = coinVault.giveChange(change, 0);
+            holdChange(changeGiven, 1);
+            update.finish(this, slot, product, change, "PAID_OUT");
+            return changeGiven;
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Settles the change held by reserveChange once the products are dispensed. A dispensed purchase adds its payment to the
+     * change denominations; a failed one puts the change back, since the customer gets the payment back as it was inserted.
+     *
+     * @param amountPaid  The amount inserted by the customer.
+     * @param changeGiven The coins and bills held as change.
+     * @param dispensed   Whether the products were dispensed.
+     */
+    private void settleChange(long amountPaid, int[] changeGiven, boolean dispensed) {
+        changeLock.lock();
+        try {
+            holdChange(changeGiven, -1);
+            if (dispensed) {
+                coinVault.deposit(amountPaid);
+            } else {
+                coinVault.putBack(changeGiven);
+            }
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Counts change taken out for purchases still being dispensed, so a snapshot can show the change denominations as if
+     * those purchases had not started. The caller must hold the change lock.
+     *
+     * @param changeGiven The coins and bills of one purchase.
+     * @param count       1 when the change is taken out, -1 when it is settled.
+     */
+    private void holdChange(int[] changeGiven, int count) {
+        for (int i = 0; i < heldChange.length; i++) {
+            heldChange[i] += count * changeGiven[i];
+        }
+    }
+
+    /**
+     * Get the number of instances in a slot that are not reserved by a purchase being dispensed.
+     * The caller must hold the lock of the slot.
+     *
+     * @param slot The zero-based slot.
+     * @return The number of instances that can still be sold.
+     */
+    private int availableInstances(int slot) {
+        return instances[slot] - reserved[slot];
+    }
+
+    /**
+     * Sets the model for the time taken to dispense each product.
+     *
+     * @param latencyModel The latency model to use for later purchases.
+     */
+    @Override
+    public void setDispenseLatencyModel(DispenseLatencyModel latencyModel) {
+        dispensePipeline.setLatencyModel(latencyModel);
+    }
+
+    /**
+     * Sets the executor that finishes each purchase once its products are dispensed.
+     *
+     * @param executor The executor to use for later purchases.
+     */
+    @Override
+    public void setDispenseExecutor(Executor executor) {
+        dispensePipeline.setCompletionExecutor(executor);
+    }
+
+    /**
+     * Loads a product into a slot without any user interface, replacing what the slot held before.
+     *
+     * @param slot     The zero-based slot to load.
+     * @param product  The name of the product.
+     * @param price    The price of the product in centavos, a whole number of the smallest denomination.
+     * @param quantity The quantity of the product (not exceeding the maximum per slot).
+     * @param calories The calories of the product.
+     */
+    @Override
+    public void stockSlot(int slot, String product, long price, int quantity, int calories) {
+        if (slot < 0 || slot >= numSlots) {
+            throw new IllegalArgumentException("Invalid slot: " + slot);
+        }
+        if (!currency.isPayable(price)) {
+            throw new IllegalArgumentException("Invalid price: " + Money.format(price));
+        }
+        int instances = Math.min(quantity, maxProductsPerSlot);
+        slotLocks[slot].lock();
+        try {
+            this.products[slot] = product;
+            this.prices[slot] = price;
+            this.instances[slot] = instances;
+            this.initialInstances[slot] = instances;
+            this.calories[slot] = calories;
+            productTable.slotChanged(slot);
+        } finally {
+            slotLocks[slot].unlock();
+        }
+    }
+
+    /**
+     * Sets the number of instances of a denomination available as change without any user interface.
+     *
+     * @param denomination The value of the coin or bill.
+     * @param count        The number of instances (not exceeding the maximum stored instances).
+     */
+    @Override
+    public void stockChange(int denomination, int count) {
+        int index = currency.indexOf(denomination);
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid denomination: " + denomination);
+        }
+        changeLock.lock();
+        try {
+            coinVault.setCount(index, Math.min(count, coinVault.getCapacity()));
+        } finally {
+            changeLock.unlock();
+        }
+    }
+    /**
+     * Applies the rows of a restock manifest for this vending machine as one batch. Every row is checked against the
+     * stock as it would be after the rows before it, and the batch is applied only if every row is valid, so a
+     * rejected batch leaves the vending machine unchanged. The whole batch is checked and applied under every lock,
+     * so a purchase sees the vending machine either before or after the restock, and the product list is updated once.
+     *
+     * @param batch The rows for this vending machine.
+     * @throws IllegalArgumentException If any row is invalid, listing every problem.
+     */
+    @Override
+    public void restock(RestockManifest.Batch batch) {
+        List<String> problems = new ArrayList<>(batch.getProblems());
+        lockAll();
+        try {
+            String[] newProducts = products.clone();
+            long[] newPrices = prices.clone();
+            int[] newInstances = instances.clone();
+            int[] newCalories = calories.clone();
+            double[] newInitialInstances = initialInstances.clone();
+            for (RestockManifest.Line line : batch.getLines()) {
+                int slot = line.getSlot();
+                if (line.isItem()) {
+                    problems.add(line.problem("the regular vending machine has no non-sellable items."));
+                    continue;
+                } else if (slot >= numSlots) {
+                    problems.add(line.problem("there is no slot " + (slot + 1) + "."));
+                    continue;
+                }
+                String product = line.getProduct() != null ? line.getProduct() : newProducts[slot];
+                boolean loading = product != null && !product.equals(newProducts[slot]);
+                int count = loading ? line.getQuantity() : line.instancesAfter(newInstances[slot]);
+                if (product == null) {
+                    problems.add(line.problem("slot " + (slot + 1) + " is empty and the row names no product."));
+                } else if (loading && (newInstances[slot] > 0 || reserved[slot] > 0)) {
+                    problems.add(line.problem("slot " + (slot + 1) + " still holds " + newProducts[slot] + "."));
+                } else if (loading && line.getPrice() < 0) {
+                    problems.add(line.problem("the new product " + product + " needs a price."));
+                } else if (line.getPrice() >= 0 && !currency.isPayable(line.getPrice())) {
+                    problems.add(line.problem("the price " + Money.format(line.getPrice()) + " is not a whole number of \u20B1" + currency.smallestDenomination() + "."));
+                } else if (count > maxProductsPerSlot) {
+                    problems.add(line.problem("slot " + (slot + 1) + " holds at most " + maxProductsPerSlot + " products, not " + count + "."));
+                } else if (count < reserved[slot]) {
+                    problems.add(line.problem("slot " + (slot + 1) + " has " + reserved[slot] + " products being dispensed."));
+                } else {
+                    newProducts[slot] = product;
+                    newInstances[slot] = count;
+                    if (line.getPrice() >= 0) {
+                        newPrices[slot] = line.getPrice();
+                    }
+                    if (line.getCalories() >= 0 || loading) {
+                        newCalories[slot] = Math.max(0, line.getCalories());
+                    }
+                    if (loading) {
+                        newInitialInstances[slot] = count;
+                    }
+                }
+            }
+            if (!problems.isEmpty()) {
+                throw new IllegalArgumentException("Restock of " + batch.getMachine() + " rejected: " + String.join(" ", problems));
+            }
+            System.arraycopy(newProducts, 0, products, 0, numSlots);
+            System.arraycopy(newPrices, 0, prices, 0, numSlots);
+            System.arraycopy(newInstances, 0, instances, 0, numSlots);
+            System.arraycopy(newCalories, 0, calories, 0, numSlots);
+            System.arraycopy(newInitialInstances, 0, initialInstances, 0, numSlots);
+        } finally {
+            unlockAll();
+        }
+        productTable.allChanged();
+    }
+
+    /**
+     * Writes the products, stock, and change of the vending machine as a compact binary snapshot.
+     * Sales are not included, because they are restored from the sales journal, but the number of journal records is,
+     * so loadState can replay the sales recorded after the snapshot against the stock and change. Purchases still being
+     * dispensed are left out, as if they had not started, since their sales are not in the journal yet.
+     *
+     * @param out The output the snapshot is written to.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        lockAll();
+        try {
+            out.writeInt(numSlots);
+            for (int i = 0; i < numSlots; i++) {
+                MachineSnapshotter.writeNullableString(out, products[i]);
+                out.writeLong(prices[i]);
+                out.writeInt(instances[i]);
+                out.writeDouble(initialInstances[i]);
+                out.writeInt(calories[i]);
+            }
+            out.writeInt(currency.size());
+            for (int i = 0; i < currency.size(); i++) {
+                out.writeInt(coinVault.getCount(i) + heldChange[i]);
+            }
+            synchronized (salesLock) {
+                out.writeLong(salesJournal.size());
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Restores the products, stock, and change of the vending machine from a snapshot written by saveState, then replays
+     * the sales the journal recorded after it. The snapshot is read in full before anything is replaced, so a damaged
+     * snapshot leaves the machine unchanged.
+     *
+     * @param in The input the snapshot is read from.
+     * @throws IOException If the snapshot cannot be read or does not match this vending machine.
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        int slots = in.readInt();
+        if (slots != numSlots) {
+            throw new IOException("The snapshot has " + slots + " slots, but the vending machine has " + numSlots + ".");
+        }
+        String[] loadedProducts = new String[numSlots];
+        long[] loadedPrices = new long[numSlots];
+        int[] loadedInstances = new int[numSlots];
+        double[] loadedInitialInstances = new double[numSlots];
+        int[] loadedCalories = new int[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            loadedProducts[i] = MachineSnapshotter.readNullableString(in);
+            loadedPrices[i] = in.readLong();
+            loadedInstances[i] = in.readInt();
+            loadedInitialInstances[i] = in.readDouble();
+            loadedCalories[i] = in.readInt();
+        }
+        int denominations = in.readInt();
+        if (denominations != currency.size()) {
+            throw new IOException("The snapshot has " + denominations + " denominations, but the vending machine has " + currency.size() + ".");
+        }
+        int[] loadedChange = new int[currency.size()];
+        for (int i = 0; i < currency.size(); i++) {
+            loadedChange[i] = in.readInt();
+            if (loadedChange[i] < 0) {
+                throw new IOException("The snapshot has " + loadedChange[i] + " instances of \u20B1" + currency.denomination(i) + ".");
+            }
+        }
+        long journalPosition = in.readLong();
+        lockAll();
+        try {
+            System.arraycopy(loadedProducts, 0, products, 0, numSlots);
+            System.arraycopy(loadedPrices, 0, prices, 0, numSlots);
+            System.arraycopy(loadedInstances, 0, instances, 0, numSlots);
+            System.arraycopy(loadedInitialInstances, 0, initialInstances, 0, numSlots);
+            System.arraycopy(loadedCalories, 0, calories, 0, numSlots);
+            coinVault.restore(loadedChange);
+            replaySalesAfter(journalPosition);
+            productTable.allChanged();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Brings restored stock and change up to date with the sales and collections recorded in the journal after the
+     * snapshot was taken, so a restart after a crash does not sell the same products twice. Each sale takes its quantity
+     * out of the slot holding the product and adds its price to the change denominations as the largest denominations it
+     * can be made of, since the journal does not record the coins paid and given. The caller must hold every lock.
+     *
+     * @param journalPosition The number of journal records the snapshot already includes.
+     */
+    private void replaySalesAfter(long journalPosition) {
+        salesJournal.replay(journalPosition, Long.MAX_VALUE, new SalesJournal.RecordVisitor() {
+            @Override
+            public void sale(String product, long totalPrice, int quantity, long timeMillis) {
+                for (int i = 0; i < numSlots; i++) {
+                    if (product.equals(products[i])) {
+                        instances[i] = Math.max(0, instances[i] - quantity);
+                        break;
+                    }
+                }
+                coinVault.deposit(totalPrice);
+            }
+
+            @Override
+            public void collection(long amount, long timeMillis) {
+                coinVault.withdraw(amount);
+            }
+        });
+    }
+
+    /**
+     * Empties every slot and the change denominations before the vending machine is set up again.
+     */
+    private void clearMachine() {
+        lockAll();
+        try {
+            Arrays.fill(products, null);
+            Arrays.fill(prices, 0);
+            Arrays.fill(instances, 0);
+            Arrays.fill(calories, 0);
+            Arrays.fill(initialInstances, 0);
+            coinVault.clear();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Takes every slot lock in slot order, then the change lock, for changes that affect the whole vending machine.
+     */
+    private void lockAll() {
+        for (ReentrantLock slotLock : slotLocks) {
+            slotLock.lock();
+        }
+        changeLock.lock();
+    }
+
+    /**
+     * Releases the locks taken by lockAll.
+     */
+    private void unlockAll() {
+        changeLock.unlock();
+        for (int i = numSlots - 1; i >= 0; i--) {
+            slotLocks[i].unlock();
+        }
+    }
+
     /**
      * Implements maintenance features of the regular vending machine.
      * Allows maintenance personnel to replenish products and change, add, remove, or edit products, and view sales summary.
@@ -330,6 +1214,7 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
             message.append("4. Remove a Product\n");
             message.append("5. Edit a Product\n");
             message.append("6. Sales Summary\n");
+            message.append("7. Sales Entries\n");
             message.append("0. Go back to main menu\n");
     
             String choiceString;
@@ -364,6 +1249,9 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
                     case 6:
                         salesSummary();
                         break;
+                    case 7:
+                        viewSalesEntries();
+                        break;
                     case 0:
                         return;
                     default:
@@ -383,39 +1271,38 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
      */
     @Override
     public boolean isValidDenomination(int denomination) {
-        int[] validDenominations = { 1, 5, 10, 20, 50, 100, 200, 500, 1000 };
-        for (int valid : validDenominations) {
-            if (denomination == valid) {
-                return true;
-            }
-        }
-        return false;
+        return currency.isDenomination(denomination);
+    }
+
+    /**
+     * Get the currency whose coins and bills the vending machine accepts and gives as change.
+     *
+     * @return The currency.
+     */
+    @Override
+    public CurrencyDefinition getCurrency() {
+        return currency;
     }
 
     /**
      * Updates the change denominations based on the amount of change provided by the user.
      *
-     * @param change     The amount of change to be given to the user.
-     * @param amountPaid The total amount paid by the user.
+     * @param change     The amount of change to be given to the user in centavos.
+     * @param amountPaid The total amount paid by the user in centavos.
      */
     @Override
-    public void updateChangeDenominations(double change, double amountPaid) {
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (change / denominations[i]);
-            if (numDenominationUsed > changeDenominations[i]) {
-                numDenominationUsed = changeDenominations[i];
-            }
-            changeDenominations[i] -= numDenominationUsed;
-            change -= numDenominationUsed * denominations[i];
-    
-            // Add the instances for the denominations used by the user as payment
-            int numDenominationPaid = (int) (amountPaid / denominations[i]);
-            changeDenominations[i] += numDenominationPaid;
-            amountPaid -= numDenominationPaid * denominations[i];
+    public void updateChangeDenominations(long change, long amountPaid) {
+        PurchaseEvents.ChangeUpdate event = new PurchaseEvents.ChangeUpdate();
+        event.begin();
+        changeLock.lock();
+        try {
+            coinVault.giveChange(change, amountPaid);
+        } finally {
+            changeLock.unlock();
         }
+        event.finish(this, -1, null, change, "PAID_OUT");
     }
-    
+
     /**
      * Checks if the regular vending machine can give sufficient change for the specified amount of change.
      *
@@ -423,16 +1310,22 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
      * @return true if sufficient change can be given, false otherwise.
      */
     @Override
-    public boolean canGiveSufficientChange(double change) {
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationNeeded = (int) (change / denominations[i]);
-            if (numDenominationNeeded > changeDenominations[i]) {
-                return false;
-            }
-            change -= numDenominationNeeded * denominations[i];
+    public boolean canGiveSufficientChange(long change) {
+        // The vault finds exact payouts that taking the largest denomination first would miss
+        PurchaseEvents.ChangeCheck event = new PurchaseEvents.ChangeCheck();
+        event.begin();
+        boolean sufficient;
+        changeLock.lock();
+        try {
+            sufficient = coinVault.canPay(change);
+        } finally {
+            changeLock.unlock();
+        }
+        event.finish(this, -1, null, change, sufficient ? "SUFFICIENT" : "INSUFFICIENT");
+        if (!sufficient) {
+            metrics.changeRefused();
         }
-        return true;
+        return sufficient;
     }
 
     /**
@@ -441,15 +1334,31 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
      * @param change The amount of change given to the user.
      */
     @Override
-    public void displayChangeBreakdown(double change) {
+    public void displayChangeBreakdown(long change) {
         StringBuilder message = new StringBuilder("Change Breakdown:\n");
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (change / denominations[i]);
+        for (int i = 0; i < currency.size(); i++) {
+            long denomination = Money.ofPesos(currency.denomination(i));
+            int numDenominationUsed = (int) (change / denomination);
             if (numDenominationUsed > 0) {
-                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(denominations[i]).append("\n");
+                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(currency.denomination(i)).append("\n");
+            }
+            change -= numDenominationUsed * denomination;
+        }
+    
+        JOptionPane.showMessageDialog(null, message.toString(), "Change Breakdown", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Displays the coins and bills that were given to the user as change.
+     *
+     * @param changeGiven The number of instances of each denomination given, ordered from the largest denomination.
+     */
+    public void displayChangeBreakdown(int[] changeGiven) {
+        StringBuilder message = new StringBuilder("Change Breakdown:\n");
+        for (int i = 0; i < currency.size(); i++) {
+            if (changeGiven[i] > 0) {
+                message.append("  ").append(changeGiven[i]).append(" x \u20B1").append(currency.denomination(i)).append("\n");
             }
-            change -= numDenominationUsed * denominations[i];
         }
     
         JOptionPane.showMessageDialog(null, message.toString(), "Change Breakdown", JOptionPane.INFORMATION_MESSAGE);
@@ -464,9 +1373,8 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
         while (true) {
             StringBuilder message = new StringBuilder("\nCurrent Denomination Instances:\n");
-            int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-            for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-                message.append((i + 1)).append(". \u20B1").append(denominations[i]).append(" (Remaining: ").append(changeDenominations[i]).append(")\n");
+            for (int i = 0; i < currency.size(); i++) {
+                message.append((i + 1)).append(". \u20B1").append(currency.denomination(i)).append(" (Remaining: ").append(coinVault.getCount(i)).append(")\n");
             }
     
             String denominationChoiceString;
@@ -490,10 +1398,10 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
                 if (denominationChoice == 0) {
                     return; // Go back to maintenance menu
-                } else if (denominationChoice >= 1 && denominationChoice <= NUM_DENOMINATIONS) {
+                } else if (denominationChoice >= 1 && denominationChoice <= currency.size()) {
                     int selectedDenomination = denominationChoice - 1;
-                    int currentInstances = changeDenominations[selectedDenomination];
-                    int maxReplenishable = MAX_STORED_DENOMINATION_INSTANCES - currentInstances;
+                    int currentInstances = coinVault.getCount(selectedDenomination);
+                    int maxReplenishable = coinVault.getSpace(selectedDenomination);
     
                     String maxReplenishableMessage = "Maximum Replenishable Instances: " + maxReplenishable;
                     String instancesToAddString;
@@ -520,8 +1428,13 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
                         JOptionPane.showMessageDialog(null, "Exceeded the maximum replenishable instances. Setting to " + instancesToAdd + ".", "Maximum Replenishable Instances Exceeded", JOptionPane.WARNING_MESSAGE);
                     }
     
-                    changeDenominations[selectedDenomination] += instancesToAdd;
-                    JOptionPane.showMessageDialog(null, "Successfully replenished " + instancesToAdd + " instances of \u20B1" + denominations[selectedDenomination] + ".", "Replenishment Successful", JOptionPane.INFORMATION_MESSAGE);
+                    changeLock.lock();
+                    try {
+                        instancesToAdd = coinVault.add(selectedDenomination, instancesToAdd);
+                    } finally {
+                        changeLock.unlock();
+                    }
+                    JOptionPane.showMessageDialog(null, "Successfully replenished " + instancesToAdd + " instances of \u20B1" + currency.denomination(selectedDenomination) + ".", "Replenishment Successful", JOptionPane.INFORMATION_MESSAGE);
                     return; // Go back to maintenance menu after replenishment
                 } else {
                     JOptionPane.showMessageDialog(null, "Invalid choice. Please select a valid denomination or 0 to go back.", "Invalid Choice", JOptionPane.ERROR_MESSAGE);
@@ -540,14 +1453,48 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
      * @param quantitySold The quantity of the product sold.
      */
     @Override
-    public void updateSales(double totalPrice, String product, int quantitySold) {
+    public void updateSales(long totalPrice, String product, int quantitySold) {
+        PurchaseEvents.SalesUpdate event = new PurchaseEvents.SalesUpdate();
+        event.begin();
         // Increment both total sales and collected sales
-        totalSales += totalPrice;
-        collectedSales += totalPrice;
+        synchronized (salesLock) {
+            totalSales += totalPrice;
+            collectedSales += totalPrice;
+            productSales.computeIfAbsent(product, ProductSales::new).add(totalPrice, quantitySold);
 
-        // Add the sold product to the sales salesSummary
-        ProductSold soldProduct = new ProductSold(product, totalPrice / quantitySold, quantitySold);
-        productsSold.add(soldProduct);
+            // Record the sold product for the sales entries, in the same order as the journal
+            long timeMillis = System.currentTimeMillis();
+            salesLedger.addSale(product, totalPrice, quantitySold, timeMillis);
+            salesJournal.appendSale(product, totalPrice, quantitySold, timeMillis);
+        }
+        event.finish(this, -1, product, totalPrice, "RECORDED");
+    }
+
+    /**
+     * Restores the total and collected sales, the totals of each product, and the sales ledger by replaying the sales journal.
+     */
+    private void recoverSales() {
+        synchronized (salesLock) {
+            totalSales = 0;
+            collectedSales = 0;
+            productSales.clear();
+            salesLedger.clear();
+            salesJournal.replay(new SalesJournal.RecordVisitor() {
+                @Override
+                public void sale(String product, long totalPrice, int quantity, long timeMillis) {
+                    totalSales += totalPrice;
+                    collectedSales += totalPrice;
+                    productSales.computeIfAbsent(product, ProductSales::new).add(totalPrice, quantity);
+                    salesLedger.addSale(product, totalPrice, quantity, timeMillis);
+                }
+
+                @Override
+                public void collection(long amount, long timeMillis) {
+                    collectedSales -= amount;
+                    salesLedger.addCollection(amount, timeMillis);
+                }
+            });
+        }
     }
     
     /**
@@ -555,19 +1502,30 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
      */
     @Override
     public void collectSales() {
+        long salesToCollect;
+        synchronized (salesLock) {
+            salesToCollect = collectedSales;
+        }
+        deductCollectedSales(salesToCollect);
+    }
+
+    /**
+     * Deducts an amount of collected sales from the change denominations.
+     *
+     * @param amount The amount collected in centavos.
+     */
+    private void deductCollectedSales(long amount) {
         // Deduct collected sales from change denominations
-        double remainingCollectedSales = collectedSales;
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (remainingCollectedSales / denominations[i]);
-            if (numDenominationUsed > changeDenominations[i]) {
-                numDenominationUsed = changeDenominations[i];
-            }
-            changeDenominations[i] -= numDenominationUsed;
-            remainingCollectedSales -= numDenominationUsed * denominations[i];
+        long remainingCollectedSales;
+        changeLock.lock();
+        try {
+            remainingCollectedSales = coinVault.withdraw(amount);
+        } finally {
+            changeLock.unlock();
         }
         if (remainingCollectedSales > 0) {
-            System.out.println("Insufficient change denominations for the remaining collected sales: \u20B1" + remainingCollectedSales);
+            metrics.collectionShortfall(remainingCollectedSales);
+            System.out.println("Insufficient change denominations for the remaining collected sales: \u20B1" + Money.format(remainingCollectedSales));
         }
     }
     
@@ -577,14 +1535,14 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
      * @param collectedSales The total amount of collected sales.
      */
     @Override
-    public void displayDenominationBreakdown(double collectedSales) {
+    public void displayDenominationBreakdown(long collectedSales) {
         StringBuilder message = new StringBuilder("Denomination Breakdown:\n");
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (collectedSales / denominations[i]);
+        for (int i = 0; i < currency.size(); i++) {
+            long denomination = Money.ofPesos(currency.denomination(i));
+            int numDenominationUsed = (int) (collectedSales / denomination);
             if (numDenominationUsed > 0) {
-                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(denominations[i]).append("\n");
-                collectedSales -= numDenominationUsed * denominations[i];
+                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(currency.denomination(i)).append("\n");
+                collectedSales -= numDenominationUsed * denomination;
             }
         }
         JOptionPane.showMessageDialog(null, message.toString(), "Denomination Breakdown", JOptionPane.INFORMATION_MESSAGE);
@@ -592,30 +1550,72 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
 
     /**
      * Displays the list of available products in a graphical table.
+     * The same window is reused every time, and its rows are updated as the slots change.
      */
     public void showProductList() {
-        JFrame frame = new JFrame("Available Products");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        productTable.show();
+    }
 
-        String[] columnNames = {"Slot", "Product Name", "Price", "Stock", "Calories"};
-        Object[][] data = new Object[NUM_SLOTS][5];
+    /**
+     * Get the table model of the products, which reads the slots directly and is updated as they change.
+     *
+     * @return The product table model.
+     */
+    @Override
+    public ProductTableModel getProductTableModel() {
+        return productTable;
+    }
 
-        for (int i = 0; i < NUM_SLOTS; i++) {
-            data[i][0] = (i + 1);
-            data[i][1] = products[i];
-            data[i][2] = prices[i];
-            data[i][3] = instances[i];
-            data[i][4] = calories[i];
+    /**
+     * Adds the counters of this vending machine to a registry, with gauges of the instances in each slot and of each
+     * change denomination. The gauges read the counts without locking, so a scrape may see a count a moment old.
+     *
+     * @param registry The registry.
+     * @param machine  The value of the machine label, which tells the vending machines in one registry apart.
+     */
+    @Override
+    public void registerMetrics(MetricsRegistry registry, String machine) {
+        metrics.register(registry, machine);
+        for (int slot = 0; slot < numSlots; slot++) {
+            int gaugeSlot = slot;
+            registry.gauge("vending_slot_instances", "Instances of the product in each slot.", () -> instances[gaugeSlot],
+                    "machine", machine, "slot", Integer.toString(slot + 1));
+        }
+        for (int i = 0; i < currency.size(); i++) {
+            int denomination = i;
+            registry.gauge("vending_change_instances", "Instances of each change denomination.", () -> coinVault.getCount(denomination),
+                    "machine", machine, "denomination", Integer.toString(currency.denomination(i)));
         }
+    }
 
-        DefaultTableModel tableModel = new DefaultTableModel(data, columnNames);
-        JTable table = new JTable(tableModel);
-        JScrollPane scrollPane = new JScrollPane(table);
-        table.setFillsViewportHeight(true);
+    /**
+     * Get the counters of this vending machine.
+     *
+     * @return The metrics.
+     */
+    @Override
+    public MachineMetrics getMetrics() {
+        return metrics;
+    }
 
-        frame.add(scrollPane, BorderLayout.CENTER);
-        frame.pack();
-        frame.setVisible(true);
+    /**
+     * Get one cell of the product table from the slot arrays.
+     *
+     * @param slot   The zero-based slot of the row.
+     * @param column The column: 1 for the name, 2 for the price, 3 for the stock, or 4 for the calories.
+     * @return The value of the cell.
+     */
+    private Object productCell(int slot, int column) {
+        switch (column) {
+            case 1:
+                return products[slot];
+            case 2:
+                return Money.format(prices[slot]);
+            case 3:
+                return instances[slot];
+            default:
+                return calories[slot];
+        }
     }
 
     // Add this method to launch the GUI
@@ -631,10 +1631,10 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     public void replenishProduct() {
         String message;
         while (true) {
-            String availableProducts = "\nAvailable Products:\n";
-            for (int i = 0; i < NUM_SLOTS; i++) {
+            StringBuilder availableProducts = new StringBuilder("\nAvailable Products:\n");
+            for (int i = 0; i < numSlots; i++) {
                 if (products[i] != null) {
-                    availableProducts += (i + 1) + ". " + products[i] + " (Current Instances: " + instances[i] + ")\n";
+                    availableProducts.append(i + 1).append(". ").append(products[i]).append(" (Current Instances: ").append(instances[i]).append(")\n");
                 }
             }
     
@@ -664,15 +1664,15 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (productChoice == 0) {
                 return; // Go back to maintenance menu
-            } else if (productChoice >= 1 && productChoice <= NUM_SLOTS) {
+            } else if (productChoice >= 1 && productChoice <= numSlots) {
                 int selectedSlot = productChoice - 1;
                 if (products[selectedSlot] == null) {
                     message = "There is no product in Slot " + productChoice + ". Please choose another product.";
-                } else if (instances[selectedSlot] >= MAX_PRODUCTS_PER_SLOT) {
+                } else if (instances[selectedSlot] >= maxProductsPerSlot) {
                     message = products[selectedSlot] + " already has the maximum instances. Please choose another product.";
                 } else {
                     int currentInstances = instances[selectedSlot];
-                    int maxReplenishable = MAX_PRODUCTS_PER_SLOT - currentInstances;
+                    int maxReplenishable = maxProductsPerSlot - currentInstances;
     
                     message = "Current Instances: " + currentInstances + "\nMaximum Replenishable Instances: " + maxReplenishable;
     
@@ -706,7 +1706,13 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
                         instancesToAdd = maxReplenishable;
                         message = "Exceeded the maximum replenishable instances. Setting to " + instancesToAdd + ".";
                     } else {
-                        instances[selectedSlot] += instancesToAdd;
+                        slotLocks[selectedSlot].lock();
+                        try {
+                            instances[selectedSlot] += instancesToAdd;
+                            productTable.slotChanged(selectedSlot);
+                        } finally {
+                            slotLocks[selectedSlot].unlock();
+                        }
                         message = "Successfully replenished " + instancesToAdd + " instances of " + products[selectedSlot] + ".";
                         JOptionPane.showMessageDialog(null, message, "Replenish Product", JOptionPane.INFORMATION_MESSAGE);
                         return; // Go back to maintenance menu after replenishment
@@ -735,7 +1741,7 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
         // Ask the user to select a slot for the new product
         int selectedSlot;
         while (true) {
-            String slotInput = JOptionPane.showInputDialog(null, "Select a slot for the new product (1 to 8, 0 to go back to maintenance features menu):");
+            String slotInput = JOptionPane.showInputDialog(null, "Select a slot for the new product (1 to " + numSlots + ", 0 to go back to maintenance features menu):");
             if (slotInput == null) {
                 return; // User canceled, go back to maintenance menu
             }
@@ -748,8 +1754,8 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (selectedSlot == 0) {
                 return; // Go back to maintenance menu
-            } else if (selectedSlot < 1 || selectedSlot > NUM_SLOTS) {
-                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + NUM_SLOTS + ".", "Invalid Slot", JOptionPane.ERROR_MESSAGE);
+            } else if (selectedSlot < 1 || selectedSlot > numSlots) {
+                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + numSlots + ".", "Invalid Slot", JOptionPane.ERROR_MESSAGE);
             } else if (products[selectedSlot - 1] != null) {
                 JOptionPane.showMessageDialog(null, "Slot " + selectedSlot + " is already occupied by " + products[selectedSlot - 1] + ". Please choose another slot.", "Slot Occupied", JOptionPane.ERROR_MESSAGE);
             } else {
@@ -766,14 +1772,14 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
         int productInstances;
         while (true) {
-            String instancesInput = JOptionPane.showInputDialog(null, "Enter the number of instances (not exceeding 10):");
+            String instancesInput = JOptionPane.showInputDialog(null, "Enter the number of instances (not exceeding " + maxProductsPerSlot + "):");
             try {
                 productInstances = Integer.parseInt(instancesInput);
                 if (productInstances <= 0) {
                     JOptionPane.showMessageDialog(null, "Invalid input. Please enter a positive number of instances.", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-                } else if (productInstances > MAX_PRODUCTS_PER_SLOT) {
-                    productInstances = MAX_PRODUCTS_PER_SLOT;
-                    JOptionPane.showMessageDialog(null, "Instances cannot exceed " + MAX_PRODUCTS_PER_SLOT + ". Setting to " + MAX_PRODUCTS_PER_SLOT + ".", "Exceeded Maximum Instances", JOptionPane.WARNING_MESSAGE);
+                } else if (productInstances > maxProductsPerSlot) {
+                    productInstances = maxProductsPerSlot;
+                    JOptionPane.showMessageDialog(null, "Instances cannot exceed " + maxProductsPerSlot + ". Setting to " + maxProductsPerSlot + ".", "Exceeded Maximum Instances", JOptionPane.WARNING_MESSAGE);
                     break;
                 } else {
                     break;
@@ -785,11 +1791,15 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
         }
     
         String priceInput = JOptionPane.showInputDialog(null, "Enter the price:");
-        double productPrice;
+        long productPrice;
         try {
-            productPrice = Double.parseDouble(priceInput);
+            productPrice = Money.parse(priceInput);
         } catch (NumberFormatException e) {
-            productPrice = 0.0;
+            productPrice = 0;
+        }
+        if (!currency.isPayable(productPrice)) {
+            JOptionPane.showMessageDialog(null, "The price must be a whole number of \u20B1" + currency.smallestDenomination() + ".", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
     
         String caloriesInput = JOptionPane.showInputDialog(null, "Enter the calories:");
@@ -801,10 +1811,16 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
         }
     
         // Update the product details in the selected slot
-        products[selectedSlot - 1] = productName;
-        prices[selectedSlot - 1] = productPrice;
-        instances[selectedSlot - 1] = productInstances;
-        calories[selectedSlot - 1] = productCalories;
+        slotLocks[selectedSlot - 1].lock();
+        try {
+            products[selectedSlot - 1] = productName;
+            prices[selectedSlot - 1] = productPrice;
+            instances[selectedSlot - 1] = productInstances;
+            calories[selectedSlot - 1] = productCalories;
+            productTable.slotChanged(selectedSlot - 1);
+        } finally {
+            slotLocks[selectedSlot - 1].unlock();
+        }
     
         // Display the updated product list in a message dialog
         message.append("\n\nUpdated Product List:\n");
@@ -828,7 +1844,7 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
         // Ask the user to select a slot to remove the product from
         int selectedSlot;
         while (true) {
-            String slotInput = JOptionPane.showInputDialog(null, "Select a slot to remove the product from (1 to 8, 0 to go back to maintenance features menu):");
+            String slotInput = JOptionPane.showInputDialog(null, "Select a slot to remove the product from (1 to " + numSlots + ", 0 to go back to maintenance features menu):");
             if (slotInput == null || slotInput.trim().isEmpty()) {
                 JOptionPane.showMessageDialog(null, "No input. Please enter a slot number.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                 continue;
@@ -842,8 +1858,8 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (selectedSlot == 0) {
                 return; // Go back to maintenance menu
-            } else if (selectedSlot < 1 || selectedSlot > NUM_SLOTS) {
-                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + NUM_SLOTS + ".", "Invalid Slot", JOptionPane.WARNING_MESSAGE);
+            } else if (selectedSlot < 1 || selectedSlot > numSlots) {
+                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + numSlots + ".", "Invalid Slot", JOptionPane.WARNING_MESSAGE);
             } else if (products[selectedSlot - 1] == null) {
                 JOptionPane.showMessageDialog(null, "Slot " + selectedSlot + " is vacant. Please choose another slot.", "Slot Vacant", JOptionPane.WARNING_MESSAGE);
             } else {
@@ -855,10 +1871,16 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
         int option = JOptionPane.showConfirmDialog(null, "Are you sure you want to remove " + products[selectedSlot - 1] + " from Slot " + selectedSlot + "?", "Confirm Removal", JOptionPane.YES_NO_OPTION);
         if (option == JOptionPane.YES_OPTION) {
             // Remove the product from the list
-            products[selectedSlot - 1] = null;
-            prices[selectedSlot - 1] = 0.0;
-            instances[selectedSlot - 1] = 0;
-            calories[selectedSlot - 1] = 0;
+            slotLocks[selectedSlot - 1].lock();
+            try {
+                products[selectedSlot - 1] = null;
+                prices[selectedSlot - 1] = 0;
+                instances[selectedSlot - 1] = 0;
+                calories[selectedSlot - 1] = 0;
+                productTable.slotChanged(selectedSlot - 1);
+            } finally {
+                slotLocks[selectedSlot - 1].unlock();
+            }
             message.append("Product has been successfully removed from Slot ").append(selectedSlot).append(".");
         } else {
             message.append("Process canceled. Returning to maintenance features menu.");
@@ -906,9 +1928,9 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (selectedSlot == 0) {
                 return; // Go back to maintenance menu
-            } else if (selectedSlot < 1 || selectedSlot > NUM_SLOTS) {
+            } else if (selectedSlot < 1 || selectedSlot > numSlots) {
                 JOptionPane.showMessageDialog(null,
-                        "Invalid slot. Please select a slot number between 1 and " + NUM_SLOTS + ".", "Error",
+                        "Invalid slot. Please select a slot number between 1 and " + numSlots + ".", "Error",
                         JOptionPane.ERROR_MESSAGE);
             } else if (products[selectedSlot - 1] == null) {
                 JOptionPane.showMessageDialog(null,
@@ -938,16 +1960,20 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
             }
         }
     
-        double newPrice = prices[selectedSlot - 1];
+        long newPrice = prices[selectedSlot - 1];
         if (!priceInput.equals("0")) {
             try {
-                newPrice = Double.parseDouble(priceInput);
+                newPrice = Money.parse(priceInput);
             } catch (NumberFormatException e) {
                 JOptionPane.showMessageDialog(null,
                         "Invalid price format. Please enter a valid price (a numeric value) or '0' for no changes.",
                         "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
+            if (!currency.isPayable(newPrice)) {
+                JOptionPane.showMessageDialog(null, "The price must be a whole number of \u20B1" + currency.smallestDenomination() + ".", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
         }
     
         // Ask the user to change the calories
@@ -981,8 +2007,14 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
         }
     
         // Update the product details
-        prices[selectedSlot - 1] = newPrice;
-        calories[selectedSlot - 1] = newCalories;
+        slotLocks[selectedSlot - 1].lock();
+        try {
+            prices[selectedSlot - 1] = newPrice;
+            calories[selectedSlot - 1] = newCalories;
+            productTable.slotChanged(selectedSlot - 1);
+        } finally {
+            slotLocks[selectedSlot - 1].unlock();
+        }
     
         // Display the updated product list
         message.append("\nUpdated Product List:\n");
@@ -991,36 +2023,55 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     }
 
     /**
-     * Displays the sales summary which includes the starting inventory, ending inventory, list of products sold, total sales, and collected sales.
-     * The method also allows the user to collect the sales, deducting the collected amount from the change denominations.
-     * If the user chooses not to collect the sales, the method will not deduct the amount.
+     * Builds the text of the sales summary: the starting inventory, the totals of each product sold, total sales, and collected sales.
+     * The individual sales are listed by salesEntries instead.
+     *
+     * @return The sales summary report.
      */
-    public void salesSummary() {
+    @Override
+    public String salesReport() {
         StringBuilder message = new StringBuilder("\n----- Sales Summary -----\n");
     
         // Display the starting inventory (initialInstances)
         message.append("Starting Inventory:\n");
         message.append("Slot # | Product           | Price | Initial | Calories\n");
-        for (int i = 0; i < NUM_SLOTS; i++) {
-            message.append(String.format("%-6d| %-17s| %-6.2f| %-8.0f| %-8d%n", (i + 1), products[i], prices[i], initialInstances[i], calories[i]));
+        for (int i = 0; i < numSlots; i++) {
+            message.append(String.format("%-6d| %-17s| %-6s| %-8.0f| %-8d%n", (i + 1), products[i], Money.format(prices[i]), initialInstances[i], calories[i]));
         }
     
-        // Display the ending inventory (updated instances)
+        // The ending inventory (updated instances) is shown in the product list window
         message.append("\nEnding Inventory:\n");
-        showProductList();
     
-        // Display the list of products sold
+        // Display the totals of each product sold, kept up to date by updateSales
         message.append("\nProducts Sold:\n");
-        message.append("Product           | Price | Qty Sold | Total Price\n");
-        for (ProductSold soldProduct : productsSold) {
-            message.append(soldProduct).append("\n");
+        message.append("Product           | Qty Sold | Avg Price | Revenue\n");
+        synchronized (salesLock) {
+            for (ProductSales sales : productSales.values()) {
+                message.append(sales).append("\n");
+            }
+            message.append("\nTotal Sales: \u20B1").append(Money.format(totalSales));
+            message.append("\nCollected Sales: \u20B1").append(Money.format(collectedSales));
+        }
+        return message.toString();
+    }
+
+    /**
+     * Displays the sales summary which includes the starting inventory, ending inventory, list of products sold, total sales, and collected sales.
+     * The method also allows the user to collect the sales, deducting the collected amount from the change denominations.
+     * If the user chooses not to collect the sales, the method will not deduct the amount.
+     */
+    public void salesSummary() {
+        // Display the ending inventory (updated instances)
+        showProductList();
+
+        StringBuilder message = new StringBuilder(salesReport());
+        long salesToCollect;
+        synchronized (salesLock) {
+            salesToCollect = collectedSales;
         }
-    
-        message.append("\nTotal Sales: \u20B1").append(totalSales);
-        message.append("\nCollected Sales: \u20B1").append(collectedSales);
     
         // Check if there are any sales to collect
-        if (collectedSales == 0.0) {
+        if (salesToCollect == 0) {
             message.append("\n\nNo sales to collect.");
         } else {
             String collectSalesChoice;
@@ -1034,10 +2085,16 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
             } while (collectSalesChoice.trim().isEmpty());
     
             if (collectSalesChoice.equalsIgnoreCase("y")) {
-                message.append("\n\nTotal amount collected: \u20B1").append(collectedSales);
-                displayDenominationBreakdown(collectedSales);
-                collectSales(); // Deduct collected sales from change denominations
-                collectedSales = 0.0; // Reset collected sales to 0 after collecting
+                message.append("\n\nTotal amount collected: \u20B1").append(Money.format(salesToCollect));
+                displayDenominationBreakdown(salesToCollect);
+                deductCollectedSales(salesToCollect); // Deduct collected sales from change denominations
+                synchronized (salesLock) {
+                    // Sales made while the summary was open stay to be collected next time
+                    long timeMillis = System.currentTimeMillis();
+                    salesLedger.addCollection(salesToCollect, timeMillis);
+                    salesJournal.appendCollection(salesToCollect, timeMillis);
+                    collectedSales -= salesToCollect;
+                }
                 message.append("\n\nCollected sales have been released.");
             } else if (collectSalesChoice.equalsIgnoreCase("n")) {
                 message.append("\n\nSales collection canceled.");
@@ -1048,4 +2105,88 @@ public class RegularVendingMachineBehavior implements IVendingMachineBehavior {
     
         JOptionPane.showMessageDialog(null, message.toString(), "Sales Summary", JOptionPane.INFORMATION_MESSAGE);
     }
+
+    /**
+     * Builds one page of the sales entries: every sale and sales collection in the order they were recorded.
+     * Only the entries on the page are read from the sales ledger.
+     *
+     * @param page     The zero-based page to show.
+     * @param pageSize The number of entries on each page.
+     * @return The page of sales entries.
+     */
+    @Override
+    public String salesEntries(int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page: " + page + " of size " + pageSize);
+        }
+        synchronized (salesLock) {
+            long entries = salesLedger.size();
+            long pages = Math.max(1, (entries + pageSize - 1) / pageSize);
+            long firstEntry = (long) page * pageSize;
+            StringBuilder message = new StringBuilder(String.format("Sales Entries (page %d of %d, %d entries):%n", page + 1, pages, entries));
+            message.append("#       | Product           | Price | Qty Sold | Total Price\n");
+            for (long entry = firstEntry; entry < Math.min(entries, firstEntry + pageSize); entry++) {
+                message.append(String.format("%-8d| ", entry + 1));
+                if (salesLedger.isCollection(entry)) {
+                    message.append("Collected \u20B1").append(Money.format(salesLedger.getAmount(entry))).append("\n");
+                } else {
+                    message.append(salesLedger.getProductSold(entry)).append("\n");
+                }
+            }
+            return message.toString();
+        }
+    }
+
+    /**
+     * Get the number of entries in the sales ledger, counting both sales and sales collections.
+     *
+     * @return The number of entries.
+     */
+    @Override
+    public long getSalesEntryCount() {
+        synchronized (salesLock) {
+            return salesLedger.size();
+        }
+    }
+
+    /**
+     * Adds a range of the sales entries to a rollup. Sales are blocked only while the range is read,
+     * so a large ledger can be rolled up in ranges while the machine keeps selling.
+     *
+     * @param firstEntry The zero-based index of the first entry to add.
+     * @param maxEntries The most entries to add.
+     * @param rollup     The rollup that receives the sales.
+     */
+    @Override
+    public void rollUpSales(long firstEntry, long maxEntries, SalesRollup rollup) {
+        synchronized (salesLock) {
+            salesLedger.rollUp(firstEntry, maxEntries, rollup);
+        }
+    }
+
+    /**
+     * Displays the sales entries one page at a time, so machines with long sales histories can be browsed without
+     * loading every entry. The user can move to the previous or next page until the window is closed.
+     */
+    public void viewSalesEntries() {
+        int pageSize = 20;
+        int page = 0;
+        while (true) {
+            long pages;
+            synchronized (salesLock) {
+                pages = Math.max(1, (salesLedger.size() + pageSize - 1) / pageSize);
+            }
+            page = (int) Math.min(page, pages - 1);
+            String[] options = { "Previous", "Next", "Close" };
+            int choice = JOptionPane.showOptionDialog(null, salesEntries(page, pageSize), "Sales Entries", JOptionPane.DEFAULT_OPTION,
+                    JOptionPane.PLAIN_MESSAGE, null, options, options[1]);
+            if (choice == 0) {
+                page = Math.max(0, page - 1);
+            } else if (choice == 1) {
+                page++;
+            } else {
+                return;
+            }
+        }
+    }
 }
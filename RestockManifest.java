@@ -0,0 +1,335 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads a restock manifest: a CSV file with the products a route driver loads into one or many vending machines,
+ * so a whole stop is applied at once instead of one slot per dialog. Each row has the columns
+ *
+ * <pre>
+ * machine,slot,product,quantity,price,calories
+ * machine-00001,1,Banana,10,25.00,105
+ * machine-00001,2,,+4,,
+ * machine-00001,,Paper Cup,+10,,
+ * </pre>
+ *
+ * The slot is numbered from 1, as the customers see it. A quantity of N fills the slot to N instances, and a
+ * quantity of +N adds N instances to it. An empty product keeps the product in the slot, and a product different from
+ * the one in an empty slot loads a new product, which needs a price. An empty price or calories keeps the current one.
+ * A row without a slot restocks the non-sellable item named in the product column of a Special Vending Machine.
+ * Fields may be quoted with double quotes to hold a comma. Blank rows, rows starting with #, and a header row are skipped.
+ *
+ * The manifest is streamed: the rows of one machine are gathered into a Batch, which is handed over as soon as the
+ * rows of the next machine start, so a manifest for any number of machines is read with the memory of one.
+ * The rows of each machine should therefore be next to each other. A machine whose rows are split gets one batch for
+ * each run of rows, and VendingFleet rejects every batch of a machine after the first.
+ * A machine applies its batch with IVendingMachineBehavior.restock, all at once or not at all.
+ */
+public class RestockManifest {
+    private static final int COLUMNS = 6;
+
+    private RestockManifest() {
+    }
+
+    /**
+     * One row of a manifest: the stock of one slot or one non-sellable item.
+     */
+    public static class Line {
+        private final int lineNumber;
+        private final int slot;
+        private final String product;
+        private final int quantity;
+        private final boolean addition;
+        private final long price;
+        private final int calories;
+
+        /**
+         * Constructs a Line.
+         *
+         * @param lineNumber The line of the manifest the row was read from, for reporting problems.
+         * @param slot       The zero-based slot, or -1 for a non-sellable item.
+         * @param product    The product to load, the non-sellable item, or null to keep the product in the slot.
+         * @param quantity   The number of instances to fill the slot to, or to add to it.
+         * @param addition   Whether the quantity is added to the instances rather than replacing them.
+         * @param price      The price in centavos, or -1 to keep the current price.
+         * @param calories   The calories, or -1 to keep the current calories.
+         */
+        public Line(int lineNumber, int slot, String product, int quantity, boolean addition, long price, int calories) {
+            this.lineNumber = lineNumber;
+            this.slot = slot;
+            this.product = product;
+            this.quantity = quantity;
+            this.addition = addition;
+            this.price = price;
+            this.calories = calories;
+        }
+
+        /**
+         * Get the number of instances once the line is applied.
+         *
+         * @param current The current number of instances.
+         * @return The new number of instances.
+         */
+        public int instancesAfter(int current) {
+            return addition ? current + quantity : quantity;
+        }
+
+        /**
+         * Describes a problem with the line, naming the line of the manifest it was read from.
+         *
+         * @param problem The problem.
+         * @return The description.
+         */
+        public String problem(String problem) {
+            return "Line " + lineNumber + ": " + problem;
+        }
+
+        /**
+         * Check if the line restocks a non-sellable item rather than a slot.
+         *
+         * @return true for a non-sellable item, false for a slot.
+         */
+        public boolean isItem() {
+            return slot < 0;
+        }
+
+        /**
+         * Get the line of the manifest the row was read from.
+         *
+         * @return The line number, from 1.
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * Get the zero-based slot.
+         *
+         * @return The slot, or -1 for a non-sellable item.
+         */
+        public int getSlot() {
+            return slot;
+        }
+
+        /**
+         * Get the product to load, or the non-sellable item.
+         *
+         * @return The name, or null to keep the product in the slot.
+         */
+        public String getProduct() {
+            return product;
+        }
+
+        /**
+         * Get the quantity of the line.
+         *
+         * @return The number of instances to fill to, or to add.
+         */
+        public int getQuantity() {
+            return quantity;
+        }
+
+        /**
+         * Check if the quantity is added to the instances.
+         *
+         * @return true if the quantity is added, false if it replaces the instances.
+         */
+        public boolean isAddition() {
+            return addition;
+        }
+
+        /**
+         * Get the new price.
+         *
+         * @return The price in centavos, or -1 to keep the current price.
+         */
+        public long getPrice() {
+            return price;
+        }
+
+        /**
+         * Get the new calories.
+         *
+         * @return The calories, or -1 to keep the current calories.
+         */
+        public int getCalories() {
+            return calories;
+        }
+    }
+
+    /**
+     * The rows of a manifest for one machine, with any rows that could not be read.
+     */
+    public static class Batch {
+        private final String machine;
+        private final List<Line> lines;
+        private final List<String> problems;
+
+        /**
+         * Constructs an empty Batch.
+         *
+         * @param machine The identifier of the machine.
+         */
+        public Batch(String machine) {
+            this.machine = machine;
+            this.lines = new ArrayList<>();
+            this.problems = new ArrayList<>();
+        }
+
+        /**
+         * Adds a row to the batch.
+         *
+         * @param line The row.
+         */
+        public void add(Line line) {
+            lines.add(line);
+        }
+
+        /**
+         * Records a row that could not be read, so the batch is rejected when it is applied.
+         *
+         * @param problem The description of the problem.
+         */
+        public void addProblem(String problem) {
+            problems.add(problem);
+        }
+
+        /**
+         * Get the identifier of the machine.
+         *
+         * @return The identifier.
+         */
+        public String getMachine() {
+            return machine;
+        }
+
+        /**
+         * Get the rows of the batch, in manifest order.
+         *
+         * @return The rows.
+         */
+        public List<Line> getLines() {
+            return Collections.unmodifiableList(lines);
+        }
+
+        /**
+         * Get the rows that could not be read.
+         *
+         * @return The descriptions of the problems, empty if every row was read.
+         */
+        public List<String> getProblems() {
+            return Collections.unmodifiableList(problems);
+        }
+    }
+
+    /**
+     * Reads a manifest and hands over the batch of each machine as soon as its rows are read.
+     * A machine whose rows are not next to each other gets one batch for each run of rows.
+     *
+     * @param in      The manifest.
+     * @param batches Receives each batch.
+     * @return The number of batches read.
+     * @throws IOException If the manifest cannot be read, or a row has no machine.
+     */
+    public static int read(Reader in, Consumer<Batch> batches) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in, 64 * 1024);
+        Batch batch = null;
+        int count = 0;
+        int lineNumber = 0;
+        for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+            lineNumber++;
+            String trimmed = text.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || (lineNumber == 1 && trimmed.startsWith("machine,"))) {
+                continue;
+            }
+            String[] fields = split(trimmed);
+            if (fields[0].isEmpty()) {
+                throw new IOException("Line " + lineNumber + " has no machine.");
+            }
+            if (batch == null || !batch.getMachine().equals(fields[0])) {
+                if (batch != null) {
+                    batches.accept(batch);
+                    count++;
+                }
+                batch = new Batch(fields[0]);
+            }
+            parseLine(batch, lineNumber, fields);
+        }
+        if (batch != null) {
+            batches.accept(batch);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the fields of one row into a batch, or records why it cannot be read.
+     */
+    private static void parseLine(Batch batch, int lineNumber, String[] fields) {
+        if (fields.length != COLUMNS) {
+            batch.addProblem("Line " + lineNumber + ": expected " + COLUMNS + " columns, found " + fields.length + ".");
+            return;
+        }
+        String slotText = fields[1];
+        String product = fields[2].isEmpty() ? null : fields[2];
+        String quantityText = fields[3];
+        try {
+            int slot = slotText.isEmpty() ? -1 : Integer.parseInt(slotText) - 1;
+            if (slot < -1 || (slot == -1 && !slotText.isEmpty())) {
+                batch.addProblem("Line " + lineNumber + ": invalid slot " + slotText + ".");
+                return;
+            }
+            if (slot == -1 && product == null) {
+                batch.addProblem("Line " + lineNumber + ": a row without a slot needs a non-sellable item.");
+                return;
+            }
+            boolean addition = quantityText.startsWith("+");
+            int quantity = Integer.parseInt(addition ? quantityText.substring(1) : quantityText);
+            long price = fields[4].isEmpty() ? -1 : Money.parse(fields[4]);
+            int calories = fields[5].isEmpty() ? -1 : Integer.parseInt(fields[5]);
+            if (quantity < 0 || (fields[4].length() > 0 && price < 0) || (fields[5].length() > 0 && calories < 0)) {
+                batch.addProblem("Line " + lineNumber + ": the quantity, price, and calories cannot be negative.");
+                return;
+            }
+            batch.add(new Line(lineNumber, slot, product, quantity, addition, price, calories));
+        } catch (NumberFormatException e) {
+            batch.addProblem("Line " + lineNumber + ": invalid number in " + String.join(",", fields) + ".");
+        }
+    }
+
+    /**
+     * Splits a row into its trimmed fields. A field in double quotes may hold commas, and two double quotes in a row
+     * stand for one.
+     */
+    private static String[] split(String text) {
+        List<String> fields = new ArrayList<>(COLUMNS);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+}
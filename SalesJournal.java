@@ -0,0 +1,587 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only record of every sale and sales collection made by a vending machine, kept in a memory-mapped file.
+ * Each entry is a fixed-width binary record, so appending is a copy into the mapped file and never allocates.
+ *
+ * Writes are made durable by group commit. A background thread forces the file to disk every 20 milliseconds,
+ * or sooner once 64 records are waiting, so one disk flush covers many sales. The thread and its timer are shared by
+ * every journal, and each tick only visits the journals with records appended since their last flush, so an idle
+ * journal costs nothing however many machines are open. An append returns as soon as the record
+ * is in the mapped file, so a sale is acknowledged up to 20 milliseconds or 64 records before it is durable, and a power
+ * failure can lose that many; flush waits until every record so far is on disk. When a journal is opened,
+ * the records already in the file are found again, and replay reads them back in order to rebuild the sales.
+ *
+ * Record layout, in bytes:
+ * 0 type, 1 length of the product name, 2-3 detail of a sale, 4-7 quantity, 8-15 amount in centavos, 16-23 time in milliseconds,
+ * 24-59 product name in UTF-8, 60-63 CRC32 of bytes 0-59. The type is written last, so a record that was only partly
+ * written is never replayed. A name longer than one record holds is written in full: its first bytes go into name
+ * records just before the sale, which carries the rest, so a sale is always replayed with the name it was recorded with.
+ */
+public class SalesJournal implements AutoCloseable {
+    /**
+     * The size of every record, and of the file header, in bytes.
+     */
+    public static final int RECORD_SIZE = 64;
+
+    /**
+     * The most bytes of a product name that one record holds. Longer names continue in name records before the sale.
+     */
+    public static final int MAX_NAME_BYTES = 36;
+
+    private static final int MAGIC = 0x564D534A; // "VMSJ"
+    private static final int VERSION = 2;
+    private static final byte SALE = 1;
+    private static final byte COLLECTION = 2;
+    private static final byte NAME = 3;
+    private static final int WINDOW_RECORDS = 16384;
+    private static final long WINDOW_SIZE = (long) WINDOW_RECORDS * RECORD_SIZE;
+    private static final long GROUP_COMMIT_MILLIS = 20;
+    private static final int GROUP_COMMIT_RECORDS = 64;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sales-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The journals with records appended since their last flush, visited by the group commit tick.
+     */
+    private static final Queue<SalesJournal> DIRTY = new ConcurrentLinkedQueue<>();
+
+    static {
+        SCHEDULER.scheduleWithFixedDelay(SalesJournal::flushDirty, GROUP_COMMIT_MILLIS, GROUP_COMMIT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Receives the records of a journal during replay, in the order they were appended.
+     */
+    public interface RecordVisitor {
+        /**
+         * Called for each sale.
+         *
+         * @param product    The name of the product sold.
+         * @param totalPrice The total price of the sale in centavos.
+         * @param quantity   The quantity sold.
+         * @param timeMillis The time of the sale in milliseconds since the epoch.
+         */
+        void sale(String product, long totalPrice, int quantity, long timeMillis);
+
+        /**
+         * Called for each sale, with the detail the vending machine recorded with it. By default the detail is ignored.
+         *
+         * @param product    The name of the product sold.
+         * @param totalPrice The total price of the sale in centavos.
+         * @param quantity   The quantity sold.
+         * @param timeMillis The time of the sale in milliseconds since the epoch.
+         * @param detail     The detail of the sale, or 0 if none was recorded.
+         */
+        default void sale(String product, long totalPrice, int quantity, long timeMillis, int detail) {
+            sale(product, totalPrice, quantity, timeMillis);
+        }
+
+        /**
+         * Called for each collection of sales.
+         *
+         * @param amount     The amount collected in centavos.
+         * @param timeMillis The time of the collection in milliseconds since the epoch.
+         */
+        void collection(long amount, long timeMillis);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private byte[] name = new byte[MAX_NAME_BYTES];
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer window;
+    private MappedByteBuffer retiredWindow;
+    private long windowStart;
+    private long records;
+    private long durableRecords;
+    private boolean flushRequested;
+    private boolean dirty;
+    private boolean closed;
+
+    private SalesJournal(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        if (channel.size() < RECORD_SIZE) {
+            writeHeader();
+        } else {
+            checkHeader();
+        }
+        this.records = countRecords();
+        this.durableRecords = records;
+        mapWindowFor(records);
+    }
+
+    /**
+     * Opens the journal at the given path, creating it if it does not exist. Records already in the file are kept,
+     * and new records are appended after them.
+     *
+     * @param path The journal file.
+     * @return The open journal.
+     * @throws IOException If the file cannot be opened or is not a sales journal.
+     */
+    public static SalesJournal open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new SalesJournal(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a journal in a new temporary file that is deleted when the program exits.
+     * It is used by vending machines that were not given a journal of their own.
+     *
+     * @return The open journal.
+     * @throws UncheckedIOException If the temporary file cannot be created.
+     */
+    public static SalesJournal temporary() {
+        try {
+            Path path = Files.createTempFile("sales", ".journal");
+            path.toFile().deleteOnExit();
+            return open(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a sale to the journal.
+     *
+     * @param product    The name of the product sold.
+     * @param totalPrice The total price of the sale in centavos.
+     * @param quantity   The quantity sold.
+     */
+    public void appendSale(String product, long totalPrice, int quantity) {
+        append(SALE, product, totalPrice, quantity, System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * Appends a sale to the journal with a time the caller has already read, so the clock is read once per sale.
+     *
+     * @param product    The name of the product sold.
+     * @param totalPrice The total price of the sale in centavos.
+     * @param quantity   The quantity sold.
+     * @param timeMillis The time of the sale in milliseconds since the epoch.
+     */
+    public void appendSale(String product, long totalPrice, int quantity, long timeMillis) {
+        append(SALE, product, totalPrice, quantity, timeMillis, 0);
+    }
+
+    /**
+     * Appends a sale to the journal with 16 bits of detail that are replayed with it, such as the components a
+     * made-to-order product was made from, so the stock it used can be found again.
+     *
+     * @param product    The name of the product sold.
+     * @param totalPrice The total price of the sale in centavos.
+     * @param quantity   The quantity sold.
+     * @param timeMillis The time of the sale in milliseconds since the epoch.
+     * @param detail     The detail of the sale, from 0 to 65535.
+     */
+    public void appendSale(String product, long totalPrice, int quantity, long timeMillis, int detail) {
+        append(SALE, product, totalPrice, quantity, timeMillis, detail);
+    }
+
+    /**
+     * Appends a collection of sales to the journal.
+     *
+     * @param amount The amount collected in centavos.
+     */
+    public void appendCollection(long amount) {
+        append(COLLECTION, null, amount, 0, System.currentTimeMillis(), 0);
+    }
+
+    /**
+     * Appends a collection of sales to the journal with a time the caller has already read.
+     *
+     * @param amount     The amount collected in centavos.
+     * @param timeMillis The time of the collection in milliseconds since the epoch.
+     */
+    public void appendCollection(long amount, long timeMillis) {
+        append(COLLECTION, null, amount, 0, timeMillis, 0);
+    }
+
+    private synchronized void append(byte type, String product, long amount, int quantity, long timeMillis, int detail) {
+        if (closed) {
+            throw new IllegalStateException("The sales journal is closed.");
+        }
+        int nameLength = encodeName(product);
+        int nameOffset = 0;
+        while (nameLength - nameOffset > MAX_NAME_BYTES) {
+            writeRecord(NAME, nameOffset, MAX_NAME_BYTES, 0, 0, 0, 0);
+            nameOffset += MAX_NAME_BYTES;
+        }
+        writeRecord(type, nameOffset, nameLength - nameOffset, quantity, amount, timeMillis, detail);
+
+        if (!dirty) {
+            dirty = true;
+            DIRTY.add(this);
+        }
+        if (!flushRequested && records - durableRecords >= GROUP_COMMIT_RECORDS) {
+            flushRequested = true;
+            SCHEDULER.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Writes one record at the end of the journal, holding the given part of the encoded name.
+     */
+    private void writeRecord(byte type, int nameOffset, int nameLength, int quantity, long amount, long timeMillis, int detail) {
+        long position = recordPosition(records);
+        if (position + RECORD_SIZE > windowStart + WINDOW_SIZE) {
+            // The full window is forced by the next flush, unless an earlier full window is still waiting for it
+            if (retiredWindow != null) {
+                retiredWindow.force();
+            }
+            retiredWindow = window;
+            mapWindowFor(records);
+        }
+
+        scratch[0] = type;
+        scratch[1] = (byte) nameLength;
+        scratch[2] = (byte) (detail >>> 8);
+        scratch[3] = (byte) detail;
+        putInt(4, quantity);
+        putLong(8, amount);
+        putLong(16, timeMillis);
+        System.arraycopy(name, nameOffset, scratch, 24, nameLength);
+        java.util.Arrays.fill(scratch, 24 + nameLength, 60, (byte) 0);
+        crc.reset();
+        crc.update(scratch, 0, 60);
+        putInt(60, (int) crc.getValue());
+
+        int offset = (int) (position - windowStart);
+        window.put(offset + 1, scratch, 1, RECORD_SIZE - 1);
+        window.put(offset, type);
+        records++;
+    }
+
+    /**
+     * Forces every record appended so far to disk. Records are also flushed in the background,
+     * so this only needs to be called when a sale must be durable before going on.
+     */
+    public void flush() {
+        MappedByteBuffer toForce;
+        MappedByteBuffer retired;
+        long target;
+        synchronized (this) {
+            flushRequested = false;
+            dirty = false;
+            if (closed || durableRecords == records) {
+                return;
+            }
+            toForce = window;
+            retired = retiredWindow;
+            retiredWindow = null;
+            target = records;
+        }
+        // Forcing happens outside the lock so sales can keep being appended while the disk catches up
+        if (retired != null) {
+            retired.force();
+        }
+        toForce.force();
+        synchronized (this) {
+            durableRecords = Math.max(durableRecords, target);
+        }
+    }
+
+    /**
+     * Flushes the journals that were dirty when the tick started. A journal appended to again while the others are
+     * flushed is queued once more and waits for the next tick.
+     */
+    private static void flushDirty() {
+        for (int pending = DIRTY.size(); pending > 0; pending--) {
+            SalesJournal journal = DIRTY.poll();
+            if (journal == null) {
+                break;
+            }
+            journal.flushQuietly();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.out.println("Could not flush the sales journal " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads every record in the journal, in the order it was appended.
+     *
+     * @param visitor The visitor that receives each record.
+     */
+    public void replay(RecordVisitor visitor) {
+        replay(0, Long.MAX_VALUE, visitor);
+    }
+
+    /**
+     * Reads a range of records in the journal, in the order they were appended. Records are fixed-width,
+     * so the range is found directly, without reading the records before it.
+     *
+     * @param firstRecord The zero-based index of the first record to read.
+     * @param maxRecords  The most records to read.
+     * @param visitor     The visitor that receives each record.
+     */
+    public void replay(long firstRecord, long maxRecords, RecordVisitor visitor) {
+        long count;
+        synchronized (this) {
+            count = records;
+        }
+        long first = Math.max(0, Math.min(firstRecord, count));
+        long last = first + Math.min(Math.max(0, maxRecords), count - first);
+        byte[] record = new byte[RECORD_SIZE];
+        ByteArrayOutputStream longName = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * (int) Math.min(1024, Math.max(1, last - first)));
+        try {
+            // A range that starts at a sale with a long name also reads the name records before it
+            long start = first;
+            while (start > 0 && readType(start - 1) == NAME) {
+                start--;
+            }
+            long position = recordPosition(start);
+            long end = recordPosition(last);
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("The sales journal ended early.");
+                    }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    buffer.get(record);
+                    visit(record, longName, visitor);
+                }
+                position += buffer.limit();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hands one record to the visitor. The name in a name record is kept until the sale it starts.
+     */
+    private static void visit(byte[] record, ByteArrayOutputStream longName, RecordVisitor visitor) {
+        ByteBuffer fields = ByteBuffer.wrap(record);
+        int quantity = fields.getInt(4);
+        long amount = fields.getLong(8);
+        long timeMillis = fields.getLong(16);
+        if (record[0] == NAME) {
+            longName.write(record, 24, record[1] & 0xFF);
+        } else if (record[0] == SALE) {
+            String product;
+            if (longName.size() == 0) {
+                product = new String(record, 24, record[1] & 0xFF, StandardCharsets.UTF_8);
+            } else {
+                longName.write(record, 24, record[1] & 0xFF);
+                product = new String(longName.toByteArray(), StandardCharsets.UTF_8);
+                longName.reset();
+            }
+            visitor.sale(product, amount, quantity, timeMillis, fields.getShort(2) & 0xFFFF);
+        } else if (record[0] == COLLECTION) {
+            visitor.collection(amount, timeMillis);
+        }
+    }
+
+    /**
+     * Reads the type of one record.
+     */
+    private byte readType(long record) throws IOException {
+        ByteBuffer type = ByteBuffer.allocate(1);
+        channel.read(type, recordPosition(record));
+        return type.get(0);
+    }
+
+    /**
+     * Get the number of records in the journal.
+     *
+     * @return The number of records.
+     */
+    public synchronized long size() {
+        return records;
+    }
+
+    /**
+     * Get the file the journal is kept in.
+     *
+     * @return The journal file.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Flushes every record to disk and closes the journal.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (retiredWindow != null) {
+            retiredWindow.force();
+        }
+        window.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE);
+        header.clear();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.force(true);
+    }
+
+    private void checkHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(12);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // Keep reading until the header is complete
+        }
+        header.flip();
+        if (header.remaining() < 12 || header.getInt() != MAGIC) {
+            throw new IOException(path + " is not a sales journal.");
+        }
+        int version = header.getInt();
+        if (version < 1 || version > VERSION || header.getInt() != RECORD_SIZE) {
+            throw new IOException(path + " is not a sales journal.");
+        }
+        if (version < VERSION) {
+            // Version 1 has no name records, so it is read as it is and marked for readers of the newer records
+            writeHeader();
+        }
+    }
+
+    /**
+     * Finds the end of the journal: the first record that was never written or only partly written.
+     */
+    private long countRecords() throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+        byte[] record = new byte[RECORD_SIZE];
+        long count = 0;
+        long complete = 0;
+        long position = recordPosition(0);
+        while (position + RECORD_SIZE <= fileSize) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (fileSize - position) / RECORD_SIZE * RECORD_SIZE));
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                // Keep reading until the buffer is full
+            }
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_SIZE) {
+                buffer.get(record);
+                if (!isValid(record)) {
+                    return complete;
+                }
+                count++;
+                if (record[0] != NAME) {
+                    complete = count;
+                }
+            }
+            position += buffer.limit();
+        }
+        // Name records with no sale after them were cut off by a crash, and are written over
+        return complete;
+    }
+
+    private boolean isValid(byte[] record) {
+        if (record[0] != SALE && record[0] != COLLECTION && record[0] != NAME) {
+            return false;
+        }
+        crc.reset();
+        crc.update(record, 0, 60);
+        return ByteBuffer.wrap(record).getInt(60) == (int) crc.getValue();
+    }
+
+    /**
+     * Maps the window of the file that holds the given record. The file grows to cover the window,
+     * and the unused part of a window is zero, which marks the end of the journal.
+     */
+    private void mapWindowFor(long record) {
+        long start = recordPosition(record);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_WRITE, start, WINDOW_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        windowStart = start;
+    }
+
+    private static long recordPosition(long record) {
+        return RECORD_SIZE + record * RECORD_SIZE;
+    }
+
+    /**
+     * Encodes the whole product name in UTF-8 into the name buffer, which only grows for a name longer than any before it.
+     */
+    private int encodeName(String product) {
+        if (product == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < product.length(); ) {
+            int codePoint = product.codePointAt(i);
+            int bytes = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+            if (length + bytes > name.length) {
+                name = java.util.Arrays.copyOf(name, Math.max(2 * name.length, length + bytes));
+            }
+            if (bytes == 1) {
+                name[length] = (byte) codePoint;
+            } else {
+                // Lead byte, then six bits per continuation byte
+                name[length] = (byte) ((0xF00 >> bytes) | (codePoint >> (6 * (bytes - 1))));
+                for (int k = 1; k < bytes; k++) {
+                    name[length + k] = (byte) (0x80 | ((codePoint >> (6 * (bytes - 1 - k))) & 0x3F));
+                }
+            }
+            length += bytes;
+            i += Character.charCount(codePoint);
+        }
+        return length;
+    }
+
+    private void putInt(int offset, int value) {
+        scratch[offset] = (byte) (value >>> 24);
+        scratch[offset + 1] = (byte) (value >>> 16);
+        scratch[offset + 2] = (byte) (value >>> 8);
+        scratch[offset + 3] = (byte) value;
+    }
+
+    private void putLong(int offset, long value) {
+        putInt(offset, (int) (value >>> 32));
+        putInt(offset + 4, (int) value);
+    }
+}
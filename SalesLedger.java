@@ -0,0 +1,300 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory, columnar copy of the sales journal, used to list and scan the sales without reading the journal file.
+ * Each entry is kept as primitives in parallel columns: the product, the amount, the quantity, and the time.
+ * Product names are stored once in a product table and entries refer to them by number. The columns grow in fixed-size
+ * chunks, so recording an entry writes four array elements and never copies or allocates, except for the first sale of
+ * a new product and once every chunk. The first chunk starts small and doubles until it reaches the full chunk size,
+ * so a machine with few sales, such as one of many in a VendingFleet, does not hold a full chunk.
+ * A ProductSold is only created when an entry is asked for.
+ *
+ * A sales collection is kept as an entry without a product. The ledger is not thread-safe; the vending machine
+ * guards it with its sales lock.
+ */
+public class SalesLedger {
+    private static final int CHUNK_BITS = 13;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int FIRST_CHUNK_SIZE = 64;
+    private static final int COLLECTION = -1;
+
+    private final Map<String, Integer> productIds;
+    private String[] productNames;
+    private int productCount;
+    private int[][] productColumn;
+    private long[][] amountColumn;
+    private int[][] quantityColumn;
+    private long[][] timeColumn;
+    private long size;
+
+    /**
+     * Constructs an empty SalesLedger.
+     */
+    public SalesLedger() {
+        productIds = new HashMap<>();
+        productNames = new String[16];
+        productColumn = new int[4][];
+        amountColumn = new long[4][];
+        quantityColumn = new int[4][];
+        timeColumn = new long[4][];
+    }
+
+    /**
+     * Records a sale.
+     *
+     * @param product    The name of the product sold.
+     * @param totalPrice The total price of the sale in centavos.
+     * @param quantity   The quantity sold.
+     * @param timeMillis The time of the sale in milliseconds since the epoch.
+     */
+    public void addSale(String product, long totalPrice, int quantity, long timeMillis) {
+        add(productId(product), totalPrice, quantity, timeMillis);
+    }
+
+    /**
+     * Records a collection of sales.
+     *
+     * @param amount     The amount collected in centavos.
+     * @param timeMillis The time of the collection in milliseconds since the epoch.
+     */
+    public void addCollection(long amount, long timeMillis) {
+        add(COLLECTION, amount, 0, timeMillis);
+    }
+
+    private void add(int productId, long amount, int quantity, long timeMillis) {
+        int chunk = (int) (size >>> CHUNK_BITS);
+        int offset = (int) (size & CHUNK_MASK);
+        if (offset == 0) {
+            addChunk(chunk);
+        } else if (offset == productColumn[chunk].length) {
+            growFirstChunk();
+        }
+        productColumn[chunk][offset] = productId;
+        amountColumn[chunk][offset] = amount;
+        quantityColumn[chunk][offset] = quantity;
+        timeColumn[chunk][offset] = timeMillis;
+        size++;
+    }
+
+    private void addChunk(int chunk) {
+        if (chunk == productColumn.length) {
+            int chunks = chunk * 2;
+            productColumn = Arrays.copyOf(productColumn, chunks);
+            amountColumn = Arrays.copyOf(amountColumn, chunks);
+            quantityColumn = Arrays.copyOf(quantityColumn, chunks);
+            timeColumn = Arrays.copyOf(timeColumn, chunks);
+        }
+        int chunkSize = chunk == 0 ? FIRST_CHUNK_SIZE : CHUNK_SIZE;
+        productColumn[chunk] = new int[chunkSize];
+        amountColumn[chunk] = new long[chunkSize];
+        quantityColumn[chunk] = new int[chunkSize];
+        timeColumn[chunk] = new long[chunkSize];
+    }
+
+    private void growFirstChunk() {
+        int chunkSize = Math.min(productColumn[0].length * 2, CHUNK_SIZE);
+        productColumn[0] = Arrays.copyOf(productColumn[0], chunkSize);
+        amountColumn[0] = Arrays.copyOf(amountColumn[0], chunkSize);
+        quantityColumn[0] = Arrays.copyOf(quantityColumn[0], chunkSize);
+        timeColumn[0] = Arrays.copyOf(timeColumn[0], chunkSize);
+    }
+
+    private int productId(String product) {
+        Integer id = productIds.get(product);
+        if (id != null) {
+            return id;
+        }
+        if (productCount == productNames.length) {
+            productNames = Arrays.copyOf(productNames, productCount * 2);
+        }
+        productNames[productCount] = product;
+        productIds.put(product, productCount);
+        return productCount++;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(productColumn, null);
+        Arrays.fill(amountColumn, null);
+        Arrays.fill(quantityColumn, null);
+        Arrays.fill(timeColumn, null);
+        size = 0;
+    }
+
+    /**
+     * Get the number of entries, counting both sales and collections.
+     *
+     * @return The number of entries.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Check if an entry is a collection of sales rather than a sale.
+     *
+     * @param index The zero-based index of the entry.
+     * @return true if the entry is a collection, false if it is a sale.
+     */
+    public boolean isCollection(long index) {
+        checkIndex(index);
+        return productColumn[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)] == COLLECTION;
+    }
+
+    /**
+     * Get the name of the product of an entry.
+     *
+     * @param index The zero-based index of the entry.
+     * @return The name of the product sold, or null for a collection.
+     */
+    public String getProduct(long index) {
+        checkIndex(index);
+        int productId = productColumn[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+        return productId == COLLECTION ? null : productNames[productId];
+    }
+
+    /**
+     * Get the amount of an entry: the total price of a sale or the amount collected.
+     *
+     * @param index The zero-based index of the entry.
+     * @return The amount in centavos.
+     */
+    public long getAmount(long index) {
+        checkIndex(index);
+        return amountColumn[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+    }
+
+    /**
+     * Get the quantity sold in an entry.
+     *
+     * @param index The zero-based index of the entry.
+     * @return The quantity sold, or 0 for a collection.
+     */
+    public int getQuantity(long index) {
+        checkIndex(index);
+        return quantityColumn[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+    }
+
+    /**
+     * Get the time of an entry.
+     *
+     * @param index The zero-based index of the entry.
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getTimeMillis(long index) {
+        checkIndex(index);
+        return timeColumn[(int) (index >>> CHUNK_BITS)][(int) (index & CHUNK_MASK)];
+    }
+
+    /**
+     * Creates a ProductSold for a sale.
+     *
+     * @param index The zero-based index of the entry.
+     * @return The product sold, or null if the entry is a collection.
+     */
+    public ProductSold getProductSold(long index) {
+        String product = getProduct(index);
+        if (product == null) {
+            return null;
+        }
+        int quantity = getQuantity(index);
+        return new ProductSold(product, getAmount(index) / quantity, quantity);
+    }
+
+    /**
+     * Reads a range of entries in the order they were recorded, going through the columns one chunk at a time.
+     *
+     * @param firstEntry The zero-based index of the first entry to read.
+     * @param maxEntries The most entries to read.
+     * @param visitor    The visitor that receives each entry.
+     */
+    public void replay(long firstEntry, long maxEntries, SalesJournal.RecordVisitor visitor) {
+        long entry = Math.max(0, Math.min(firstEntry, size));
+        long end = entry + Math.min(Math.max(0, maxEntries), size - entry);
+        while (entry < end) {
+            int chunk = (int) (entry >>> CHUNK_BITS);
+            int offset = (int) (entry & CHUNK_MASK);
+            int last = (int) Math.min(CHUNK_SIZE, offset + (end - entry));
+            int[] products = productColumn[chunk];
+            long[] amounts = amountColumn[chunk];
+            int[] quantities = quantityColumn[chunk];
+            long[] times = timeColumn[chunk];
+            for (int i = offset; i < last; i++) {
+                if (products[i] == COLLECTION) {
+                    visitor.collection(amounts[i], times[i]);
+                } else {
+                    visitor.sale(productNames[products[i]], amounts[i], quantities[i], times[i]);
+                }
+            }
+            entry += last - offset;
+        }
+    }
+
+    /**
+     * Adds a range of entries to a rollup. The columns are scanned directly: the totals of each product are kept by
+     * product number and added to the rollup by name once at the end, and entries of the same hour are added as one bucket.
+     *
+     * @param firstEntry The zero-based index of the first entry to add.
+     * @param maxEntries The most entries to add.
+     * @param rollup     The rollup that receives the sales.
+     */
+    public void rollUp(long firstEntry, long maxEntries, SalesRollup rollup) {
+        long entry = Math.max(0, Math.min(firstEntry, size));
+        long end = entry + Math.min(Math.max(0, maxEntries), size - entry);
+        long[] revenue = new long[productCount];
+        long[] quantity = new long[productCount];
+        long[] sales = new long[productCount];
+        long hour = Long.MIN_VALUE;
+        long hourRevenue = 0;
+        long hourSales = 0;
+        while (entry < end) {
+            int chunk = (int) (entry >>> CHUNK_BITS);
+            int offset = (int) (entry & CHUNK_MASK);
+            int last = (int) Math.min(CHUNK_SIZE, offset + (end - entry));
+            int[] products = productColumn[chunk];
+            long[] amounts = amountColumn[chunk];
+            int[] quantities = quantityColumn[chunk];
+            long[] times = timeColumn[chunk];
+            for (int i = offset; i < last; i++) {
+                int product = products[i];
+                if (product == COLLECTION) {
+                    continue;
+                }
+                revenue[product] += amounts[i];
+                quantity[product] += quantities[i];
+                sales[product]++;
+                long entryHour = Math.floorDiv(times[i], SalesRollup.HOUR_MILLIS);
+                if (entryHour != hour) {
+                    if (hourSales > 0) {
+                        rollup.addHour(hour * SalesRollup.HOUR_MILLIS, hourRevenue, hourSales);
+                    }
+                    hour = entryHour;
+                    hourRevenue = 0;
+                    hourSales = 0;
+                }
+                hourRevenue += amounts[i];
+                hourSales++;
+            }
+            entry += last - offset;
+        }
+        if (hourSales > 0) {
+            rollup.addHour(hour * SalesRollup.HOUR_MILLIS, hourRevenue, hourSales);
+        }
+        for (int product = 0; product < productCount; product++) {
+            if (sales[product] > 0) {
+                rollup.addProduct(productNames[product], revenue[product], quantity[product], sales[product]);
+            }
+        }
+    }
+
+    private void checkIndex(long index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Entry " + index + " of " + size);
+        }
+    }
+}
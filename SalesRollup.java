@@ -0,0 +1,176 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Totals of the sales of one or more vending machines: the revenue and quantity of each product, the revenue of each
+ * machine, and the revenue of each hour. Sales collections are not sales, so they are left out.
+ *
+ * A rollup is filled by one thread at a time. Rollups of different machines, or of different parts of the same
+ * machine's sales, are built separately and then merged, which is how FleetAnalytics spreads the work over many threads.
+ */
+public class SalesRollup {
+    /**
+     * The length of an hourly bucket in milliseconds.
+     */
+    public static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    private final Map<String, long[]> products;
+    private final Map<String, long[]> machines;
+    private final Map<Long, long[]> hours;
+    private long revenue;
+    private long sales;
+
+    /**
+     * Constructs an empty SalesRollup.
+     */
+    public SalesRollup() {
+        products = new HashMap<>();
+        machines = new HashMap<>();
+        hours = new HashMap<>();
+    }
+
+    /**
+     * Adds sales of a product.
+     *
+     * @param product  The name of the product.
+     * @param revenue  The total price of the sales in centavos.
+     * @param quantity The quantity sold.
+     * @param sales    The number of sales.
+     */
+    public void addProduct(String product, long revenue, long quantity, long sales) {
+        long[] totals = products.computeIfAbsent(product, name -> new long[3]);
+        totals[0] += revenue;
+        totals[1] += quantity;
+        totals[2] += sales;
+        this.revenue += revenue;
+        this.sales += sales;
+    }
+
+    /**
+     * Adds sales made during an hour. The revenue is also counted by addProduct, so this only fills the hourly buckets.
+     *
+     * @param hourStart The start of the hour in milliseconds since the epoch, a multiple of HOUR_MILLIS.
+     * @param revenue   The total price of the sales in centavos.
+     * @param sales     The number of sales.
+     */
+    public void addHour(long hourStart, long revenue, long sales) {
+        long[] totals = hours.computeIfAbsent(hourStart, hour -> new long[2]);
+        totals[0] += revenue;
+        totals[1] += sales;
+    }
+
+    /**
+     * Adds sales made by a machine. The revenue is also counted by addProduct, so this only fills the machine totals.
+     *
+     * @param machine The identifier of the machine.
+     * @param revenue The total price of the sales in centavos.
+     * @param sales   The number of sales.
+     */
+    public void addMachine(String machine, long revenue, long sales) {
+        long[] totals = machines.computeIfAbsent(machine, id -> new long[2]);
+        totals[0] += revenue;
+        totals[1] += sales;
+    }
+
+    /**
+     * Adds every total of another rollup to this one.
+     *
+     * @param other The rollup to add.
+     * @return This rollup.
+     */
+    public SalesRollup merge(SalesRollup other) {
+        for (Map.Entry<String, long[]> product : other.products.entrySet()) {
+            long[] totals = product.getValue();
+            addProduct(product.getKey(), totals[0], totals[1], totals[2]);
+        }
+        for (Map.Entry<String, long[]> machine : other.machines.entrySet()) {
+            addMachine(machine.getKey(), machine.getValue()[0], machine.getValue()[1]);
+        }
+        for (Map.Entry<Long, long[]> hour : other.hours.entrySet()) {
+            addHour(hour.getKey(), hour.getValue()[0], hour.getValue()[1]);
+        }
+        return this;
+    }
+
+    /**
+     * Get the total revenue of every sale.
+     *
+     * @return The revenue in centavos.
+     */
+    public long getRevenue() {
+        return revenue;
+    }
+
+    /**
+     * Get the number of sales.
+     *
+     * @return The number of sales.
+     */
+    public long getSales() {
+        return sales;
+    }
+
+    /**
+     * Get the revenue of each product.
+     *
+     * @return The revenue in centavos by product name, sorted by name.
+     */
+    public Map<String, Long> getProductRevenue() {
+        return column(products, 0);
+    }
+
+    /**
+     * Get the quantity sold of each product.
+     *
+     * @return The quantity sold by product name, sorted by name.
+     */
+    public Map<String, Long> getProductQuantity() {
+        return column(products, 1);
+    }
+
+    /**
+     * Get the revenue of each machine.
+     *
+     * @return The revenue in centavos by machine identifier, sorted by identifier.
+     */
+    public Map<String, Long> getMachineRevenue() {
+        return column(machines, 0);
+    }
+
+    /**
+     * Get the revenue of each hour with at least one sale.
+     *
+     * @return The revenue in centavos by the start of the hour in milliseconds since the epoch, in order.
+     */
+    public Map<Long, Long> getHourlyRevenue() {
+        return column(hours, 0);
+    }
+
+    private static <K> Map<K, Long> column(Map<K, long[]> totals, int column) {
+        Map<K, Long> values = new TreeMap<>();
+        for (Map.Entry<K, long[]> entry : totals.entrySet()) {
+            values.put(entry.getKey(), entry.getValue()[column]);
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Builds a text report of the rollup: the totals, then the revenue and quantity of each product.
+     *
+     * @return The report.
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format("Sales: %d from %d machines, \u20B1%s revenue over %d hours%n",
+                sales, machines.size(), Money.format(revenue), hours.size()));
+        report.append("Product           | Qty Sold | Revenue\n");
+        Map<String, Long> quantities = getProductQuantity();
+        for (Map.Entry<String, Long> product : getProductRevenue().entrySet()) {
+            report.append(String.format("%-18s| %-9d| \u20B1%s%n", product.getKey(), quantities.get(product.getKey()),
+                    Money.format(product.getValue())));
+        }
+        return report.toString();
+    }
+}
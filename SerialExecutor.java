@@ -0,0 +1,99 @@
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time, in the order they were submitted, on a shared thread pool. Each vending machine in a
+ * VendingFleet has one, so its tasks never run at the same time, while thousands of machines share a few threads.
+ * A SerialExecutor holds no thread of its own; an idle one is just an empty queue.
+ *
+ * At most a batch of tasks runs before the pool thread is handed back, so a busy machine cannot keep other machines waiting.
+ * Once the pool is shut down and rejects the next batch, the queued tasks run on the thread that found them instead,
+ * so work queued before a VendingFleet closes is never dropped.
+ */
+public class SerialExecutor implements Executor {
+    private static final int BATCH_SIZE = 64;
+
+    private final String name;
+    private final Executor pool;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean scheduled;
+
+    /**
+     * Constructs a SerialExecutor.
+     *
+     * @param name The name used when a task fails.
+     * @param pool The thread pool the tasks run on.
+     */
+    public SerialExecutor(String name, Executor pool) {
+        this.name = name;
+        this.pool = pool;
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Queues a task to run after every task submitted before it.
+     *
+     * @param task The task to run.
+     */
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(Objects.requireNonNull(task));
+        schedule();
+    }
+
+    private void schedule() {
+        while (!tasks.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                pool.execute(this::runBatch);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The pool is shut down, so the queue is drained here while this thread still holds the turn
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                    run(task);
+                }
+                scheduled.set(false);
+            } catch (RuntimeException e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void runBatch() {
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                run(task);
+            }
+        } finally {
+            // Tasks queued while the batch ran, or left over from a full batch, go back to the pool
+            scheduled.set(false);
+            schedule();
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.out.println("A task of " + name + " failed: " + e);
+        }
+    }
+
+    /**
+     * Get the number of tasks waiting to run.
+     *
+     * @return The number of queued tasks.
+     */
+    public int getQueuedTasks() {
+        return tasks.size();
+    }
+}
@@ -1,88 +1,175 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.swing.*;
 import java.awt.*;
-import javax.swing.table.DefaultTableModel;
 
 /**
  * This class represents the behavior of a special vending machine that implements the IVendingMachineBehavior interface.
  * It handles the products, prices, instances, and other operations related to the vending machine.
+ *
+ * Purchases can be made from several threads at once. Each slot has its own lock, and the non-sellable items,
+ * the change denominations, and the sales totals each have one more. Locks are always taken in that order,
+ * and slot locks in slot order, so a made-to-order product such as the Fruit Salad can lock all of the slots it is made
+ * from without deadlocking another purchase. Made-to-order products are described by a Recipe, and their components
+ * are reserved as soon as an order is started.
+ *
+ * Whether each made-to-order product can be ordered, and its calories, are kept up to date whenever the stock, the
+ * calories, or the non-sellable items change, so listing the products and selecting one do not scan the other slots.
  */
 public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
-    private static final int MAX_PRODUCTS_PER_SLOT = 10;
-    private static final int NUM_SLOTS = 8;
-    private static final int NUM_DENOMINATIONS = 9;
-    private static final int MAX_STORED_DENOMINATION_INSTANCES = 20;
-    
-    private String[] products;
-    private double[] prices;
-    private int[] instances;
-    private int[] calories;
-    private int[] changeDenominations;
-    private double[] initialInstances;
-    private List<ProductSold> productsSold;
-    private Map<String, Integer> nonSellableInstances;
+    private static final int FRUIT_SALAD_SLOT = 6;
+    private static final Recipe FRUIT_SALAD = new Recipe("Fruit Salad", "fruit", new int[] { 0, 1, 2, 3, 4, 5 }, 3,
+            new String[] { "Condensed Milk", "Evaporated Milk" }, new String[] { "Paper Cup", "Plastic Spoon" },
+            new String[] { "Cheese" }, new long[] { Money.ofPesos(25) });
+    private static final int[] NO_RECIPES = new int[0];
+    
+    private final int numSlots;
+    private final int maxProductsPerSlot;
+    private final String[] products;
+    private final long[] prices;
+    private final int[] instances;
+    private final int[] reserved;
+    private final int[] calories;
+    private final CurrencyDefinition currency;
+    private final CoinVault coinVault;
+    private final int[] heldChange;
+    private final double[] initialInstances;
+    private final ReentrantLock[] slotLocks;
+    private final ReentrantLock itemsLock;
+    private final ReentrantLock changeLock;
+    private final Object salesLock;
+    private final SalesJournal salesJournal;
+    private final Map<String, ProductSales> productSales;
+    private final SalesLedger salesLedger;
+    private final Map<String, Integer> nonSellableInstances;
+    private final Map<String, Integer> heldItems;
+    private final Recipe[] recipes;
+    private final int[][] recipesUsingSlot;
+    private final Map<String, int[]> recipesUsingItem;
+    private final boolean[] inStock;
+    private final AtomicIntegerArray recipeChoicesInStock;
+    private final AtomicIntegerArray recipeItemsMissing;
     private String[] fruits = { "Banana", "Grapes", "Apple", "Melon", "Pear", "Watermelon" };
     private Set<String> selectedFruits;
-    private double totalSales;
-    private double collectedSales;
-    private Scanner scanner;
+    private long totalSales;
+    private long collectedSales;
+    private final DispensePipeline dispensePipeline;
+    private final MachineMetrics metrics;
+    private final ProductTableModel productTable;
 
     /**
-     * Initializes a new instance of the SpecialVendingMachineBehavior class.
-     * It sets up the arrays and collections to manage the vending machine's behavior.
+     * Initializes a new instance of the SpecialVendingMachineBehavior class that records its sales in a temporary journal.
      */
     public SpecialVendingMachineBehavior() {
-        products = new String[NUM_SLOTS];
-        prices = new double[NUM_SLOTS];
-        instances = new int[NUM_SLOTS];
-        calories = new int[NUM_SLOTS];
-        changeDenominations = new int[NUM_DENOMINATIONS];
-        initialInstances = new double[NUM_SLOTS];
-        productsSold = new ArrayList<>();
+        this(SalesJournal.temporary());
+    }
+
+    /**
+     * Initializes a new instance of the SpecialVendingMachineBehavior class with the layout configured for this program.
+     *
+     * @param salesJournal The journal that every sale and collection is recorded in.
+     */
+    public SpecialVendingMachineBehavior(SalesJournal salesJournal) {
+        this(salesJournal, MachineLayout.configured());
+    }
+
+    /**
+     * Initializes a new instance of the SpecialVendingMachineBehavior class with the given number of slots and capacities.
+     * It sets up the arrays and collections to manage the vending machine's behavior. The Fruit Salad takes the seventh
+     * slot and its fruits the six before it, so at least seven slots are needed.
+     * The sales already recorded in the journal are replayed to restore the total and collected sales.
+     *
+     * @param salesJournal The journal that every sale and collection is recorded in.
+     * @param layout       The number of slots and the capacity of each slot and of the change.
+     */
+    public SpecialVendingMachineBehavior(SalesJournal salesJournal, MachineLayout layout) {
+        if (layout.getSlots() <= FRUIT_SALAD_SLOT) {
+            throw new IllegalArgumentException("The Special Vending Machine needs at least " + (FRUIT_SALAD_SLOT + 1) + " slots.");
+        }
+        numSlots = layout.getSlots();
+        maxProductsPerSlot = layout.getSlotCapacity();
+        products = new String[numSlots];
+        prices = new long[numSlots];
+        instances = new int[numSlots];
+        reserved = new int[numSlots];
+        calories = new int[numSlots];
+        currency = CurrencyDefinition.configured();
+        coinVault = new CoinVault(currency, layout.getChangeCapacity());
+        heldChange = new int[currency.size()];
+        initialInstances = new double[numSlots];
         nonSellableInstances = new HashMap<>();
+        heldItems = new HashMap<>();
+        recipes = new Recipe[numSlots];
+        recipes[FRUIT_SALAD_SLOT] = FRUIT_SALAD;
+        recipesUsingSlot = new int[numSlots][];
+        recipesUsingItem = new HashMap<>();
+        indexRecipes();
+        inStock = new boolean[numSlots];
+        recipeChoicesInStock = new AtomicIntegerArray(numSlots);
+        recipeItemsMissing = new AtomicIntegerArray(numSlots);
         selectedFruits = new HashSet<>();
-        totalSales = 0.0;
-        collectedSales = 0.0;
-        scanner = new Scanner(System.in);
+        slotLocks = new ReentrantLock[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            slotLocks[i] = new ReentrantLock();
+        }
+        productTable = new ProductTableModel(numSlots, this::productCell);
+        rebuildRecipeState();
+        itemsLock = new ReentrantLock();
+        changeLock = new ReentrantLock();
+        salesLock = new Object();
+        this.salesJournal = salesJournal;
+        productSales = new LinkedHashMap<>();
+        salesLedger = new SalesLedger();
+        recoverSales();
+        dispensePipeline = new DispensePipeline();
+        metrics = new MachineMetrics();
+        PurchaseEvents.register();
     }
     
     /**
      * Initializes the Special Vending Machine by collecting details for each product slot.
      * This method prompts the user to input product details such as name, price, quantity, and calories.
-     * It also handles the special case of Fruit Salad and Slot 8, allowing the user to add custom products.
+     * Made-to-order products such as the Fruit Salad only need a price, and the slots after it can hold custom products.
      */
     @Override
     public void initialize() {
         JOptionPane.showMessageDialog(null, "You have chosen the Special Vending Machine.");
     
-        String addProductInSlot8;
+        String addProductInSlot;
     
-        for (int i = 0; i < NUM_SLOTS; i++) {
-            if (i == 6) {
-                // Compute and add the Fruit Salad details
-                JOptionPane.showMessageDialog(null, "Input details for Fruit Salad");
+        for (int i = 0; i < numSlots; i++) {
+            if (recipes[i] != null) {
+                // Compute and add the details of the made-to-order product
+                String recipeProduct = recipes[i].getProduct();
+                JOptionPane.showMessageDialog(null, "Input details for " + recipeProduct);
                 while (true) {
-                    String priceInput = JOptionPane.showInputDialog(null, "Price:", "Fruit Salad", JOptionPane.QUESTION_MESSAGE);
-                    if (priceInput == null || priceInput.trim().isEmpty() || Double.parseDouble(priceInput) <= 0) {
+                    String priceInput = JOptionPane.showInputDialog(null, "Price:", recipeProduct, JOptionPane.QUESTION_MESSAGE);
+                    if (priceInput == null || priceInput.trim().isEmpty() || Money.parse(priceInput) <= 0 || !currency.isPayable(Money.parse(priceInput))) {
                         JOptionPane.showMessageDialog(null, "Please enter a valid price.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
-                        prices[i] = Double.parseDouble(priceInput);
+                        prices[i] = Money.parse(priceInput);
                         break;
                     }
                 }
     
-                products[i] = "Fruit Salad";
-                this.calories[i] = computeFruitSaladCalories();
-                this.instances[i] = fruitSaladIsNotAvailable() ? 0 : 10;
-    
-                addProductInSlot8 = JOptionPane.showInputDialog(null, "Do you want to add a product in the 8th slot? (y/n):", "Slot 8", JOptionPane.QUESTION_MESSAGE);
-                if (!addProductInSlot8.equalsIgnoreCase("y"))
-                    i = 8;
-            } else if (i == 7) {
-                JOptionPane.showMessageDialog(null, "Input details for Slot 8");
+                products[i] = recipeProduct;
+                this.instances[i] = maxProductsPerSlot;
+            } else if (isCustomSlot(i)) {
+                String slotTitle = "Slot " + (i + 1);
+                addProductInSlot = JOptionPane.showInputDialog(null, "Do you want to add a product in slot " + (i + 1) + "? (y/n):", slotTitle, JOptionPane.QUESTION_MESSAGE);
+                if (!"y".equalsIgnoreCase(addProductInSlot))
+                    break;
+
+                JOptionPane.showMessageDialog(null, "Input details for " + slotTitle);
                 while (true) {
-                    String productName = JOptionPane.showInputDialog(null, "Product name:", "Slot 8", JOptionPane.QUESTION_MESSAGE);
+                    String productName = JOptionPane.showInputDialog(null, "Product name:", slotTitle, JOptionPane.QUESTION_MESSAGE);
                     if (productName == null || productName.trim().isEmpty()) {
                         JOptionPane.showMessageDialog(null, "Please enter a valid product name.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
@@ -91,13 +178,13 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                     }
                 }
     
-                double price = 0;
+                long price = 0;
                 while (true) {
-                    String priceInput = JOptionPane.showInputDialog(null, "Price:", "Slot 8", JOptionPane.QUESTION_MESSAGE);
-                    if (priceInput == null || priceInput.trim().isEmpty() || Double.parseDouble(priceInput) <= 0) {
+                    String priceInput = JOptionPane.showInputDialog(null, "Price:", slotTitle, JOptionPane.QUESTION_MESSAGE);
+                    if (priceInput == null || priceInput.trim().isEmpty() || Money.parse(priceInput) <= 0 || !currency.isPayable(Money.parse(priceInput))) {
                         JOptionPane.showMessageDialog(null, "Please enter a valid price.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
-                        price = Double.parseDouble(priceInput);
+                        price = Money.parse(priceInput);
                         break;
                     }
                 }
@@ -105,14 +192,14 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
                 int quantity = 0;
                 while (true) {
-                    String quantityInput = JOptionPane.showInputDialog(null, "Quantity:", "Slot 8", JOptionPane.QUESTION_MESSAGE);
+                    String quantityInput = JOptionPane.showInputDialog(null, "Quantity:", slotTitle, JOptionPane.QUESTION_MESSAGE);
                     if (quantityInput == null || quantityInput.trim().isEmpty() || Integer.parseInt(quantityInput) <= 0) {
                         JOptionPane.showMessageDialog(null, "Please enter a valid quantity.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
                         this.instances[i] = Integer.parseInt(quantityInput);
-                        if (this.instances[i] > MAX_PRODUCTS_PER_SLOT) {
-                            JOptionPane.showMessageDialog(null, "Quantity cannot exceed 10. Setting to 10.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
-                            this.instances[i] = MAX_PRODUCTS_PER_SLOT;
+                        if (this.instances[i] > maxProductsPerSlot) {
+                            JOptionPane.showMessageDialog(null, "Quantity cannot exceed " + maxProductsPerSlot + ". Setting to " + maxProductsPerSlot + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                            this.instances[i] = maxProductsPerSlot;
                         }
                         break;
                     }
@@ -120,7 +207,7 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
                 int calories = 0;
                 while (true) {
-                    String calorieInput = JOptionPane.showInputDialog(null, "Calories:", "Slot 8", JOptionPane.QUESTION_MESSAGE);
+                    String calorieInput = JOptionPane.showInputDialog(null, "Calories:", slotTitle, JOptionPane.QUESTION_MESSAGE);
                     if (calorieInput == null || calorieInput.trim().isEmpty() || Integer.parseInt(calorieInput) < 0) {
                         JOptionPane.showMessageDialog(null, "Please enter a valid calorie value.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
@@ -130,15 +217,16 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                 }
             } else {
                 String fruitName = fruits[i];
+                products[i] = fruitName;
                 JOptionPane.showMessageDialog(null, "Input details for " + fruitName);
     
-                double price;
+                long price;
                 while (true) {
                     String priceInput = JOptionPane.showInputDialog(null, "Price:", fruitName, JOptionPane.QUESTION_MESSAGE);
-                    if (priceInput == null || priceInput.trim().isEmpty() || Double.parseDouble(priceInput) <= 0) {
+                    if (priceInput == null || priceInput.trim().isEmpty() || Money.parse(priceInput) <= 0 || !currency.isPayable(Money.parse(priceInput))) {
                         JOptionPane.showMessageDialog(null, "Please enter a valid price.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
-                        price = Double.parseDouble(priceInput);
+                        price = Money.parse(priceInput);
                         break;
                     }
                 }
@@ -150,9 +238,9 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                         JOptionPane.showMessageDialog(null, "Please enter a valid quantity.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
                         this.instances[i] = Integer.parseInt(quantityInput);
-                        if (this.instances[i] > MAX_PRODUCTS_PER_SLOT) {
-                            JOptionPane.showMessageDialog(null, "Quantity cannot exceed 10. Setting to 10.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
-                            this.instances[i] = MAX_PRODUCTS_PER_SLOT;
+                        if (this.instances[i] > maxProductsPerSlot) {
+                            JOptionPane.showMessageDialog(null, "Quantity cannot exceed " + maxProductsPerSlot + ". Setting to " + maxProductsPerSlot + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                            this.instances[i] = maxProductsPerSlot;
                         }
                         break;
                     }
@@ -160,7 +248,7 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
                 int calories = 0;
                 while (true) {
-                    String calorieInput = JOptionPane.showInputDialog(null, "Calories:", "Slot 8", JOptionPane.QUESTION_MESSAGE);
+                    String calorieInput = JOptionPane.showInputDialog(null, "Calories:", fruitName, JOptionPane.QUESTION_MESSAGE);
                     if (calorieInput == null || calorieInput.trim().isEmpty() || Integer.parseInt(calorieInput) < 0) {
                         JOptionPane.showMessageDialog(null, "Please enter a valid calorie value.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                     } else {
@@ -170,6 +258,12 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                 }
             }
         }
+        lockAll();
+        try {
+            rebuildRecipeState();
+        } finally {
+            unlockAll();
+        }
         // Initialize non-sellable items
         initializeNonSellableItems();
     }
@@ -181,11 +275,12 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      */
     @Override
     public void inputChangeDenominations() {
-        JOptionPane.showMessageDialog(null, "Input the number of instances for each denomination (maximum 20 instances)");
-        int[] denominations = { 1, 5, 10, 20, 50, 100, 200, 500, 1000 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
+        int capacity = coinVault.getCapacity();
+        JOptionPane.showMessageDialog(null, "Input the number of instances for each denomination (maximum " + capacity + " instances)");
+        // Asked from the smallest denomination, but stored by the index of each denomination in the vault
+        for (int i = currency.size() - 1; i >= 0; i--) {
             while (true) {
-                String input = JOptionPane.showInputDialog(null, "Enter the number of instances for ₱" + denominations[i],
+                String input = JOptionPane.showInputDialog(null, "Enter the number of instances for ₱" + currency.denomination(i),
                         "Change Denomination", JOptionPane.PLAIN_MESSAGE);
     
                 // Check if the input is empty
@@ -197,11 +292,16 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
                 try {
                     int numInstances = Integer.parseInt(input);
-                    if (numInstances >= 0 && numInstances <= 20) {
-                        changeDenominations[i] = numInstances;
+                    if (numInstances >= 0 && numInstances <= capacity) {
+                        changeLock.lock();
+                        try {
+                            coinVault.setCount(i, numInstances);
+                        } finally {
+                            changeLock.unlock();
+                        }
                         break;
                     } else {
-                        JOptionPane.showMessageDialog(null, "Invalid number of instances. Please enter a non-negative value and not exceeding 20.",
+                        JOptionPane.showMessageDialog(null, "Invalid number of instances. Please enter a non-negative value and not exceeding " + capacity + ".",
                                 "Error", JOptionPane.ERROR_MESSAGE);
                     }
                 } catch (NumberFormatException e) {
@@ -215,23 +315,28 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     /**
      * Handles the main vending features of the Special Vending Machine.
      * This method allows the user to select a product, specify the quantity, make payment,
-     * and receive the product and change if applicable. It also handles the specific logic for Fruit Salad.
+     * and receive the product and change if applicable. For a made-to-order product such as the Fruit Salad, the user picks
+     * the products that go into it and any extras, following its recipe.
      * The method keeps running in a loop until the user decides to exit or go back to the main menu.
-     * The selectedFruits set is used to store the fruits selected for the Fruit Salad (Slot 6).
+     * The selectedFruits set is used to store the products picked for made-to-order products.
      * Non-sellable items such as Cheese, Plastic Spoon, Condensed Milk, Evaporated Milk, and Paper Cup are updated accordingly.
      * The change denominations are also updated after each successful transaction.
      */
     @Override
     public void vendingFeatures() {
         while (true) {
-            int[] selectedFruits = new int[3];
-            boolean addCheese = false;
+            int[] chosenSlots = null;
+            String[] addedExtras = null;
             displayProductList();
     
-            String productChoiceStr = JOptionPane.showInputDialog(null, "Select a product (0 to go back):");
+            String productChoiceStr = JOptionPane.showInputDialog(null, "Select a product (0 to go back, C to buy several products with one payment):");
             if (productChoiceStr == null) {
                 return;
             }
+            if (productChoiceStr.trim().equalsIgnoreCase("C")) {
+                cartFeatures();
+                continue;
+            }
     
             int productChoice;
             try {
@@ -243,63 +348,71 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (productChoice == 0) {
                 return;
-            } else if (productChoice >= 1 && productChoice <= NUM_SLOTS) {
+            } else if (productChoice >= 1 && productChoice <= numSlots) {
                 int selectedSlot = productChoice - 1;
-                if (selectedSlot == 6 && fruitSaladIsNotAvailable()) {
-                    JOptionPane.showMessageDialog(null, "Fruit Salad is not available. Please choose another product.");
+                Recipe recipe = recipes[selectedSlot];
+                if (recipe != null && !isRecipeAvailable(selectedSlot)) {
+                    JOptionPane.showMessageDialog(null, recipe.getProduct() + " is not available. Please choose another product.");
                     continue;
-                } else if (instances[selectedSlot] == 0) {
+                } else if (recipe == null && availableInstances(selectedSlot) == 0) {
                     JOptionPane.showMessageDialog(null, "Slot #" + productChoice + " is empty. Please choose another product.");
                     continue;
                 }
     
                 JOptionPane.showMessageDialog(null, "Selected product: " + products[selectedSlot]
-                        + "\nPrice: " + prices[selectedSlot]
+                        + "\nPrice: " + Money.format(prices[selectedSlot])
                         + "\nCalories: " + calories[selectedSlot]);
     
-                int quantityToBuy;
-                double totalPrice;
+                PurchaseTransaction transaction;
 
-                if (selectedSlot == 6) {
-                    selectedFruits = new int[3];
+                if (recipe != null) {
+                    chosenSlots = new int[recipe.getChoices()];
+                    Arrays.fill(chosenSlots, -1);
+                    String choiceName = recipe.getChoiceName();
+                    String slotRange = slotRange(recipe.getChoiceSlots());
                 
-                    for (int i = 0; i < 3; i++) {
-                        int fruitChoice;
+                    for (int i = 0; i < chosenSlots.length; i++) {
+                        int choice;
                         while (true) {
-                            String fruitChoiceStr = JOptionPane.showInputDialog(null, "Pick fruit #" + (i + 1) + " (1-6):");
-                            if (fruitChoiceStr == null) {
+                            String choiceStr = JOptionPane.showInputDialog(null, "Pick " + choiceName + " #" + (i + 1) + " (" + slotRange + "):");
+                            if (choiceStr == null) {
                                 return; // Go back to product selection
-                            } else if (fruitChoiceStr.trim().isEmpty()) {
-                                JOptionPane.showMessageDialog(null, "Please enter a value between 1 and 6.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                            } else if (choiceStr.trim().isEmpty()) {
+                                JOptionPane.showMessageDialog(null, "Please enter a value from " + slotRange + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                                 continue;
                             }
                 
                             try {
-                                fruitChoice = Integer.parseInt(fruitChoiceStr);
+                                choice = Integer.parseInt(choiceStr) - 1;
                             } catch (NumberFormatException e) {
                                 JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid number.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                                 continue;
                             }
                 
-                            // Validate if the selected fruit is available and not selected previously
-                            if (fruitChoice < 1 || fruitChoice > 6) {
-                                JOptionPane.showMessageDialog(null, "Invalid input. Please pick a fruit between 1 and 6.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
-                            } else if (fruitChoice < 1 || fruitChoice > NUM_SLOTS || instances[fruitChoice - 1] == 0) {
-                                JOptionPane.showMessageDialog(null, "The selected fruit is not available. Please pick another fruit.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
-                            } else if (selectedFruits[0] == fruitChoice || selectedFruits[1] == fruitChoice || selectedFruits[2] == fruitChoice) {
-                                JOptionPane.showMessageDialog(null, "The selected fruit is already chosen. Please pick another fruit.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                            // Validate if the selected product is available and not selected previously
+                            if (!recipe.isChoiceSlot(choice)) {
+                                JOptionPane.showMessageDialog(null, "Invalid input. Please pick a " + choiceName + " from " + slotRange + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                            } else if (availableInstances(choice) <= 0) {
+                                JOptionPane.showMessageDialog(null, "The selected " + choiceName + " is not available. Please pick another " + choiceName + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                            } else if (isChosen(chosenSlots, choice)) {
+                                JOptionPane.showMessageDialog(null, "The selected " + choiceName + " is already chosen. Please pick another " + choiceName + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                             } else {
-                                selectedFruits[i] = fruitChoice;
+                                chosenSlots[i] = choice;
                                 break;
                             }
                         }
                     }
                 
-                    // Check if cheese should be added to the fruit salad
-                    if (nonSellableInstances.get("Cheese") > 0) {
+                    // Check which extras should be added
+                    List<String> extras = new ArrayList<>();
+                    for (String extra : recipe.getExtras()) {
+                        if (nonSellableCount(extra) <= 0) {
+                            continue;
+                        }
                         String choice;
                         while (true) {
-                            choice = JOptionPane.showInputDialog(null, "Do you want to add cheese to your fruit salad? There will be an additional 25 fee to your total bill (yes/no):");
+                            choice = JOptionPane.showInputDialog(null, "Do you want to add " + extra.toLowerCase() + " to your " + recipe.getProduct().toLowerCase()
+                                    + "? There will be an additional " + Money.format(recipe.getExtraPrice(extra)) + " fee to your total bill (yes/no):");
                             if (choice == null) {
                                 return; // Go back to product selection
                             } else if (choice.trim().isEmpty()) {
@@ -310,23 +423,22 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                                 break;
                             }
                         }
-                        addCheese = choice.equalsIgnoreCase("yes");
-                    }
-                
-                    // Adjust total price if cheese is added
-                    totalPrice = prices[selectedSlot - 1];
-                    if (addCheese) {
-                        totalPrice += 25;
+                        if (choice.equalsIgnoreCase("yes")) {
+                            extras.add(extra);
+                        }
                     }
+                    addedExtras = extras.toArray(new String[0]);
                 
-                    quantityToBuy = 1;
+                    // The picked products and every item the recipe needs are reserved until the purchase is paid or cancelled
+                    transaction = beginRecipePurchase(selectedSlot, chosenSlots, addedExtras);
                 
-                    // Add selected fruits to the selectedFruits set
-                    for (int fruit : selectedFruits) {
-                        this.selectedFruits.add(products[fruit - 1]);
+                    // Add the picked products to the selectedFruits set
+                    for (int chosenSlot : chosenSlots) {
+                        this.selectedFruits.add(products[chosenSlot]);
                     }
                 } else {
-                    // For regular products (non-fruit salad)
+                    // For regular products (not made to order)
+                    int quantityToBuy;
                     while (true) {
                         String quantityToBuyStr = JOptionPane.showInputDialog(null, "Enter the quantity you want to buy:");
                         if (quantityToBuyStr == null) {
@@ -345,26 +457,32 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                             continue;
                         }
                 
-                        if (quantityToBuy <= 0 || quantityToBuy > instances[selectedSlot - 1]) {
-                            JOptionPane.showMessageDialog(null, "Invalid quantity. Please enter a value between 1 and " + instances[selectedSlot - 1] + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                        if (quantityToBuy <= 0 || quantityToBuy > availableInstances(selectedSlot)) {
+                            JOptionPane.showMessageDialog(null, "Invalid quantity. Please enter a value between 1 and " + availableInstances(selectedSlot) + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                         } else {
                             break;
                         }
                     }
                 
-                    totalPrice = prices[selectedSlot - 1] * quantityToBuy;
+                    transaction = beginPurchase(selectedSlot, quantityToBuy);
                 }
 
-                String totalPriceMsg = "Total Price: " + totalPrice;
+                if (transaction.getRejection() != null) {
+                    JOptionPane.showMessageDialog(null, products[selectedSlot] + " is not available. Please choose another product.");
+                    continue;
+                }
+
+                long totalPrice = transaction.getTotalPrice();
+                String totalPriceMsg = "Total Price: " + Money.format(totalPrice);
                 JOptionPane.showMessageDialog(null, totalPriceMsg);
 
-                String denominationMsg = "Accepted denomination: 1, 5, 10, 20, 50, 100, 200, 500, 1000";
-                double amountPaid = 0;
-                while (amountPaid < totalPrice) {
+                String denominationMsg = "Accepted denomination: " + currency;
+                while (!transaction.isFullyPaid()) {
                     String denominationInput = JOptionPane.showInputDialog(null, totalPriceMsg + "\n" + denominationMsg
                             + "\nEnter a coin/bill (0 to cancel):", "Payment", JOptionPane.PLAIN_MESSAGE);
 
                     if (denominationInput == null) {
+                        transaction.cancel();
                         return; // User clicked cancel or closed the dialog
                     }
 
@@ -378,98 +496,1332 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                         int denomination = Integer.parseInt(denominationInput);
                         if (denomination == 0) {
                             break;
-                        } else if (!isValidDenomination(denomination)) {
+                        } else if (!transaction.insert(denomination)) {
                             JOptionPane.showMessageDialog(null, "Invalid denomination. Please enter a valid coin/bill.",
                                     "Error", JOptionPane.ERROR_MESSAGE);
                             continue;
                         }
 
-                        amountPaid += denomination;
-                        JOptionPane.showMessageDialog(null, "Remaining Balance: " + (totalPrice - amountPaid));
+                        JOptionPane.showMessageDialog(null, "Remaining Balance: " + Money.format(totalPrice - transaction.getAmountPaid()));
                     } catch (NumberFormatException e) {
                         JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid integer value.",
                                 "Error", JOptionPane.ERROR_MESSAGE);
                     }
                 }
 
-                if (amountPaid >= totalPrice) {
-                    double change = amountPaid - totalPrice;
+                if (transaction.isFullyPaid()) {
+                    PurchaseResult result = transaction.commit();
                 
                     // Check if the machine can give sufficient change
-                    if (!canGiveSufficientChange(change)) {
-                        JOptionPane.showMessageDialog(null, "Cannot give sufficient change. Please provide a lower payment.\nReturning your payment of \u20B1" + amountPaid, "Insufficient Change", JOptionPane.WARNING_MESSAGE);
+                    if (result.getStatus() == PurchaseResult.Status.INSUFFICIENT_CHANGE) {
+                        JOptionPane.showMessageDialog(null, "Cannot give sufficient change. Please provide a lower payment.\nReturning your payment of \u20B1" + Money.format(result.getAmountPaid()), "Insufficient Change", JOptionPane.WARNING_MESSAGE);
                         return; // Go back to main menu
+                    } else if (!result.isAccepted()) {
+                        JOptionPane.showMessageDialog(null, result.getProduct() + " is no longer available.\nReturning your payment of \u20B1" + Money.format(result.getAmountPaid()), "Product Not Available", JOptionPane.WARNING_MESSAGE);
+                        continue; // Go back to product selection
                     }
                 
-                    // Special Vending Machine specific updates for fruit salad
-                    if (selectedSlot == 6) {
-                        // Display the dispensing messages for the fruit salad
-                        JOptionPane.showMessageDialog(null, "Preparing your fruit salad...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
+                    // Special Vending Machine specific messages for made-to-order products
+                    if (recipe != null) {
+                        // Display the dispensing messages for each step of the recipe
+                        String recipeProduct = recipe.getProduct();
+                        JOptionPane.showMessageDialog(null, "Preparing your " + recipeProduct.toLowerCase() + "...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
                 
-                        for (int i = 0; i < 3; i++) {
-                            JOptionPane.showMessageDialog(null, "Adding " + products[selectedFruits[i] - 1] + "...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
+                        for (int chosenSlot : chosenSlots) {
+                            JOptionPane.showMessageDialog(null, "Adding " + products[chosenSlot] + "...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
                         }
                 
-                        JOptionPane.showMessageDialog(null, "Adding Condensed Milk...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
-                
-                        JOptionPane.showMessageDialog(null, "Adding Evaporated Milk...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
+                        for (String ingredient : recipe.getIngredients()) {
+                            JOptionPane.showMessageDialog(null, "Adding " + ingredient + "...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
+                        }
                 
-                        if (addCheese) {
-                            JOptionPane.showMessageDialog(null, "Adding Cheese...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
-                            // Decrease instances of non-sellable products if cheese is added
-                            if (nonSellableInstances.containsKey("Cheese")) {
-                                nonSellableInstances.put("Cheese", nonSellableInstances.get("Cheese") - 1);
-                            }
+                        for (String extra : addedExtras) {
+                            JOptionPane.showMessageDialog(null, "Adding " + extra + "...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
                         }
                 
-                        JOptionPane.showMessageDialog(null, "Mixing your Fruit Salad...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
-                        JOptionPane.showMessageDialog(null, "Doing some final touches on your Fruit Salad...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
-                        JOptionPane.showMessageDialog(null, "Your Fruit Salad is ready. Thank you for waiting.", "Product Ready", JOptionPane.INFORMATION_MESSAGE);
+                        JOptionPane.showMessageDialog(null, "Mixing your " + recipeProduct + "...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
+                        JOptionPane.showMessageDialog(null, "Doing some final touches on your " + recipeProduct + "...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
                     } else {
-                        // For regular products (non-fruit salad)
+                        // For regular products (not made to order)
                         JOptionPane.showMessageDialog(null, "Dispensing your Product...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
-                
-                        JOptionPane.showMessageDialog(null, "Product Dispensed. Thank you!", "Product Dispensed", JOptionPane.INFORMATION_MESSAGE);
                     }               
 
-                    updateChangeDenominations(change, amountPaid); 
-                    updateSales(totalPrice, products[selectedSlot], quantityToBuy);
+                    // The product is dispensed in the background while the next customer makes a selection
+                    result.getCompletion().thenAccept(dispensed -> SwingUtilities.invokeLater(() -> {
+                        if (!dispensed.isCompleted()) {
+                            JOptionPane.showMessageDialog(null, dispensed.getProduct() + " could not be dispensed.\nReturning your payment of \u20B1" + Money.format(dispensed.getAmountPaid()), "Dispense Failed", JOptionPane.ERROR_MESSAGE);
+                        } else if (recipes[dispensed.getSlot()] != null) {
+                            JOptionPane.showMessageDialog(null, "Your " + dispensed.getProduct() + " is ready. Thank you for waiting.", "Product Ready", JOptionPane.INFORMATION_MESSAGE);
+                        } else {
+                            JOptionPane.showMessageDialog(null, dispensed.getProduct() + " Dispensed. Thank you!", "Product Dispensed", JOptionPane.INFORMATION_MESSAGE);
+                        }
+                        if (dispensed.isCompleted()) {
+                            showChange(dispensed);
+                        }
+                    }));
+
+                    continue; // Go back to product selection
+                } else {
+                    transaction.cancel();
+                    JOptionPane.showMessageDialog(null, "Insufficient payment. Transaction cancelled.");
+                    return; // Go back to main menu
+                }
+            } else {
+                JOptionPane.showMessageDialog(null, "Invalid choice. Please select a valid product or 0 to go back.");
+            }
+        }
+    }
 
-                    // Reduce instances and set slot to null if instances become 0
-                    nonSellableInstances.put("Plastic Spoon", nonSellableInstances.get("Plastic Spoon") - 1); 
-                    nonSellableInstances.put("Condensed Milk", nonSellableInstances.get("Condensed Milk") - 1);
-                    nonSellableInstances.put("Evaporated Milk", nonSellableInstances.get("Evaporated Milk") - 1);
-                    nonSellableInstances.put("Paper Cup", nonSellableInstances.get("Paper Cup") - 1);
+    /**
+     * Lets the customer fill a cart with several regular products, then pay for all of them at once.
+     * The change is given once for the whole cart, and every product is dispensed in one batch.
+     * Made-to-order products are ordered one at a time from the product selection.
+     */
+    private void cartFeatures() {
+        PurchaseCart cart = beginCart();
+        while (true) {
+            displayProductList();
+            String cartMsg = cart.isEmpty() ? "The cart is empty." : "Cart: " + cart.getProduct() + "\nTotal Price: " + Money.format(cart.getTotalPrice());
+            String choiceStr = JOptionPane.showInputDialog(null, cartMsg + "\n\nSelect a product to add"
+                    + (cart.isEmpty() ? "" : ", C to check out,") + " or 0 to empty the cart and go back:");
+            if (choiceStr == null || choiceStr.trim().equals("0")) {
+                cart.cancel();
+                return;
+            }
+            if (!cart.isEmpty() && choiceStr.trim().equalsIgnoreCase("C")) {
+                break;
+            }
 
-                    if (selectedSlot == 6) {
-                        for (int i = 0; i < 3; i++) {
-                            instances[selectedFruits[i] - 1] -= 1;
-                        }
+            int selectedSlot;
+            try {
+                selectedSlot = Integer.parseInt(choiceStr.trim()) - 1;
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid number.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                continue;
+            }
+            if (selectedSlot < 0 || selectedSlot >= numSlots || products[selectedSlot] == null) {
+                JOptionPane.showMessageDialog(null, "Invalid choice. Please select a valid product.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                continue;
+            } else if (recipes[selectedSlot] != null) {
+                JOptionPane.showMessageDialog(null, products[selectedSlot] + " is made to order. Please order it on its own.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                continue;
+            }
+            int available = availableInstances(selectedSlot) - cart.getQuantity(selectedSlot);
+            if (available <= 0) {
+                JOptionPane.showMessageDialog(null, "Slot #" + (selectedSlot + 1) + " has no more " + products[selectedSlot] + " to add.");
+                continue;
+            }
+
+            String quantityStr = JOptionPane.showInputDialog(null, "Selected product: " + products[selectedSlot]
+                    + "\nPrice: " + Money.format(prices[selectedSlot]) + "\nEnter the quantity you want to add (1 to " + available + "):");
+            if (quantityStr == null) {
+                continue;
+            }
+            try {
+                int quantity = Integer.parseInt(quantityStr.trim());
+                if (quantity <= 0 || quantity > available) {
+                    JOptionPane.showMessageDialog(null, "Invalid quantity. Please enter a value between 1 and " + available + ".", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+                } else if (cart.add(selectedSlot, quantity).getRejection() != null) {
+                    JOptionPane.showMessageDialog(null, products[selectedSlot] + " is not available. Please choose another product.");
+                }
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid number.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
+            }
+        }
+
+        String totalPriceMsg = "Cart: " + cart.getProduct() + "\nTotal Price: " + Money.format(cart.getTotalPrice());
+        String denominationMsg = "Accepted denomination: " + currency;
+        while (!cart.isFullyPaid()) {
+            String denominationInput = JOptionPane.showInputDialog(null, totalPriceMsg + "\n" + denominationMsg
+                    + "\nRemaining Balance: " + Money.format(cart.getRemainingBalance())
+                    + "\nEnter a coin/bill (0 to cancel):", "Payment", JOptionPane.PLAIN_MESSAGE);
+            if (denominationInput == null || denominationInput.trim().equals("0")) {
+                PurchaseResult result = cart.cancel();
+                JOptionPane.showMessageDialog(null, "Transaction cancelled." + (result.getAmountPaid() > 0
+                        ? "\nReturning your payment of \u20B1" + Money.format(result.getAmountPaid()) : ""));
+                return;
+            }
+            try {
+                if (!cart.insert(Integer.parseInt(denominationInput.trim()))) {
+                    JOptionPane.showMessageDialog(null, "Invalid denomination. Please enter a valid coin/bill.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid integer value.",
+                        "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        PurchaseResult result = cart.commit();
+        if (result.getStatus() == PurchaseResult.Status.INSUFFICIENT_CHANGE) {
+            JOptionPane.showMessageDialog(null, "Cannot give sufficient change. Please provide a lower payment.\nReturning your payment of \u20B1" + Money.format(result.getAmountPaid()), "Insufficient Change", JOptionPane.WARNING_MESSAGE);
+            return;
+        } else if (!result.isAccepted()) {
+            JOptionPane.showMessageDialog(null, "Some products in the cart are no longer available.\nReturning your payment of \u20B1" + Money.format(result.getAmountPaid()), "Product Not Available", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        // The whole cart is dispensed in the background while the next customer makes a selection
+        JOptionPane.showMessageDialog(null, "Dispensing your Products...\nPlease wait.", "Dispensing Product", JOptionPane.INFORMATION_MESSAGE);
+        result.getCompletion().thenAccept(dispensed -> SwingUtilities.invokeLater(() -> {
+            if (dispensed.isCompleted()) {
+                JOptionPane.showMessageDialog(null, dispensed.getProduct() + " Dispensed. Thank you!", "Product Dispensed", JOptionPane.INFORMATION_MESSAGE);
+                showChange(dispensed);
+            } else {
+                JOptionPane.showMessageDialog(null, dispensed.getProduct() + " could not be dispensed.\nReturning your payment of \u20B1" + Money.format(dispensed.getAmountPaid()), "Dispense Failed", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+
+    /**
+     * Shows the change of a purchase once its products are dispensed, since the change is only held until then.
+     *
+     * @param dispensed The completed purchase.
+     */
+    private void showChange(PurchaseResult dispensed) {
+        long change = dispensed.getChange();
+        JOptionPane.showMessageDialog(null, "Change: \u20B1" + Money.format(change));
+        if (change > 0) {
+            displayChangeBreakdown(dispensed.getChangeGiven());
+        }
+    }
+
+    /**
+     * Starts a purchase of a regular product without any user interface.
+     * Made-to-order products such as the Fruit Salad are started with beginRecipePurchase instead.
+     *
+     * @param slot     The zero-based slot of the product.
+     * @param quantity The quantity to buy.
+     * @return The transaction that receives the payment for the purchase.
+     */
+    @Override
+    public PurchaseTransaction beginPurchase(int slot, int quantity) {
+        PurchaseEvents.Selection event = new PurchaseEvents.Selection();
+        event.begin();
+        PurchaseTransaction transaction = selectProduct(slot, quantity);
+        event.finish(this, transaction);
+        if (transaction.getRejection() != null) {
+            metrics.purchaseRejected(transaction.getRejection());
+        }
+        return transaction;
+    }
+
+    /**
+     * Checks a selection against the current stock, as the body of beginPurchase.
+     *
+     * @param slot     The zero-based slot of the product.
+     * @param quantity The quantity to buy.
+     * @return The transaction that receives the payment for the purchase.
+     */
+    private PurchaseTransaction selectProduct(int slot, int quantity) {
+        if (slot < 0 || slot >= numSlots || recipes[slot] != null) {
+            return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.INVALID_SELECTION);
+        }
+        ReentrantLock slotLock = slotLocks[slot];
+        slotLock.lock();
+        try {
+            if (products[slot] == null) {
+                return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.INVALID_SELECTION);
+            }
+            if (availableInstances(slot) == 0) {
+                return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.OUT_OF_STOCK);
+            }
+            if (quantity <= 0 || quantity > availableInstances(slot)) {
+                return new PurchaseTransaction(this, slot, quantity, PurchaseResult.Status.INVALID_SELECTION);
+            }
+            return new PurchaseTransaction(this, slot, products[slot], quantity, prices[slot] * quantity, null, null);
+        } finally {
+            slotLock.unlock();
+        }
+    }
+
+    /**
+     * Starts an order of a made-to-order product without any user interface. The picked products and every
+     * non-sellable item of the recipe are checked and reserved in one step, while holding the locks of every slot
+     * involved and the items lock, so no other purchase can take them while the customer pays. The reservation is
+     * released if the transaction is cancelled or the purchase is rejected.
+     *
+     * @param slot        The zero-based slot of the made-to-order product.
+     * @param chosenSlots The zero-based slots of the products picked by the customer.
+     * @param extras      The extras added by the customer, or null for none.
+     * @return The transaction that receives the payment for the order.
+     */
+    public PurchaseTransaction beginRecipePurchase(int slot, int[] chosenSlots, String[] extras) {
+        PurchaseEvents.Selection event = new PurchaseEvents.Selection();
+        event.begin();
+        PurchaseTransaction transaction = selectRecipe(slot, chosenSlots, extras);
+        event.finish(this, transaction);
+        if (transaction.getRejection() != null) {
+            metrics.purchaseRejected(transaction.getRejection());
+        }
+        return transaction;
+    }
+
+    /**
+     * Checks and reserves the components of an order, as the body of beginRecipePurchase.
+     *
+     * @param slot        The zero-based slot of the made-to-order product.
+     * @param chosenSlots The zero-based slots of the products picked by the customer.
+     * @param extras      The extras added by the customer, or null for none.
+     * @return The transaction that receives the payment for the order.
+     */
+    private PurchaseTransaction selectRecipe(int slot, int[] chosenSlots, String[] extras) {
+        Recipe recipe = slot >= 0 && slot < numSlots ? recipes[slot] : null;
+        if (recipe == null || !recipe.isValidOrder(chosenSlots, extras)) {
+            return new PurchaseTransaction(this, slot, 1, PurchaseResult.Status.INVALID_SELECTION);
+        }
+        String[] orderExtras = extras != null && extras.length > 0 ? extras.clone() : null;
+
+        int[] lockedSlots = slotsToLock(slot, chosenSlots);
+        lockSlots(lockedSlots);
+        itemsLock.lock();
+        try {
+            if (products[slot] == null || !recipeComponentsAvailable(recipe, chosenSlots, orderExtras)) {
+                return new PurchaseTransaction(this, slot, 1, PurchaseResult.Status.OUT_OF_STOCK);
+            }
+            reserveComponents(recipe, chosenSlots, orderExtras, 1);
+            long totalPrice = prices[slot] + recipe.extrasPrice(orderExtras);
+            return new PurchaseTransaction(this, slot, products[slot], 1, totalPrice, chosenSlots.clone(), orderExtras);
+        } finally {
+            itemsLock.unlock();
+            stockChanged(lockedSlots);
+            unlockSlots(lockedSlots);
+        }
+    }
+
+    /**
+     * Get the recipe of the made-to-order product in a slot.
+     *
+     * @param slot The zero-based slot.
+     * @return The recipe, or null if the slot does not hold a made-to-order product.
+     */
+    public Recipe getRecipe(int slot) {
+        return slot >= 0 && slot < numSlots ? recipes[slot] : null;
+    }
+
+    /**
+     * Check if a slot holds a custom product, which is emptied once it sells out: any slot after the fruits
+     * that is not a made-to-order product.
+     *
+     * @param slot The zero-based slot.
+     * @return true if the slot holds a custom product, false otherwise.
+     */
+    private boolean isCustomSlot(int slot) {
+        return slot >= fruits.length && recipes[slot] == null;
+    }
+
+    /**
+     * Starts a purchase of a Fruit Salad without any user interface.
+     *
+     * @param fruitSlots The zero-based slots of the three different fruits to use.
+     * @param addCheese  Whether cheese is added for an additional fee.
+     * @return The transaction that receives the payment for the Fruit Salad.
+     */
+    public PurchaseTransaction beginFruitSaladPurchase(int[] fruitSlots, boolean addCheese) {
+        return beginRecipePurchase(FRUIT_SALAD_SLOT, fruitSlots, addCheese ? new String[] { "Cheese" } : null);
+    }
+
+    /**
+     * Releases what a transaction reserved when it was started. The components of a made-to-order product are put back;
+     * a regular product is only reserved once it is paid, so nothing needs to be released.
+     *
+     * @param transaction The transaction that was cancelled.
+     */
+    @Override
+    public void cancelPurchase(PurchaseTransaction transaction) {
+        if (transaction.getBehavior() != this) {
+            throw new IllegalArgumentException("The transaction belongs to another vending machine.");
+        }
+        metrics.purchaseRejected(PurchaseResult.Status.CANCELLED);
+        int[] componentSlots = transaction.getComponentSlots();
+        if (componentSlots == null) {
+            return;
+        }
+        int[] lockedSlots = slotsToLock(transaction.getSlot(), componentSlots);
+        lockSlots(lockedSlots);
+        itemsLock.lock();
+        try {
+            reserveComponents(recipes[transaction.getSlot()], componentSlots, transaction.getExtras(), -1);
+        } finally {
+            itemsLock.unlock();
+            stockChanged(lockedSlots);
+            unlockSlots(lockedSlots);
+        }
+    }
+
+    /**
+     * Completes a paid purchase. Checks the stock and the available change, then gives the change and
+     * reserves the product while it is dispensed in the background. The components of a made-to-order product were
+     * already reserved when the order was started, and are released if the purchase is rejected.
+     * The sales and the instances are only updated once the product has been dispensed.
+     * Only the locks of the slots used by the purchase are held, so purchases from other slots run at the same time.
+     *
+     * @param transaction The transaction to complete.
+     * @return The result of the purchase. An accepted purchase has the DISPENSING status.
+     */
+    @Override
+    public PurchaseResult commitPurchase(PurchaseTransaction transaction) {
+        if (transaction.getBehavior() != this) {
+            throw new IllegalArgumentException("The transaction belongs to another vending machine.");
+        }
+        int slot = transaction.getSlot();
+        int quantity = transaction.getQuantity();
+        long totalPrice = transaction.getTotalPrice();
+        long amountPaid = transaction.getAmountPaid();
+        long change = amountPaid - totalPrice;
+        int[] componentSlots = transaction.getComponentSlots();
+        String[] extras = transaction.getExtras();
+        int[] changeGiven;
+
+        int[] lockedSlots = slotsToLock(slot, componentSlots);
+        lockSlots(lockedSlots);
+        itemsLock.lock();
+        try {
+            if (componentSlots == null && (!transaction.getProduct().equals(products[slot]) || availableInstances(slot) < quantity)) {
+                return rejectPurchase(PurchaseResult.Status.OUT_OF_STOCK, transaction);
+            }
+            if (amountPaid < totalPrice) {
+                if (componentSlots != null) {
+                    reserveComponents(recipes[slot], componentSlots, extras, -1);
+                }
+                return rejectPurchase(PurchaseResult.Status.INSUFFICIENT_PAYMENT, transaction);
+            }
+            changeGiven = reserveChange(slot, transaction.getProduct(), amountPaid, change);
+            if (changeGiven == null) {
+                if (componentSlots != null) {
+                    reserveComponents(recipes[slot], componentSlots, extras, -1);
+                }
+                return rejectPurchase(PurchaseResult.Status.INSUFFICIENT_CHANGE, transaction);
+            }
+
+            if (componentSlots == null) {
+                reserved[slot] += quantity;
+            }
+        } finally {
+            itemsLock.unlock();
+            stockChanged(lockedSlots);
+            unlockSlots(lockedSlots);
+        }
+
+        long committedNanos = System.nanoTime();
+        PurchaseEvents.Dispense dispenseEvent = new PurchaseEvents.Dispense();
+        dispenseEvent.begin();
+        CompletableFuture<PurchaseResult> completion = dispensePipeline.dispense(slot, quantity)
+                .handleAsync((dispensed, failure) -> {
+                    dispenseEvent.finish(this, slot, transaction.getProduct(), totalPrice, failure == null ? "DISPENSED" : "FAILED");
+                    PurchaseResult result = completeDispense(transaction, change, changeGiven, failure == null);
+                    metrics.purchaseFinished(result, System.nanoTime() - committedNanos);
+                    return result;
+                }, dispensePipeline.getCompletionExecutor());
+        return new PurchaseResult(slot, transaction.getProduct(), quantity, totalPrice, amountPaid, change, changeGiven, completion);
+    }
+
+    /**
+     * Rejects a paid purchase and counts its outcome.
+     *
+     * @param status      The reason the purchase is rejected.
+     * @param transaction The transaction being committed.
+     * @return The result of the rejected purchase.
+     */
+    private PurchaseResult rejectPurchase(PurchaseResult.Status status, PurchaseTransaction transaction) {
+        metrics.purchaseRejected(status);
+        return PurchaseResult.rejected(status, transaction);
+    }
+
+    /**
+     * Finishes a purchase once the dispense is done. A dispensed product is taken out of the instances and recorded as sold.
+     * If the product could not be dispensed, the reservation is released, the non-sellable items are put back,
+     * and the held change is put back, so the whole payment is returned.
+     *
+     * @param transaction The transaction that was dispensed.
+     * @param change      The change already given to the customer.
+     * @param changeGiven The coins and bills given as change.
+     * @param dispensed   Whether the product was dispensed.
+     * @return The final result of the purchase.
+     */
+    private PurchaseResult completeDispense(PurchaseTransaction transaction, long change, int[] changeGiven, boolean dispensed) {
+        int slot = transaction.getSlot();
+        int quantity = transaction.getQuantity();
+        long totalPrice = transaction.getTotalPrice();
+        long amountPaid = transaction.getAmountPaid();
+        int[] componentSlots = transaction.getComponentSlots();
+
+        int[] lockedSlots = slotsToLock(slot, componentSlots);
+        lockSlots(lockedSlots);
+        try {
+            settleLine(transaction, dispensed);
+            settleChange(amountPaid, changeGiven, dispensed);
+            if (!dispensed) {
+                return new PurchaseResult(PurchaseResult.Status.DISPENSE_FAILED, slot, transaction.getProduct(), quantity, totalPrice, amountPaid, amountPaid);
+            }
+        } finally {
+            stockChanged(lockedSlots);
+            unlockSlots(lockedSlots);
+        }
+        return new PurchaseResult(PurchaseResult.Status.COMPLETED, slot, transaction.getProduct(), quantity, totalPrice, amountPaid, change, changeGiven);
+    }
+
+    /**
+     * Releases the reservation of one dispensed line, and takes a dispensed product out of the instances and records it as sold.
+     * The non-sellable items of a made-to-order product that could not be dispensed are put back.
+     * The caller must hold the locks of the slots the line uses.
+     *
+     * @param line      The transaction of the line.
+     * @param dispensed Whether the product was dispensed.
+     */
+    private void settleLine(PurchaseTransaction line, boolean dispensed) {
+        int slot = line.getSlot();
+        int quantity = line.getQuantity();
+        int[] componentSlots = line.getComponentSlots();
+        if (componentSlots != null) {
+            for (int componentSlot : componentSlots) {
+                reserved[componentSlot] -= 1;
+            }
+        } else {
+            reserved[slot] -= quantity;
+        }
+
+        if (!dispensed) {
+            if (componentSlots != null) {
+                itemsLock.lock();
+                try {
+                    useNonSellableItems(recipes[slot], line.getExtras(), 1);
+                } finally {
+                    itemsLock.unlock();
+                }
+            }
+            return;
+        }
+
+        if (componentSlots != null) {
+            Recipe recipe = recipes[slot];
+            itemsLock.lock();
+            try {
+                holdNonSellableItems(recipe, line.getExtras(), -1);
+            } finally {
+                itemsLock.unlock();
+            }
+            recordSale(line.getTotalPrice(), line.getProduct(), quantity, recipeDetail(recipe, componentSlots, line.getExtras()));
+            for (int componentSlot : componentSlots) {
+                instances[componentSlot] -= 1;
+            }
+        } else {
+            updateSales(line.getTotalPrice(), line.getProduct(), quantity);
+            instances[slot] -= quantity;
+
+            // Reduce instances and set a custom slot to null if instances become 0
+            if (isCustomSlot(slot) && instances[slot] == 0) {
+                products[slot] = null;
+                prices[slot] = 0;
+                calories[slot] = 0;
+            }
+        }
+    }
+
+    /**
+     * Starts a cart for several products paid with one payment. Made-to-order products are added to the cart with
+     * beginRecipePurchase, which reserves their components as usual.
+     *
+     * @return The empty cart.
+     */
+    @Override
+    public PurchaseCart beginCart() {
+        return new PurchaseCart(this);
+    }
+
+    /**
+     * Completes a paid cart. Checks the stock of every regular line with the quantities of the same slot added together,
+     * then gives the change for the combined total at once and reserves every line while they are dispensed in one batch.
+     * The components of made-to-order lines were already reserved when they were ordered, and are released if the cart
+     * is rejected. The locks of every slot the cart uses are taken in slot order, then the items lock, as for a single purchase.
+     *
+     * @param cart The cart to complete.
+     * @return The result of the cart. An accepted cart has the DISPENSING status.
+     */
+    @Override
+    public PurchaseResult commitCart(PurchaseCart cart) {
+        if (cart.getBehavior() != this) {
+            throw new IllegalArgumentException("The cart belongs to another vending machine.");
+        }
+        if (cart.isEmpty()) {
+            return rejectCart(PurchaseResult.Status.INVALID_SELECTION, cart);
+        }
+        List<PurchaseTransaction> lines = cart.getLines();
+        long totalPrice = cart.getTotalPrice();
+        long amountPaid = cart.getAmountPaid();
+        long change = amountPaid - totalPrice;
+        int[] changeGiven;
+
+        int[] lockedSlots = cartSlots(lines);
+        lockSlots(lockedSlots);
+        itemsLock.lock();
+        try {
+            PurchaseResult.Status rejection = null;
+            for (PurchaseTransaction line : lines) {
+                int slot = line.getSlot();
+                if (line.getComponentSlots() == null
+                        && (!line.getProduct().equals(products[slot]) || availableInstances(slot) < cart.getQuantity(slot))) {
+                    rejection = PurchaseResult.Status.OUT_OF_STOCK;
+                    break;
+                }
+            }
+            if (rejection == null && amountPaid < totalPrice) {
+                rejection = PurchaseResult.Status.INSUFFICIENT_PAYMENT;
+            }
+            changeGiven = rejection == null ? reserveChange(-1, cart.getProduct(), amountPaid, change) : null;
+            if (rejection == null && changeGiven == null) {
+                rejection = PurchaseResult.Status.INSUFFICIENT_CHANGE;
+            }
+            if (rejection != null) {
+                releaseComponents(lines);
+                return rejectCart(rejection, cart);
+            }
+
+            for (PurchaseTransaction line : lines) {
+                if (line.getComponentSlots() == null) {
+                    reserved[line.getSlot()] += line.getQuantity();
+                }
+            }
+        } finally {
+            itemsLock.unlock();
+            stockChanged(lockedSlots);
+            unlockSlots(lockedSlots);
+        }
+
+        int[] slots = new int[lines.size()];
+        int[] quantities = new int[lines.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = lines.get(i).getSlot();
+            quantities[i] = lines.get(i).getQuantity();
+        }
+        long committedNanos = System.nanoTime();
+        PurchaseEvents.Dispense dispenseEvent = new PurchaseEvents.Dispense();
+        dispenseEvent.begin();
+        CompletableFuture<PurchaseResult> completion = dispensePipeline.dispenseBatch(slots, quantities)
+                .handleAsync((dispensed, failure) -> {
+                    dispenseEvent.finish(this, -1, cart.getProduct(), totalPrice, failure == null ? "DISPENSED" : "FAILED");
+                    PurchaseResult result = completeCart(cart, lockedSlots, change, changeGiven, failure == null);
+                    metrics.purchaseFinished(result, System.nanoTime() - committedNanos);
+                    return result;
+                }, dispensePipeline.getCompletionExecutor());
+        return new PurchaseResult(-1, cart.getProduct(), cart.getQuantity(), totalPrice, amountPaid, change, changeGiven, completion);
+    }
+
+    /**
+     * Rejects a paid cart and counts its outcome.
+     *
+     * @param status The reason the cart is rejected.
+     * @param cart   The cart being committed.
+     * @return The result of the rejected cart.
+     */
+    private PurchaseResult rejectCart(PurchaseResult.Status status, PurchaseCart cart) {
+        metrics.purchaseRejected(status);
+        return PurchaseResult.rejected(status, cart);
+    }
+
+    /**
+     * Finishes a cart once its batch is dispensed. Every line is settled under the locks of every slot the cart uses.
+     * If the batch could not be dispensed, the held change is put back, so the whole payment is returned.
+     *
+     * @param cart        The cart that was dispensed.
+     * @param lockedSlots The slots the cart uses, in slot order.
+     * @param change      The change already given to the customer.
+     * @param changeGiven The coins and bills given as change.
+     * @param dispensed   Whether the batch was dispensed.
+     * @return The final result of the cart.
+     */
+    private PurchaseResult completeCart(PurchaseCart cart, int[] lockedSlots, long change, int[] changeGiven, boolean dispensed) {
+        long totalPrice = cart.getTotalPrice();
+        long amountPaid = cart.getAmountPaid();
+
+        lockSlots(lockedSlots);
+        try {
+            for (PurchaseTransaction line : cart.getLines()) {
+                settleLine(line, dispensed);
+            }
+            settleChange(amountPaid, changeGiven, dispensed);
+            if (!dispensed) {
+                return new PurchaseResult(PurchaseResult.Status.DISPENSE_FAILED, -1, cart.getProduct(), cart.getQuantity(), totalPrice, amountPaid, amountPaid);
+            }
+        } finally {
+            stockChanged(lockedSlots);
+            unlockSlots(lockedSlots);
+        }
+        return new PurchaseResult(PurchaseResult.Status.COMPLETED, -1, cart.getProduct(), cart.getQuantity(), totalPrice, amountPaid, change, changeGiven);
+    }
+
+    /**
+     * Releases the components reserved by the made-to-order lines of a cart that was cancelled.
+     *
+     * @param cart The cart that was cancelled.
+     */
+    @Override
+    public void cancelCart(PurchaseCart cart) {
+        if (cart.getBehavior() != this) {
+            throw new IllegalArgumentException("The cart belongs to another vending machine.");
+        }
+        metrics.purchaseRejected(PurchaseResult.Status.CANCELLED);
+        List<PurchaseTransaction> lines = cart.getLines();
+        int[] lockedSlots = cartSlots(lines);
+        lockSlots(lockedSlots);
+        itemsLock.lock();
+        try {
+            releaseComponents(lines);
+        } finally {
+            itemsLock.unlock();
+            stockChanged(lockedSlots);
+            unlockSlots(lockedSlots);
+        }
+    }
+
+    /**
+     * Releases the components of every made-to-order line of a cart.
+     * The caller must hold the locks of every slot the cart uses and the items lock.
+     *
+     * @param lines The lines of the cart.
+     */
+    private void releaseComponents(List<PurchaseTransaction> lines) {
+        for (PurchaseTransaction line : lines) {
+            if (line.getComponentSlots() != null) {
+                reserveComponents(recipes[line.getSlot()], line.getComponentSlots(), line.getExtras(), -1);
+            }
+        }
+    }
+
+    /**
+     * Get every slot the lines of a cart use, each once, in slot order.
+     *
+     * @param lines The lines of the cart.
+     * @return The slots to lock.
+     */
+    private static int[] cartSlots(List<PurchaseTransaction> lines) {
+        return lines.stream()
+                .flatMapToInt(line -> Arrays.stream(slotsToLock(line.getSlot(), line.getComponentSlots())))
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    /**
+     * Takes out or puts back the non-sellable items used by one order of a recipe. The caller must hold the items lock.
+     *
+     * @param recipe The recipe of the order.
+     * @param extras The additional non-sellable items, or null for none.
+     * @param delta  -1 to take the items out, 1 to put them back.
+     */
+    private void useNonSellableItems(Recipe recipe, String[] extras, int delta) {
+        for (String item : recipe.getRequiredItems()) {
+            setNonSellable(item, nonSellableInstances.getOrDefault(item, 0) + delta);
+        }
+        if (extras != null) {
+            for (String item : extras) {
+                setNonSellable(item, nonSellableInstances.getOrDefault(item, 0) + delta);
+            }
+        }
+        holdNonSellableItems(recipe, extras, -delta);
+    }
+
+    /**
+     * Counts non-sellable items taken for orders that are not sold yet, so a snapshot can show the items as if those
+     * orders had not started. The caller must hold the items lock.
+     *
+     * @param recipe The recipe of the order.
+     * @param extras The additional non-sellable items, or null for none.
+     * @param count  1 when the items are taken, -1 when they are put back or sold.
+     */
+    private void holdNonSellableItems(Recipe recipe, String[] extras, int count) {
+        for (String item : recipe.getRequiredItems()) {
+            heldItems.merge(item, count, Integer::sum);
+        }
+        if (extras != null) {
+            for (String item : extras) {
+                heldItems.merge(item, count, Integer::sum);
+            }
+        }
+    }
+
+    /**
+     * Reserves or releases every component of one order of a recipe: the picked products and the non-sellable items.
+     * The caller must hold the locks of the picked slots and the items lock.
+     *
+     * @param recipe      The recipe of the order.
+     * @param chosenSlots The zero-based slots of the picked products.
+     * @param extras      The additional non-sellable items, or null for none.
+     * @param count       1 to reserve the components, -1 to release them.
+     */
+    private void reserveComponents(Recipe recipe, int[] chosenSlots, String[] extras, int count) {
+        for (int chosenSlot : chosenSlots) {
+            reserved[chosenSlot] += count;
+        }
+        useNonSellableItems(recipe, extras, -count);
+    }
+
+    /**
+     * Get the number of instances of a non-sellable item.
+     *
+     * @param item The name of the item.
+     * @return The number of instances, or 0 if the item was never stocked.
+     */
+    private int nonSellableCount(String item) {
+        itemsLock.lock();
+        try {
+            return nonSellableInstances.getOrDefault(item, 0);
+        } finally {
+            itemsLock.unlock();
+        }
+    }
+
+    /**
+     * Takes the change for a purchase out of the change denominations if they can pay it out exactly.
+     * The check and the payout happen under the change lock, so two purchases can never give out the same coin.
+     * The change and the payment are both held until the products are dispensed: settleChange then adds the payment
+     * to the change denominations, or puts the change back so the customer gets exactly the amount paid.
+     *
+     * @param slot       The zero-based slot of the purchase, or -1 for a cart.
+     * @param product    The name of the product being paid for.
+     * @param amountPaid The amount inserted by the customer.
+     * @param change     The amount of change to be given in centavos.
+     * @return The number of instances of each denomination given as change, or null if the change cannot be given.
+     */
+    private int[] reserveChange(int slot, String product, long amountPaid, long change) {
+        PurchaseEvents.ChangeCheck check = new PurchaseEvents.ChangeCheck();
+        check.begin();
+        changeLock.lock();
+        try {
+            boolean sufficient = coinVault.canPay(change);
+            check.finish(this, slot, product, change, sufficient ? "SUFFICIENT" : "INSUFFICIENT");
+            if (!sufficient) {
+                metrics.changeRefused();
+                return null;
+            }
+            PurchaseEvents.ChangeUpdate update = new PurchaseEvents.ChangeUpdate();
+            update.begin();
+            int[] changeGiven = coinVault.giveChange(change, 0);
+            holdChange(changeGiven, 1);
+            update.finish(this, slot, product, change, "PAID_OUT");
+            return changeGiven;
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Settles the change held by reserveChange once the products are dispensed. A dispensed purchase adds its payment to the
+     * change denominations; a failed one puts the change back, since the customer gets the payment back as it was inserted.
+     *
+     * @param amountPaid  The amount inserted by the customer.
+     * @param changeGiven The coins and bills held as change.
+     * @param dispensed   Whether the products were dispensed.
+     */
+    private void settleChange(long amountPaid, int[] changeGiven, boolean dispensed) {
+        changeLock.lock();
+        try {
+            holdChange(changeGiven, -1);
+            if (dispensed) {
+                coinVault.deposit(amountPaid);
+            } else {
+                coinVault.putBack(changeGiven);
+            }
+        } finally {
+            changeLock.unlock();
+        }
+    }
+
+    /**
+     * Counts change taken out for purchases still being dispensed, so a snapshot can show the change denominations as if
+     * those purchases had not started. The caller must hold the change lock.
+     *
+     * @param changeGiven The coins and bills of one purchase.
+     * @param count       1 when the change is taken out, -1 when it is settled.
+     */
+    private void holdChange(int[] changeGiven, int count) {
+        for (int i = 0; i < heldChange.length; i++) {
+            heldChange[i] += count * changeGiven[i];
+        }
+    }
+
+    /**
+     * Get the slots a purchase uses, in slot order: the picked products and the slot of a made-to-order product, or the slot of the product.
+     *
+     * @param slot           The zero-based slot of the product.
+     * @param componentSlots The slots of the picked products, or null for a regular product.
+     * @return The slots to lock, in slot order.
+     */
+    private static int[] slotsToLock(int slot, int[] componentSlots) {
+        if (componentSlots == null) {
+            return new int[] { slot };
+        }
+        int[] slots = Arrays.copyOf(componentSlots, componentSlots.length + 1);
+        slots[componentSlots.length] = slot;
+        Arrays.sort(slots);
+        return slots;
+    }
+
+    private void lockSlots(int[] slots) {
+        for (int slot : slots) {
+            slotLocks[slot].lock();
+        }
+    }
+
+    private void unlockSlots(int[] slots) {
+        for (int i = slots.length - 1; i >= 0; i--) {
+            slotLocks[slots[i]].unlock();
+        }
+    }
+
+    /**
+     * Get the number of instances in a slot that are not reserved by a purchase being dispensed.
+     * The caller must hold the lock of the slot.
+     *
+     * @param slot The zero-based slot.
+     * @return The number of instances that can still be sold.
+     */
+    private int availableInstances(int slot) {
+        return instances[slot] - reserved[slot];
+    }
+
+    /**
+     * Sets the model for the time taken to dispense each product.
+     *
+     * @param latencyModel The latency model to use for later purchases.
+     */
+    @Override
+    public void setDispenseLatencyModel(DispenseLatencyModel latencyModel) {
+        dispensePipeline.setLatencyModel(latencyModel);
+    }
+
+    /**
+     * Sets the executor that finishes each purchase once its products are dispensed.
+     *
+     * @param executor The executor to use for later purchases.
+     */
+    @Override
+    public void setDispenseExecutor(Executor executor) {
+        dispensePipeline.setCompletionExecutor(executor);
+    }
+
+    /**
+     * Checks if the picked products and the non-sellable items needed for one order of a recipe are all in stock.
+     * The caller must hold the locks of the picked slots and the items lock.
+     *
+     * @param recipe      The recipe of the order.
+     * @param chosenSlots The zero-based slots of the picked products.
+     * @param extras      The additional non-sellable items, or null for none.
+     * @return true if every component is available, false otherwise.
+     */
+    private boolean recipeComponentsAvailable(Recipe recipe, int[] chosenSlots, String[] extras) {
+        for (int chosenSlot : chosenSlots) {
+            if (products[chosenSlot] == null || availableInstances(chosenSlot) <= 0) {
+                return false;
+            }
+        }
+        for (String item : recipe.getRequiredItems()) {
+            if (nonSellableInstances.getOrDefault(item, 0) <= 0) {
+                return false;
+            }
+        }
+        if (extras != null) {
+            for (String item : extras) {
+                if (nonSellableInstances.getOrDefault(item, 0) <= 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Loads a product into a slot without any user interface, replacing what the slot held before.
+     * For the slot of a made-to-order product only the price is used, since the product is made from other slots.
+     *
+     * @param slot     The zero-based slot to load.
+     * @param product  The name of the product.
+     * @param price    The price of the product in centavos, a whole number of the smallest denomination.
+     * @param quantity The quantity of the product (not exceeding the maximum per slot).
+     * @param calories The calories of the product.
+     */
+    @Override
+    public void stockSlot(int slot, String product, long price, int quantity, int calories) {
+        if (slot < 0 || slot >= numSlots) {
+            throw new IllegalArgumentException("Invalid slot: " + slot);
+        }
+        if (!currency.isPayable(price)) {
+            throw new IllegalArgumentException("Invalid price: " + Money.format(price));
+        }
+        slotLocks[slot].lock();
+        try {
+            if (recipes[slot] != null) {
+                products[slot] = recipes[slot].getProduct();
+                prices[slot] = price;
+                this.instances[slot] = maxProductsPerSlot;
+                this.calories[slot] = computeRecipeCalories(slot);
+                return;
+            }
+            int instances = Math.min(quantity, maxProductsPerSlot);
+            this.products[slot] = product;
+            this.prices[slot] = price;
+            this.instances[slot] = instances;
+            this.initialInstances[slot] = instances;
+            this.calories[slot] = calories;
+            caloriesChanged(slot);
+        } finally {
+            stockChanged(slot);
+            slotLocks[slot].unlock();
+        }
+    }
+
+    /**
+     * Sets the number of instances of a denomination available as change without any user interface.
+     *
+     * @param denomination The value of the coin or bill.
+     * @param count        The number of instances (not exceeding the maximum stored instances).
+     */
+    @Override
+    public void stockChange(int denomination, int count) {
+        int index = currency.indexOf(denomination);
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid denomination: " + denomination);
+        }
+        changeLock.lock();
+        try {
+            coinVault.setCount(index, Math.min(count, coinVault.getCapacity()));
+        } finally {
+            changeLock.unlock();
+        }
+    }
+    /**
+     * Applies the rows of a restock manifest for this vending machine as one batch, including the non-sellable items.
+     * Every row is checked against the stock as it would be after the rows before it, and the batch is applied only if
+     * every row is valid, so a rejected batch leaves the vending machine unchanged. The whole batch is checked and
+     * applied under every lock, so a purchase sees the vending machine either before or after the restock.
+     * Made-to-order products are made from other slots and cannot be restocked themselves.
+     *
+     * @param batch The rows for this vending machine.
+     * @throws IllegalArgumentException If any row is invalid, listing every problem.
+     */
+    @Override
+    public void restock(RestockManifest.Batch batch) {
+        List<String> problems = new ArrayList<>(batch.getProblems());
+        lockAll();
+        try {
+            String[] newProducts = products.clone();
+            long[] newPrices = prices.clone();
+            int[] newInstances = instances.clone();
+            int[] newCalories = calories.clone();
+            double[] newInitialInstances = initialInstances.clone();
+            Map<String, Integer> newItems = new LinkedHashMap<>();
+            for (RestockManifest.Line line : batch.getLines()) {
+                int slot = line.getSlot();
+                if (line.isItem()) {
+                    String item = line.getProduct();
+                    int count = line.instancesAfter(newItems.getOrDefault(item, nonSellableInstances.getOrDefault(item, 0)));
+                    if (!nonSellableInstances.containsKey(item)) {
+                        problems.add(line.problem("there is no non-sellable item " + item + "."));
+                    } else if (count > maxProductsPerSlot) {
+                        problems.add(line.problem(item + " holds at most " + maxProductsPerSlot + " instances, not " + count + "."));
                     } else {
-                        instances[selectedSlot] -= quantityToBuy;
+                        newItems.put(item, count);
+                    }
+                    continue;
+                } else if (slot >= numSlots) {
+                    problems.add(line.problem("there is no slot " + (slot + 1) + "."));
+                    continue;
+                } else if (recipes[slot] != null) {
+                    problems.add(line.problem("slot " + (slot + 1) + " holds the made-to-order " + recipes[slot].getProduct() + "."));
+                    continue;
+                }
+                String product = line.getProduct() != null ? line.getProduct() : newProducts[slot];
+                boolean loading = product != null && !product.equals(newProducts[slot]);
+                int count = loading ? line.getQuantity() : line.instancesAfter(newInstances[slot]);
+                if (product == null) {
+                    problems.add(line.problem("slot " + (slot + 1) + " is empty and the row names no product."));
+                } else if (loading && (newInstances[slot] > 0 || reserved[slot] > 0)) {
+                    problems.add(line.problem("slot " + (slot + 1) + " still holds " + newProducts[slot] + "."));
+                } else if (loading && line.getPrice() < 0) {
+                    problems.add(line.problem("the new product " + product + " needs a price."));
+                } else if (line.getPrice() >= 0 && !currency.isPayable(line.getPrice())) {
+                    problems.add(line.problem("the price " + Money.format(line.getPrice()) + " is not a whole number of \u20B1" + currency.smallestDenomination() + "."));
+                } else if (count > maxProductsPerSlot) {
+                    problems.add(line.problem("slot " + (slot + 1) + " holds at most " + maxProductsPerSlot + " products, not " + count + "."));
+                } else if (count < reserved[slot]) {
+                    problems.add(line.problem("slot " + (slot + 1) + " has " + reserved[slot] + " products being dispensed or ordered."));
+                } else {
+                    newProducts[slot] = product;
+                    newInstances[slot] = count;
+                    if (line.getPrice() >= 0) {
+                        newPrices[slot] = line.getPrice();
+                    }
+                    if (line.getCalories() >= 0 || loading) {
+                        newCalories[slot] = Math.max(0, line.getCalories());
+                    }
+                    if (loading) {
+                        newInitialInstances[slot] = count;
+                    }
+                }
+            }
+            if (!problems.isEmpty()) {
+                throw new IllegalArgumentException("Restock of " + batch.getMachine() + " rejected: " + String.join(" ", problems));
+            }
+
+            for (int slot = 0; slot < numSlots; slot++) {
+                if (recipes[slot] != null) {
+                    continue; // Computed from the slots it is made from
+                }
+                boolean caloriesChanged = newCalories[slot] != calories[slot];
+                products[slot] = newProducts[slot];
+                prices[slot] = newPrices[slot];
+                instances[slot] = newInstances[slot];
+                calories[slot] = newCalories[slot];
+                initialInstances[slot] = newInitialInstances[slot];
+                if (caloriesChanged) {
+                    caloriesChanged(slot);
+                }
+            }
+            for (Map.Entry<String, Integer> item : newItems.entrySet()) {
+                setNonSellable(item.getKey(), item.getValue());
+            }
+            for (int slot = 0; slot < numSlots; slot++) {
+                stockChanged(slot);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Writes the products, stock, and change of the vending machine as a compact binary snapshot.
+     * Sales are not included, because they are restored from the sales journal, but the number of journal records is,
+     * so loadState can replay the sales recorded after the snapshot against the stock and change. Purchases still being
+     * dispensed are left out, as if they had not started, since their sales are not in the journal yet.
+     *
+     * @param out The output the snapshot is written to.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        lockAll();
+        try {
+            out.writeInt(numSlots);
+            for (int i = 0; i < numSlots; i++) {
+                MachineSnapshotter.writeNullableString(out, products[i]);
+                out.writeLong(prices[i]);
+                out.writeInt(instances[i]);
+                out.writeDouble(initialInstances[i]);
+                out.writeInt(calories[i]);
+            }
+            out.writeInt(currency.size());
+            for (int i = 0; i < currency.size(); i++) {
+                out.writeInt(coinVault.getCount(i) + heldChange[i]);
+            }
+            out.writeInt(nonSellableInstances.size());
+            for (Map.Entry<String, Integer> item : nonSellableInstances.entrySet()) {
+                out.writeUTF(item.getKey());
+                out.writeInt(item.getValue() + heldItems.getOrDefault(item.getKey(), 0));
+            }
+            synchronized (salesLock) {
+                out.writeLong(salesJournal.size());
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Restores the products, stock, and change of the vending machine from a snapshot written by saveState, then replays
+     * the sales the journal recorded after it. The snapshot is read in full before anything is replaced, so a damaged
+     * snapshot leaves the machine unchanged.
+     *
+     * @param in The input the snapshot is read from.
+     * @throws IOException If the snapshot cannot be read or does not match this vending machine.
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        int slots = in.readInt();
+        if (slots != numSlots) {
+            throw new IOException("The snapshot has " + slots + " slots, but the vending machine has " + numSlots + ".");
+        }
+        String[] loadedProducts = new String[numSlots];
+        long[] loadedPrices = new long[numSlots];
+        int[] loadedInstances = new int[numSlots];
+        double[] loadedInitialInstances = new double[numSlots];
+        int[] loadedCalories = new int[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            loadedProducts[i] = MachineSnapshotter.readNullableString(in);
+            loadedPrices[i] = in.readLong();
+            loadedInstances[i] = in.readInt();
+            loadedInitialInstances[i] = in.readDouble();
+            loadedCalories[i] = in.readInt();
+        }
+        int denominations = in.readInt();
+        if (denominations != currency.size()) {
+            throw new IOException("The snapshot has " + denominations + " denominations, but the vending machine has " + currency.size() + ".");
+        }
+        int[] loadedChange = new int[currency.size()];
+        for (int i = 0; i < currency.size(); i++) {
+            loadedChange[i] = in.readInt();
+            if (loadedChange[i] < 0) {
+                throw new IOException("The snapshot has " + loadedChange[i] + " instances of \u20B1" + currency.denomination(i) + ".");
+            }
+        }
+        int items = in.readInt();
+        Map<String, Integer> loadedNonSellable = new HashMap<>();
+        for (int i = 0; i < items; i++) {
+            String item = in.readUTF();
+            loadedNonSellable.put(item, in.readInt());
+        }
+        long journalPosition = in.readLong();
+        lockAll();
+        try {
+            System.arraycopy(loadedProducts, 0, products, 0, numSlots);
+            System.arraycopy(loadedPrices, 0, prices, 0, numSlots);
+            System.arraycopy(loadedInstances, 0, instances, 0, numSlots);
+            System.arraycopy(loadedInitialInstances, 0, initialInstances, 0, numSlots);
+            System.arraycopy(loadedCalories, 0, calories, 0, numSlots);
+            coinVault.restore(loadedChange);
+            nonSellableInstances.clear();
+            nonSellableInstances.putAll(loadedNonSellable);
+            replaySalesAfter(journalPosition);
+            rebuildRecipeState();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * Brings restored stock and change up to date with the sales and collections recorded in the journal after the
+     * snapshot was taken, so a restart after a crash does not sell the same products twice. A sale takes its quantity out
+     * of the slot holding the product, or for a made-to-order product, takes the components recorded with it. Its price
+     * is added to the change denominations as the largest denominations it can be made of, since the journal does not
+     * record the coins paid and given. The caller must hold every lock.
+     *
+     * @param journalPosition The number of journal records the snapshot already includes.
+     */
+    private void replaySalesAfter(long journalPosition) {
+        salesJournal.replay(journalPosition, Long.MAX_VALUE, new SalesJournal.RecordVisitor() {
+            @Override
+            public void sale(String product, long totalPrice, int quantity, long timeMillis) {
+                sale(product, totalPrice, quantity, timeMillis, 0);
+            }
+
+            @Override
+            public void sale(String product, long totalPrice, int quantity, long timeMillis, int detail) {
+                for (int i = 0; i < numSlots; i++) {
+                    if (recipes[i] != null && recipes[i].getProduct().equals(product)) {
+                        replayRecipeSale(recipes[i], detail);
+                        break;
+                    } else if (recipes[i] == null && product.equals(products[i])) {
+                        instances[i] = Math.max(0, instances[i] - quantity);
+                        if (isCustomSlot(i) && instances[i] == 0) {
+                            products[i] = null;
+                            prices[i] = 0;
+                            calories[i] = 0;
+                        }
+                        break;
+                    }
+                }
+                coinVault.deposit(totalPrice);
+            }
+
+            @Override
+            public void collection(long amount, long timeMillis) {
+                coinVault.withdraw(amount);
+            }
+        });
+    }
+
+    /**
+     * Takes the components of one replayed order of a recipe out of the stock: the picked products and extras recorded
+     * with the sale, and the non-sellable items every order uses. The caller must hold every lock.
+     *
+     * @param recipe The recipe of the order.
+     * @param detail The components recorded by recipeDetail.
+     */
+    private void replayRecipeSale(Recipe recipe, int detail) {
+        int[] choiceSlots = recipe.getChoiceSlots();
+        for (int i = 0; i < choiceSlots.length && i < 8; i++) {
+            if ((detail & (1 << i)) != 0) {
+                instances[choiceSlots[i]] = Math.max(0, instances[choiceSlots[i]] - 1);
+            }
+        }
+        List<String> items = new ArrayList<>(Arrays.asList(recipe.getRequiredItems()));
+        String[] extras = recipe.getExtras();
+        for (int i = 0; i < extras.length && i < 8; i++) {
+            if ((detail & (0x100 << i)) != 0) {
+                items.add(extras[i]);
+            }
+        }
+        for (String item : items) {
+            nonSellableInstances.put(item, Math.max(0, nonSellableInstances.getOrDefault(item, 0) - 1));
+        }
+    }
+
+    /**
+     * Describes the components of an order of a recipe in the 16 bits of detail the sales journal keeps with a sale:
+     * the low byte has a bit for each picked slot, by its place among the choice slots of the recipe, and the high byte
+     * a bit for each extra, by its place among the extras of the recipe. Only the first eight of each are recorded.
+     *
+     * @param recipe      The recipe of the order.
+     * @param chosenSlots The zero-based slots of the picked products.
+     * @param extras      The additional non-sellable items, or null for none.
+     * @return The detail of the sale.
+     */
+    private static int recipeDetail(Recipe recipe, int[] chosenSlots, String[] extras) {
+        int detail = 0;
+        int[] choiceSlots = recipe.getChoiceSlots();
+        for (int i = 0; i < choiceSlots.length && i < 8; i++) {
+            for (int chosenSlot : chosenSlots) {
+                if (chosenSlot == choiceSlots[i]) {
+                    detail |= 1 << i;
+                }
+            }
+        }
+        if (extras != null) {
+            List<String> recipeExtras = Arrays.asList(recipe.getExtras());
+            for (String extra : extras) {
+                int index = recipeExtras.indexOf(extra);
+                if (index >= 0 && index < 8) {
+                    detail |= 0x100 << index;
+                }
+            }
+        }
+        return detail;
+    }
 
-                        if (selectedSlot == 7){
-                            if (instances[7] == 0) {
-                                products[7] = null;
-                                prices[7] = 0.0;
-                                calories[7] = 0;
-                            }
-                        }
-                    }
+    /**
+     * Takes every slot lock in slot order, then the items lock and the change lock, for changes that affect the whole vending machine.
+     */
+    private void lockAll() {
+        for (ReentrantLock slotLock : slotLocks) {
+            slotLock.lock();
+        }
+        itemsLock.lock();
+        changeLock.lock();
+    }
 
-                    JOptionPane.showMessageDialog(null, "Change: \u20B1" + change);
-                    if (change > 0) {
-                        displayChangeBreakdown(change);
-                    }
+    /**
+     * Releases the locks taken by lockAll.
+     */
+    private void unlockAll() {
+        changeLock.unlock();
+        itemsLock.unlock();
+        for (int i = numSlots - 1; i >= 0; i--) {
+            slotLocks[i].unlock();
+        }
+    }
 
-                    continue; // Go back to product selection
-                } else {
-                    JOptionPane.showMessageDialog(null, "Insufficient payment. Transaction cancelled.");
-                    return; // Go back to main menu
-                }
-            } else {
-                JOptionPane.showMessageDialog(null, "Invalid choice. Please select a valid product or 0 to go back.");
-            }
+
+    /**
+     * Sets the quantity of a non-sellable item without any user interface.
+     *
+     * @param item     The name of the non-sellable item, such as "Paper Cup" or "Cheese".
+     * @param quantity The quantity of the item (not exceeding the maximum per slot).
+     */
+    public void stockNonSellable(String item, int quantity) {
+        itemsLock.lock();
+        try {
+            setNonSellable(item, Math.min(quantity, maxProductsPerSlot));
+        } finally {
+            itemsLock.unlock();
         }
     }
 
@@ -494,6 +1846,7 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
             message.append("5. Remove a Product\n");
             message.append("6. Edit a Product\n");
             message.append("7. Sales Summary\n");
+            message.append("8. Sales Entries\n");
             message.append("0. Exit Maintenance Menu\n");
     
             String choiceString;
@@ -531,6 +1884,9 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                     case 7:
                         salesSummary();
                         break;
+                    case 8:
+                        viewSalesEntries();
+                        break;
                     case 0:
                         return;
                     default:
@@ -550,13 +1906,17 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      */
     @Override
     public boolean isValidDenomination(int denomination) {
-        int[] validDenominations = { 1, 5, 10, 20, 50, 100, 200, 500, 1000 };
-        for (int valid : validDenominations) {
-            if (denomination == valid) {
-                return true;
-            }
-        }
-        return false;
+        return currency.isDenomination(denomination);
+    }
+
+    /**
+     * Get the currency whose coins and bills the vending machine accepts and gives as change.
+     *
+     * @return The currency.
+     */
+    @Override
+    public CurrencyDefinition getCurrency() {
+        return currency;
     }
 
     /**
@@ -567,23 +1927,18 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      * @param amountPaid The amount paid by the customer.
      */
     @Override
-    public void updateChangeDenominations(double change, double amountPaid) {
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (change / denominations[i]);
-            if (numDenominationUsed > changeDenominations[i]) {
-                numDenominationUsed = changeDenominations[i];
-            }
-            changeDenominations[i] -= numDenominationUsed;
-            change -= numDenominationUsed * denominations[i];
-    
-            // Add the instances for the denominations used by the user as payment
-            int numDenominationPaid = (int) (amountPaid / denominations[i]);
-            changeDenominations[i] += numDenominationPaid;
-            amountPaid -= numDenominationPaid * denominations[i];
+    public void updateChangeDenominations(long change, long amountPaid) {
+        PurchaseEvents.ChangeUpdate event = new PurchaseEvents.ChangeUpdate();
+        event.begin();
+        changeLock.lock();
+        try {
+            coinVault.giveChange(change, amountPaid);
+        } finally {
+            changeLock.unlock();
         }
+        event.finish(this, -1, null, change, "PAID_OUT");
     }
-    
+
     /**
      * Checks if the vending machine has sufficient change to provide for the given change amount.
      *
@@ -591,16 +1946,22 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      * @return true if the machine can provide sufficient change, false otherwise.
      */
     @Override
-    public boolean canGiveSufficientChange(double change) {
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationNeeded = (int) (change / denominations[i]);
-            if (numDenominationNeeded > changeDenominations[i]) {
-                return false;
-            }
-            change -= numDenominationNeeded * denominations[i];
+    public boolean canGiveSufficientChange(long change) {
+        // The vault finds exact payouts that taking the largest denomination first would miss
+        PurchaseEvents.ChangeCheck event = new PurchaseEvents.ChangeCheck();
+        event.begin();
+        boolean sufficient;
+        changeLock.lock();
+        try {
+            sufficient = coinVault.canPay(change);
+        } finally {
+            changeLock.unlock();
         }
-        return true;
+        event.finish(this, -1, null, change, sufficient ? "SUFFICIENT" : "INSUFFICIENT");
+        if (!sufficient) {
+            metrics.changeRefused();
+        }
+        return sufficient;
     }
 
     /**
@@ -610,15 +1971,31 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      * @param change The change amount provided to the customer.
      */
     @Override
-    public void displayChangeBreakdown(double change) {
+    public void displayChangeBreakdown(long change) {
         StringBuilder message = new StringBuilder("Change Breakdown:\n");
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (change / denominations[i]);
+        for (int i = 0; i < currency.size(); i++) {
+            long denomination = Money.ofPesos(currency.denomination(i));
+            int numDenominationUsed = (int) (change / denomination);
             if (numDenominationUsed > 0) {
-                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(denominations[i]).append("\n");
+                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(currency.denomination(i)).append("\n");
+            }
+            change -= numDenominationUsed * denomination;
+        }
+    
+        JOptionPane.showMessageDialog(null, message.toString(), "Change Breakdown", JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    /**
+     * Displays the coins and bills that were given to the user as change.
+     *
+     * @param changeGiven The number of instances of each denomination given, ordered from the largest denomination.
+     */
+    public void displayChangeBreakdown(int[] changeGiven) {
+        StringBuilder message = new StringBuilder("Change Breakdown:\n");
+        for (int i = 0; i < currency.size(); i++) {
+            if (changeGiven[i] > 0) {
+                message.append("  ").append(changeGiven[i]).append(" x \u20B1").append(currency.denomination(i)).append("\n");
             }
-            change -= numDenominationUsed * denominations[i];
         }
     
         JOptionPane.showMessageDialog(null, message.toString(), "Change Breakdown", JOptionPane.INFORMATION_MESSAGE);
@@ -636,9 +2013,8 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
         while (true) {
             StringBuilder message = new StringBuilder("\nCurrent Denomination Instances:\n");
-            int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-            for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-                message.append((i + 1)).append(". \u20B1").append(denominations[i]).append(" (Remaining: ").append(changeDenominations[i]).append(")\n");
+            for (int i = 0; i < currency.size(); i++) {
+                message.append((i + 1)).append(". \u20B1").append(currency.denomination(i)).append(" (Remaining: ").append(coinVault.getCount(i)).append(")\n");
             }
     
             String denominationChoiceString;
@@ -662,10 +2038,10 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
                 if (denominationChoice == 0) {
                     return; // Go back to maintenance menu
-                } else if (denominationChoice >= 1 && denominationChoice <= NUM_DENOMINATIONS) {
+                } else if (denominationChoice >= 1 && denominationChoice <= currency.size()) {
                     int selectedDenomination = denominationChoice - 1;
-                    int currentInstances = changeDenominations[selectedDenomination];
-                    int maxReplenishable = MAX_STORED_DENOMINATION_INSTANCES - currentInstances;
+                    int currentInstances = coinVault.getCount(selectedDenomination);
+                    int maxReplenishable = coinVault.getSpace(selectedDenomination);
     
                     String maxReplenishableMessage = "Maximum Replenishable Instances: " + maxReplenishable;
                     String instancesToAddString;
@@ -692,8 +2068,13 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                         JOptionPane.showMessageDialog(null, "Exceeded the maximum replenishable instances. Setting to " + instancesToAdd + ".", "Maximum Replenishable Instances Exceeded", JOptionPane.WARNING_MESSAGE);
                     }
     
-                    changeDenominations[selectedDenomination] += instancesToAdd;
-                    JOptionPane.showMessageDialog(null, "Successfully replenished " + instancesToAdd + " instances of \u20B1" + denominations[selectedDenomination] + ".", "Replenishment Successful", JOptionPane.INFORMATION_MESSAGE);
+                    changeLock.lock();
+                    try {
+                        instancesToAdd = coinVault.add(selectedDenomination, instancesToAdd);
+                    } finally {
+                        changeLock.unlock();
+                    }
+                    JOptionPane.showMessageDialog(null, "Successfully replenished " + instancesToAdd + " instances of \u20B1" + currency.denomination(selectedDenomination) + ".", "Replenishment Successful", JOptionPane.INFORMATION_MESSAGE);
                     return; // Go back to maintenance menu after replenishment
                 } else {
                     JOptionPane.showMessageDialog(null, "Invalid choice. Please select a valid denomination or 0 to go back.", "Invalid Choice", JOptionPane.ERROR_MESSAGE);
@@ -707,21 +2088,67 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     /**
      * Updates the sales records after a successful product purchase.
      * This method increments both the total sales and collected sales with the given total price.
-     * It also adds the sold product with its details to the productsSold list.
+     * It also records the sold product with its details in the sales journal.
      *
      * @param totalPrice   The total price of the purchased product(s).
      * @param product      The name of the product sold.
      * @param quantitySold The quantity of the product sold.
      */
     @Override
-    public void updateSales(double totalPrice, String product, int quantitySold) {
+    public void updateSales(long totalPrice, String product, int quantitySold) {
+        recordSale(totalPrice, product, quantitySold, 0);
+    }
+
+    /**
+     * Records a sale with the detail the journal keeps for it, as updateSales does.
+     *
+     * @param totalPrice   The total price of the purchased product(s).
+     * @param product      The name of the product sold.
+     * @param quantitySold The quantity of the product sold.
+     * @param detail       The components of a made-to-order product from recipeDetail, or 0 for any other product.
+     */
+    private void recordSale(long totalPrice, String product, int quantitySold, int detail) {
+        PurchaseEvents.SalesUpdate event = new PurchaseEvents.SalesUpdate();
+        event.begin();
         // Increment both total sales and collected sales
-        totalSales += totalPrice;
-        collectedSales += totalPrice;
+        synchronized (salesLock) {
+            totalSales += totalPrice;
+            collectedSales += totalPrice;
+            productSales.computeIfAbsent(product, ProductSales::new).add(totalPrice, quantitySold);
+
+            // Record the sold product for the sales entries, in the same order as the journal
+            long timeMillis = System.currentTimeMillis();
+            salesLedger.addSale(product, totalPrice, quantitySold, timeMillis);
+            salesJournal.appendSale(product, totalPrice, quantitySold, timeMillis, detail);
+        }
+        event.finish(this, -1, product, totalPrice, "RECORDED");
+    }
+
+    /**
+     * Restores the total and collected sales, the totals of each product, and the sales ledger by replaying the sales journal.
+     */
+    private void recoverSales() {
+        synchronized (salesLock) {
+            totalSales = 0;
+            collectedSales = 0;
+            productSales.clear();
+            salesLedger.clear();
+            salesJournal.replay(new SalesJournal.RecordVisitor() {
+                @Override
+                public void sale(String product, long totalPrice, int quantity, long timeMillis) {
+                    totalSales += totalPrice;
+                    collectedSales += totalPrice;
+                    productSales.computeIfAbsent(product, ProductSales::new).add(totalPrice, quantity);
+                    salesLedger.addSale(product, totalPrice, quantity, timeMillis);
+                }
 
-        // Add the sold product to the sales salesSummary
-        ProductSold soldProduct = new ProductSold(product, totalPrice / quantitySold, quantitySold);
-        productsSold.add(soldProduct);
+                @Override
+                public void collection(long amount, long timeMillis) {
+                    collectedSales -= amount;
+                    salesLedger.addCollection(amount, timeMillis);
+                }
+            });
+        }
     }
     
     /**
@@ -731,19 +2158,30 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      */
     @Override
     public void collectSales() {
+        long salesToCollect;
+        synchronized (salesLock) {
+            salesToCollect = collectedSales;
+        }
+        deductCollectedSales(salesToCollect);
+    }
+
+    /**
+     * Deducts an amount of collected sales from the change denominations.
+     *
+     * @param amount The amount collected in centavos.
+     */
+    private void deductCollectedSales(long amount) {
         // Deduct collected sales from change denominations
-        double remainingCollectedSales = collectedSales;
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (remainingCollectedSales / denominations[i]);
-            if (numDenominationUsed > changeDenominations[i]) {
-                numDenominationUsed = changeDenominations[i];
-            }
-            changeDenominations[i] -= numDenominationUsed;
-            remainingCollectedSales -= numDenominationUsed * denominations[i];
+        long remainingCollectedSales;
+        changeLock.lock();
+        try {
+            remainingCollectedSales = coinVault.withdraw(amount);
+        } finally {
+            changeLock.unlock();
         }
         if (remainingCollectedSales > 0) {
-            System.out.println("Insufficient change denominations for the remaining collected sales: \u20B1" + remainingCollectedSales);
+            metrics.collectionShortfall(remainingCollectedSales);
+            System.out.println("Insufficient change denominations for the remaining collected sales: \u20B1" + Money.format(remainingCollectedSales));
         }
     }
     
@@ -754,33 +2192,43 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      * @param collectedSales The total amount of sales collected from the vending machine.
      */
     @Override
-    public void displayDenominationBreakdown(double collectedSales) {
+    public void displayDenominationBreakdown(long collectedSales) {
         StringBuilder message = new StringBuilder("Denomination Breakdown:\n");
-        int[] denominations = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
-        for (int i = 0; i < NUM_DENOMINATIONS; i++) {
-            int numDenominationUsed = (int) (collectedSales / denominations[i]);
+        for (int i = 0; i < currency.size(); i++) {
+            long denomination = Money.ofPesos(currency.denomination(i));
+            int numDenominationUsed = (int) (collectedSales / denomination);
             if (numDenominationUsed > 0) {
-                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(denominations[i]).append("\n");
-                collectedSales -= numDenominationUsed * denominations[i];
+                message.append("  ").append(numDenominationUsed).append(" x \u20B1").append(currency.denomination(i)).append("\n");
+                collectedSales -= numDenominationUsed * denomination;
             }
         }
         JOptionPane.showMessageDialog(null, message.toString(), "Denomination Breakdown", JOptionPane.INFORMATION_MESSAGE);
     }
 
     /**
-     * Computes the total calories of the Fruit Salad by selecting the three highest-calorie fruits.
+     * Computes the calories of a made-to-order product from the highest-calorie products the customer can pick.
+     * The result is kept in the calories of the slot, and only computed again when the calories of a slot it is made from change.
      *
-     * @return The total calories of the Fruit Salad.
+     * @param slot The zero-based slot of the made-to-order product.
+     * @return The calories of the product, or 0 if the slot does not hold a made-to-order product.
      */
-    public int computeFruitSaladCalories() {
-        // Calculate the calories of the Fruit Salad by selecting the three highest calorie fruits
-        int[] copyOfCalories = Arrays.copyOf(calories, NUM_SLOTS - 1); // Copy calories array without the last element (Fruit Salad)
-        Arrays.sort(copyOfCalories); // Sort in ascending order
-        int fruitSaladCalories = 0;
-        for (int i = NUM_SLOTS - 2; i >= NUM_SLOTS - 2 - 2; i--) { // Select the three highest calorie fruits
-            fruitSaladCalories += copyOfCalories[i];
+    private int computeRecipeCalories(int slot) {
+        Recipe recipe = recipes[slot];
+        if (recipe == null) {
+            return 0;
+        }
+        // Add up the calories of the highest-calorie products that can be picked
+        int[] choiceSlots = recipe.getChoiceSlots();
+        int[] choiceCalories = new int[choiceSlots.length];
+        for (int i = 0; i < choiceSlots.length; i++) {
+            choiceCalories[i] = calories[choiceSlots[i]];
         }
-        return fruitSaladCalories;
+        Arrays.sort(choiceCalories); // Sort in ascending order
+        int recipeCalories = 0;
+        for (int i = choiceCalories.length - 1; i >= choiceCalories.length - recipe.getChoices(); i--) {
+            recipeCalories += choiceCalories[i];
+        }
+        return recipeCalories;
     }
 
     /**
@@ -790,13 +2238,13 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
      */
     public void initializeNonSellableItems() {
         StringBuilder message = new StringBuilder("\nInitialize Non-Sellable Items:\n");
-        String[] nonSellableItems = { "Condensed Milk", "Evaporated Milk", "Paper Cup", "Plastic Spoon", "Cheese" };
+        String[] nonSellableItems = nonSellableItemNames();
         
         for (String item : nonSellableItems) {
             message.append("Item: ").append(item).append("\n");
     
             while (true) {
-                String input = JOptionPane.showInputDialog(null, "Input Quantity (not exceeding 10) for " + item + ":", "Initialize Non-Sellable Items", JOptionPane.QUESTION_MESSAGE);
+                String input = JOptionPane.showInputDialog(null, "Input Quantity (not exceeding " + maxProductsPerSlot + ") for " + item + ":", "Initialize Non-Sellable Items", JOptionPane.QUESTION_MESSAGE);
     
                 if (input == null) {
                     return; // User clicked the 'X' button or pressed 'Cancel', return from the method
@@ -805,11 +2253,11 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                 } else {
                     try {
                         int instances = Integer.parseInt(input);
-                        if (instances > MAX_PRODUCTS_PER_SLOT) {
-                            instances = MAX_PRODUCTS_PER_SLOT;
-                            JOptionPane.showMessageDialog(null, "Quantity cannot exceed 10. Setting to 10.", "Invalid Quantity", JOptionPane.WARNING_MESSAGE);
+                        if (instances > maxProductsPerSlot) {
+                            instances = maxProductsPerSlot;
+                            JOptionPane.showMessageDialog(null, "Quantity cannot exceed " + maxProductsPerSlot + ". Setting to " + maxProductsPerSlot + ".", "Invalid Quantity", JOptionPane.WARNING_MESSAGE);
                         }
-                        nonSellableInstances.put(item, instances);
+                        stockNonSellable(item, instances);
                         break; // Break the loop when valid input is provided
                     } catch (NumberFormatException e) {
                         JOptionPane.showMessageDialog(null, "Invalid input. Please enter a valid number.", "Invalid Input", JOptionPane.ERROR_MESSAGE);
@@ -821,43 +2269,79 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
 
     /**
      * Displays the list of available products in the vending machine in a graphical user interface (GUI).
-     * This method creates a table showing the products' details: slot number, name, price, stock, and calories.
+     * The table shows the products' details: slot number, name, price, stock, and calories. The same window is
+     * reused every time, and its rows are updated as the slots change.
      */
     public void displayProductList() {
-        JFrame frame = new JFrame("Available Products");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-    
-        String[] columnNames = {"Slot", "Product Name", "Price", "Stock", "Calories"};
-        Object[][] data = new Object[NUM_SLOTS][5];
-    
-        for (int i = 0; i < NUM_SLOTS; i++) {
-            data[i][0] = (i + 1);
-    
-            if (i == 6) {
-                data[i][1] = "Fruit Salad";
-                data[i][2] = prices[i];
-                if (fruitSaladIsNotAvailable()) {
-                    data[i][3] = "Not Available";
-                } else {
-                    data[i][3] = "Available";
-                }
-                data[i][4] = computeFruitSaladCalories();
-            } else {
-                data[i][1] = products[i];
-                data[i][2] = prices[i];
-                data[i][3] = instances[i];
-                data[i][4] = calories[i];
+        productTable.show();
+    }
+
+    /**
+     * Get the table model of the products, which reads the slots directly and is updated as they change.
+     *
+     * @return The product table model.
+     */
+    @Override
+    public ProductTableModel getProductTableModel() {
+        return productTable;
+    }
+
+    /**
+     * Adds the counters of this vending machine to a registry, with gauges of the instances in each slot and of each
+     * change denomination. The gauges read the counts without locking, so a scrape may see a count a moment old.
+     *
+     * @param registry The registry.
+     * @param machine  The value of the machine label, which tells the vending machines in one registry apart.
+     */
+    @Override
+    public void registerMetrics(MetricsRegistry registry, String machine) {
+        metrics.register(registry, machine);
+        for (int slot = 0; slot < numSlots; slot++) {
+            int gaugeSlot = slot;
+            if (recipes[slot] == null) {
+                registry.gauge("vending_slot_instances", "Instances of the product in each slot.", () -> instances[gaugeSlot],
+                        "machine", machine, "slot", Integer.toString(slot + 1));
             }
         }
-    
-        DefaultTableModel tableModel = new DefaultTableModel(data, columnNames);
-        JTable table = new JTable(tableModel);
-        JScrollPane scrollPane = new JScrollPane(table);
-        table.setFillsViewportHeight(true);
-    
-        frame.add(scrollPane, BorderLayout.CENTER);
-        frame.pack();
-        frame.setVisible(true);
+        for (int i = 0; i < currency.size(); i++) {
+            int denomination = i;
+            registry.gauge("vending_change_instances", "Instances of each change denomination.", () -> coinVault.getCount(denomination),
+                    "machine", machine, "denomination", Integer.toString(currency.denomination(i)));
+        }
+    }
+
+    /**
+     * Get the counters of this vending machine.
+     *
+     * @return The metrics.
+     */
+    @Override
+    public MachineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get one cell of the product table from the slot arrays. A made-to-order product shows whether it can be
+     * ordered instead of its stock.
+     *
+     * @param slot   The zero-based slot of the row.
+     * @param column The column: 1 for the name, 2 for the price, 3 for the stock, or 4 for the calories.
+     * @return The value of the cell.
+     */
+    private Object productCell(int slot, int column) {
+        switch (column) {
+            case 1:
+                return recipes[slot] != null ? recipes[slot].getProduct() : products[slot];
+            case 2:
+                return Money.format(prices[slot]);
+            case 3:
+                if (recipes[slot] != null) {
+                    return isRecipeAvailable(slot) ? "Available" : "Not Available";
+                }
+                return instances[slot];
+            default:
+                return calories[slot];
+        }
     }
     
     /**
@@ -869,28 +2353,175 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     }
 
     /**
-     * Checks if the Fruit Salad is not available for purchase in the vending machine.
-     * The Fruit Salad will not be available if there are less than four fruit products with zero instances or if any non-sellable item has zero instances.
+     * Checks if a made-to-order product can be ordered: enough different products that can be picked are in stock,
+     * and so is every non-sellable item its recipe needs. Extras are optional and do not affect the availability.
+     * The counts behind the check are kept up to date as the stock changes, so no slot or item is looked at.
      *
-     * @return true if the Fruit Salad is not available, false otherwise.
+     * @param slot The zero-based slot of the made-to-order product.
+     * @return true if the product can be ordered, false otherwise or if the slot does not hold a made-to-order product.
+     */
+    public boolean isRecipeAvailable(int slot) {
+        Recipe recipe = recipes[slot];
+        return recipe != null && products[slot] != null
+                && recipeChoicesInStock.get(slot) >= recipe.getChoices() && recipeItemsMissing.get(slot) == 0;
+    }
+
+    /**
+     * Finds the recipes each slot and each non-sellable item is used by, so a change to one only updates those recipes.
      */
-    public boolean fruitSaladIsNotAvailable() {
-        int numFruitProductsWithZeroInstances = 0;
-        for (int i = 0; i < fruits.length; i++) { // Excluding the Fruit Salad slot (index NUM_SLOTS - 1)
-            if (instances[i] == 0) {
-                numFruitProductsWithZeroInstances++;
+    private void indexRecipes() {
+        // Each recipe adds itself to the slots and items it uses, so this is linear in the slots and recipe sizes
+        List<List<Integer>> slotRecipes = new ArrayList<>(numSlots);
+        for (int slot = 0; slot < numSlots; slot++) {
+            slotRecipes.add(new ArrayList<>());
+        }
+        Map<String, List<Integer>> itemRecipes = new HashMap<>();
+        for (int recipeSlot = 0; recipeSlot < numSlots; recipeSlot++) {
+            if (recipes[recipeSlot] == null) {
+                continue;
+            }
+            for (int slot : recipes[recipeSlot].getChoiceSlots()) {
+                slotRecipes.get(slot).add(recipeSlot);
+            }
+            for (String item : recipes[recipeSlot].getRequiredItems()) {
+                itemRecipes.computeIfAbsent(item, key -> new ArrayList<>()).add(recipeSlot);
             }
         }
-    
-        int numNonSellableItemsWithZeroInstances = 0;
-        for (int instances : nonSellableInstances.values()) {
-            if (instances == 0) {
-                numNonSellableItemsWithZeroInstances++;
+        for (int slot = 0; slot < numSlots; slot++) {
+            recipesUsingSlot[slot] = slotRecipes.get(slot).isEmpty() ? NO_RECIPES : slotRecipes.get(slot).stream().mapToInt(Integer::intValue).toArray();
+        }
+        for (Map.Entry<String, List<Integer>> item : itemRecipes.entrySet()) {
+            recipesUsingItem.put(item.getKey(), item.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * Updates the availability of the made-to-order products after the stock of some slots changed.
+     * The caller must hold the locks of the slots.
+     *
+     * @param slots The zero-based slots that changed.
+     */
+    private void stockChanged(int... slots) {
+        for (int slot : slots) {
+            productTable.slotChanged(slot);
+            boolean nowInStock = products[slot] != null && availableInstances(slot) > 0;
+            if (nowInStock != inStock[slot]) {
+                inStock[slot] = nowInStock;
+                for (int recipeSlot : recipesUsingSlot[slot]) {
+                    recipeChoicesInStock.addAndGet(recipeSlot, nowInStock ? 1 : -1);
+                    productTable.slotChanged(recipeSlot);
+                }
             }
         }
-    
-        return numFruitProductsWithZeroInstances >= 4 || numNonSellableItemsWithZeroInstances > 0;
-    }    
+    }
+
+    /**
+     * Computes the calories of the made-to-order products again after the calories of a slot changed.
+     * The caller must hold the lock of the slot.
+     *
+     * @param slot The zero-based slot that changed.
+     */
+    private void caloriesChanged(int slot) {
+        for (int recipeSlot : recipesUsingSlot[slot]) {
+            calories[recipeSlot] = computeRecipeCalories(recipeSlot);
+            productTable.slotChanged(recipeSlot);
+        }
+    }
+
+    /**
+     * Sets the quantity of a non-sellable item and updates the availability of the made-to-order products that need it.
+     * The caller must hold the items lock.
+     *
+     * @param item     The name of the non-sellable item.
+     * @param quantity The new quantity of the item.
+     */
+    private void setNonSellable(String item, int quantity) {
+        Integer previous = nonSellableInstances.put(item, quantity);
+        boolean wasInStock = previous != null && previous > 0;
+        if (wasInStock != quantity > 0) {
+            for (int recipeSlot : recipesUsingItem.getOrDefault(item, NO_RECIPES)) {
+                recipeItemsMissing.addAndGet(recipeSlot, quantity > 0 ? -1 : 1);
+                productTable.slotChanged(recipeSlot);
+            }
+        }
+    }
+
+    /**
+     * Computes the availability and the calories of every made-to-order product from scratch, after the whole
+     * vending machine was replaced. The caller must hold every lock, or be the only thread using the vending machine.
+     */
+    private void rebuildRecipeState() {
+        Arrays.fill(inStock, false);
+        for (int slot = 0; slot < numSlots; slot++) {
+            recipeChoicesInStock.set(slot, 0);
+            recipeItemsMissing.set(slot, 0);
+        }
+        for (int slot = 0; slot < numSlots; slot++) {
+            stockChanged(slot);
+            if (recipes[slot] != null) {
+                for (String item : recipes[slot].getRequiredItems()) {
+                    if (nonSellableInstances.getOrDefault(item, 0) <= 0) {
+                        recipeItemsMissing.incrementAndGet(slot);
+                    }
+                }
+                calories[slot] = computeRecipeCalories(slot);
+            }
+        }
+        productTable.allChanged();
+    }
+
+    /**
+     * Get the non-sellable items used by the recipes of the vending machine, in the order they are first used.
+     *
+     * @return The names of the non-sellable items.
+     */
+    private String[] nonSellableItemNames() {
+        Set<String> items = new LinkedHashSet<>();
+        for (Recipe recipe : recipes) {
+            if (recipe != null) {
+                items.addAll(Arrays.asList(recipe.getRequiredItems()));
+                items.addAll(Arrays.asList(recipe.getExtras()));
+            }
+        }
+        return items.toArray(new String[0]);
+    }
+
+    /**
+     * Check if a slot has already been picked for an order.
+     *
+     * @param chosenSlots The zero-based slots picked so far, with -1 for the picks not made yet.
+     * @param slot        The zero-based slot.
+     * @return true if the slot has been picked, false otherwise.
+     */
+    private static boolean isChosen(int[] chosenSlots, int slot) {
+        for (int chosenSlot : chosenSlots) {
+            if (chosenSlot == slot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Describes a set of slots for the user, such as "1-6" or "1, 3, 5".
+     *
+     * @param slots The zero-based slots, in ascending order.
+     * @return The one-based slot numbers.
+     */
+    private static String slotRange(int[] slots) {
+        boolean contiguous = true;
+        for (int i = 1; i < slots.length; i++) {
+            contiguous &= slots[i] == slots[i - 1] + 1;
+        }
+        if (contiguous && slots.length > 1) {
+            return (slots[0] + 1) + "-" + (slots[slots.length - 1] + 1);
+        }
+        StringBuilder range = new StringBuilder();
+        for (int slot : slots) {
+            range.append(range.length() > 0 ? ", " : "").append(slot + 1);
+        }
+        return range.toString();
+    }
        
     /**
      * Allows the user to replenish a product's instances in the vending machine.
@@ -917,18 +2548,18 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
             int productChoice = Integer.parseInt(productChoiceString);
             if (productChoice == 0) {
                 return; // Go back to maintenance menu
-            } else if (productChoice >= 1 && productChoice <= NUM_SLOTS) {
+            } else if (productChoice >= 1 && productChoice <= numSlots) {
                 int selectedSlot = productChoice - 1;
     
                 if (products[selectedSlot] == null) {
                     JOptionPane.showMessageDialog(null, "There is no product in Slot " + productChoice + ". Please choose another product.", "Product Not Found", JOptionPane.WARNING_MESSAGE);
-                } else if (selectedSlot == 6) {
-                    JOptionPane.showMessageDialog(null, "Fruit Salad cannot be replenished manually. Please choose another product.", "Invalid Product", JOptionPane.WARNING_MESSAGE);
-                } else if (instances[selectedSlot] >= MAX_PRODUCTS_PER_SLOT) {
+                } else if (recipes[selectedSlot] != null) {
+                    JOptionPane.showMessageDialog(null, products[selectedSlot] + " cannot be replenished manually. Please choose another product.", "Invalid Product", JOptionPane.WARNING_MESSAGE);
+                } else if (instances[selectedSlot] >= maxProductsPerSlot) {
                     JOptionPane.showMessageDialog(null, products[selectedSlot] + " already has the maximum instances. Please choose another product.", "Maximum Instances Reached", JOptionPane.WARNING_MESSAGE);
                 } else {
                     int currentInstances = instances[selectedSlot];
-                    int maxReplenishable = MAX_PRODUCTS_PER_SLOT - currentInstances;
+                    int maxReplenishable = maxProductsPerSlot - currentInstances;
     
                     String message = "Current Instances: " + currentInstances + "\nMaximum Replenishable Instances: " + maxReplenishable;
                     String instancesToAddString;
@@ -949,7 +2580,13 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                         JOptionPane.showMessageDialog(null, "Exceeded the maximum replenishable instances. Setting to " + instancesToAdd + ".", "Maximum Replenishable Instances Exceeded", JOptionPane.WARNING_MESSAGE);
                     }
     
-                    instances[selectedSlot] += instancesToAdd;
+                    slotLocks[selectedSlot].lock();
+                    try {
+                        instances[selectedSlot] += instancesToAdd;
+                        stockChanged(selectedSlot);
+                    } finally {
+                        slotLocks[selectedSlot].unlock();
+                    }
                     JOptionPane.showMessageDialog(null, "Successfully replenished " + instancesToAdd + " instances of " + products[selectedSlot] + ".", "Replenishment Successful", JOptionPane.INFORMATION_MESSAGE);
                     return; // Go back to maintenance menu after replenishment
                 }
@@ -989,10 +2626,10 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
             }
     
             int currentQuantity = nonSellableInstances.get(selecteditem);
-            int maxAvailableQuantity = MAX_PRODUCTS_PER_SLOT - currentQuantity;
+            int maxAvailableQuantity = maxProductsPerSlot - currentQuantity;
     
-            if (currentQuantity == MAX_PRODUCTS_PER_SLOT) {
-                JOptionPane.showMessageDialog(null, "The item " + selecteditem + " already has the maximum quantity of instances (10). Please select another item.", "Maximum Quantity Reached", JOptionPane.WARNING_MESSAGE);
+            if (currentQuantity == maxProductsPerSlot) {
+                JOptionPane.showMessageDialog(null, "The item " + selecteditem + " already has the maximum quantity of instances (" + maxProductsPerSlot + "). Please select another item.", "Maximum Quantity Reached", JOptionPane.WARNING_MESSAGE);
                 continue;
             }
     
@@ -1017,8 +2654,15 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
                 JOptionPane.showMessageDialog(null, "The maximum quantity that can be added for " + selecteditem + " is " + maxAvailableQuantity, "Exceeded Maximum Quantity", JOptionPane.WARNING_MESSAGE);
             }
     
-            nonSellableInstances.put(selecteditem, currentQuantity + quantityToAdd);
-            JOptionPane.showMessageDialog(null, "Quantity of " + selecteditem + " added: " + quantityToAdd + "\nUpdated Quantity: " + nonSellableInstances.get(selecteditem), "Replenishment Successful", JOptionPane.INFORMATION_MESSAGE);
+            int updatedQuantity;
+            itemsLock.lock();
+            try {
+                updatedQuantity = nonSellableInstances.get(selecteditem) + quantityToAdd;
+                setNonSellable(selecteditem, updatedQuantity);
+            } finally {
+                itemsLock.unlock();
+            }
+            JOptionPane.showMessageDialog(null, "Quantity of " + selecteditem + " added: " + quantityToAdd + "\nUpdated Quantity: " + updatedQuantity, "Replenishment Successful", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
     }
@@ -1039,7 +2683,7 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
         // Ask the user to select a slot for the new product
         int selectedSlot;
         while (true) {
-            String slotInput = JOptionPane.showInputDialog(null, "Select a slot for the new product (1 to 8, 0 to go back to maintenance features menu):");
+            String slotInput = JOptionPane.showInputDialog(null, "Select a slot for the new product (1 to " + numSlots + ", 0 to go back to maintenance features menu):");
             if (slotInput == null) {
                 return; // User canceled, go back to maintenance menu
             }
@@ -1052,8 +2696,8 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (selectedSlot == 0) {
                 return; // Go back to maintenance menu
-            } else if (selectedSlot < 1 || selectedSlot > NUM_SLOTS) {
-                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + NUM_SLOTS + ".", "Invalid Slot", JOptionPane.ERROR_MESSAGE);
+            } else if (selectedSlot < 1 || selectedSlot > numSlots) {
+                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + numSlots + ".", "Invalid Slot", JOptionPane.ERROR_MESSAGE);
             } else if (products[selectedSlot - 1] != null) {
                 JOptionPane.showMessageDialog(null, "Slot " + selectedSlot + " is already occupied by " + products[selectedSlot - 1] + ". Please choose another slot.", "Slot Occupied", JOptionPane.ERROR_MESSAGE);
             } else {
@@ -1070,14 +2714,14 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
         int productInstances;
         while (true) {
-            String instancesInput = JOptionPane.showInputDialog(null, "Enter the number of instances (not exceeding 10):");
+            String instancesInput = JOptionPane.showInputDialog(null, "Enter the number of instances (not exceeding " + maxProductsPerSlot + "):");
             try {
                 productInstances = Integer.parseInt(instancesInput);
                 if (productInstances <= 0) {
                     JOptionPane.showMessageDialog(null, "Invalid input. Please enter a positive number of instances.", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-                } else if (productInstances > MAX_PRODUCTS_PER_SLOT) {
-                    productInstances = MAX_PRODUCTS_PER_SLOT;
-                    JOptionPane.showMessageDialog(null, "Instances cannot exceed " + MAX_PRODUCTS_PER_SLOT + ". Setting to " + MAX_PRODUCTS_PER_SLOT + ".", "Exceeded Maximum Instances", JOptionPane.WARNING_MESSAGE);
+                } else if (productInstances > maxProductsPerSlot) {
+                    productInstances = maxProductsPerSlot;
+                    JOptionPane.showMessageDialog(null, "Instances cannot exceed " + maxProductsPerSlot + ". Setting to " + maxProductsPerSlot + ".", "Exceeded Maximum Instances", JOptionPane.WARNING_MESSAGE);
                     break;
                 } else {
                     break;
@@ -1089,11 +2733,15 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
         }
     
         String priceInput = JOptionPane.showInputDialog(null, "Enter the price:");
-        double productPrice;
+        long productPrice;
         try {
-            productPrice = Double.parseDouble(priceInput);
+            productPrice = Money.parse(priceInput);
         } catch (NumberFormatException e) {
-            productPrice = 0.0;
+            productPrice = 0;
+        }
+        if (!currency.isPayable(productPrice)) {
+            JOptionPane.showMessageDialog(null, "The price must be a whole number of \u20B1" + currency.smallestDenomination() + ".", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
     
         String caloriesInput = JOptionPane.showInputDialog(null, "Enter the calories:");
@@ -1105,10 +2753,17 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
         }
     
         // Update the product details in the selected slot
-        products[selectedSlot - 1] = productName;
-        prices[selectedSlot - 1] = productPrice;
-        instances[selectedSlot - 1] = productInstances;
-        calories[selectedSlot - 1] = productCalories;
+        slotLocks[selectedSlot - 1].lock();
+        try {
+            products[selectedSlot - 1] = productName;
+            prices[selectedSlot - 1] = productPrice;
+            instances[selectedSlot - 1] = productInstances;
+            calories[selectedSlot - 1] = productCalories;
+            stockChanged(selectedSlot - 1);
+            caloriesChanged(selectedSlot - 1);
+        } finally {
+            slotLocks[selectedSlot - 1].unlock();
+        }
     
         // Display the updated product list in a message dialog
         message.append("\n\nUpdated Product List:\n");
@@ -1131,7 +2786,7 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
         // Ask the user to select a slot to remove the product from
         int selectedSlot;
         while (true) {
-            String slotInput = JOptionPane.showInputDialog(null, "Select a slot to remove the product from (1 to 8, 0 to go back to maintenance features menu):");
+            String slotInput = JOptionPane.showInputDialog(null, "Select a slot to remove the product from (1 to " + numSlots + ", 0 to go back to maintenance features menu):");
             if (slotInput == null || slotInput.trim().isEmpty()) {
                 JOptionPane.showMessageDialog(null, "No input. Please enter a slot number.", "Invalid Input", JOptionPane.WARNING_MESSAGE);
                 continue;
@@ -1145,8 +2800,8 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (selectedSlot == 0) {
                 return; // Go back to maintenance menu
-            } else if (selectedSlot < 1 || selectedSlot > NUM_SLOTS) {
-                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + NUM_SLOTS + ".", "Invalid Slot", JOptionPane.WARNING_MESSAGE);
+            } else if (selectedSlot < 1 || selectedSlot > numSlots) {
+                JOptionPane.showMessageDialog(null, "Invalid slot. Please select a slot number between 1 and " + numSlots + ".", "Invalid Slot", JOptionPane.WARNING_MESSAGE);
             } else if (products[selectedSlot - 1] == null) {
                 JOptionPane.showMessageDialog(null, "Slot " + selectedSlot + " is vacant. Please choose another slot.", "Slot Vacant", JOptionPane.WARNING_MESSAGE);
             } else {
@@ -1158,10 +2813,17 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
         int option = JOptionPane.showConfirmDialog(null, "Are you sure you want to remove " + products[selectedSlot - 1] + " from Slot " + selectedSlot + "?", "Confirm Removal", JOptionPane.YES_NO_OPTION);
         if (option == JOptionPane.YES_OPTION) {
             // Remove the product from the list
-            products[selectedSlot - 1] = null;
-            prices[selectedSlot - 1] = 0.0;
-            instances[selectedSlot - 1] = 0;
-            calories[selectedSlot - 1] = 0;
+            slotLocks[selectedSlot - 1].lock();
+            try {
+                products[selectedSlot - 1] = null;
+                prices[selectedSlot - 1] = 0;
+                instances[selectedSlot - 1] = 0;
+                calories[selectedSlot - 1] = 0;
+                stockChanged(selectedSlot - 1);
+                caloriesChanged(selectedSlot - 1);
+            } finally {
+                slotLocks[selectedSlot - 1].unlock();
+            }
             message.append("Product has been successfully removed from Slot ").append(selectedSlot).append(".");
         } else {
             message.append("Process canceled. Returning to maintenance features menu.");
@@ -1209,9 +2871,9 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
             if (selectedSlot == 0) {
                 return; // Go back to maintenance menu
-            } else if (selectedSlot < 1 || selectedSlot > NUM_SLOTS) {
+            } else if (selectedSlot < 1 || selectedSlot > numSlots) {
                 JOptionPane.showMessageDialog(null,
-                        "Invalid slot. Please select a slot number between 1 and " + NUM_SLOTS + ".", "Error",
+                        "Invalid slot. Please select a slot number between 1 and " + numSlots + ".", "Error",
                         JOptionPane.ERROR_MESSAGE);
             } else if (products[selectedSlot - 1] == null) {
                 JOptionPane.showMessageDialog(null,
@@ -1241,16 +2903,20 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
             }
         }
     
-        double newPrice = prices[selectedSlot - 1];
+        long newPrice = prices[selectedSlot - 1];
         if (!priceInput.equals("0")) {
             try {
-                newPrice = Double.parseDouble(priceInput);
+                newPrice = Money.parse(priceInput);
             } catch (NumberFormatException e) {
                 JOptionPane.showMessageDialog(null,
                         "Invalid price format. Please enter a valid price (a numeric value) or '0' for no changes.",
                         "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
+            if (!currency.isPayable(newPrice)) {
+                JOptionPane.showMessageDialog(null, "The price must be a whole number of \u20B1" + currency.smallestDenomination() + ".", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
         }
     
         // Ask the user to change the calories
@@ -1284,8 +2950,15 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
         }
     
         // Update the product details
-        prices[selectedSlot - 1] = newPrice;
-        calories[selectedSlot - 1] = newCalories;
+        slotLocks[selectedSlot - 1].lock();
+        try {
+            prices[selectedSlot - 1] = newPrice;
+            calories[selectedSlot - 1] = newCalories;
+            productTable.slotChanged(selectedSlot - 1);
+            caloriesChanged(selectedSlot - 1);
+        } finally {
+            slotLocks[selectedSlot - 1].unlock();
+        }
     
         // Display the updated product list
         message.append("\nUpdated Product List:\n");
@@ -1294,36 +2967,55 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     }
     
     /**
-     * Displays a summary of the vending machine's sales and inventory status.
-     * This method shows the starting inventory, ending inventory, products sold, total sales, and collected sales.
-     * It also allows the user to collect the sales amount and displays the denomination breakdown for change.
+     * Builds the text of the sales summary: the starting inventory, the totals of each product sold, total sales, and collected sales.
+     * The individual sales are listed by salesEntries instead.
+     *
+     * @return The sales summary report.
      */
-    public void salesSummary() {
+    @Override
+    public String salesReport() {
         StringBuilder message = new StringBuilder("\n----- Sales Summary -----\n");
     
         // Display the starting inventory (initialInstances)
         message.append("Starting Inventory:\n");
         message.append("Slot # | Product           | Price | Initial | Calories\n");
-        for (int i = 0; i < NUM_SLOTS; i++) {
-            message.append(String.format("%-6d| %-17s| %-6.2f| %-8.0f| %-8d%n", (i + 1), products[i], prices[i], initialInstances[i], calories[i]));
+        for (int i = 0; i < numSlots; i++) {
+            message.append(String.format("%-6d| %-17s| %-6s| %-8.0f| %-8d%n", (i + 1), products[i], Money.format(prices[i]), initialInstances[i], calories[i]));
         }
     
-        // Display the ending inventory (updated instances)
+        // The ending inventory (updated instances) is shown in the product list window
         message.append("\nEnding Inventory:\n");
-        displayProductList();
     
-        // Display the list of products sold
+        // Display the totals of each product sold, kept up to date by updateSales
         message.append("\nProducts Sold:\n");
-        message.append("Product           | Price | Qty Sold | Total Price\n");
-        for (ProductSold soldProduct : productsSold) {
-            message.append(soldProduct).append("\n");
+        message.append("Product           | Qty Sold | Avg Price | Revenue\n");
+        synchronized (salesLock) {
+            for (ProductSales sales : productSales.values()) {
+                message.append(sales).append("\n");
+            }
+            message.append("\nTotal Sales: \u20B1").append(Money.format(totalSales));
+            message.append("\nCollected Sales: \u20B1").append(Money.format(collectedSales));
+        }
+        return message.toString();
+    }
+
+    /**
+     * Displays a summary of the vending machine's sales and inventory status.
+     * This method shows the starting inventory, ending inventory, products sold, total sales, and collected sales.
+     * It also allows the user to collect the sales amount and displays the denomination breakdown for change.
+     */
+    public void salesSummary() {
+        // Display the ending inventory (updated instances)
+        displayProductList();
+
+        StringBuilder message = new StringBuilder(salesReport());
+        long salesToCollect;
+        synchronized (salesLock) {
+            salesToCollect = collectedSales;
         }
-    
-        message.append("\nTotal Sales: \u20B1").append(totalSales);
-        message.append("\nCollected Sales: \u20B1").append(collectedSales);
     
         // Check if there are any sales to collect
-        if (collectedSales == 0.0) {
+        if (salesToCollect == 0) {
             message.append("\n\nNo sales to collect.");
         } else {
             String collectSalesChoice;
@@ -1337,10 +3029,16 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
             } while (collectSalesChoice.trim().isEmpty());
     
             if (collectSalesChoice.equalsIgnoreCase("y")) {
-                message.append("\n\nTotal amount collected: \u20B1").append(collectedSales);
-                displayDenominationBreakdown(collectedSales);
-                collectSales(); // Deduct collected sales from change denominations
-                collectedSales = 0.0; // Reset collected sales to 0 after collecting
+                message.append("\n\nTotal amount collected: \u20B1").append(Money.format(salesToCollect));
+                displayDenominationBreakdown(salesToCollect);
+                deductCollectedSales(salesToCollect); // Deduct collected sales from change denominations
+                synchronized (salesLock) {
+                    // Sales made while the summary was open stay to be collected next time
+                    long timeMillis = System.currentTimeMillis();
+                    salesLedger.addCollection(salesToCollect, timeMillis);
+                    salesJournal.appendCollection(salesToCollect, timeMillis);
+                    collectedSales -= salesToCollect;
+                }
                 message.append("\n\nCollected sales have been released.");
             } else if (collectSalesChoice.equalsIgnoreCase("n")) {
                 message.append("\n\nSales collection canceled.");
@@ -1351,4 +3049,88 @@ public class SpecialVendingMachineBehavior implements IVendingMachineBehavior {
     
         JOptionPane.showMessageDialog(null, message.toString(), "Sales Summary", JOptionPane.INFORMATION_MESSAGE);
     }
+
+    /**
+     * Builds one page of the sales entries: every sale and sales collection in the order they were recorded.
+     * Only the entries on the page are read from the sales ledger.
+     *
+     * @param page     The zero-based page to show.
+     * @param pageSize The number of entries on each page.
+     * @return The page of sales entries.
+     */
+    @Override
+    public String salesEntries(int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page: " + page + " of size " + pageSize);
+        }
+        synchronized (salesLock) {
+            long entries = salesLedger.size();
+            long pages = Math.max(1, (entries + pageSize - 1) / pageSize);
+            long firstEntry = (long) page * pageSize;
+            StringBuilder message = new StringBuilder(String.format("Sales Entries (page %d of %d, %d entries):%n", page + 1, pages, entries));
+            message.append("#       | Product           | Price | Qty Sold | Total Price\n");
+            for (long entry = firstEntry; entry < Math.min(entries, firstEntry + pageSize); entry++) {
+                message.append(String.format("%-8d| ", entry + 1));
+                if (salesLedger.isCollection(entry)) {
+                    message.append("Collected \u20B1").append(Money.format(salesLedger.getAmount(entry))).append("\n");
+                } else {
+                    message.append(salesLedger.getProductSold(entry)).append("\n");
+                }
+            }
+            return message.toString();
+        }
+    }
+
+    /**
+     * Get the number of entries in the sales ledger, counting both sales and sales collections.
+     *
+     * @return The number of entries.
+     */
+    @Override
+    public long getSalesEntryCount() {
+        synchronized (salesLock) {
+            return salesLedger.size();
+        }
+    }
+
+    /**
+     * Adds a range of the sales entries to a rollup. Sales are blocked only while the range is read,
+     * so a large ledger can be rolled up in ranges while the machine keeps selling.
+     *
+     * @param firstEntry The zero-based index of the first entry to add.
+     * @param maxEntries The most entries to add.
+     * @param rollup     The rollup that receives the sales.
+     */
+    @Override
+    public void rollUpSales(long firstEntry, long maxEntries, SalesRollup rollup) {
+        synchronized (salesLock) {
+            salesLedger.rollUp(firstEntry, maxEntries, rollup);
+        }
+    }
+
+    /**
+     * Displays the sales entries one page at a time, so machines with long sales histories can be browsed without
+     * loading every entry. The user can move to the previous or next page until the window is closed.
+     */
+    public void viewSalesEntries() {
+        int pageSize = 20;
+        int page = 0;
+        while (true) {
+            long pages;
+            synchronized (salesLock) {
+                pages = Math.max(1, (salesLedger.size() + pageSize - 1) / pageSize);
+            }
+            page = (int) Math.min(page, pages - 1);
+            String[] options = { "Previous", "Next", "Close" };
+            int choice = JOptionPane.showOptionDialog(null, salesEntries(page, pageSize), "Sales Entries", JOptionPane.DEFAULT_OPTION,
+                    JOptionPane.PLAIN_MESSAGE, null, options, options[1]);
+            if (choice == 0) {
+                page = Math.max(0, page - 1);
+            } else if (choice == 1) {
+                page++;
+            } else {
+                return;
+            }
+        }
+    }
 }
@@ -0,0 +1,492 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Hosts many Regular and Special vending machines in one program. Every machine is stocked from one shared
+ * ProductCatalog and keeps only its own stock, change, and sales. Each machine runs its work, including finishing each
+ * purchase once it is dispensed, on a SerialExecutor, so the tasks of one machine run one at a time and in order, as if
+ * the machine had a thread of its own, while the whole fleet shares a small thread pool. An idle machine costs no thread
+ * at all, so thousands of machines fit in one program.
+ *
+ * After the customers, every machine is restocked from a manifest, the given one or one that fills every slot back to
+ * the starting stock, to measure how many machines per second a route's manifest is applied to.
+ *
+ * Usage: java VendingFleet [--machines N] [--special-percent P] [--customers PER_MACHINE] [--threads N]
+ * [--stock N] [--coins N] [--journals DIRECTORY] [--restock MANIFEST]
+ */
+public class VendingFleet implements AutoCloseable {
+    private static final int[] SLOT_WEIGHTS = { 14, 10, 12, 6, 8, 5, 15, 30 };
+    private static final int FRUIT_SALAD_SLOT = 6;
+    private static final int FRUIT_SLOTS = 6;
+
+    /**
+     * The types of vending machine a fleet can host.
+     */
+    public enum MachineType {
+        REGULAR,
+        SPECIAL
+    }
+
+    /**
+     * One vending machine in the fleet: its behavior, its sales journal, and the executor its work runs on.
+     */
+    public static class Machine {
+        private final String id;
+        private final MachineType type;
+        private final IVendingMachineBehavior behavior;
+        private final SalesJournal salesJournal;
+        private final SerialExecutor executor;
+
+        private Machine(String id, MachineType type, IVendingMachineBehavior behavior, SalesJournal salesJournal, SerialExecutor executor) {
+            this.id = id;
+            this.type = type;
+            this.behavior = behavior;
+            this.salesJournal = salesJournal;
+            this.executor = executor;
+        }
+
+        /**
+         * Runs a task against the vending machine on its own executor, after every task submitted before it.
+         *
+         * @param task The task, given the behavior of the machine.
+         * @param <T>  The type of the result.
+         * @return A future that completes with the result of the task.
+         */
+        public <T> CompletableFuture<T> submit(Function<IVendingMachineBehavior, T> task) {
+            return CompletableFuture.supplyAsync(() -> task.apply(behavior), executor);
+        }
+
+        /**
+         * Get the identifier of the machine.
+         *
+         * @return The identifier.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Get the type of the machine.
+         *
+         * @return The machine type.
+         */
+        public MachineType getType() {
+            return type;
+        }
+
+        /**
+         * Get the behavior of the machine. It should only be used from tasks submitted to the machine.
+         *
+         * @return The vending machine behavior.
+         */
+        public IVendingMachineBehavior getBehavior() {
+            return behavior;
+        }
+    }
+
+    private final ProductCatalog catalog;
+    private final ExecutorService pool;
+    private final Path journalDirectory;
+    private final Map<String, Machine> machines;
+
+    /**
+     * Constructs an empty VendingFleet.
+     *
+     * @param catalog          The catalog every machine is stocked from.
+     * @param threads          The number of threads shared by all the machines.
+     * @param journalDirectory The directory the sales journal of each machine is kept in, or null for temporary journals.
+     */
+    public VendingFleet(ProductCatalog catalog, int threads, Path journalDirectory) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("A fleet needs at least one thread.");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.catalog = catalog;
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vending-fleet-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.journalDirectory = journalDirectory;
+        this.machines = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a vending machine to the fleet and stocks it from the catalog. A machine with a journal directory recovers
+     * the sales already in its journal.
+     *
+     * @param id                   The identifier of the machine, also used to name its sales journal.
+     * @param type                 The type of vending machine.
+     * @param quantity             The quantity of each product and non-sellable item.
+     * @param coinsPerDenomination The number of instances of each denomination available as change.
+     * @return The new machine.
+     * @throws IOException If the sales journal cannot be opened.
+     */
+    public Machine addMachine(String id, MachineType type, int quantity, int coinsPerDenomination) throws IOException {
+        synchronized (machines) {
+            if (machines.containsKey(id)) {
+                throw new IllegalArgumentException("The fleet already has a machine " + id + ".");
+            }
+        }
+        SalesJournal salesJournal = journalDirectory != null ? SalesJournal.open(journalDirectory.resolve(id + ".journal")) : SalesJournal.temporary();
+        IVendingMachineBehavior behavior = type == MachineType.SPECIAL
+                ? new SpecialVendingMachineBehavior(salesJournal)
+                : new RegularVendingMachineBehavior(salesJournal);
+        behavior.setDispenseLatencyModel(DispenseLatencyModel.none());
+        catalog.stock(behavior, quantity, coinsPerDenomination);
+
+        SerialExecutor executor = new SerialExecutor(id, pool);
+        behavior.setDispenseExecutor(executor);
+        Machine machine = new Machine(id, type, behavior, salesJournal, executor);
+        synchronized (machines) {
+            if (machines.putIfAbsent(id, machine) != null) {
+                salesJournal.close();
+                throw new IllegalArgumentException("The fleet already has a machine " + id + ".");
+            }
+        }
+        return machine;
+    }
+
+    /**
+     * Get a machine of the fleet.
+     *
+     * @param id The identifier of the machine.
+     * @return The machine, or null if the fleet has no machine with that identifier.
+     */
+    public Machine getMachine(String id) {
+        synchronized (machines) {
+            return machines.get(id);
+        }
+    }
+
+    /**
+     * Get every machine of the fleet, in the order they were added.
+     *
+     * @return The machines.
+     */
+    public List<Machine> getMachines() {
+        synchronized (machines) {
+            return new ArrayList<>(machines.values());
+        }
+    }
+
+    /**
+     * Get the number of machines in the fleet.
+     *
+     * @return The number of machines.
+     */
+    public int size() {
+        synchronized (machines) {
+            return machines.size();
+        }
+    }
+
+    /**
+     * The outcome of streaming a restock manifest into the fleet.
+     */
+    public static class RestockReport {
+        private final int applied;
+        private final Map<String, String> rejected;
+
+        private RestockReport(int applied, Map<String, String> rejected) {
+            this.applied = applied;
+            this.rejected = rejected;
+        }
+
+        /**
+         * Get the number of batches applied.
+         *
+         * @return The number of batches applied.
+         */
+        public int getApplied() {
+            return applied;
+        }
+
+        /**
+         * Get the batches that were rejected and why. A rejected batch left its machine unchanged, although a machine
+         * whose rows were split across the manifest may still have taken its first batch.
+         *
+         * @return The problems of each rejected batch, by machine, in manifest order.
+         */
+        public Map<String, String> getRejected() {
+            return rejected;
+        }
+    }
+
+    /**
+     * Streams a restock manifest into the machines of the fleet. The batch of each machine is queued on the executor of
+     * the machine as soon as its rows are read, so machines are restocked in parallel while the rest of the manifest is
+     * still being read, and each batch runs between the purchases of its machine like any other task.
+     * A machine whose rows are split across the manifest is restocked from its first run of rows only, and the later
+     * runs are rejected, so no machine takes more than one batch from a manifest.
+     *
+     * @param manifest The manifest, described in RestockManifest.
+     * @return The number of batches applied and the problems of the batches that were rejected.
+     * @throws IOException If the manifest cannot be read.
+     */
+    public RestockReport restock(Reader manifest) throws IOException {
+        Map<String, String> rejected = new LinkedHashMap<>();
+        List<String> ids = new ArrayList<>();
+        Set<String> restocked = new HashSet<>();
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        RestockManifest.read(manifest, batch -> {
+            Machine machine = getMachine(batch.getMachine());
+            if (machine == null) {
+                rejected.put(batch.getMachine(), "The fleet has no machine " + batch.getMachine() + ".");
+                return;
+            }
+            if (!restocked.add(batch.getMachine())) {
+                rejected.merge(batch.getMachine(), "The rows of " + batch.getMachine() + " are not next to each other; the rows after the first run were ignored.",
+                        (first, second) -> first + " " + second);
+                return;
+            }
+            ids.add(batch.getMachine());
+            batches.add(machine.submit(behavior -> {
+                behavior.restock(batch);
+                return null;
+            }));
+        });
+
+        int applied = 0;
+        for (int i = 0; i < batches.size(); i++) {
+            try {
+                batches.get(i).join();
+                applied++;
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof IllegalArgumentException)) {
+                    throw e;
+                }
+                rejected.merge(ids.get(i), e.getCause().getMessage(), (first, second) -> first + " " + second);
+            }
+        }
+        return new RestockReport(applied, rejected);
+    }
+
+    /**
+     * Writes a manifest that fills every slot and non-sellable item of every machine back to a quantity, as a route
+     * driver restocking the whole fleet would.
+     *
+     * @param quantity The quantity to fill to.
+     * @return The manifest.
+     */
+    private String refillManifest(int quantity) {
+        StringBuilder manifest = new StringBuilder("machine,slot,product,quantity,price,calories\n");
+        for (Machine machine : getMachines()) {
+            for (int slot = 0; slot < catalog.size(); slot++) {
+                boolean recipe = machine.getType() == MachineType.SPECIAL && slot == FRUIT_SALAD_SLOT;
+                if (catalog.getProduct(slot) != null && !recipe) {
+                    manifest.append(machine.getId()).append(',').append(slot + 1).append(',').append(catalog.getProduct(slot))
+                            .append(',').append(quantity).append(',').append(Money.format(catalog.getPrice(slot)))
+                            .append(',').append(catalog.getCalories(slot)).append('\n');
+                }
+            }
+            if (machine.getType() == MachineType.SPECIAL) {
+                for (String item : catalog.getNonSellableItems()) {
+                    manifest.append(machine.getId()).append(",,").append(item).append(',').append(quantity).append(",,\n");
+                }
+            }
+        }
+        return manifest.toString();
+    }
+
+    /**
+     * Get the catalog the machines are stocked from.
+     *
+     * @return The product catalog.
+     */
+    public ProductCatalog getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * Waits for the queued work of every machine, then closes their sales journals.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Machine machine : getMachines()) {
+            machine.salesJournal.close();
+        }
+    }
+
+    /**
+     * Sells to one customer, the same way as the load simulator: the product is selected, the payment is inserted,
+     * and the purchase is completed if the change can be given. Must run on the executor of the machine.
+     *
+     * @param behavior The vending machine.
+     * @param customer The customer.
+     * @return The result of the purchase.
+     */
+    private static PurchaseResult serve(IVendingMachineBehavior behavior, CustomerStream.Customer customer) {
+        int slot = customer.getSlot();
+        PurchaseTransaction transaction;
+        if (slot == FRUIT_SALAD_SLOT && behavior instanceof SpecialVendingMachineBehavior) {
+            transaction = ((SpecialVendingMachineBehavior) behavior).beginFruitSaladPurchase(customer.getFruitSlots(), customer.addsCheese());
+        } else {
+            transaction = behavior.beginPurchase(slot, customer.getQuantity());
+        }
+        if (transaction.getRejection() != null) {
+            return transaction.commit();
+        }
+        for (int denomination : customer.payment(transaction.getTotalPrice())) {
+            transaction.insert(denomination);
+        }
+        if (!behavior.canGiveSufficientChange(transaction.getAmountPaid() - transaction.getTotalPrice())) {
+            return transaction.cancel();
+        }
+        return transaction.commit();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Creates a fleet of stocked machines, sends a seeded stream of customers to every machine at once,
+     * and reports how long the fleet took to start, the memory used per machine, the throughput, and a rollup of the sales.
+     *
+     * @param args The command-line options, described in the class comment.
+     * @throws Exception If the fleet cannot be created or a purchase fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int machineCount = 1000;
+        int specialPercent = 50;
+        int customers = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int stock = 10;
+        int coins = 5;
+        Path journals = null;
+        Path restockManifest = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--machines":
+                        machineCount = Integer.parseInt(args[++i]);
+                        break;
+                    case "--special-percent":
+                        specialPercent = Integer.parseInt(args[++i]);
+                        break;
+                    case "--customers":
+                        customers = Integer.parseInt(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--stock":
+                        stock = Integer.parseInt(args[++i]);
+                        break;
+                    case "--coins":
+                        coins = Integer.parseInt(args[++i]);
+                        break;
+                    case "--journals":
+                        journals = Paths.get(args[++i]);
+                        break;
+                    case "--restock":
+                        restockManifest = Paths.get(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (machineCount < 0 || specialPercent < 0 || specialPercent > 100 || customers < 0 || threads <= 0 || stock < 0 || coins < 0) {
+                throw new IllegalArgumentException("The options cannot be negative, the special percentage is at most 100, and at least one thread is needed.");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.out.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length - 1] : e.getMessage());
+            System.out.println("Usage: java VendingFleet [--machines N] [--special-percent P] [--customers PER_MACHINE] [--threads N]"
+                    + " [--stock N] [--coins N] [--journals DIRECTORY] [--restock MANIFEST]");
+            System.exit(1);
+            return;
+        }
+        if (journals != null) {
+            Files.createDirectories(journals);
+        }
+
+        long memoryBefore = usedMemory();
+        long startupStart = System.nanoTime();
+        try (VendingFleet fleet = new VendingFleet(ProductCatalog.standard(), threads, journals)) {
+            for (int i = 0; i < machineCount; i++) {
+                MachineType type = i % 100 < specialPercent ? MachineType.SPECIAL : MachineType.REGULAR;
+                fleet.addMachine(String.format("machine-%05d", i), type, stock, coins);
+            }
+            double startupSeconds = (System.nanoTime() - startupStart) / 1e9;
+            long memoryPerMachine = machineCount == 0 ? 0 : (usedMemory() - memoryBefore) / machineCount;
+
+            LongAdder completed = new LongAdder();
+            LongAdder revenue = new LongAdder();
+            List<CompletableFuture<PurchaseResult>> purchases = new ArrayList<>(machineCount * customers);
+            long start = System.nanoTime();
+            List<Machine> machines = fleet.getMachines();
+            for (int i = 0; i < machines.size(); i++) {
+                Machine machine = machines.get(i);
+                int fruitSlots = machine.getType() == MachineType.SPECIAL ? FRUIT_SLOTS : 0;
+                CustomerStream stream = new CustomerStream(i, 2, SLOT_WEIGHTS, fruitSlots);
+                for (int c = 0; c < customers; c++) {
+                    CustomerStream.Customer customer = stream.next();
+                    purchases.add(machine.submit(behavior -> serve(behavior, customer)).thenCompose(PurchaseResult::getCompletion));
+                }
+            }
+            for (CompletableFuture<PurchaseResult> purchase : purchases) {
+                PurchaseResult result = purchase.join();
+                if (result.isCompleted()) {
+                    completed.increment();
+                    revenue.add(result.getTotalPrice());
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long served = (long) machineCount * customers;
+
+            System.out.printf(Locale.ROOT, "Fleet of %d machines (%d%% special) on %d threads%n", machineCount, specialPercent, threads);
+            System.out.printf(Locale.ROOT, "Startup: %.3f s (%.1f us per machine), about %d bytes of heap per machine%n",
+                    startupSeconds, machineCount == 0 ? 0 : startupSeconds * 1e6 / machineCount, memoryPerMachine);
+            System.out.printf(Locale.ROOT, "Customers: %d in %.3f s (%.0f customers/s)%n", served, seconds, served / seconds);
+            System.out.printf(Locale.ROOT, "Sales: %d completed, %s revenue%n", completed.sum(), Money.format(revenue.sum()));
+
+            long rollupStart = System.nanoTime();
+            SalesRollup rollup = FleetAnalytics.rollUp(fleet);
+            double rollupMillis = (System.nanoTime() - rollupStart) / 1e6;
+            System.out.printf(Locale.ROOT, "Rollup: %d sales in %.1f ms on %d threads%n", rollup.getSales(), rollupMillis,
+                    ForkJoinPool.commonPool().getParallelism());
+            System.out.print(rollup);
+
+            String manifest = restockManifest != null ? new String(Files.readAllBytes(restockManifest), StandardCharsets.UTF_8) : fleet.refillManifest(stock);
+            long restockStart = System.nanoTime();
+            RestockReport restock = fleet.restock(new StringReader(manifest));
+            double restockSeconds = (System.nanoTime() - restockStart) / 1e9;
+            int batches = restock.getApplied() + restock.getRejected().size();
+            System.out.printf(Locale.ROOT, "Restock: %d machines in %.3f s (%.0f machines/s), %d applied, %d rejected%n",
+                    batches, restockSeconds, batches / restockSeconds, restock.getApplied(), restock.getRejected().size());
+            restock.getRejected().values().stream().limit(10).forEach(problem -> System.out.println("  " + problem));
+        }
+    }
+}
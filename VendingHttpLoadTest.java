@@ -0,0 +1,264 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Measures how many requests per second a VendingHttpServer answers on the loopback address. A stocked machine is
+ * served in the same program, unless the port of a running server is given, and a seeded mix of requests is sent over
+ * a fixed number of keep-alive connections: mostly stock queries of one slot, some listings of every slot, and some
+ * purchases. The requests are written and the replies read directly on the sockets, so the client costs little next
+ * to the server it measures.
+ *
+ * The report gives the throughput, the latency percentiles of a request, and the number of replies of each HTTP
+ * status. The requests are the same for the same seed. Purchases refused because a slot sold out or the change ran
+ * out are answered with 409, and purchases of a made-to-order product, which are sent without choices, with 400;
+ * both are counted like any other reply.
+ *
+ * Usage: java VendingHttpLoadTest [--port N] [--machine regular|special] [--requests N] [--connections N]
+ * [--purchase-percent P] [--seed N] [--stock N] [--coins N]
+ */
+public class VendingHttpLoadTest {
+    private static final int WARMUP_REQUESTS = 5000;
+
+    private final String host;
+    private final int port;
+    private final int slots;
+    private final int requests;
+    private final int connections;
+    private final int purchasePercent;
+    private final long seed;
+
+    /**
+     * Constructs a VendingHttpLoadTest.
+     *
+     * @param host            The host of the server.
+     * @param port            The port of the server.
+     * @param slots           The number of slots of the machine.
+     * @param requests        The number of requests to send.
+     * @param connections     The number of connections, each with one request in flight.
+     * @param purchasePercent The percentage of the requests that are purchases.
+     * @param seed            The seed of the request mix.
+     */
+    public VendingHttpLoadTest(String host, int port, int slots, int requests, int connections, int purchasePercent, long seed) {
+        this.host = host;
+        this.port = port;
+        this.slots = slots;
+        this.requests = requests;
+        this.connections = connections;
+        this.purchasePercent = purchasePercent;
+        this.seed = seed;
+    }
+
+    /**
+     * Sends the requests and reports the results.
+     *
+     * @return The report.
+     * @throws IOException          If a connection to the server fails.
+     * @throws InterruptedException If interrupted while waiting for the replies.
+     */
+    public String run() throws IOException, InterruptedException {
+        send(requests(new SplittableRandom(seed ^ 0x5DEECE66DL), WARMUP_REQUESTS), new long[WARMUP_REQUESTS], new int[WARMUP_REQUESTS]);
+
+        byte[][] messages = requests(new SplittableRandom(seed), requests);
+        long[] latencies = new long[requests];
+        int[] statusCodes = new int[requests];
+        long start = System.nanoTime();
+        send(messages, latencies, statusCodes);
+        long elapsed = System.nanoTime() - start;
+
+        TreeMap<Integer, Integer> statusCounts = new TreeMap<>();
+        for (int code : statusCodes) {
+            statusCounts.merge(code, 1, Integer::sum);
+        }
+        Arrays.sort(latencies);
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "HTTP load test of %s:%d (seed %d, %d requests, %d connections, %d%% purchases)%n",
+                host, port, seed, requests, connections, purchasePercent));
+        report.append(String.format(Locale.ROOT, "Throughput: %.0f requests/s over %.3f s%n", requests / (elapsed / 1e9), elapsed / 1e9));
+        report.append(String.format(Locale.ROOT, "Latency (us): p50 %.1f  p90 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                LoadSimulator.percentile(latencies, 50) / 1e3, LoadSimulator.percentile(latencies, 90) / 1e3,
+                LoadSimulator.percentile(latencies, 99) / 1e3, LoadSimulator.percentile(latencies, 99.9) / 1e3,
+                latencies.length > 0 ? latencies[latencies.length - 1] / 1e3 : 0.0));
+        report.append("Replies:");
+        statusCounts.forEach((code, count) -> report.append(' ').append(code).append('=').append(count));
+        return report.append(String.format("%n")).toString();
+    }
+
+    /**
+     * Sends requests over a fixed number of keep-alive connections, each with one request in flight, the way a
+     * fleet of apps would. Each connection takes the next request not yet sent until none are left.
+     */
+    private void send(byte[][] messages, long[] latencies, int[] statusCodes) throws IOException, InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        Thread[] threads = new Thread[connections];
+        for (int c = 0; c < connections; c++) {
+            threads[c] = new Thread(() -> {
+                try (Socket socket = new Socket(host, port)) {
+                    socket.setTcpNoDelay(true);
+                    OutputStream out = socket.getOutputStream();
+                    InputStream in = new BufferedInputStream(socket.getInputStream());
+                    for (int i = next.getAndIncrement(); i < messages.length && failure.get() == null; i = next.getAndIncrement()) {
+                        long sent = System.nanoTime();
+                        out.write(messages[i]);
+                        out.flush();
+                        statusCodes[i] = readResponse(in);
+                        latencies[i] = System.nanoTime() - sent;
+                    }
+                } catch (IOException e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "http-load-test-" + c);
+            threads[c].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Reads one response and skips its body.
+     *
+     * @return The HTTP status code.
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        int contentLength = 0;
+        for (String header = readLine(in); !header.isEmpty(); header = readLine(in)) {
+            if (header.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(header.substring(15).trim());
+            }
+        }
+        in.readNBytes(contentLength);
+        return Integer.parseInt(statusLine.substring(9, 12));
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0) {
+                throw new EOFException("The server closed the connection.");
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Creates a seeded mix of requests: mostly stock queries of one slot, some listings, and some purchases.
+     */
+    private byte[][] requests(SplittableRandom random, int count) {
+        byte[][] messages = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            int roll = random.nextInt(100);
+            int slot = random.nextInt(slots) + 1;
+            String request;
+            if (roll < purchasePercent) {
+                // Paid with more than any product costs, so the change is what decides whether the sale goes through
+                String form = "slot=" + slot + "&quantity=1&payment=100,50";
+                request = "POST /purchase HTTP/1.1\r\nHost: " + host + "\r\nContent-Type: application/x-www-form-urlencoded\r\n"
+                        + "Content-Length: " + form.length() + "\r\n\r\n" + form;
+            } else if (roll < purchasePercent + (100 - purchasePercent) / 5) {
+                request = "GET /slots HTTP/1.1\r\nHost: " + host + "\r\n\r\n";
+            } else {
+                request = "GET /slots/" + slot + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n";
+            }
+            messages[i] = request.getBytes(StandardCharsets.US_ASCII);
+        }
+        return messages;
+    }
+
+    /**
+     * Runs the load test from the command line.
+     *
+     * @param args The command-line options, described in the class comment.
+     * @throws Exception If the server cannot be started or the test is interrupted.
+     */
+    public static void main(String[] args) throws Exception {
+        int serverPort = 0;
+        String machine = "regular";
+        int requests = 100000;
+        int connections = 16;
+        int purchasePercent = 10;
+        long seed = 1;
+        int stock = 10;
+        int coins = 20;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port":
+                        serverPort = Integer.parseInt(args[++i]);
+                        break;
+                    case "--machine":
+                        machine = args[++i];
+                        break;
+                    case "--requests":
+                        requests = Integer.parseInt(args[++i]);
+                        break;
+                    case "--connections":
+                        connections = Integer.parseInt(args[++i]);
+                        break;
+                    case "--purchase-percent":
+                        purchasePercent = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--stock":
+                        stock = Integer.parseInt(args[++i]);
+                        break;
+                    case "--coins":
+                        coins = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (!machine.equals("regular") && !machine.equals("special")) {
+                throw new IllegalArgumentException("Unknown machine: " + machine);
+            }
+            if (serverPort < 0 || requests < 0 || connections <= 0 || purchasePercent < 0 || purchasePercent > 100 || stock < 0 || coins < 0) {
+                throw new IllegalArgumentException("The options cannot be negative, the purchase percentage is at most 100, and at least one connection is needed.");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.out.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length - 1] : e.getMessage());
+            System.out.println("Usage: java VendingHttpLoadTest [--port N] [--machine regular|special] [--requests N] [--connections N]"
+                    + " [--purchase-percent P] [--seed N] [--stock N] [--coins N]");
+            System.exit(1);
+            return;
+        }
+
+        if (serverPort > 0) {
+            int slots = MachineLayout.configured().getSlots();
+            System.out.print(new VendingHttpLoadTest("localhost", serverPort, slots, requests, connections, purchasePercent, seed).run());
+            return;
+        }
+        IVendingMachineBehavior behavior = machine.equals("regular")
+                ? new RegularVendingMachineBehavior(SalesJournal.temporary())
+                : new SpecialVendingMachineBehavior(SalesJournal.temporary());
+        ProductCatalog.standard().stock(behavior, stock, coins);
+        behavior.setDispenseLatencyModel(DispenseLatencyModel.none());
+        try (VendingHttpServer server = new VendingHttpServer(behavior, 0)) {
+            server.start();
+            System.out.println("Serving the " + machine + " vending machine on port " + server.getPort()
+                    + (server.usesVirtualThreads() ? " using virtual threads" : " using a pool of platform threads"));
+            System.out.print(new VendingHttpLoadTest("localhost", server.getPort(), behavior.getProductTableModel().getRowCount(),
+                    requests, connections, purchasePercent, seed).run());
+        }
+    }
+}
@@ -0,0 +1,441 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An HTTP endpoint through which a remote client, such as a mobile app, can order from a vending machine without going
+ * through the vending features menu. It is built on the HTTP server of the JDK and answers in JSON:
+ * <pre>
+ * GET  /slots            the product, price, and stock of every slot
+ * GET  /slots/{slot}     the product, price, and stock of one slot
+ * POST /purchase         buys a product; the form fields are slot, quantity, and payment, such as
+ *                        slot=1&amp;quantity=2&amp;payment=50,20,5, and for a made-to-order product choices and extras,
+ *                        such as choices=1,2,3&amp;extras=Cheese
+ * GET  /metrics          the counters and gauges of the machine in the Prometheus text format
+ * </pre>
+ * Slots are numbered from 1 and amounts are given in the format of Money. A purchase goes through the same steps as at
+ * the vending features menu, and its reply is written on the executor of the server once the product is dispensed,
+ * so no request thread waits for the dispenser. A reply that comes after the server is closed only closes its exchange.
+ *
+ * Requests are handled on virtual threads when the Java runtime has them, and on a fixed pool of platform threads
+ * otherwise. The vending machine is thread-safe, so requests run concurrently with each other and with the menus.
+ *
+ * Usage: java VendingHttpServer [--machine regular|special] [--port N] [--stock N] [--coins N] [--dispense-ms N]
+ */
+public class VendingHttpServer implements AutoCloseable {
+    private static final int BACKLOG = 1024;
+
+    static {
+        // The server writes the headers and the body of a reply separately, so with Nagle's algorithm the body waits for
+        // the client to acknowledge the headers, which adds the delayed acknowledgement of the client to every reply
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final IVendingMachineBehavior behavior;
+    private final MetricsRegistry metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    /**
+     * Constructs a VendingHttpServer listening on the loopback address. The server does not accept requests until started.
+     *
+     * @param behavior The vending machine to order from.
+     * @param port     The port to listen on, or 0 for any free port.
+     * @throws IOException If the port cannot be opened.
+     */
+    public VendingHttpServer(IVendingMachineBehavior behavior, int port) throws IOException {
+        this(behavior, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Constructs a VendingHttpServer. The server does not accept requests until started.
+     *
+     * @param behavior The vending machine to order from.
+     * @param address  The address to listen on.
+     * @throws IOException If the address cannot be opened.
+     */
+    public VendingHttpServer(IVendingMachineBehavior behavior, InetSocketAddress address) throws IOException {
+        this.behavior = behavior;
+        this.metrics = new MetricsRegistry();
+        behavior.registerMetrics(metrics, behavior instanceof SpecialVendingMachineBehavior ? "special" : "regular");
+        this.server = HttpServer.create(address, BACKLOG);
+        ExecutorService virtualThreadExecutor = newVirtualThreadExecutor();
+        this.virtualThreads = virtualThreadExecutor != null;
+        this.executor = virtualThreads ? virtualThreadExecutor : newPlatformThreadExecutor();
+        server.setExecutor(executor);
+        server.createContext("/slots", this::handleSlots);
+        server.createContext("/purchase", this::handlePurchase);
+        server.createContext("/metrics", metrics);
+    }
+
+    /**
+     * Creates an executor that runs every task on a virtual thread of its own, through reflection so that the program
+     * still compiles and runs on Java 17, where virtual threads do not exist.
+     *
+     * @return The executor, or null if the Java runtime has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor() {
+        // A request only blocks on the slot and change locks, so a few threads per processor keep every processor busy
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "vending-http-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Get the port the server listens on, which is useful when it was created with port 0.
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Get the registry served as /metrics, to which more metrics can be added.
+     *
+     * @return The metrics registry.
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metrics;
+    }
+
+    /**
+     * Check if requests are handled on virtual threads.
+     *
+     * @return true if requests run on virtual threads, false if they run on a pool of platform threads.
+     */
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops accepting requests, gives the requests in progress up to a second to finish, and stops the request threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleSlots(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Use GET to list the slots.");
+            return;
+        }
+        ProductTableModel table = behavior.getProductTableModel();
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/slots") || path.equals("/slots/")) {
+            StringBuilder json = new StringBuilder(64 * table.getRowCount()).append("{\"currency\":");
+            appendString(json, behavior.getCurrency().getCode()).append(",\"slots\":[");
+            for (int row = 0; row < table.getRowCount(); row++) {
+                if (row > 0) {
+                    json.append(',');
+                }
+                appendSlot(json, table, row);
+            }
+            send(exchange, 200, json.append("]}").toString());
+            return;
+        }
+
+        int slot;
+        try {
+            slot = Integer.parseInt(path.substring("/slots/".length())) - 1;
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            slot = -1;
+        }
+        if (slot < 0 || slot >= table.getRowCount()) {
+            sendError(exchange, 404, "No such slot: " + path.substring(path.lastIndexOf('/') + 1));
+            return;
+        }
+        StringBuilder json = new StringBuilder(96);
+        send(exchange, 200, appendSlot(json, table, slot).toString());
+    }
+
+    private static StringBuilder appendSlot(StringBuilder json, ProductTableModel table, int row) {
+        json.append("{\"slot\":").append(row + 1).append(",\"product\":");
+        appendString(json, (String) table.getValueAt(row, 1)).append(",\"price\":");
+        appendString(json, (String) table.getValueAt(row, 2));
+        Object stock = table.getValueAt(row, 3);
+        if (stock instanceof Number) {
+            json.append(",\"stock\":").append(stock);
+        } else {
+            // A made-to-order product has no stock of its own, only whether its components are available
+            json.append(",\"available\":").append("Available".equals(stock));
+        }
+        return json.append(",\"calories\":").append(table.getValueAt(row, 4)).append('}');
+    }
+
+    private void handlePurchase(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            sendError(exchange, 405, "Use POST to make a purchase.");
+            return;
+        }
+        Map<String, String> form = parseForm(exchange);
+        int slot;
+        int quantity;
+        int[] payment;
+        int[] choices;
+        try {
+            slot = Integer.parseInt(form.getOrDefault("slot", "")) - 1;
+            quantity = Integer.parseInt(form.getOrDefault("quantity", "1"));
+            payment = parseList(form.getOrDefault("payment", ""), 0);
+            choices = parseList(form.getOrDefault("choices", ""), 1);
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "The slot, quantity, payment, and choices must be whole numbers.");
+            return;
+        }
+        String extras = form.getOrDefault("extras", "");
+
+        PurchaseTransaction transaction;
+        if (behavior instanceof SpecialVendingMachineBehavior && ((SpecialVendingMachineBehavior) behavior).getRecipe(slot) != null) {
+            transaction = ((SpecialVendingMachineBehavior) behavior).beginRecipePurchase(slot, choices,
+                    extras.isEmpty() ? null : extras.split(","));
+        } else {
+            transaction = behavior.beginPurchase(slot, quantity);
+        }
+        if (transaction.getRejection() != null) {
+            sendResult(exchange, transaction.commit());
+            return;
+        }
+        for (int denomination : payment) {
+            if (!transaction.insert(denomination)) {
+                transaction.cancel();
+                sendError(exchange, 400, "Invalid denomination: " + denomination + ". Accepted denominations: " + behavior.getCurrency());
+                return;
+            }
+        }
+
+        PurchaseResult result = transaction.commit();
+        // The reply is written by the server's executor, not by whichever thread finished the dispense
+        Executor replies = reply -> {
+            try {
+                executor.execute(reply);
+            } catch (RejectedExecutionException e) {
+                // The server is closed, so there is no thread left to write the reply
+                exchange.close();
+            }
+        };
+        result.getCompletion().whenCompleteAsync((dispensed, failure) -> {
+            try {
+                if (failure != null) {
+                    sendError(exchange, 500, "The product could not be dispensed: " + failure.getMessage());
+                } else {
+                    sendResult(exchange, dispensed);
+                }
+            } catch (IOException e) {
+                // The client is gone; the purchase itself is already recorded
+            } finally {
+                exchange.close();
+            }
+        }, replies);
+    }
+
+    private void sendResult(HttpExchange exchange, PurchaseResult result) throws IOException {
+        StringBuilder json = new StringBuilder(256).append("{\"status\":");
+        appendString(json, result.getStatus().name()).append(",\"slot\":").append(result.getSlot() + 1);
+        if (result.getProduct() != null) {
+            json.append(",\"product\":");
+            appendString(json, result.getProduct());
+        }
+        json.append(",\"quantity\":").append(result.getQuantity());
+        json.append(",\"totalPrice\":");
+        appendString(json, Money.format(result.getTotalPrice())).append(",\"amountPaid\":");
+        appendString(json, Money.format(result.getAmountPaid())).append(",\"change\":");
+        appendString(json, Money.format(result.getChange()));
+        int[] changeGiven = result.getChangeGiven();
+        if (changeGiven != null) {
+            CurrencyDefinition currency = behavior.getCurrency();
+            json.append(",\"changeGiven\":{");
+            boolean first = true;
+            for (int i = 0; i < changeGiven.length; i++) {
+                if (changeGiven[i] > 0) {
+                    json.append(first ? "\"" : ",\"").append(currency.denomination(i)).append("\":").append(changeGiven[i]);
+                    first = false;
+                }
+            }
+            json.append('}');
+        }
+        send(exchange, statusCode(result.getStatus()), json.append('}').toString());
+    }
+
+    private static int statusCode(PurchaseResult.Status status) {
+        switch (status) {
+            case DISPENSING:
+            case COMPLETED:
+                return 200;
+            case INVALID_SELECTION:
+                return 400;
+            case DISPENSE_FAILED:
+                return 500;
+            default:
+                return 409;
+        }
+    }
+
+    private static Map<String, String> parseForm(HttpExchange exchange) throws IOException {
+        Map<String, String> form = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            parseForm(query, form);
+        }
+        try (InputStream body = exchange.getRequestBody()) {
+            parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8), form);
+        }
+        return form;
+    }
+
+    private static void parseForm(String encoded, Map<String, String> form) {
+        for (String field : encoded.split("&")) {
+            int equals = field.indexOf('=');
+            if (equals > 0) {
+                form.put(URLDecoder.decode(field.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(field.substring(equals + 1), StandardCharsets.UTF_8).trim());
+            }
+        }
+    }
+
+    private static int[] parseList(String list, int offset) {
+        if (list.isEmpty()) {
+            return new int[0];
+        }
+        String[] values = list.split(",");
+        int[] numbers = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            numbers[i] = Integer.parseInt(values[i].trim()) - offset;
+        }
+        return numbers;
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        StringBuilder json = new StringBuilder(message.length() + 16).append("{\"error\":");
+        send(exchange, code, appendString(json, message).append('}').toString());
+    }
+
+    private static void send(HttpExchange exchange, int code, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String value) {
+        if (value == null) {
+            return json.append("null");
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+
+    /**
+     * Stocks a Regular or Special vending machine from the standard catalog and serves it on the loopback address
+     * until the program is stopped.
+     *
+     * @param args The command-line options, described in the class comment.
+     * @throws Exception If the server cannot be started.
+     */
+    public static void main(String[] args) throws Exception {
+        String machine = "special";
+        int port = 8080;
+        int stock = 10;
+        int coins = 20;
+        long dispenseMillis = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--machine":
+                        machine = args[++i];
+                        break;
+                    case "--port":
+                        port = Integer.parseInt(args[++i]);
+                        break;
+                    case "--stock":
+                        stock = Integer.parseInt(args[++i]);
+                        break;
+                    case "--coins":
+                        coins = Integer.parseInt(args[++i]);
+                        break;
+                    case "--dispense-ms":
+                        dispenseMillis = Long.parseLong(args[++i]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (!machine.equals("regular") && !machine.equals("special")) {
+                throw new IllegalArgumentException("Unknown machine: " + machine);
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.out.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length - 1] : e.getMessage());
+            System.out.println("Usage: java VendingHttpServer [--machine regular|special] [--port N] [--stock N] [--coins N] [--dispense-ms N]");
+            System.exit(1);
+            return;
+        }
+
+        IVendingMachineBehavior behavior = machine.equals("regular")
+                ? new RegularVendingMachineBehavior(SalesJournal.temporary())
+                : new SpecialVendingMachineBehavior(SalesJournal.temporary());
+        ProductCatalog.standard().stock(behavior, stock, coins);
+        behavior.setDispenseLatencyModel(dispenseMillis > 0 ? DispenseLatencyModel.fixed(dispenseMillis) : DispenseLatencyModel.none());
+
+        VendingHttpServer server = new VendingHttpServer(behavior, port);
+        server.start();
+        System.out.println("Serving the " + machine + " vending machine on http://localhost:" + server.getPort() + "/slots"
+                + (server.usesVirtualThreads() ? " using virtual threads" : " using a pool of platform threads"));
+        new CountDownLatch(1).await();
+    }
+}
@@ -5,11 +5,26 @@
  * features or exit the program.
  */
 
+import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class VendingMachine {
+    static final String REGULAR_SALES_JOURNAL = "regular-sales.journal";
+    static final String SPECIAL_SALES_JOURNAL = "special-sales.journal";
+    static final String REGULAR_SNAPSHOT = "regular-machine.snapshot";
+    static final String SPECIAL_SNAPSHOT = "special-machine.snapshot";
+
     private IVendingMachineBehavior vendingMachineBehavior;
+    private MachineSnapshotter snapshotter;
 
     /**
      * Constructs a new VendingMachine instance with the specified behavior.
@@ -17,16 +32,34 @@ public class VendingMachine {
      * @param vendingMachineBehavior The behavior to be used for the vending machine.
      */
     public VendingMachine(IVendingMachineBehavior vendingMachineBehavior) {
+        this(vendingMachineBehavior, null);
+    }
+
+    /**
+     * Constructs a new VendingMachine instance with the specified behavior that saves its state to a snapshot file.
+     * On start, the operator can resume from the snapshot instead of entering every product and denomination again.
+     *
+     * @param vendingMachineBehavior The behavior to be used for the vending machine.
+     * @param snapshotPath           The snapshot file, or null to start without snapshots.
+     */
+    public VendingMachine(IVendingMachineBehavior vendingMachineBehavior, Path snapshotPath) {
         this.vendingMachineBehavior = vendingMachineBehavior;
+        this.snapshotter = snapshotPath != null ? new MachineSnapshotter(vendingMachineBehavior, snapshotPath) : null;
     }
 
     /**
      * Starts the vending machine by initializing the behavior and processing the main menu options.
      * The user can select between Vending Features, Maintenance Features, or Exit Program.
+     * If a snapshot was saved, the user can resume from it instead, and snapshots are saved in the background while running.
      */
     public void start() {
-        vendingMachineBehavior.initialize();
-        vendingMachineBehavior.inputChangeDenominations();
+        if (!resumeFromSnapshot()) {
+            vendingMachineBehavior.initialize();
+            vendingMachineBehavior.inputChangeDenominations();
+        }
+        if (snapshotter != null) {
+            snapshotter.start(MachineSnapshotter.DEFAULT_PERIOD_SECONDS);
+        }
 
         boolean exitProgram = false;
         while (!exitProgram) {
@@ -44,6 +77,9 @@ public class VendingMachine {
                     break;
                 case 2:
                     exitProgram = true;
+                    if (snapshotter != null) {
+                        snapshotter.stop();
+                    }
                     JOptionPane.showMessageDialog(null, "Exiting the program. Goodbye!");
                     break;
                 default:
@@ -53,10 +89,73 @@ public class VendingMachine {
         }
     }
 
+    /**
+     * Starts the vending machine in an event-driven window. Setting up the vending machine, purchases, and maintenance
+     * all run on one worker thread, and the event dispatch thread only handles the window, so the window stays
+     * responsive while a product is dispensed. Closing the window stops the snapshots and exits the program.
+     * This method returns right away and can be called from any thread.
+     */
+    public void open() {
+        ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "vending-worker"));
+        worker.execute(() -> {
+            // The setup still uses dialogs, which run here rather than on the event dispatch thread
+            if (!resumeFromSnapshot()) {
+                vendingMachineBehavior.initialize();
+                vendingMachineBehavior.inputChangeDenominations();
+            }
+            if (snapshotter != null) {
+                snapshotter.start(MachineSnapshotter.DEFAULT_PERIOD_SECONDS);
+            }
+
+            SwingUtilities.invokeLater(() -> {
+                JFrame frame = new JFrame("Vending Machine");
+                frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+                frame.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        frame.setVisible(false);
+                        worker.execute(() -> {
+                            if (snapshotter != null) {
+                                snapshotter.stop();
+                            }
+                            System.exit(0);
+                        });
+                    }
+                });
+                frame.getContentPane().add(new VendingPanel(vendingMachineBehavior, worker));
+                frame.pack();
+                frame.setVisible(true);
+            });
+        });
+    }
+
+    /**
+     * Offers to resume from the saved snapshot, if there is one.
+     *
+     * @return true if the vending machine was restored from the snapshot, false if it still needs to be initialized.
+     */
+    private boolean resumeFromSnapshot() {
+        if (snapshotter == null || !snapshotter.exists()) {
+            return false;
+        }
+        int choice = JOptionPane.showConfirmDialog(null, "A saved state of this vending machine was found. Do you want to resume from it?",
+                "Resume Vending Machine", JOptionPane.YES_NO_OPTION);
+        if (choice != JOptionPane.YES_OPTION) {
+            return false;
+        }
+        try {
+            return snapshotter.load();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Could not resume from the saved state: " + e.getMessage(), "Error",
+                    JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+
     /**
      * The main method that initiates the vending machine factory.
      * It displays a welcome message and prompts the user to select a type of vending machine.
-     * Based on the selection, it creates the appropriate IVendingMachineBehavior and starts the VendingMachine.
+     * Based on the selection, it creates the appropriate IVendingMachineBehavior and opens the VendingMachine window.
      *
      * @param args The command-line arguments (unused).
      */
@@ -75,15 +174,35 @@ public class VendingMachine {
         );
 
         IVendingMachineBehavior behavior;
+        String snapshot;
         if (selectedVendingMachine.equals("Regular Vending Machine")) {
-            behavior = new RegularVendingMachineBehavior();
+            behavior = new RegularVendingMachineBehavior(openSalesJournal(REGULAR_SALES_JOURNAL));
+            snapshot = REGULAR_SNAPSHOT;
         } else {
-            behavior = new SpecialVendingMachineBehavior();
+            behavior = new SpecialVendingMachineBehavior(openSalesJournal(SPECIAL_SALES_JOURNAL));
+            snapshot = SPECIAL_SNAPSHOT;
         }
 
         if (behavior != null) {
-            VendingMachine vendingMachine = new VendingMachine(behavior);
-            vendingMachine.start();
+            VendingMachine vendingMachine = new VendingMachine(behavior, Paths.get(snapshot));
+            vendingMachine.open();
+        }
+    }
+
+    /**
+     * Opens the sales journal in the working directory, so the sales of earlier runs are recovered.
+     * If the journal cannot be opened, the sales are recorded in a temporary journal instead.
+     *
+     * @param fileName The name of the journal file.
+     * @return The open sales journal.
+     */
+    static SalesJournal openSalesJournal(String fileName) {
+        try {
+            return SalesJournal.open(Paths.get(fileName));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Could not open the sales journal " + fileName + ": " + e.getMessage()
+                    + "\nSales will not be kept after the program exits.", "Sales Journal", JOptionPane.WARNING_MESSAGE);
+            return SalesJournal.temporary();
         }
     }
 }
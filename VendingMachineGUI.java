@@ -3,7 +3,7 @@
  * The user can choose between a Regular Vending Machine or a Special Vending Machine using a combo box.
  * When the "Confirm" button is clicked, the selected vending machine type is displayed in an alert dialog,
  * and the user is asked for confirmation to proceed. If the user confirms, the appropriate vending machine
- * behavior is initialized, and a new VendingMachine instance is created and started.
+ * behavior is initialized, and a new VendingMachine instance is created and its window is opened.
  *
  * Note: The "RegularVendingMachineBehavior" and "SpecialVendingMachineBehavior" classes are assumed to exist
  * and implement the IVendingMachineBehavior interface.
@@ -65,15 +65,19 @@ public class VendingMachineGUI extends JPanel {
                         if (confirmResult == JOptionPane.YES_OPTION) {
                             // Create the appropriate VendingMachineBehavior based on the user's choice
                             IVendingMachineBehavior behavior;
+                            String snapshot;
                             if (selectedVendingMachine.equals("Regular Vending Machine")) {
-                                behavior = new RegularVendingMachineBehavior();
+                                behavior = new RegularVendingMachineBehavior(VendingMachine.openSalesJournal(VendingMachine.REGULAR_SALES_JOURNAL));
+                                snapshot = VendingMachine.REGULAR_SNAPSHOT;
                             } else {
-                                behavior = new SpecialVendingMachineBehavior();
+                                behavior = new SpecialVendingMachineBehavior(VendingMachine.openSalesJournal(VendingMachine.SPECIAL_SALES_JOURNAL));
+                                snapshot = VendingMachine.SPECIAL_SNAPSHOT;
                             }
 
-                            // Create a new VendingMachine instance with the selected behavior and start it
-                            VendingMachine vendingMachine = new VendingMachine(behavior);
-                            vendingMachine.start();
+                            // Create a new VendingMachine instance with the selected behavior and open its window.
+                            // The vending machine runs on its own worker thread, so this returns right away.
+                            VendingMachine vendingMachine = new VendingMachine(behavior, java.nio.file.Paths.get(snapshot));
+                            vendingMachine.open();
                         }
                     }
                 });
@@ -21,14 +21,14 @@ public class VendingMachineInitializerGUI {
 
         IVendingMachineBehavior behavior;
         if (selectedVendingMachine.equals("Regular Vending Machine")) {
-            behavior = new RegularVendingMachineBehavior();
+            behavior = new RegularVendingMachineBehavior(VendingMachine.openSalesJournal(VendingMachine.REGULAR_SALES_JOURNAL));
             behavior.initialize();
             behavior.inputChangeDenominations();
             behavior.vendingFeatures();
             behavior.collectSales();
             behavior.salesSummary();
         } else {
-            behavior = new SpecialVendingMachineBehavior();
+            behavior = new SpecialVendingMachineBehavior(VendingMachine.openSalesJournal(VendingMachine.SPECIAL_SALES_JOURNAL));
             behavior.initialize();
             behavior.inputChangeDenominations();
             behavior.vendingFeatures();
@@ -0,0 +1,407 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import javax.swing.*;
+
+/**
+ * VendingPanel is an event-driven front end for a vending machine. The customer picks a product in the product table,
+ * inserts coins and bills with buttons, and pays or cancels, all in one window instead of a chain of dialogs.
+ *
+ * The event dispatch thread only handles the buttons and paints. Every call into the vending machine, including
+ * checking the stock, working out the change, and the maintenance dialogs, runs on a single worker thread, so the
+ * window stays responsive while a product is dispensed. The current transaction is only touched on the worker thread.
+ */
+public class VendingPanel extends JPanel {
+    private final IVendingMachineBehavior behavior;
+    private final ExecutorService worker;
+    private final JTable productTable;
+    private final JSpinner quantitySpinner;
+    private final JButton selectButton;
+    private final List<JButton> coinButtons;
+    private final JButton payButton;
+    private final JButton cancelButton;
+    private final JButton maintenanceButton;
+    private final JLabel statusLabel;
+    private final JTextArea messages;
+    private PurchaseTransaction transaction;
+
+    /**
+     * Constructs a new VendingPanel. Must be called on the event dispatch thread.
+     *
+     * @param behavior The vending machine behavior to sell from.
+     * @param worker   The single-threaded executor that every call into the vending machine runs on.
+     */
+    public VendingPanel(IVendingMachineBehavior behavior, ExecutorService worker) {
+        this.behavior = behavior;
+        this.worker = worker;
+
+        productTable = behavior.getProductTableModel().createTable();
+        productTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        quantitySpinner = new JSpinner(new SpinnerNumberModel(1, 1, 10, 1));
+        selectButton = new JButton("Select");
+        coinButtons = new ArrayList<>();
+        payButton = new JButton("Pay");
+        cancelButton = new JButton("Cancel");
+        maintenanceButton = new JButton("Maintenance");
+        statusLabel = new JLabel("Select a product.");
+        messages = new JTextArea(8, 40);
+        messages.setEditable(false);
+
+        JPanel selectionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        selectionPanel.add(new JLabel("Quantity:"));
+        selectionPanel.add(quantitySpinner);
+        selectionPanel.add(selectButton);
+        selectionPanel.add(maintenanceButton);
+
+        JPanel coinPanel = new JPanel(new GridLayout(0, 3, 4, 4));
+        CurrencyDefinition currency = behavior.getCurrency();
+        for (int i = 0; i < currency.size(); i++) {
+            int denomination = currency.denomination(i);
+            JButton coinButton = new JButton("\u20B1" + denomination);
+            coinButton.addActionListener(e -> insert(denomination));
+            coinButtons.add(coinButton);
+            coinPanel.add(coinButton);
+        }
+        JPanel paymentPanel = new JPanel(new BorderLayout(4, 4));
+        paymentPanel.add(coinPanel, BorderLayout.CENTER);
+        JPanel paymentButtons = new JPanel(new GridLayout(1, 2, 4, 4));
+        paymentButtons.add(payButton);
+        paymentButtons.add(cancelButton);
+        paymentPanel.add(paymentButtons, BorderLayout.SOUTH);
+
+        JPanel southPanel = new JPanel(new BorderLayout(4, 4));
+        southPanel.add(statusLabel, BorderLayout.NORTH);
+        southPanel.add(new JScrollPane(messages), BorderLayout.CENTER);
+
+        setLayout(new BorderLayout(8, 8));
+        setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+        add(selectionPanel, BorderLayout.NORTH);
+        add(new JScrollPane(productTable), BorderLayout.CENTER);
+        add(paymentPanel, BorderLayout.EAST);
+        add(southPanel, BorderLayout.SOUTH);
+
+        selectButton.addActionListener(e -> select());
+        payButton.addActionListener(e -> pay());
+        cancelButton.addActionListener(e -> cancel());
+        maintenanceButton.addActionListener(e -> maintenance());
+        showIdle();
+    }
+
+    /**
+     * Starts a purchase of the product selected in the table.
+     */
+    private void select() {
+        int slot = productTable.getSelectedRow();
+        if (slot < 0) {
+            log("Please select a product in the table first.");
+            return;
+        }
+        int quantity = (Integer) quantitySpinner.getValue();
+
+        Recipe recipe = behavior instanceof SpecialVendingMachineBehavior ? ((SpecialVendingMachineBehavior) behavior).getRecipe(slot) : null;
+        int[] chosenSlots = null;
+        String[] extras = null;
+        if (recipe != null) {
+            RecipeOrder order = askRecipeOrder(recipe);
+            if (order == null) {
+                return;
+            }
+            chosenSlots = order.chosenSlots;
+            extras = order.extras;
+        }
+
+        int[] orderSlots = chosenSlots;
+        String[] orderExtras = extras;
+        showBusy();
+        run(() -> {
+            PurchaseTransaction started = recipe != null
+                    ? ((SpecialVendingMachineBehavior) behavior).beginRecipePurchase(slot, orderSlots, orderExtras)
+                    : behavior.beginPurchase(slot, quantity);
+            if (started.getRejection() != null) {
+                String reason = describe(started.getRejection(), slot);
+                ui(() -> {
+                    log(reason);
+                    showIdle();
+                });
+                return;
+            }
+            transaction = started;
+            String status = paymentStatus(started);
+            ui(() -> {
+                log("Selected " + started.getQuantity() + " x " + started.getProduct() + ". Total Price: \u20B1" + Money.format(started.getTotalPrice()));
+                showPaying(status);
+            });
+        });
+    }
+
+    /**
+     * Inserts a coin or bill into the current transaction.
+     *
+     * @param denomination The denomination inserted, in pesos.
+     */
+    private void insert(int denomination) {
+        run(() -> {
+            if (transaction == null) {
+                return;
+            }
+            boolean accepted = transaction.insert(denomination);
+            String status = paymentStatus(transaction);
+            ui(() -> {
+                if (!accepted) {
+                    log("\u20B1" + denomination + " is not accepted. Please insert another coin/bill.");
+                }
+                statusLabel.setText(status);
+            });
+        });
+    }
+
+    /**
+     * Pays for the current transaction. The product is dispensed in the background, and the result is shown when it is done.
+     */
+    private void pay() {
+        showBusy();
+        run(() -> {
+            if (transaction == null) {
+                ui(this::showIdle);
+                return;
+            }
+            if (!transaction.isFullyPaid()) {
+                long remaining = transaction.getRemainingBalance();
+                String status = paymentStatus(transaction);
+                ui(() -> {
+                    log("Please insert \u20B1" + Money.format(remaining) + " more.");
+                    showPaying(status);
+                });
+                return;
+            }
+            PurchaseResult result = transaction.commit();
+            transaction = null;
+            if (!result.isAccepted()) {
+                String reason = describe(result.getStatus(), result.getSlot());
+                ui(() -> {
+                    log(reason + "\nReturning your payment of \u20B1" + Money.format(result.getAmountPaid()));
+                    showIdle();
+                });
+                return;
+            }
+
+            ui(() -> {
+                log("Dispensing your " + result.getProduct() + "...");
+                showIdle();
+            });
+            result.getCompletion().thenAccept(dispensed -> ui(() -> {
+                if (dispensed.isCompleted()) {
+                    log(dispensed.getProduct() + " Dispensed. Thank you!\n" + changeMessage(dispensed));
+                } else {
+                    log(dispensed.getProduct() + " could not be dispensed.\nReturning your payment of \u20B1" + Money.format(dispensed.getAmountPaid()));
+                }
+            }));
+        });
+    }
+
+    /**
+     * Cancels the current transaction and returns the amount paid.
+     */
+    private void cancel() {
+        showBusy();
+        run(() -> {
+            if (transaction == null) {
+                ui(this::showIdle);
+                return;
+            }
+            PurchaseResult result = transaction.cancel();
+            transaction = null;
+            ui(() -> {
+                log("Purchase cancelled. Returning your payment of \u20B1" + Money.format(result.getAmountPaid()));
+                showIdle();
+            });
+        });
+    }
+
+    /**
+     * Opens the maintenance features. They still use dialogs, which run on the worker thread so the window keeps painting.
+     */
+    private void maintenance() {
+        showBusy();
+        run(() -> {
+            behavior.maintenanceFeatures();
+            ui(this::showIdle);
+        });
+    }
+
+    /**
+     * Asks which products and extras go into a made-to-order product.
+     *
+     * @param recipe The recipe of the product.
+     * @return The order, or null if the customer cancelled or did not pick the right number of products.
+     */
+    private RecipeOrder askRecipeOrder(Recipe recipe) {
+        int[] choiceSlots = recipe.getChoiceSlots();
+        String[] extras = recipe.getExtras();
+        JPanel panel = new JPanel(new GridLayout(0, 1));
+        panel.add(new JLabel("Pick " + recipe.getChoices() + " different " + recipe.getChoiceName() + "s:"));
+        JCheckBox[] choiceBoxes = new JCheckBox[choiceSlots.length];
+        for (int i = 0; i < choiceSlots.length; i++) {
+            choiceBoxes[i] = new JCheckBox((choiceSlots[i] + 1) + ". " + productTable.getModel().getValueAt(choiceSlots[i], 1));
+            panel.add(choiceBoxes[i]);
+        }
+        JCheckBox[] extraBoxes = new JCheckBox[extras.length];
+        for (int i = 0; i < extras.length; i++) {
+            extraBoxes[i] = new JCheckBox("Add " + extras[i] + " (+\u20B1" + Money.format(recipe.getExtraPrice(extras[i])) + ")");
+            panel.add(extraBoxes[i]);
+        }
+
+        int option = JOptionPane.showConfirmDialog(this, panel, recipe.getProduct(), JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (option != JOptionPane.OK_OPTION) {
+            return null;
+        }
+        List<Integer> chosen = new ArrayList<>();
+        for (int i = 0; i < choiceSlots.length; i++) {
+            if (choiceBoxes[i].isSelected()) {
+                chosen.add(choiceSlots[i]);
+            }
+        }
+        if (chosen.size() != recipe.getChoices()) {
+            log("Please pick exactly " + recipe.getChoices() + " " + recipe.getChoiceName() + "s for your " + recipe.getProduct() + ".");
+            return null;
+        }
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < extras.length; i++) {
+            if (extraBoxes[i].isSelected()) {
+                added.add(extras[i]);
+            }
+        }
+        return new RecipeOrder(chosen.stream().mapToInt(Integer::intValue).toArray(), added.toArray(new String[0]));
+    }
+
+    /**
+     * The products and extras picked for a made-to-order product.
+     */
+    private static class RecipeOrder {
+        private final int[] chosenSlots;
+        private final String[] extras;
+
+        RecipeOrder(int[] chosenSlots, String[] extras) {
+            this.chosenSlots = chosenSlots;
+            this.extras = extras;
+        }
+    }
+
+    /**
+     * Describes the payment of a transaction for the status line.
+     *
+     * @param transaction The transaction being paid.
+     * @return The product, the total price, the amount paid, and the remaining balance.
+     */
+    private static String paymentStatus(PurchaseTransaction transaction) {
+        return transaction.getProduct() + " - Total Price: \u20B1" + Money.format(transaction.getTotalPrice())
+                + "  Paid: \u20B1" + Money.format(transaction.getAmountPaid())
+                + "  Remaining Balance: \u20B1" + Money.format(transaction.getRemainingBalance());
+    }
+
+    /**
+     * Describes the change given for a purchase, with the coins and bills that make it up.
+     * The change is only held while the products are dispensed, so it is described once the purchase completes.
+     *
+     * @param result The completed purchase.
+     * @return The change message.
+     */
+    private String changeMessage(PurchaseResult result) {
+        StringBuilder message = new StringBuilder("Change: \u20B1").append(Money.format(result.getChange()));
+        int[] changeGiven = result.getChangeGiven();
+        if (changeGiven != null) {
+            CurrencyDefinition currency = behavior.getCurrency();
+            for (int i = 0; i < currency.size(); i++) {
+                if (changeGiven[i] > 0) {
+                    message.append("\n  ").append(changeGiven[i]).append(" x \u20B1").append(currency.denomination(i));
+                }
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * Explains to the customer why a selection or payment was rejected.
+     *
+     * @param status The reason the purchase was rejected.
+     * @param slot   The zero-based slot that was selected.
+     * @return The message to show.
+     */
+    private static String describe(PurchaseResult.Status status, int slot) {
+        switch (status) {
+            case OUT_OF_STOCK:
+                return "Slot #" + (slot + 1) + " does not have enough stock. Please choose another product.";
+            case INSUFFICIENT_PAYMENT:
+                return "The payment does not cover the total price.";
+            case INSUFFICIENT_CHANGE:
+                return "Cannot give sufficient change. Please provide a lower payment.";
+            case CANCELLED:
+                return "The purchase was cancelled.";
+            default:
+                return "Slot #" + (slot + 1) + " cannot be bought. Please choose another product.";
+        }
+    }
+
+    private void showIdle() {
+        setControls(true, false);
+        statusLabel.setText("Select a product.");
+    }
+
+    private void showPaying(String status) {
+        setControls(false, true);
+        statusLabel.setText(status);
+    }
+
+    private void showBusy() {
+        setControls(false, false);
+    }
+
+    /**
+     * Enables the controls for the current step: selecting a product, paying for it, or neither while the worker is busy.
+     *
+     * @param selecting Whether a product can be selected.
+     * @param paying    Whether coins can be inserted and the purchase paid or cancelled.
+     */
+    private void setControls(boolean selecting, boolean paying) {
+        selectButton.setEnabled(selecting);
+        quantitySpinner.setEnabled(selecting);
+        maintenanceButton.setEnabled(selecting);
+        for (JButton coinButton : coinButtons) {
+            coinButton.setEnabled(paying);
+        }
+        payButton.setEnabled(paying);
+        cancelButton.setEnabled(paying);
+    }
+
+    private void log(String message) {
+        messages.append(message + "\n");
+        messages.setCaretPosition(messages.getDocument().getLength());
+    }
+
+    /**
+     * Runs a task on the worker thread. If it fails, the error is shown and the panel goes back to product selection.
+     *
+     * @param task The task to run.
+     */
+    private void run(Runnable task) {
+        worker.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                if (transaction != null && transaction.isOpen()) {
+                    transaction.cancel();
+                }
+                transaction = null;
+                ui(() -> {
+                    log("Something went wrong: " + e.getMessage());
+                    showIdle();
+                });
+            }
+        });
+    }
+
+    private static void ui(Runnable task) {
+        SwingUtilities.invokeLater(task);
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import vendingmachine.benchmarks.MachineFixture;
+
+/**
+ * Creates the vending machines used by the benchmarks. This class is in the default package with the vending machine
+ * classes, so it can use them directly, and hands them to the benchmarks as MachineFixture.
+ */
+public class BenchmarkMachines {
+    private static final String[] PRODUCTS = { "Banana", "Grapes", "Apple", "Melon", "Pear", "Watermelon", "Fruit Salad", "Bottled Water" };
+    private static final long[] PRICES = { 2500, 4000, 3000, 6500, 3500, 7500, 12000, 2000 };
+    private static final int[] DENOMINATIONS = { 1000, 500, 200, 100, 50, 20, 10, 5, 1 };
+    private static final String[] NON_SELLABLE_ITEMS = { "Paper Cup", "Plastic Spoon", "Condensed Milk", "Evaporated Milk", "Cheese" };
+    private static final int PURCHASES = 1024;
+
+    /**
+     * Creates a stocked vending machine with a sales journal in a temporary file.
+     *
+     * @param machineType              REGULAR or SPECIAL.
+     * @param instancesPerDenomination The number of instances of each denomination available as change.
+     * @param ledgerSize               The number of sales already recorded.
+     * @return The fixture for the vending machine.
+     * @throws IOException If the sales journal cannot be created.
+     */
+    public static MachineFixture create(String machineType, int instancesPerDenomination, int ledgerSize) throws IOException {
+        Path journalPath = Files.createTempFile("benchmark-sales", ".journal");
+        SalesJournal journal = SalesJournal.open(journalPath);
+        IVendingMachineBehavior behavior;
+        if (machineType.equals("SPECIAL")) {
+            SpecialVendingMachineBehavior special = new SpecialVendingMachineBehavior(journal);
+            for (String item : NON_SELLABLE_ITEMS) {
+                special.stockNonSellable(item, 10);
+            }
+            behavior = special;
+        } else if (machineType.equals("REGULAR")) {
+            behavior = new RegularVendingMachineBehavior(journal);
+        } else {
+            journal.close();
+            Files.deleteIfExists(journalPath);
+            throw new IllegalArgumentException("Unknown vending machine type: " + machineType);
+        }
+        behavior.setDispenseLatencyModel(DispenseLatencyModel.none());
+
+        for (int i = 0; i < PRODUCTS.length; i++) {
+            behavior.stockSlot(i, PRODUCTS[i], PRICES[i], 10, 100 + 10 * i);
+        }
+        for (int i = 0; i < ledgerSize; i++) {
+            behavior.updateSales(PRICES[i % PRICES.length], PRODUCTS[i % PRODUCTS.length], 1);
+        }
+
+        Fixture fixture = new Fixture(behavior, journal, journalPath);
+        fixture.restockChange(instancesPerDenomination);
+        return fixture;
+    }
+
+    private static class Fixture implements MachineFixture {
+        private final IVendingMachineBehavior behavior;
+        private final SalesJournal journal;
+        private final Path journalPath;
+        private final long[] changes = new long[PURCHASES];
+        private final long[] payments = new long[PURCHASES];
+
+        Fixture(IVendingMachineBehavior behavior, SalesJournal journal, Path journalPath) {
+            this.behavior = behavior;
+            this.journal = journal;
+            this.journalPath = journalPath;
+
+            // Customers pay with the smallest bill that covers the price, or sometimes the next one up
+            Random random = new Random(42);
+            for (int i = 0; i < PURCHASES; i++) {
+                long price = PRICES[random.nextInt(PRICES.length)];
+                int bill = DENOMINATIONS.length - 1;
+                while (bill > 0 && Money.ofPesos(DENOMINATIONS[bill]) < price) {
+                    bill--;
+                }
+                if (bill > 0 && random.nextInt(4) == 0) {
+                    bill--;
+                }
+                payments[i] = Money.ofPesos(DENOMINATIONS[bill]);
+                changes[i] = payments[i] - price;
+            }
+        }
+
+        @Override
+        public boolean canGiveSufficientChange(long change) {
+            return behavior.canGiveSufficientChange(change);
+        }
+
+        @Override
+        public void updateChangeDenominations(long change, long amountPaid) {
+            behavior.updateChangeDenominations(change, amountPaid);
+        }
+
+        @Override
+        public void updateSales(long totalPrice, String product, int quantitySold) {
+            behavior.updateSales(totalPrice, product, quantitySold);
+        }
+
+        @Override
+        public String salesReport() {
+            return behavior.salesReport();
+        }
+
+        @Override
+        public void restockChange(int instancesPerDenomination) {
+            for (int denomination : DENOMINATIONS) {
+                behavior.stockChange(denomination, instancesPerDenomination);
+            }
+        }
+
+        @Override
+        public long changeAt(int index) {
+            return changes[index & (PURCHASES - 1)];
+        }
+
+        @Override
+        public long amountPaidAt(int index) {
+            return payments[index & (PURCHASES - 1)];
+        }
+
+        @Override
+        public long priceAt(int index) {
+            return PRICES[index % PRICES.length];
+        }
+
+        @Override
+        public String productAt(int index) {
+            return PRODUCTS[index % PRODUCTS.length];
+        }
+
+        @Override
+        public void close() {
+            journal.close();
+            try {
+                Files.deleteIfExists(journalPath);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
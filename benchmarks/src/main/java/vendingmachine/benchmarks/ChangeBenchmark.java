@@ -0,0 +1,98 @@
+package vendingmachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the change check and the change update made on every purchase, for both vending machines,
+ * with a nearly empty and a well stocked change inventory. The change amounts come from a seeded list of realistic
+ * purchases, and the change inventory is restocked before every iteration so each one starts from the same state.
+ * The check is measured in the purchase group, against a second thread taking payments into the same machine, so it
+ * sees the change inventory move as it does in use rather than answering from an unchanged table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChangeBenchmark {
+    /**
+     * The vending machine, shared by the threads of a group. The benchmarks of one thread are each a group of their own.
+     */
+    @State(Scope.Group)
+    public static class Machine {
+        @Param({ "REGULAR", "SPECIAL" })
+        public String machine;
+
+        @Param({ "2", "20" })
+        public int coinsPerDenomination;
+
+        private MachineFixture fixture;
+
+        @Setup(Level.Trial)
+        public void createMachine() {
+            fixture = MachineFixture.create(machine, coinsPerDenomination, 0);
+        }
+
+        @Setup(Level.Iteration)
+        public void restockChange() {
+            fixture.restockChange(coinsPerDenomination);
+        }
+
+        @TearDown(Level.Trial)
+        public void closeMachine() {
+            fixture.close();
+        }
+    }
+
+    /**
+     * The purchases made by one thread.
+     */
+    @State(Scope.Thread)
+    public static class Customer {
+        private int purchase;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            purchase = 0;
+        }
+    }
+
+    /**
+     * Checks the change for a purchase while the other thread of the group takes payments.
+     */
+    @Benchmark
+    @Group("purchase")
+    public boolean canGiveSufficientChange(Machine machine, Customer customer) {
+        return machine.fixture.canGiveSufficientChange(machine.fixture.changeAt(customer.purchase++));
+    }
+
+    /**
+     * Takes the payments that the check of the group has to see.
+     */
+    @Benchmark
+    @Group("purchase")
+    public void takePayment(Machine machine, Customer customer) {
+        int index = customer.purchase++;
+        machine.fixture.updateChangeDenominations(machine.fixture.changeAt(index), machine.fixture.amountPaidAt(index));
+    }
+
+    /**
+     * Takes a payment and then checks the change for the next purchase, which is the first check to see the new stock.
+     */
+    @Benchmark
+    @Group("canGiveSufficientChangeAfterPayment")
+    public boolean canGiveSufficientChangeAfterPayment(Machine machine, Customer customer) {
+        int index = customer.purchase++;
+        machine.fixture.updateChangeDenominations(machine.fixture.changeAt(index), machine.fixture.amountPaidAt(index));
+        return machine.fixture.canGiveSufficientChange(machine.fixture.changeAt(index + 1));
+    }
+
+    @Benchmark
+    @Group("updateChangeDenominations")
+    public void updateChangeDenominations(Machine machine, Customer customer) {
+        int index = customer.purchase++;
+        machine.fixture.updateChangeDenominations(machine.fixture.changeAt(index), machine.fixture.amountPaidAt(index));
+    }
+}
@@ -0,0 +1,103 @@
+package vendingmachine.benchmarks;
+
+/**
+ * A vending machine stocked for a benchmark. The vending machine classes are in the default package,
+ * which JMH benchmark classes cannot import, so the benchmarks reach them through this interface.
+ * The fixtures are made by the BenchmarkMachines class in the default package, which is looked up once when a benchmark is set up.
+ */
+public interface MachineFixture extends AutoCloseable {
+    /**
+     * Checks if the vending machine can give the change.
+     *
+     * @param change The change in centavos.
+     * @return true if the change can be given, false otherwise.
+     */
+    boolean canGiveSufficientChange(long change);
+
+    /**
+     * Gives the change and adds the payment to the change denominations.
+     *
+     * @param change     The change in centavos.
+     * @param amountPaid The amount paid in centavos.
+     */
+    void updateChangeDenominations(long change, long amountPaid);
+
+    /**
+     * Records a sale.
+     *
+     * @param totalPrice   The total price in centavos.
+     * @param product      The name of the product.
+     * @param quantitySold The quantity sold.
+     */
+    void updateSales(long totalPrice, String product, int quantitySold);
+
+    /**
+     * Builds the sales summary report.
+     *
+     * @return The sales summary report.
+     */
+    String salesReport();
+
+    /**
+     * Sets every denomination to the same number of instances.
+     *
+     * @param instancesPerDenomination The number of instances of each denomination.
+     */
+    void restockChange(int instancesPerDenomination);
+
+    /**
+     * Get a realistic change amount and the payment it came from, cycling through a fixed, seeded list of purchases.
+     *
+     * @param index The index of the purchase.
+     * @return The change in centavos.
+     */
+    long changeAt(int index);
+
+    /**
+     * Get the payment for the purchase returned by changeAt.
+     *
+     * @param index The index of the purchase.
+     * @return The amount paid in centavos.
+     */
+    long amountPaidAt(int index);
+
+    /**
+     * Get the price of a product sold by the vending machine, cycling through its products.
+     *
+     * @param index The index of the product.
+     * @return The price in centavos.
+     */
+    long priceAt(int index);
+
+    /**
+     * Get the name of a product sold by the vending machine, cycling through its products.
+     *
+     * @param index The index of the product.
+     * @return The name of the product.
+     */
+    String productAt(int index);
+
+    /**
+     * Closes the sales journal of the vending machine and deletes it.
+     */
+    @Override
+    void close();
+
+    /**
+     * Creates a stocked vending machine.
+     *
+     * @param machineType              REGULAR or SPECIAL.
+     * @param instancesPerDenomination The number of instances of each denomination available as change.
+     * @param ledgerSize               The number of sales already recorded.
+     * @return The fixture for the vending machine.
+     */
+    static MachineFixture create(String machineType, int instancesPerDenomination, int ledgerSize) {
+        try {
+            return (MachineFixture) Class.forName("BenchmarkMachines")
+                    .getMethod("create", String.class, int.class, int.class)
+                    .invoke(null, machineType, instancesPerDenomination, ledgerSize);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create a " + machineType + " vending machine.", e);
+        }
+    }
+}
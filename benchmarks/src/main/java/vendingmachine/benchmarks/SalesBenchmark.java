@@ -0,0 +1,60 @@
+package vendingmachine.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures recording a sale and building the sales summary, for both vending machines, against ledgers of
+ * different sizes. The machine is created again before every iteration so the ledger starts at the same size and the
+ * sales journal does not keep growing across iterations. Recording a sale is timed over a fixed batch per iteration
+ * rather than for a fixed time, which would add millions of sales to the ledger being measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SalesBenchmark {
+    private static final int SALES_PER_BATCH = 1000;
+
+    @Param({ "REGULAR", "SPECIAL" })
+    public String machine;
+
+    @Param({ "0", "1000", "100000" })
+    public int ledgerSize;
+
+    private MachineFixture fixture;
+    private int sale;
+
+    @Setup(Level.Iteration)
+    public void createMachine() {
+        fixture = MachineFixture.create(machine, 20, ledgerSize);
+        sale = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeMachine() {
+        fixture.close();
+    }
+
+    /**
+     * Records a fixed batch of sales, timed as one shot, so the ledger grows by no more than the batch before the
+     * machine is created again and each ledger size is measured at that size.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 10, batchSize = SALES_PER_BATCH)
+    @Measurement(iterations = 20, batchSize = SALES_PER_BATCH)
+    public void updateSales() {
+        int index = sale++;
+        fixture.updateSales(fixture.priceAt(index), fixture.productAt(index), 1);
+    }
+
+    @Benchmark
+    public String salesReport() {
+        return fixture.salesReport();
+    }
+}